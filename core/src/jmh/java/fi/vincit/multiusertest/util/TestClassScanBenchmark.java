@@ -0,0 +1,143 @@
+package fi.vincit.multiusertest.util;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestName;
+import org.junit.runners.BlockJUnit4ClassRunner;
+import org.junit.runners.model.InitializationError;
+import org.junit.runners.model.TestClass;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the time it takes to create the combination runners of a single test class
+ * when each runner scans and validates the test class itself compared to sharing
+ * one {@link TestClassModel} between the runners.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TestClassScanBenchmark {
+
+    @Param({"1", "6", "30"})
+    public int combinations;
+
+    private TestClassModel model;
+
+    @Benchmark
+    public void scanPerCombination(Blackhole blackhole) throws InitializationError {
+        for (int i = 0; i < combinations; ++i) {
+            blackhole.consume(new BlockJUnit4ClassRunner(ScannedTest.class));
+        }
+    }
+
+    @Benchmark
+    public void scanOncePerClass(Blackhole blackhole) throws InitializationError {
+        model = new TestClassModel(new TestClass(ScannedTest.class));
+        for (int i = 0; i < combinations; ++i) {
+            blackhole.consume(new SharedModelRunner());
+        }
+    }
+
+    /**
+     * Uses the model of the benchmark state instead of the shared static model so that
+     * every benchmark invocation scans the class once. The model is read from the enclosing
+     * state because the test class is created by the super constructor.
+     */
+    class SharedModelRunner extends BlockJUnit4ClassRunner {
+
+        SharedModelRunner() throws InitializationError {
+            super(ScannedTest.class);
+        }
+
+        @Override
+        protected TestClass createTestClass(Class<?> testClass) {
+            return model.getTestClass();
+        }
+
+        @Override
+        protected void collectInitializationErrors(List<Throwable> errors) {
+            errors.addAll(model.getInitializationErrors(getClass(), super::collectInitializationErrors));
+        }
+    }
+
+    public static class ScannedTestBase {
+        @Rule
+        public TestName testName = new TestName();
+
+        @Before
+        public void baseInit() {
+        }
+
+        @After
+        public void baseTearDown() {
+        }
+    }
+
+    public static class ScannedTest extends ScannedTestBase {
+        @Before
+        public void init() {
+        }
+
+        @After
+        public void tearDown() {
+        }
+
+        @Test
+        public void test1() {
+        }
+
+        @Test
+        public void test2() {
+        }
+
+        @Test
+        public void test3() {
+        }
+
+        @Test
+        public void test4() {
+        }
+
+        @Test
+        public void test5() {
+        }
+
+        @Test
+        public void test6() {
+        }
+
+        @Test
+        public void test7() {
+        }
+
+        @Test
+        public void test8() {
+        }
+
+        @Test
+        public void test9() {
+        }
+
+        @Test
+        public void test10() {
+        }
+    }
+}
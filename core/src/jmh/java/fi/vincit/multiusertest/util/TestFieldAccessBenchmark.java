@@ -0,0 +1,101 @@
+package fi.vincit.multiusertest.util;
+
+import fi.vincit.multiusertest.annotation.MultiUserConfigClass;
+import fi.vincit.multiusertest.rule.AuthorizationRule;
+import fi.vincit.multiusertest.test.MultiUserConfig;
+import org.junit.Rule;
+import org.junit.rules.TestName;
+import org.junit.runners.model.FrameworkField;
+import org.junit.runners.model.TestClass;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.lang.reflect.Field;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures reading the configuration and authorization rule members of a test instance
+ * the way a test setup does it: the configuration twice (initialization and producer login)
+ * and the rule once. Compares scanning the fields with reflection to the cached
+ * {@link TestFieldAccessors}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TestFieldAccessBenchmark {
+
+    private final AccessedTest testInstance = new AccessedTest();
+    private final TestClass testClass = new TestClass(AccessedTest.class);
+
+    @Benchmark
+    public void reflectiveScan(Blackhole blackhole) throws IllegalAccessException {
+        blackhole.consume(findConfig(testInstance));
+        blackhole.consume(findConfig(testInstance));
+        blackhole.consume(findAuthorizationRule(testClass, testInstance));
+    }
+
+    @Benchmark
+    public void cachedAccessors(Blackhole blackhole) {
+        TestFieldAccessors accessors = TestFieldAccessors.of(testInstance.getClass());
+        blackhole.consume(accessors.getConfig(testInstance));
+        blackhole.consume(TestFieldAccessors.of(testInstance.getClass()).getConfig(testInstance));
+        blackhole.consume(TestFieldAccessors.of(testClass.getJavaClass()).getAuthorizationRule(testInstance));
+    }
+
+    // Field access as done before the accessors were cached
+    private static MultiUserConfig findConfig(Object testInstance) throws IllegalAccessException {
+        for (Field field : testInstance.getClass().getDeclaredFields()) {
+            if (field.isAnnotationPresent(MultiUserConfigClass.class)) {
+                field.setAccessible(true);
+                MultiUserConfig config = (MultiUserConfig) field.get(testInstance);
+                field.setAccessible(false);
+                return config;
+            }
+        }
+
+        for (Field field : testInstance.getClass().getFields()) {
+            if (field.isAnnotationPresent(MultiUserConfigClass.class)) {
+                field.setAccessible(true);
+                MultiUserConfig config = (MultiUserConfig) field.get(testInstance);
+                field.setAccessible(false);
+                return config;
+            }
+        }
+        return null;
+    }
+
+    private static AuthorizationRule findAuthorizationRule(TestClass testClass, Object target) throws IllegalAccessException {
+        for (FrameworkField ruleField : testClass.getAnnotatedFields(Rule.class)) {
+            if (ruleField.getType().isAssignableFrom(AuthorizationRule.class)) {
+                return (AuthorizationRule) ruleField.get(target);
+            }
+        }
+        return null;
+    }
+
+    public static class AccessedTest {
+        public String first = "first";
+        public String second = "second";
+        public String third = "third";
+
+        @Rule
+        public TestName testName = new TestName();
+
+        @MultiUserConfigClass
+        private MultiUserConfig config = null;
+
+        @Rule
+        public AuthorizationRule authorizationRule = new AuthorizationRule();
+    }
+}
@@ -0,0 +1,29 @@
+package fi.vincit.multiusertest.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * <p>
+ * Marks a public static void method that is run once after the tests of each
+ * producer-consumer combination. The methods are run even if a {@link BeforeCombination}
+ * method or a test fails, so they can be used to remove the fixtures created for
+ * the combination.
+ * </p>
+ * <p>
+ * The method can take the same parameters as {@link BeforeCombination} methods.
+ * </p>
+ * <p>
+ * With the JUnit 5 extension the tests of a test class are run method by method for all
+ * combinations, so the combinations are not run one after another. The after methods of all
+ * the combinations are run once when all the tests of the test class have been run and the
+ * fixtures of every combination exist at the same time until then.
+ * </p>
+ * @since 0.7
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.METHOD})
+public @interface AfterCombination {
+}
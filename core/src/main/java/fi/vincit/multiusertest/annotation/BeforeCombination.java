@@ -0,0 +1,31 @@
+package fi.vincit.multiusertest.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * <p>
+ * Marks a public static void method that is run once before the tests of each
+ * producer-consumer combination. Can be used to create fixtures that depend on the
+ * combination (e.g. reference data of a role) once instead of before every test.
+ * </p>
+ * <p>
+ * The method can take parameters of the following types in any order:
+ * </p>
+ * <ul>
+ *     <li>{@link fi.vincit.multiusertest.util.UserCombination}: the producer and consumer definitions of the combination</li>
+ *     <li>{@link fi.vincit.multiusertest.util.TestConfiguration}: the configuration of the test class</li>
+ * </ul>
+ * <p>
+ * If the method fails, the tests of the combination are not run. When the combinations
+ * are run in parallel the methods of different combinations may be run at the same time.
+ * </p>
+ * @see AfterCombination
+ * @since 0.7
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.METHOD})
+public @interface BeforeCombination {
+}
@@ -1,6 +1,8 @@
 package fi.vincit.multiusertest.annotation;
 
 import fi.vincit.multiusertest.runner.junit.framework.BlockMultiUserTestClassRunner;
+import fi.vincit.multiusertest.test.UserPoolScope;
+import fi.vincit.multiusertest.util.CombinationOrder;
 
 import java.lang.annotation.Inherited;
 import java.lang.annotation.Retention;
@@ -48,4 +50,98 @@ public @interface MultiUserTestConfig {
      */
     @Deprecated
     Class<? extends Throwable> defaultException() default IllegalStateException.class;
+
+    /**
+     * Maximum number of producer-consumer combinations executed concurrently.
+     * By default the combinations are run one at a time. When the value is
+     * greater than one the combination runners are scheduled on a bounded
+     * thread pool. The test class and its configuration must then be safe to use
+     * from multiple threads at the same time (e.g. logged in user must be stored
+     * per thread).
+     * @return Number of combinations to run in parallel
+     * @since 0.7
+     */
+    int parallelism() default 1;
+
+    /**
+     * Reuse created users between tests instead of creating new users for each test.
+     * The configuration class has to implement {@link fi.vincit.multiusertest.test.PooledUserFactory}
+     * which resets the users before they are reused. By default users are not pooled.
+     * @return Scope of the user pool
+     * @since 0.7
+     */
+    UserPoolScope userPool() default UserPoolScope.NONE;
+
+    /**
+     * Maximum number of existing users (<code>user:</code> definitions) cached per
+     * configuration class and shared by all test classes in the JVM. When zero, which is
+     * the default, existing users are searched once per test.
+     * @return Size of the existing user cache
+     * @since 0.7
+     */
+    int existingUserCacheSize() default 0;
+
+    /**
+     * Create new consumer users only when the test first uses the consumer with
+     * {@link fi.vincit.multiusertest.test.UserRoleIT#getConsumer()} or
+     * {@link fi.vincit.multiusertest.test.UserRoleIT#logInAs(fi.vincit.multiusertest.util.LoginRole)}.
+     * By default the consumer is created before the test.
+     * @return Whether the consumer is created lazily
+     * @since 0.7
+     */
+    boolean lazyConsumer() default false;
+
+    /**
+     * Maximum number of users per role created ahead in a background thread. When greater
+     * than zero the users of the next producer-consumer combination are created while the
+     * current combination is run. The configuration class must then be safe to use from
+     * another thread. By default users are not prefetched. Not used with {@link #userPool()}.
+     * @return Number of prefetched users per role
+     * @since 0.7
+     */
+    int userPrefetch() default 0;
+
+    /**
+     * Skip {@link fi.vincit.multiusertest.test.UserRoleIT#loginWithUser(Object)} when
+     * {@link fi.vincit.multiusertest.test.UserRoleIT#logInAs(fi.vincit.multiusertest.util.LoginRole)}
+     * is called with the user that is already logged in, e.g. when the consumer is the producer.
+     * The users must then be logged in only using <code>logInAs</code> during the test.
+     * The logged in user is forgotten between tests, so only the logins within a test are skipped.
+     * By default the user is always logged in again.
+     * @return Whether to skip repeated logins
+     * @since 0.7
+     */
+    boolean loginElision() default false;
+
+    /**
+     * Maximum number of authentication objects cached per configuration class with
+     * {@link fi.vincit.multiusertest.test.AbstractMultiUserConfig#getAuthentication(Object, java.util.function.Function)}.
+     * When zero, which is the default, the authentication is built for every login. Only the
+     * authentications of users that log in again in later tests, existing or pooled users,
+     * are reused.
+     * @return Size of the authentication cache
+     * @see fi.vincit.multiusertest.test.AbstractMultiUserConfig#getAuthenticationKey(Object)
+     * @since 0.7
+     */
+    int authenticationCacheSize() default 0;
+
+    /**
+     * Order in which the producer-consumer combinations are run. With
+     * {@link CombinationOrder#LONGEST_FIRST} the durations of the combinations are recorded
+     * to a history file and the longest combinations are started first on the next run.
+     * By default the combinations are run in declaration order.
+     * @return Order of the combinations
+     * @since 0.7
+     */
+    CombinationOrder combinationOrder() default CombinationOrder.DECLARATION;
+
+    /**
+     * Number of randomly sampled producer-consumer combinations run per test class, e.g. for a quick
+     * smoke run. Successive rounds, set with the <i>mutr.sample.round</i> system property, rotate through
+     * all combinations, see {@link fi.vincit.multiusertest.util.CombinationSample}. When zero, which is
+     * the default, all combinations are run.
+     * @return Number of sampled combinations
+     * @since 0.7
+     */
+    int sampleSize() default 0;
 }
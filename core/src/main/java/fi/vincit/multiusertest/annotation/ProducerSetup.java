@@ -0,0 +1,37 @@
+package fi.vincit.multiusertest.annotation;
+
+import fi.vincit.multiusertest.util.snapshot.FieldSnapshotStrategy;
+import fi.vincit.multiusertest.util.snapshot.ProducerSnapshotStrategy;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * <p>
+ * Marks the producer phase of the tests: a public no-argument method that creates the data
+ * used by the consumers. The method is run with the producer logged in after the
+ * <code>Before</code> methods, but only once per producer definition. The producer user and
+ * the state captured by the {@link #snapshot()} strategy are then reused by all the later
+ * tests run with the same producer, regardless of the consumer.
+ * </p>
+ * <p>
+ * Since the data created by the producer phase outlives the test that ran it, the tests
+ * must not remove it (e.g. by clearing the database after each test) unless the snapshot
+ * strategy restores it. A test class can have at most one producer setup method.
+ * Producer setup is not supported together with the user pool.
+ * </p>
+ * @since 0.7
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.METHOD})
+public @interface ProducerSetup {
+
+    /**
+     * Strategy used to capture the state after the producer phase and to restore it
+     * for the later tests. By default the instance fields of the test class are copied.
+     * @return Snapshot strategy class with a public no-argument constructor
+     */
+    Class<? extends ProducerSnapshotStrategy> snapshot() default FieldSnapshotStrategy.class;
+}
@@ -1,5 +1,6 @@
 package fi.vincit.multiusertest.rule;
 
+import fi.vincit.multiusertest.rule.expectation2.ExpectationTable;
 import fi.vincit.multiusertest.rule.expectation2.TestExpectation;
 import fi.vincit.multiusertest.rule.expectation2.WhenThen;
 import fi.vincit.multiusertest.rule.expectation2.call.FunctionCallWhenThen;
@@ -73,7 +74,7 @@ public class AuthorizationRule implements TestRule {
     }
 
     public void setRole(UserIdentifier identifier) {
-        this.userIdentifier = new UserIdentifier(identifier.getType(), identifier.getIdentifier());
+        this.userIdentifier = identifier;
     }
 
     /**
@@ -159,6 +160,32 @@ public class AuthorizationRule implements TestRule {
         );
     }
 
+    /**
+     * Tests a function call against a prebuilt expectation table. The expectation of
+     * the current user is looked up from the table, so the same table can be reused
+     * by every producer-consumer combination.
+     * @param functionCall Call to test
+     * @param expectations Expectations of the call
+     * @throws Throwable
+     * @since 0.7
+     */
+    public void testCall(FunctionCall functionCall, ExpectationTable<TestExpectation> expectations) throws Throwable {
+        FunctionCallWhenThen.test(functionCall, expectations.getExpectation(userIdentifier), userIdentifier);
+    }
+
+    /**
+     * Tests a return value call against a prebuilt expectation table.
+     * @param returnValueCall Call to test
+     * @param expectations Expectations of the call
+     * @throws Throwable
+     * @see #testCall(FunctionCall, ExpectationTable)
+     * @since 0.7
+     */
+    public <VALUE_TYPE> void testCall(ReturnValueCall<VALUE_TYPE> returnValueCall,
+                                      ExpectationTable<TestValueExpectation<VALUE_TYPE>> expectations) throws Throwable {
+        ReturnValueWhenThen.test(returnValueCall, expectations.getExpectation(userIdentifier), userIdentifier);
+    }
+
     private class AuthChecker extends Statement {
 
         private Statement next;
@@ -0,0 +1,184 @@
+package fi.vincit.multiusertest.rule.expectation2;
+
+import fi.vincit.multiusertest.rule.AuthorizationRule;
+import fi.vincit.multiusertest.rule.expectation2.call.FunctionCallWhenThen;
+import fi.vincit.multiusertest.rule.expectation2.value.ReturnValueWhenThen;
+import fi.vincit.multiusertest.rule.expectation2.value.TestValueExpectation;
+import fi.vincit.multiusertest.rule.expection.FunctionCall;
+import fi.vincit.multiusertest.rule.expection.ReturnValueCall;
+import fi.vincit.multiusertest.util.UserIdentifier;
+import fi.vincit.multiusertest.util.UserIdentifierCollection;
+import fi.vincit.multiusertest.util.UserIdentifiers;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * <p>
+ * Immutable expectations of a call under test for expectation API 2. A table is
+ * built once with the same when-then syntax as
+ * {@link AuthorizationRule#testCall(FunctionCall)} and can then be shared by all
+ * producer-consumer combinations, for example as a <code>static final</code> constant:
+ * </p>
+ * <pre>
+ * private static final ExpectationTable&lt;TestExpectation&gt; ADMIN_ONLY =
+ *         ExpectationTable.forFunctionCalls()
+ *                 .whenCalledWithAnyOf(roles("ROLE_USER", "ROLE_VISITOR"))
+ *                 .then(expectException(AccessDeniedException.class))
+ *                 .build();
+ *
+ * authorizationRule.testCall(() -&gt; service.deleteUser(user), ADMIN_ONLY);
+ * </pre>
+ * <p>
+ * Testing a call with a table is a single lookup with the current user identifier.
+ * The identifiers and expectations are not parsed or created again for each combination.
+ * </p>
+ * @param <T> Type of the expectations
+ * @since 0.7
+ */
+public final class ExpectationTable<T extends TestExpectation> {
+
+    private final Map<UserIdentifier, T> expectationsByIdentifier;
+    private final T defaultExpectation;
+
+    /**
+     * Starts building a table for function calls tested with
+     * {@link AuthorizationRule#testCall(FunctionCall, ExpectationTable)}.
+     * @return Builder
+     * @since 0.7
+     */
+    public static Builder<TestExpectation> forFunctionCalls() {
+        return new Builder<>(FunctionCallWhenThen.defaultExpectation());
+    }
+
+    /**
+     * Starts building a table for return value calls tested with
+     * {@link AuthorizationRule#testCall(ReturnValueCall, ExpectationTable)}.
+     * @param <VALUE_TYPE> Type of the return value of the call under test
+     * @return Builder
+     * @since 0.7
+     */
+    public static <VALUE_TYPE> Builder<TestValueExpectation<VALUE_TYPE>> forReturnValues() {
+        return new Builder<>(ReturnValueWhenThen.<VALUE_TYPE>defaultExpectation());
+    }
+
+    private ExpectationTable(Map<UserIdentifier, T> expectationsByIdentifier, T defaultExpectation) {
+        this.expectationsByIdentifier = expectationsByIdentifier;
+        this.defaultExpectation = defaultExpectation;
+    }
+
+    /**
+     * @param userIdentifier Identifier of the current user
+     * @return Expectation defined for the identifier or the default
+     * expectation if the identifier doesn't have one
+     * @since 0.7
+     */
+    public T getExpectation(UserIdentifier userIdentifier) {
+        T expectation = expectationsByIdentifier.get(userIdentifier);
+        return expectation != null ? expectation : defaultExpectation;
+    }
+
+    /**
+     * Builder for {@link ExpectationTable}. Works like {@link WhenThen} but
+     * {@link #build()} is called instead of {@link WhenThen#test()}.
+     * @param <T> Type of the expectations
+     * @since 0.7
+     */
+    public static final class Builder<T extends TestExpectation> {
+
+        private final Set<UserIdentifier> currentIdentifiers = new LinkedHashSet<>();
+        private final Map<UserIdentifier, T> expectationsByIdentifier = new HashMap<>();
+        private T defaultExpectation;
+
+        private Builder(T defaultExpectation) {
+            this.defaultExpectation = defaultExpectation;
+        }
+
+        public Builder<T> whenCalledWith(UserIdentifiers... userIdentifiers) {
+            startWhen(userIdentifiers);
+            for (UserIdentifiers identifiers : userIdentifiers) {
+                identifiers.getIdentifiers().forEach(this::addCurrentUserIdentifier);
+            }
+            return this;
+        }
+
+        public Builder<T> whenCalledWith(UserIdentifier... userIdentifiers) {
+            startWhen(userIdentifiers);
+            for (UserIdentifier identifier : userIdentifiers) {
+                addCurrentUserIdentifier(identifier);
+            }
+            return this;
+        }
+
+        public Builder<T> whenCalledWithAnyOf(UserIdentifierCollection... userIdentifiers) {
+            return whenCalledWith(UserIdentifiers.anyOf(userIdentifiers));
+        }
+
+        public Builder<T> whenCalledWithAnyOf(String... userIdentifiers) {
+            return whenCalledWith(UserIdentifiers.anyOf(userIdentifiers));
+        }
+
+        public Builder<T> then(T testExpectation) {
+            Objects.requireNonNull(testExpectation, "testExpectation must not be null");
+
+            if (currentIdentifiers.isEmpty()) {
+                throw new IllegalStateException("Call whenCalledWith before calling then method");
+            }
+
+            try {
+                for (UserIdentifier identifier : currentIdentifiers) {
+                    if (expectationsByIdentifier.containsKey(identifier)) {
+                        throw new IllegalStateException(
+                                String.format("User identifier %s already has expectation", identifier)
+                        );
+                    }
+                    expectationsByIdentifier.put(identifier, testExpectation);
+                }
+            } finally {
+                currentIdentifiers.clear();
+            }
+            return this;
+        }
+
+        public Builder<T> otherwise(T testExpectation) {
+            this.defaultExpectation = Objects.requireNonNull(testExpectation, "testExpectation must not be null");
+            return this;
+        }
+
+        public Builder<T> byDefault(T testExpectation) {
+            return otherwise(testExpectation);
+        }
+
+        /**
+         * @return Immutable expectation table
+         * @throws IllegalStateException If identifiers were given without calling
+         * {@link #then(TestExpectation)}
+         */
+        public ExpectationTable<T> build() {
+            if (!currentIdentifiers.isEmpty()) {
+                throw new IllegalStateException("Call then method before building the expectation table");
+            }
+            return new ExpectationTable<>(
+                    Collections.unmodifiableMap(new HashMap<>(expectationsByIdentifier)),
+                    defaultExpectation
+            );
+        }
+
+        private <I> void startWhen(I[] userIdentifiers) {
+            currentIdentifiers.clear();
+            if (userIdentifiers.length == 0) {
+                throw new IllegalArgumentException("At least one identifier must be defined");
+            }
+        }
+
+        private void addCurrentUserIdentifier(UserIdentifier identifier) {
+            if (!currentIdentifiers.add(identifier)) {
+                throw new IllegalStateException("User identifier " + identifier + " already set");
+            }
+        }
+    }
+}
@@ -8,6 +8,8 @@ import fi.vincit.multiusertest.util.UserIdentifier;
 
 public class FunctionCallWhenThen extends AbstractWhenThen<TestExpectation> {
 
+    private static final TestExpectation DEFAULT_EXPECTATION = new FunctionCallNoExceptionExpectation();
+
     private final FunctionCall functionCall;
 
     public FunctionCallWhenThen(FunctionCall function, UserIdentifier identifier, AuthorizationRule authorizationRule) {
@@ -17,6 +19,18 @@ public class FunctionCallWhenThen extends AbstractWhenThen<TestExpectation> {
 
     @Override
     public void test(TestExpectation testExpectation, UserIdentifier userIdentifier) throws Throwable {
+        test(functionCall, testExpectation, userIdentifier);
+    }
+
+    /**
+     * Calls the given function and asserts the result with the given expectation.
+     * @param functionCall Call to test
+     * @param testExpectation Expectation of the current user
+     * @param userIdentifier Current user
+     * @throws Throwable
+     * @since 0.7
+     */
+    public static void test(FunctionCall functionCall, TestExpectation testExpectation, UserIdentifier userIdentifier) throws Throwable {
         try {
             functionCall.call();
         } catch (Throwable e) {
@@ -28,7 +42,15 @@ public class FunctionCallWhenThen extends AbstractWhenThen<TestExpectation> {
 
     @Override
     protected TestExpectation getDefaultExpectation(UserIdentifier userIdentifier) {
-        return new FunctionCallNoExceptionExpectation();
+        return DEFAULT_EXPECTATION;
+    }
+
+    /**
+     * @return Shared expectation used when no expectation is defined for the current user
+     * @since 0.7
+     */
+    public static TestExpectation defaultExpectation() {
+        return DEFAULT_EXPECTATION;
     }
 
 }
@@ -7,6 +7,9 @@ import fi.vincit.multiusertest.util.UserIdentifier;
 
 public class ReturnValueWhenThen<VALUE_TYPE> extends AbstractWhenThen<TestValueExpectation<VALUE_TYPE>> {
 
+    // Stateless so it can be shared by all value types
+    private static final TestValueExpectation<?> DEFAULT_EXPECTATION = new ReturnValueCallNoExceptionExpectation<>();
+
     private final ReturnValueCall<VALUE_TYPE> valueCall;
 
     public ReturnValueWhenThen(ReturnValueCall<VALUE_TYPE> valueCall, UserIdentifier userIdentifier, AuthorizationRule authorizationRule) {
@@ -16,6 +19,21 @@ public class ReturnValueWhenThen<VALUE_TYPE> extends AbstractWhenThen<TestValueE
 
     @Override
     public void test(TestValueExpectation<VALUE_TYPE> testExpectation, UserIdentifier userIdentifier) throws Throwable {
+        test(valueCall, testExpectation, userIdentifier);
+    }
+
+    /**
+     * Calls the given return value call and asserts the result with the given expectation.
+     * @param valueCall Call to test
+     * @param testExpectation Expectation of the current user
+     * @param userIdentifier Current user
+     * @param <VALUE_TYPE> Type of the return value
+     * @throws Throwable
+     * @since 0.7
+     */
+    public static <VALUE_TYPE> void test(ReturnValueCall<VALUE_TYPE> valueCall,
+                                         TestValueExpectation<VALUE_TYPE> testExpectation,
+                                         UserIdentifier userIdentifier) throws Throwable {
         try {
             testExpectation.callAndAssertValue(valueCall);
         } catch (Throwable e) {
@@ -28,6 +46,16 @@ public class ReturnValueWhenThen<VALUE_TYPE> extends AbstractWhenThen<TestValueE
 
     @Override
     protected TestValueExpectation<VALUE_TYPE> getDefaultExpectation(UserIdentifier userIdentifier) {
-        return new ReturnValueCallNoExceptionExpectation<>();
+        return defaultExpectation();
+    }
+
+    /**
+     * @param <VALUE_TYPE> Type of the return value
+     * @return Shared expectation used when no expectation is defined for the current user
+     * @since 0.7
+     */
+    @SuppressWarnings("unchecked")
+    public static <VALUE_TYPE> TestValueExpectation<VALUE_TYPE> defaultExpectation() {
+        return (TestValueExpectation<VALUE_TYPE>) DEFAULT_EXPECTATION;
     }
 }
@@ -0,0 +1,117 @@
+package fi.vincit.multiusertest.runner.junit;
+
+import fi.vincit.multiusertest.util.CombinationHistory;
+import fi.vincit.multiusertest.util.UserCombination;
+import org.junit.runner.Description;
+import org.junit.runner.notification.Failure;
+import org.junit.runner.notification.RunListener;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * Records the durations and failures of the producer-consumer combinations of a
+ * {@link MultiUserTestRunner} and their test methods to a {@link CombinationHistory}. The
+ * combination runners are run with {@link #runCombination(UserCombination, Runnable)} which
+ * binds the combination to the current thread so the test events of concurrently run
+ * combinations are recorded correctly. The history is saved after each combination so the
+ * failures are available to the next run even if the current run is interrupted.
+ * </p>
+ * @since 0.7
+ */
+@RunListener.ThreadSafe
+public class CombinationHistoryRecorder extends RunListener {
+
+    private final Class<?> testClass;
+    private final CombinationHistory history;
+    private final ThreadLocal<UserCombination> currentCombination = new ThreadLocal<>();
+    private final ThreadLocal<Long> testStartTime = new ThreadLocal<>();
+    private final ThreadLocal<Boolean> testFailed = new ThreadLocal<>();
+    private final ThreadLocal<Boolean> combinationFailed = new ThreadLocal<>();
+
+    /**
+     * @param testClass Test class
+     * @param history History the durations are recorded to
+     */
+    public CombinationHistoryRecorder(Class<?> testClass, CombinationHistory history) {
+        this.testClass = testClass;
+        this.history = history;
+    }
+
+    /**
+     * Runs the combination runner, records the duration and the failures of the
+     * combination and saves the history.
+     * @param combination Combination of the runner
+     * @param combinationRunner Runs the combination
+     */
+    public void runCombination(UserCombination combination, Runnable combinationRunner) {
+        long startTime = System.nanoTime();
+        currentCombination.set(combination);
+        try {
+            combinationRunner.run();
+        } finally {
+            currentCombination.remove();
+            history.recordDuration(testClass, combination, elapsedMillis(startTime));
+            if (combinationFailed.get() == null) {
+                history.clearFailure(testClass, combination);
+            }
+            combinationFailed.remove();
+            save();
+        }
+    }
+
+    @Override
+    public void testStarted(Description description) {
+        testStartTime.set(System.nanoTime());
+        testFailed.remove();
+    }
+
+    @Override
+    public void testFailure(Failure failure) {
+        UserCombination combination = currentCombination.get();
+        if (combination == null) {
+            return;
+        }
+        String methodName = failure.getDescription().getMethodName();
+        if (methodName != null && testStartTime.get() != null) {
+            testFailed.set(true);
+            history.recordMethodFailure(testClass, combination, methodName);
+        } else {
+            // Failure of the combination runner itself, e.g. a failing @BeforeCombination method
+            combinationFailed.set(true);
+            history.recordFailure(testClass, combination);
+        }
+    }
+
+    @Override
+    public void testFinished(Description description) {
+        UserCombination combination = currentCombination.get();
+        Long startTime = testStartTime.get();
+        boolean failed = testFailed.get() != null;
+        testStartTime.remove();
+        testFailed.remove();
+        if (combination != null && startTime != null && description.getMethodName() != null) {
+            history.recordMethodDuration(testClass, combination, description.getMethodName(), elapsedMillis(startTime));
+            if (!failed) {
+                history.clearMethodFailure(testClass, combination, description.getMethodName());
+            }
+        }
+    }
+
+    /**
+     * Saves the recorded entries to the history file. The history only affects
+     * the order of the combinations so a failure to save it doesn't fail the tests.
+     */
+    public void save() {
+        try {
+            history.save();
+        } catch (IOException e) {
+            // The combinations are run in the earlier order on the next run
+        }
+    }
+
+    private static long elapsedMillis(long startTime) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+    }
+}
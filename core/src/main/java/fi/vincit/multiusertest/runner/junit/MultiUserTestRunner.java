@@ -1,15 +1,34 @@
 package fi.vincit.multiusertest.runner.junit;
 
-import fi.vincit.multiusertest.annotation.MultiUserTestConfig;
 import fi.vincit.multiusertest.annotation.RunWithUsers;
+import fi.vincit.multiusertest.util.CombinationHistory;
+import fi.vincit.multiusertest.util.CombinationOrder;
+import fi.vincit.multiusertest.util.CombinationSample;
+import fi.vincit.multiusertest.util.ProducerPhase;
+import fi.vincit.multiusertest.util.TestClassModel;
 import fi.vincit.multiusertest.util.TestConfiguration;
+import fi.vincit.multiusertest.util.UserCombination;
 import fi.vincit.multiusertest.util.UserIdentifier;
+import org.junit.Test;
+import org.junit.internal.runners.ErrorReportingRunner;
+import org.junit.internal.runners.model.EachTestNotifier;
+import org.junit.runner.Description;
 import org.junit.runner.Runner;
+import org.junit.runner.manipulation.Filter;
+import org.junit.runner.manipulation.NoTestsRemainException;
+import org.junit.runner.notification.RunNotifier;
 import org.junit.runners.Suite;
+import org.junit.runners.model.FrameworkMethod;
+import org.junit.runners.model.TestClass;
 
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.logging.Logger;
 
 /**
  * <p>
@@ -44,24 +63,99 @@ import java.util.Optional;
  * {@link fi.vincit.multiusertest.annotation.RunWithUsers#PRODUCER} roles since those roles are tied to the current
  * producer role.
  * </p>
+ * <p>
+ * Equivalent combinations are run only once. E.g. listing the same producer twice or
+ * using both {@link fi.vincit.multiusertest.annotation.RunWithUsers#WITH_PRODUCER_ROLE} and the
+ * producer's role as consumers doesn't run the tests twice with the same users. The number of
+ * skipped combinations is logged when the test class is run, e.g. <i>1 equivalent combination skipped</i>,
+ * and returned by {@link #getSkippedCombinationCount()}. The skipped combinations don't change
+ * the name of the test class.
+ * </p>
+ * <p>
+ * The combination runners are created only when they are needed. JUnit {@link Filter}s, e.g. when
+ * rerunning a single test from an IDE, and the <i>mutr.combination</i> system property, see
+ * {@link fi.vincit.multiusertest.util.CombinationSelection}, are applied before the runners are
+ * created so the runners of the other combinations are never created. Filters match the combinations
+ * by their names, <i>producer={&lt;producer&gt;}, consumer={&lt;consumer&gt;}</i>, and the names of the
+ * test methods, as named by {@link fi.vincit.multiusertest.util.RunnerDelegate}.
+ * </p>
+ * <p>
+ * A random sample of the combinations can be run with
+ * {@link fi.vincit.multiusertest.annotation.MultiUserTestConfig#sampleSize()} or the <i>mutr.sample.size</i>
+ * system property, see {@link CombinationSample}. The sample is logged when the test class is run and
+ * returned by {@link #getCombinationSample()}, so a failing sample can be run again with the same
+ * <i>mutr.sample.seed</i> and <i>mutr.sample.round</i> system properties. The sample doesn't change
+ * the name of the test class.
+ * </p>
+ * <p>
+ * When the test suite is split to several JVMs the combinations of a test class can be spread
+ * over the JVMs with the <i>mutr.shard</i> system property, see {@link fi.vincit.multiusertest.util.Shard}.
+ * </p>
+ * <p>
+ * By default the combinations are run one after another. Setting
+ * {@link fi.vincit.multiusertest.annotation.MultiUserTestConfig#parallelism()} to a value greater than one
+ * runs the combinations concurrently using {@link ParallelRunnerScheduler}.
+ * </p>
+ * <p>
+ * The order of the combinations is configured with
+ * {@link fi.vincit.multiusertest.annotation.MultiUserTestConfig#combinationOrder()}. When the
+ * order uses history, or the history file is set with the <i>mutr.history.file</i> system property,
+ * the durations of the combinations and their test methods are saved to the history file after
+ * the test class has been run, see {@link CombinationHistory}.
+ * </p>
+ * <p>
+ * The test class is scanned and validated only once and the result is shared with all
+ * combination runners using {@link TestClassModel}. When the tests are run the combinations
+ * left after all the filters are published to the model in the order they are run, see
+ * {@link TestClassModel#getCombinations()}. The {@link fi.vincit.multiusertest.annotation.ProducerSetup}
+ * phases of the test class are discarded and their snapshots released when the test class has been run,
+ * see {@link ProducerPhase#resetAll(Class)}.
+ * </p>
  */
 public class MultiUserTestRunner extends Suite {
 
+    private static final Logger LOGGER = Logger.getLogger(MultiUserTestRunner.class.getName());
+
     private static final List<Runner> NO_RUNNERS = Collections
             .emptyList();
     public static final String ROLE_PREFIX = "role:";
     public static final String USER_PREFIX = "user:";
 
-    private final List<Runner> runners;
+    private final TestRunnerFactory runnerFactory;
+    private final int skippedCombinationCount;
+    private final Map<Runner, UserCombination> runnerCombinations;
+    private final CombinationHistoryRecorder historyRecorder;
+    private final Optional<CombinationSample> combinationSample;
+    private final int sampledCombinationCount;
+    private final List<Filter> pendingFilters = new ArrayList<>();
+    private List<UserCombination> combinations;
+    private volatile List<Runner> runners;
 
     public MultiUserTestRunner(Class<?> klass) throws Throwable {
         super(klass, NO_RUNNERS);
         TestConfiguration configuration = getConfigurationOrThrow();
-        TestRunnerFactory runnerFactory = createTestRunner(configuration);
-        this.runners = runnerFactory.createRunnersForRoles(
+        this.runnerFactory = createTestRunner(configuration);
+        this.combinations = runnerFactory.resolveCombinations(
                 configuration.getProducerIdentifiers(),
                 configuration.getConsumerIdentifiers()
         );
+        this.skippedCombinationCount = runnerFactory.getSkippedCombinationCount();
+        this.runnerCombinations = runnerFactory.getRunnerCombinations();
+        this.combinationSample = runnerFactory.getCombinationSample();
+        this.sampledCombinationCount = runnerFactory.getSampledCombinationCount();
+        if (CombinationOrder.resolve(configuration).usesHistory() || CombinationHistory.isConfigured()) {
+            this.historyRecorder = new CombinationHistoryRecorder(klass, CombinationHistory.getDefault());
+        } else {
+            this.historyRecorder = null;
+        }
+        if (configuration.getParallelism() > 1) {
+            setScheduler(new ParallelRunnerScheduler(configuration.getParallelism()));
+        }
+    }
+
+    @Override
+    protected TestClass createTestClass(Class<?> testClass) {
+        return TestClassModel.of(testClass).getTestClass();
     }
 
     private TestRunnerFactory createTestRunner(TestConfiguration testConfiguration) throws NoSuchMethodException {
@@ -82,13 +176,8 @@ public class MultiUserTestRunner extends Suite {
 
 
     private TestConfiguration getConfigurationOrThrow() throws Exception {
-        Optional<RunWithUsers> runWithUsersAnnotation =
-                Optional.ofNullable(getTestClass().getJavaClass().getAnnotation(RunWithUsers.class));
-        Optional<MultiUserTestConfig> config =
-                Optional.ofNullable(getTestClass().getJavaClass().getAnnotation(MultiUserTestConfig.class));
-
-        if (runWithUsersAnnotation.isPresent()) {
-            return TestConfiguration.fromRunWithUsers(runWithUsersAnnotation, config);
+        if (getTestClass().getJavaClass().isAnnotationPresent(RunWithUsers.class)) {
+            return TestConfiguration.fromClass(getTestClass().getJavaClass());
         } else {
             throw new IllegalStateException(
                     "No users defined for test class "
@@ -98,9 +187,183 @@ public class MultiUserTestRunner extends Suite {
         }
     }
 
+    /**
+     * Returns the combination runners. The runners are created when they are first requested.
+     * @return Combination runners
+     */
     @Override
     protected List<Runner> getChildren() {
-        return runners;
+        List<Runner> result = runners;
+        if (result == null) {
+            synchronized (this) {
+                result = runners;
+                if (result == null) {
+                    result = Collections.unmodifiableList(createRunners());
+                    runners = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Removes the combinations that don't match the filter. If the combination runners haven't been
+     * created yet, the combinations are matched using descriptions built from the test methods of the
+     * test class so only the runners of the matching combinations are created later. The filter is then
+     * applied to the created runners.
+     * @param filter Filter to apply
+     * @throws NoTestsRemainException If no combination matches the filter
+     */
+    @Override
+    public void filter(Filter filter) throws NoTestsRemainException {
+        synchronized (this) {
+            if (runners == null) {
+                List<UserCombination> matchingCombinations = new ArrayList<>();
+                for (UserCombination combination : combinations) {
+                    if (filter.shouldRun(describeCombination(combination))) {
+                        matchingCombinations.add(combination);
+                    }
+                }
+                combinations = matchingCombinations;
+                pendingFilters.add(filter);
+                if (combinations.isEmpty()) {
+                    throw new NoTestsRemainException();
+                }
+                return;
+            }
+        }
+        super.filter(filter);
+    }
+
+    private List<Runner> createRunners() {
+        List<Runner> createdRunners = new ArrayList<>(combinations.size());
+        for (UserCombination combination : combinations) {
+            Runner runner = createRunner(combination);
+            try {
+                for (Filter filter : pendingFilters) {
+                    filter.apply(runner);
+                }
+                createdRunners.add(runner);
+            } catch (NoTestsRemainException e) {
+                // All tests of the combination were filtered out
+            }
+        }
+        return createdRunners;
+    }
+
+    private Runner createRunner(UserCombination combination) {
+        try {
+            return runnerFactory.createRunner(combination);
+        } catch (InvocationTargetException e) {
+            return new ErrorReportingRunner(getTestClass().getJavaClass(), e.getCause());
+        } catch (Exception e) {
+            return new ErrorReportingRunner(getTestClass().getJavaClass(), e);
+        }
+    }
+
+    private Description describeCombination(UserCombination combination) {
+        Class<?> testClass = getTestClass().getJavaClass();
+        Description description = Description.createSuiteDescription(combination.toString(), getRunnerAnnotations());
+        for (FrameworkMethod method : getTestClass().getAnnotatedMethods(Test.class)) {
+            description.addChild(Description.createTestDescription(testClass, method.getName(), method.getAnnotations()));
+        }
+        return description;
+    }
+
+    @Override
+    public void run(RunNotifier notifier) {
+        Class<?> testClass = getTestClass().getJavaClass();
+        TestClassModel.of(testClass).publishCombinations(getRunCombinations());
+        combinationSample.ifPresent(sample -> LOGGER.info(describeSample(testClass, sample)));
+        logSkippedCombinations(testClass);
+        if (historyRecorder != null) {
+            notifier.addListener(historyRecorder);
+        }
+        try {
+            super.run(notifier);
+        } finally {
+            resetProducerPhases(testClass, notifier);
+            if (historyRecorder != null) {
+                notifier.removeListener(historyRecorder);
+                historyRecorder.save();
+            }
+        }
+    }
+
+    private void logSkippedCombinations(Class<?> testClass) {
+        if (skippedCombinationCount == 1) {
+            LOGGER.info(testClass.getName() + ": 1 equivalent combination skipped");
+        } else if (skippedCombinationCount > 1) {
+            LOGGER.info(testClass.getName() + ": " + skippedCombinationCount + " equivalent combinations skipped");
+        }
+    }
+
+    private void resetProducerPhases(Class<?> testClass, RunNotifier notifier) {
+        try {
+            ProducerPhase.resetAll(testClass);
+        } catch (Exception e) {
+            new EachTestNotifier(notifier, getDescription()).addFailure(e);
+        }
+    }
+
+    private List<UserCombination> getRunCombinations() {
+        Map<Description, UserCombination> combinationsByDescription = new HashMap<>();
+        for (Runner runner : getChildren()) {
+            UserCombination combination = runnerCombinations.get(runner);
+            if (combination != null) {
+                combinationsByDescription.put(describeChild(runner), combination);
+            }
+        }
+
+        // Filters and sorters applied after the runners were created are only visible through the description
+        List<UserCombination> runCombinations = new ArrayList<>();
+        for (Description child : getDescription().getChildren()) {
+            UserCombination combination = combinationsByDescription.get(child);
+            if (combination != null) {
+                runCombinations.add(combination);
+            }
+        }
+        return runCombinations;
+    }
+
+    @Override
+    protected void runChild(Runner runner, RunNotifier notifier) {
+        UserCombination combination = runnerCombinations.get(runner);
+        if (historyRecorder == null || combination == null) {
+            super.runChild(runner, notifier);
+        } else {
+            historyRecorder.runCombination(combination, () -> super.runChild(runner, notifier));
+        }
+    }
+
+    /**
+     * @return Sample of the combinations run. Empty if all combinations are run.
+     * @since 0.7
+     */
+    public Optional<CombinationSample> getCombinationSample() {
+        return combinationSample;
+    }
+
+    private String describeSample(Class<?> testClass, CombinationSample sample) {
+        return String.format(
+                "%s: running sample of %d combinations: %s. Rerun the sample with -D%s=%d -D%s=%d",
+                testClass.getName(),
+                sampledCombinationCount,
+                sample,
+                CombinationSample.SEED_PROPERTY,
+                sample.getSeed(),
+                CombinationSample.ROUND_PROPERTY,
+                sample.getRound()
+        );
+    }
+
+    /**
+     * @return Number of producer-consumer combinations that were not run because
+     * they are equivalent to another combination of the test class
+     * @since 0.7
+     */
+    public int getSkippedCombinationCount() {
+        return skippedCombinationCount;
     }
 
 }
@@ -0,0 +1,101 @@
+package fi.vincit.multiusertest.runner.junit;
+
+import org.junit.runners.model.RunnerScheduler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>
+ * Schedules the producer-consumer combination runners of a {@link MultiUserTestRunner}
+ * on a bounded thread pool. The pool is created when the first combination is scheduled
+ * and shut down after all scheduled combinations have finished.
+ * </p>
+ * <p>
+ * Combination runners report to the same {@link org.junit.runner.notification.RunNotifier}.
+ * JUnit wraps every listener that isn't marked thread safe in a synchronized listener so each
+ * event is delivered atomically and the results are the same as in a sequential run.
+ * </p>
+ * @since 0.7
+ */
+public class ParallelRunnerScheduler implements RunnerScheduler {
+
+    private final int parallelism;
+    private final List<Future<?>> scheduledRunners = new ArrayList<>();
+    private ExecutorService executor;
+
+    /**
+     * @param parallelism Maximum number of combinations to run at the same time
+     */
+    public ParallelRunnerScheduler(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1 but was " + parallelism);
+        }
+        this.parallelism = parallelism;
+    }
+
+    @Override
+    public void schedule(Runnable childStatement) {
+        if (executor == null) {
+            executor = Executors.newFixedThreadPool(parallelism, new CombinationThreadFactory());
+        }
+        scheduledRunners.add(executor.submit(childStatement));
+    }
+
+    @Override
+    public void finished() {
+        try {
+            for (Future<?> scheduledRunner : scheduledRunners) {
+                waitFor(scheduledRunner);
+            }
+        } finally {
+            scheduledRunners.clear();
+            if (executor != null) {
+                executor.shutdownNow();
+                executor = null;
+            }
+        }
+    }
+
+    private static void waitFor(Future<?> scheduledRunner) {
+        try {
+            scheduledRunner.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for combination runners to finish", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            } else {
+                throw new IllegalStateException("Combination runner failed", cause);
+            }
+        }
+    }
+
+    private static class CombinationThreadFactory implements ThreadFactory {
+
+        private static final AtomicInteger POOL_NUMBER = new AtomicInteger(1);
+
+        private final int poolNumber = POOL_NUMBER.getAndIncrement();
+        private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(
+                    runnable,
+                    "mutr-combination-" + poolNumber + "-" + threadNumber.getAndIncrement()
+            );
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
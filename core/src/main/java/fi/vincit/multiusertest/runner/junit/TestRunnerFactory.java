@@ -1,15 +1,31 @@
 package fi.vincit.multiusertest.runner.junit;
 
-import fi.vincit.multiusertest.annotation.RunWithUsers;
+import fi.vincit.multiusertest.util.CombinationHistory;
+import fi.vincit.multiusertest.util.CombinationOrder;
+import fi.vincit.multiusertest.util.CombinationSample;
+import fi.vincit.multiusertest.util.CombinationSelection;
+import fi.vincit.multiusertest.util.ExecutionMatrix;
+import fi.vincit.multiusertest.util.Shard;
+import fi.vincit.multiusertest.util.TestClassModel;
+import fi.vincit.multiusertest.util.TestConfiguration;
+import fi.vincit.multiusertest.util.UserCombination;
 import fi.vincit.multiusertest.util.UserIdentifier;
+import org.junit.runner.Description;
 import org.junit.runner.Runner;
+import org.junit.runner.manipulation.Sortable;
+import org.junit.runner.manipulation.Sorter;
 import org.junit.runners.ParentRunner;
 import org.junit.runners.model.TestClass;
 
 import java.lang.reflect.Constructor;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 
 /**
  * Creates instances of JUnit test runners
@@ -17,20 +33,107 @@ import java.util.List;
 public class TestRunnerFactory {
 
     private final TestClass testClass;
-    private final Constructor runnerConstructor;
+    private final Constructor<?> runnerConstructor;
+    private final Shard shard;
+    private final CombinationHistory history;
+    private final Map<Runner, UserCombination> runnerCombinations = new IdentityHashMap<>();
+    private int skippedCombinationCount;
+    private CombinationSample sample;
+    private int sampledCombinationCount;
 
     /**
-     *
+     * Creates a factory that creates the runners of the shard configured with
+     * system properties, see {@link Shard#fromSystemProperties()}.
      * @param testClass Test class
      * @param runnerConstructor Test class constructor
      */
-    public TestRunnerFactory(TestClass testClass, Constructor runnerConstructor) {
+    public TestRunnerFactory(TestClass testClass, Constructor<?> runnerConstructor) {
+        this(testClass, runnerConstructor, Shard.fromSystemProperties());
+    }
+
+    /**
+     * @param testClass Test class
+     * @param runnerConstructor Test class constructor
+     * @param shard Shard whose combinations are created
+     * @since 0.7
+     */
+    public TestRunnerFactory(TestClass testClass, Constructor<?> runnerConstructor, Shard shard) {
+        this(testClass, runnerConstructor, shard, CombinationHistory.getDefault());
+    }
+
+    /**
+     * @param testClass Test class
+     * @param runnerConstructor Test class constructor
+     * @param shard Shard whose combinations are created
+     * @param history History used to order the combinations
+     * @since 0.7
+     */
+    public TestRunnerFactory(TestClass testClass, Constructor<?> runnerConstructor, Shard shard, CombinationHistory history) {
         this.testClass = testClass;
         this.runnerConstructor = runnerConstructor;
+        this.shard = shard;
+        this.history = history;
     }
 
     /**
-     * Creates runners for each producer consumer combination.
+     * Resolves the distinct producer consumer combinations whose runners are created. The combination
+     * rows of the test class' {@link ExecutionMatrix} are compiled first. Combinations equal or equivalent
+     * to an earlier combination are skipped, see {@link UserCombination#combine(Collection, Collection)}
+     * and {@link ExecutionMatrix#distinct(List)}. Only the combinations selected with
+     * {@link CombinationSelection}, or if no combinations are selected the combinations of the test
+     * class' {@link CombinationSample}, and in the factory's {@link Shard} are returned. The combinations
+     * are returned in the test class' {@link CombinationOrder}.
+     * @param producerIdentifiers Producer identifiers
+     * @param consumerIdentifiers Consumer identifiers
+     * @return Combinations in the order they are run
+     * @since 0.7
+     */
+    public List<UserCombination> resolveCombinations(Collection<UserIdentifier> producerIdentifiers, Collection<UserIdentifier> consumerIdentifiers) {
+        ExecutionMatrix executionMatrix = TestClassModel.of(testClass.getJavaClass()).getExecutionMatrix();
+        List<UserCombination> combinations =
+                executionMatrix.distinct(UserCombination.combine(producerIdentifiers, consumerIdentifiers));
+        skippedCombinationCount =
+                producerIdentifiers.size() * Math.max(1, consumerIdentifiers.size()) - combinations.size();
+        TestConfiguration configuration = TestConfiguration.fromClass(testClass.getJavaClass());
+        CombinationSelection selection = CombinationSelection.fromSystemProperties();
+        List<UserCombination> selectedCombinations;
+        if (selection.isAll()) {
+            sample = CombinationSample.resolve(configuration);
+            sampledCombinationCount = combinations.size();
+            selectedCombinations = sample.select(testClass.getJavaClass(), combinations);
+        } else {
+            sample = null;
+            selectedCombinations = selection.filter(combinations);
+        }
+        return CombinationOrder.resolve(configuration).order(
+                testClass.getJavaClass(),
+                shard.filter(testClass.getJavaClass(), selectedCombinations),
+                history
+        );
+    }
+
+    /**
+     * Creates the runner of the combination. The test methods of the runner are sorted if
+     * the test class' {@link CombinationOrder} defines a method order.
+     * @param combination Combination
+     * @return Runner of the combination
+     * @throws Exception If the runner can't be created
+     * @since 0.7
+     */
+    public Runner createRunner(UserCombination combination) throws Exception {
+        ParentRunner<?> parentRunner = (ParentRunner<?>) runnerConstructor.newInstance(
+                testClass.getJavaClass(),
+                combination.getProducer(),
+                combination.getConsumer()
+        );
+        runnerCombinations.put(parentRunner, combination);
+        orderMethods(parentRunner, combination);
+        return parentRunner;
+    }
+
+    /**
+     * Creates runners for each distinct producer consumer combination returned by
+     * {@link #resolveCombinations(Collection, Collection)}.
      * @param producerIdentifiers Producer identifiers
      * @param consumerIdentifiers Consumer identifiers
      * @return All required combinations for given identifiers
@@ -38,63 +141,54 @@ public class TestRunnerFactory {
      */
     public List<Runner> createRunnersForRoles(Collection<UserIdentifier> producerIdentifiers, Collection<UserIdentifier> consumerIdentifiers) throws Exception {
         List<Runner> runners = new ArrayList<>();
-        if (consumerIdentifiers.isEmpty()) {
-            consumerIdentifiers.add(UserIdentifier.getWithProducerRole());
-        }
-        validateProducers(producerIdentifiers);
-        validateConsumers(producerIdentifiers, consumerIdentifiers);
-
-        for (UserIdentifier producerIdentifier : producerIdentifiers) {
-            for (UserIdentifier consumerIdentifier : consumerIdentifiers) {
-                Object parentRunner;
-                if (consumerIdentifier.getIdentifier() != null
-                        && consumerIdentifier.getIdentifier().equals(RunWithUsers.WITH_PRODUCER_ROLE)) {
-                    parentRunner = runnerConstructor.newInstance(
-                            testClass.getJavaClass(),
-                            producerIdentifier,
-                            producerIdentifier
-                    );
-                } else {
-                    parentRunner = runnerConstructor.newInstance(
-                            testClass.getJavaClass(),
-                            producerIdentifier,
-                            consumerIdentifier
-                    );
-                }
-
-                runners.add((ParentRunner) parentRunner);
-
-            }
+        for (UserCombination combination : resolveCombinations(producerIdentifiers, consumerIdentifiers)) {
+            runners.add(createRunner(combination));
         }
         return runners;
     }
 
-    void validateConsumers(Collection<UserIdentifier> producerIdentifiers, Collection<UserIdentifier> consumerIdentifiers) {
-        boolean containsExistingUserDefinition = false;
-        for (UserIdentifier identifier : producerIdentifiers) {
-            if (identifier.getType() == UserIdentifier.Type.USER) {
-                containsExistingUserDefinition = true;
-            }
-        }
+    private void orderMethods(Sortable runner, UserCombination combination) {
+        CombinationOrder order = CombinationOrder.resolve(TestConfiguration.fromClass(testClass.getJavaClass()));
+        order.getMethodOrder(testClass.getJavaClass(), combination, history).ifPresent(methodOrder ->
+                runner.sort(new Sorter(Comparator.comparing(Description::getMethodName, Comparator.nullsLast(methodOrder))))
+        );
+    }
 
-        if (containsExistingUserDefinition
-                && consumerIdentifiers.contains(UserIdentifier.getWithProducerRole())) {
-            throw new IllegalArgumentException("User definitions can't contain WITH_PRODUCER_ROLE when producers have a 'user' definition");
-        }
+    /**
+     * @return Number of equivalent combinations skipped by the last
+     * {@link #resolveCombinations(Collection, Collection)} call
+     * @since 0.7
+     */
+    public int getSkippedCombinationCount() {
+        return skippedCombinationCount;
     }
 
-    void validateProducers(Collection<UserIdentifier> producerIdentifiers) {
-        if (producerIdentifiers.isEmpty()) {
-            throw new IllegalArgumentException("Producer must be specified");
+    /**
+     * @return Sample used by the last {@link #resolveCombinations(Collection, Collection)} call.
+     * Empty if all combinations were run or the combinations were selected with {@link CombinationSelection}.
+     * @since 0.7
+     */
+    public Optional<CombinationSample> getCombinationSample() {
+        if (sample == null || sample.isAll() || sample.getSize() >= sampledCombinationCount) {
+            return Optional.empty();
         }
+        return Optional.of(sample);
+    }
 
-        if (producerIdentifiers.contains(UserIdentifier.getProducer())) {
-            throw new IllegalArgumentException("Producer can't use PRODUCER role");
-        }
+    /**
+     * @return Number of distinct combinations the last sample was selected from
+     * @since 0.7
+     */
+    public int getSampledCombinationCount() {
+        return sampledCombinationCount;
+    }
 
-        if (producerIdentifiers.contains(UserIdentifier.getWithProducerRole())) {
-            throw new IllegalArgumentException("Producer can't use WITH_PRODUCER_ROLE role");
-        }
+    /**
+     * @return Combinations of the runners created by the factory
+     * @since 0.7
+     */
+    public Map<Runner, UserCombination> getRunnerCombinations() {
+        return Collections.unmodifiableMap(runnerCombinations);
     }
 
 }
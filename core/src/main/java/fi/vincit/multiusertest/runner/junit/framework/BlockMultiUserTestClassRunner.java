@@ -1,12 +1,14 @@
 package fi.vincit.multiusertest.runner.junit.framework;
 
 import fi.vincit.multiusertest.util.RunnerDelegate;
+import fi.vincit.multiusertest.util.TestClassModel;
 import fi.vincit.multiusertest.util.UserIdentifier;
 import org.junit.runner.notification.RunNotifier;
 import org.junit.runners.BlockJUnit4ClassRunner;
 import org.junit.runners.model.FrameworkMethod;
 import org.junit.runners.model.InitializationError;
 import org.junit.runners.model.Statement;
+import org.junit.runners.model.TestClass;
 
 import java.util.List;
 
@@ -19,7 +21,18 @@ public class BlockMultiUserTestClassRunner extends BlockJUnit4ClassRunner {
 
     public BlockMultiUserTestClassRunner(Class<?> clazz, UserIdentifier producerIdentifier, UserIdentifier consumerIdentifier) throws InitializationError {
         super(clazz);
-        this.runnerDelegate = new RunnerDelegate(producerIdentifier, consumerIdentifier);
+        this.runnerDelegate = new RunnerDelegate(getTestClass(), producerIdentifier, consumerIdentifier);
+    }
+
+    @Override
+    protected TestClass createTestClass(Class<?> testClass) {
+        return TestClassModel.of(testClass).getTestClass();
+    }
+
+    @Override
+    protected void collectInitializationErrors(List<Throwable> errors) {
+        errors.addAll(TestClassModel.of(getTestClass().getJavaClass())
+                .getInitializationErrors(getClass(), super::collectInitializationErrors));
     }
 
     @Override
@@ -58,8 +71,23 @@ public class BlockMultiUserTestClassRunner extends BlockJUnit4ClassRunner {
         );
     }
 
+    @Override
+    protected Statement withAfters(FrameworkMethod method, Object target, Statement statement) {
+        return runnerDelegate.withAfters(target, super.withAfters(method, target, statement));
+    }
+
     @Override
     protected Statement classBlock(RunNotifier notifier) {
         return childrenInvoker(notifier);
     }
+
+    @Override
+    protected Statement childrenInvoker(RunNotifier notifier) {
+        return runnerDelegate.childrenInvoker(
+                getTestClass().getJavaClass(),
+                getChildren(),
+                this::isIgnored,
+                super.childrenInvoker(notifier)
+        );
+    }
 }
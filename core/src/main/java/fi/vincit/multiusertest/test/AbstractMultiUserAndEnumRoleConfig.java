@@ -0,0 +1,68 @@
+package fi.vincit.multiusertest.test;
+
+import fi.vincit.multiusertest.util.UserIdentifier;
+
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * <p>
+ * Configuration base class for multi user and role tests where the roles are
+ * an enum. Works like {@link AbstractMultiUserAndRoleConfig} but the roles of a multi-role
+ * identifier are converted only once per configuration class. The converted roles are
+ * stored as an {@link EnumSet} which uses a single bit per role, and each call to
+ * {@link #stringToRole(String)} returns a copy of the stored set.
+ * </p>
+ * <p>
+ * Since the conversions are shared by all instances of the configuration class,
+ * {@link #identifierPartToRole(String)} must always return the same role for the same
+ * identifier part.
+ * </p>
+ * @since 0.7
+ * @param <USER> User type
+ * @param <ROLE> Role enum type
+ */
+public abstract class AbstractMultiUserAndEnumRoleConfig<USER, ROLE extends Enum<ROLE>>
+        extends AbstractMultiUserAndRoleConfig<USER, ROLE> {
+
+    private static final ClassValue<ConcurrentMap<String, EnumSet<?>>> ROLE_SETS =
+            new ClassValue<ConcurrentMap<String, EnumSet<?>>>() {
+                @Override
+                protected ConcurrentMap<String, EnumSet<?>> computeValue(Class<?> type) {
+                    return new ConcurrentHashMap<>();
+                }
+            };
+
+    private final Class<ROLE> roleClass;
+
+    /**
+     * @param roleClass Role enum class
+     */
+    public AbstractMultiUserAndEnumRoleConfig(Class<ROLE> roleClass) {
+        this.roleClass = Objects.requireNonNull(roleClass, "Role class must not be null");
+    }
+
+    @Override
+    public Collection<ROLE> stringToRole(String role) {
+        if (role == null) {
+            return EnumSet.noneOf(roleClass);
+        }
+        return getRoleSet(role).clone();
+    }
+
+    @SuppressWarnings("unchecked")
+    private EnumSet<ROLE> getRoleSet(String role) {
+        ConcurrentMap<String, EnumSet<?>> roleSets = ROLE_SETS.get(getClass());
+        EnumSet<ROLE> roleSet = (EnumSet<ROLE>) roleSets.get(role);
+        if (roleSet == null) {
+            roleSet = EnumSet.noneOf(roleClass);
+            roleSet.addAll(UserIdentifier.mapMultiRoleIdentifier(role, this::identifierPartToRole));
+            roleSets.putIfAbsent(role, roleSet);
+        }
+        return roleSet;
+    }
+
+}
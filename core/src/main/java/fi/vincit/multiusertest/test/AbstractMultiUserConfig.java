@@ -1,12 +1,13 @@
 package fi.vincit.multiusertest.test;
 
-import fi.vincit.multiusertest.annotation.MultiUserTestConfig;
-import fi.vincit.multiusertest.annotation.RunWithUsers;
 import fi.vincit.multiusertest.rule.AuthorizationRule;
 import fi.vincit.multiusertest.util.*;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
 import java.util.Random;
+import java.util.function.Function;
 
 /**
  * Default configuration base class for multi user tests. Authorization rule is automatically set
@@ -22,6 +23,15 @@ public abstract class AbstractMultiUserConfig<USER, ROLE> implements MultiUserCo
 
     private AuthorizationRule authorizationRule;
 
+    private Class<?> testClass;
+
+    private UserCombination userCombination;
+
+    private IdentifierResolver<USER, ROLE> identifierResolver;
+
+    private boolean loggedIn;
+    private USER loggedInUser;
+
     /**
      * Default constructor
      */
@@ -50,9 +60,33 @@ public abstract class AbstractMultiUserConfig<USER, ROLE> implements MultiUserCo
         this.authorizationRule.setExpectedException(getDefaultException(testClassInstance.getClass()));
     }
 
+    /**
+     * Sets the test class run with the configuration. Called by the runner before
+     * {@link #initialize()}. Used to resolve the class level configuration such as
+     * the user pool scope.
+     * @param testClass Test class
+     * @since 0.7
+     */
+    public void setTestClass(Class<?> testClass) {
+        this.testClass = testClass;
+    }
+
     @Override
     public void setUsers(UserIdentifier producerIdentifier, UserIdentifier consumerIdentifier) {
         userResolver = new UserResolver<>(this, this, producerIdentifier, consumerIdentifier);
+        userCombination = new UserCombination(producerIdentifier, consumerIdentifier);
+        identifierResolver = null;
+    }
+
+    /**
+     * Uses the given user as the producer of the current test instead of creating
+     * a new producer. Called by the runner before {@link #initialize()} when the
+     * producer has been created by an earlier test with the same producer definition.
+     * @param producer Producer user
+     * @since 0.7
+     */
+    public void setProducer(USER producer) {
+        userResolver.setProducer(producer);
     }
 
     @Override
@@ -68,13 +102,31 @@ public abstract class AbstractMultiUserConfig<USER, ROLE> implements MultiUserCo
     @Override
     public void logInAs(LoginRole role) {
         USER userToLoginWith = resolveUserToLoginWith(role);
-        if (userToLoginWith != null) {
-            loginWithUser(userToLoginWith);
-        } else {
-            loginAnonymous();
+        if (!isLoggedInAs(userToLoginWith)) {
+            if (userToLoginWith != null) {
+                loginWithUser(userToLoginWith);
+            } else {
+                loginAnonymous();
+            }
+            loggedIn = true;
+            loggedInUser = userToLoginWith;
         }
 
-        getAuthorizationRule().setRole(new IdentifierResolver<>(userResolver).getIdentifierFor(role));
+        getAuthorizationRule().setRole(getIdentifierResolver().getIdentifierFor(role));
+    }
+
+    private boolean isLoggedInAs(USER user) {
+        return loggedIn
+                && loggedInUser == user
+                && testClass != null
+                && TestConfiguration.fromClass(testClass).isLoginElision();
+    }
+
+    private IdentifierResolver<USER, ROLE> getIdentifierResolver() {
+        if (identifierResolver == null) {
+            identifierResolver = new IdentifierResolver<>(userResolver);
+        }
+        return identifierResolver;
     }
 
     private USER resolveUserToLoginWith(LoginRole loginRole) {
@@ -87,9 +139,49 @@ public abstract class AbstractMultiUserConfig<USER, ROLE> implements MultiUserCo
 
     @Override
     public void loginAnonymous() {
+        loggedIn = false;
         loginWithUser(null);
     }
 
+    /**
+     * Returns the authentication object of the given user. If
+     * {@link fi.vincit.multiusertest.annotation.MultiUserTestConfig#authenticationCacheSize()}
+     * is set the authentication is built only once per user key, see {@link #getAuthenticationKey(Object)},
+     * and shared by all tests using the same configuration class. Can be used in
+     * {@link #loginWithUser(Object)} to avoid building e.g. the authentication token and its
+     * authorities for every login. The cache only helps when the same users log in again in later
+     * tests, i.e. with existing users (<i>user:</i> definitions) or pooled users. New users are
+     * created for each test so their authentications are never reused.
+     * @param user User to authenticate, must not be null
+     * @param authenticationFactory Builds the authentication of the user
+     * @param <AUTH> Authentication type
+     * @return Authentication of the user
+     * @since 0.7
+     */
+    public <AUTH> AUTH getAuthentication(USER user, Function<USER, AUTH> authenticationFactory) {
+        Optional<AuthenticationCache<Object, AUTH>> authenticationCache = getAuthenticationCache();
+        if (authenticationCache.isPresent()) {
+            return authenticationCache.get().get(getAuthenticationKey(user), key -> authenticationFactory.apply(user));
+        } else {
+            return authenticationFactory.apply(user);
+        }
+    }
+
+    /**
+     * Returns the key the authentication of the user is cached with. By default the user itself,
+     * so the user type has to implement <code>equals</code> and <code>hashCode</code> or the same
+     * user instance has to be reused, e.g. with
+     * {@link fi.vincit.multiusertest.annotation.MultiUserTestConfig#existingUserCacheSize()}.
+     * Override to cache the authentications e.g. by the username and roles of the user when
+     * the users are loaded again for each test.
+     * @param user User, not null
+     * @return Key of the user's authentication, must not be null
+     * @since 0.7
+     */
+    protected Object getAuthenticationKey(USER user) {
+        return user;
+    }
+
     @Override
     public String getRandomUsername() {
         return "testuser-" + random.nextInt(Integer.MAX_VALUE);
@@ -106,18 +198,127 @@ public abstract class AbstractMultiUserConfig<USER, ROLE> implements MultiUserCo
 
     @Override
     public Class<? extends Throwable> getDefaultException(Class<?> cls) {
-        TestConfiguration configuration =
-                TestConfiguration.fromRunWithUsers(
-                        Optional.ofNullable(cls.getAnnotation(RunWithUsers.class)),
-                        Optional.ofNullable(cls.getAnnotation(MultiUserTestConfig.class))
-                );
-        return configuration.getDefaultException()
+        return TestConfiguration.fromClass(cls).getDefaultException()
                 .orElse(Defaults.getDefaultException());
     }
 
     @Override
     public void initialize() {
-        userResolver.resolve();
+        loggedIn = false;
+        loggedInUser = null;
+        getExistingUserCache().ifPresent(userResolver::setExistingUserCache);
+        if (testClass != null) {
+            userResolver.setLazyConsumer(TestConfiguration.fromClass(testClass).isLazyConsumer());
+        }
+        Optional<UserPool<USER, ROLE>> userPool = getUserPool();
+        if (userPool.isPresent()) {
+            if (this instanceof BatchUserFactory) {
+                userPool.get().provision(testClass, (BatchUserFactory<USER, ROLE>) this, this::getNewUsersOfTestClass);
+            }
+            userResolver.resolve(userPool.get());
+        } else {
+            Optional<UserPrefetcher<USER, ROLE>> userPrefetcher = getUserPrefetcher();
+            if (userPrefetcher.isPresent()) {
+                userPrefetcher.get().prefetchNext(userCombination, this, this);
+                userResolver.setUserPrefetcher(userPrefetcher.get());
+            }
+            userResolver.resolve();
+        }
+    }
+
+    /**
+     * Releases the users leased from the user pool after the test.
+     * Does nothing if the user pool is not used.
+     * @since 0.7
+     */
+    public void releaseUsers() {
+        if (userResolver != null) {
+            userResolver.release();
+        }
+    }
+
+    /**
+     * Forgets the existing users of the current test so that they are searched
+     * again on next use and removes the cached authentications of the current users.
+     * Should be called if the test modifies an existing user or the roles of a user.
+     * @since 0.7
+     */
+    public void invalidateUsers() {
+        if (userResolver != null) {
+            Optional<AuthenticationCache<Object, Object>> authenticationCache = getAuthenticationCache();
+            if (authenticationCache.isPresent()) {
+                invalidateAuthentication(authenticationCache.get(), userResolver.resolverProducer());
+                if (!userResolver.isConsumerPending()) {
+                    invalidateAuthentication(authenticationCache.get(), userResolver.resolveConsumer());
+                }
+            }
+            userResolver.invalidate();
+            loggedIn = false;
+        }
+    }
+
+    private void invalidateAuthentication(AuthenticationCache<Object, ?> authenticationCache, USER user) {
+        if (user != null) {
+            authenticationCache.invalidate(getAuthenticationKey(user));
+        }
+    }
+
+    private List<NewUser<ROLE>> getNewUsersOfTestClass() {
+        TestConfiguration configuration = TestConfiguration.fromClass(testClass);
+        List<NewUser<ROLE>> newUsers = new ArrayList<>();
+        if (configuration.getProducerIdentifiers().isEmpty()) {
+            return newUsers;
+        }
+
+        List<UserCombination> combinations = UserCombination.combine(
+                configuration.getProducerIdentifiers(),
+                configuration.getConsumerIdentifiers()
+        );
+        for (UserCombination combination : combinations) {
+            newUsers.addAll(new UserResolver<>(this, this, combination.getProducer(), combination.getConsumer())
+                    .getNewUsers());
+        }
+        return newUsers;
+    }
+
+    private Optional<UserPool<USER, ROLE>> getUserPool() {
+        if (testClass == null) {
+            return Optional.empty();
+        }
+        return UserPool.forScope(
+                TestConfiguration.fromClass(testClass).getUserPoolScope(),
+                testClass,
+                getClass()
+        );
+    }
+
+    private Optional<UserPrefetcher<USER, ROLE>> getUserPrefetcher() {
+        if (testClass == null || userCombination == null) {
+            return Optional.empty();
+        }
+        return UserPrefetcher.forTestClass(testClass, getClass());
+    }
+
+    private <AUTH> Optional<AuthenticationCache<Object, AUTH>> getAuthenticationCache() {
+        if (testClass == null) {
+            return Optional.empty();
+        }
+        int cacheSize = TestConfiguration.fromClass(testClass).getAuthenticationCacheSize();
+        if (cacheSize == 0) {
+            return Optional.empty();
+        }
+        return Optional.of(AuthenticationCache.forConfigClass(getClass(), cacheSize));
+    }
+
+    private Optional<ExistingUserCache<USER>> getExistingUserCache() {
+        if (testClass == null) {
+            return Optional.empty();
+        }
+        int cacheSize = TestConfiguration.fromClass(testClass).getExistingUserCacheSize();
+        if (cacheSize == 0) {
+            return Optional.empty();
+        }
+        return Optional.of(ExistingUserCache.forConfigClass(getClass(), cacheSize));
     }
 
     protected RoleContainer<ROLE> getConsumerRoleContainer() {
@@ -0,0 +1,104 @@
+package fi.vincit.multiusertest.test;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * <p>
+ * Bounded cache of prebuilt authentication objects (e.g. Spring Security's
+ * <code>UsernamePasswordAuthenticationToken</code>) per user. The cache is shared per
+ * configuration class by all test classes in the JVM so the authentication of a reused
+ * user (pooled or existing user) is built only once. Users created for a single test never
+ * log in again so their authentications are not reused. When the cache is full the least
+ * recently used authentication is evicted.
+ * </p>
+ * <p>
+ * Users, or the keys of the users, are compared using their <code>equals</code> method. If a
+ * test changes the authorities of a user the user's authentication has to be invalidated.
+ * </p>
+ * @param <USER> User type in the system under test or the key type of the users
+ * @param <AUTH> Authentication type
+ * @since 0.7
+ */
+public class AuthenticationCache<USER, AUTH> {
+
+    private static final ClassValue<AuthenticationCache<?, ?>> CACHES = new ClassValue<AuthenticationCache<?, ?>>() {
+        @Override
+        protected AuthenticationCache<?, ?> computeValue(Class<?> configClass) {
+            // Grown to the requested size by forConfigClass
+            return new AuthenticationCache<>(1);
+        }
+    };
+
+    private final Map<USER, AUTH> authentications;
+    private int maxSize;
+
+    /**
+     * Returns the shared cache of the given configuration class. If the cache already
+     * exists and is smaller than the given size, the cache is grown to the given size.
+     * @param configClass Configuration class
+     * @param maxSize Maximum number of cached authentications
+     * @return Shared cache
+     */
+    @SuppressWarnings("unchecked")
+    public static <USER, AUTH> AuthenticationCache<USER, AUTH> forConfigClass(Class<?> configClass, int maxSize) {
+        AuthenticationCache<USER, AUTH> cache = (AuthenticationCache<USER, AUTH>) CACHES.get(configClass);
+        cache.ensureMaxSize(maxSize);
+        return cache;
+    }
+
+    public AuthenticationCache(int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Cache size must be at least 1 but was " + maxSize);
+        }
+        this.maxSize = maxSize;
+        this.authentications = new LinkedHashMap<USER, AUTH>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<USER, AUTH> eldest) {
+                return size() > AuthenticationCache.this.maxSize;
+            }
+        };
+    }
+
+    /**
+     * Returns the cached authentication of the user or builds and caches a new one.
+     * @param user User, must not be null
+     * @param authenticationFactory Builds the authentication if it isn't cached
+     * @return Authentication of the user
+     */
+    public AUTH get(USER user, Function<USER, AUTH> authenticationFactory) {
+        synchronized (this) {
+            AUTH authentication = authentications.get(user);
+            if (authentication != null) {
+                return authentication;
+            }
+        }
+
+        AUTH authentication = authenticationFactory.apply(user);
+        if (authentication != null) {
+            synchronized (this) {
+                authentications.put(user, authentication);
+            }
+        }
+        return authentication;
+    }
+
+    public synchronized void invalidate(USER user) {
+        authentications.remove(user);
+    }
+
+    public synchronized void invalidateAll() {
+        authentications.clear();
+    }
+
+    public synchronized int size() {
+        return authentications.size();
+    }
+
+    private synchronized void ensureMaxSize(int maxSize) {
+        if (maxSize > this.maxSize) {
+            this.maxSize = maxSize;
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package fi.vincit.multiusertest.test;
+
+import java.util.List;
+
+/**
+ * User factory that can create multiple users at once, for example using
+ * a single transaction or JDBC batch insert. When the configuration implements
+ * this interface the users of a test are created with one call. When the
+ * {@link UserPool} is used, the users of all producer-consumer combinations of
+ * the test class are created with one call before the first test.
+ * @param <USER> User type in the system under test
+ * @param <ROLE> Role type in the system under test
+ * @since 0.7
+ */
+public interface BatchUserFactory<USER, ROLE> extends UserFactory<USER, ROLE> {
+
+    /**
+     * Creates the given users to the system
+     * @param users Users to create
+     * @return Created users in the same order as the given users
+     */
+    List<USER> createUsers(List<NewUser<ROLE>> users);
+
+}
@@ -0,0 +1,125 @@
+package fi.vincit.multiusertest.test;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * <p>
+ * Bounded read-through cache for users defined with <code>user:</code> definitions.
+ * The cache is shared per configuration class by all test classes in the JVM, so
+ * an existing user is searched with {@link UserFactory#getUserByUsername(String)} only
+ * once instead of once per test. When the cache is full the least recently used
+ * user is evicted.
+ * </p>
+ * <p>
+ * The cached user instances are returned as is to every test. If a test modifies an
+ * existing user in a way that other tests must not see, the user has to be invalidated
+ * from the cache.
+ * </p>
+ * @param <USER> User type in the system under test
+ * @since 0.7
+ */
+public class ExistingUserCache<USER> {
+
+    private static final ClassValue<ExistingUserCache<?>> CACHES = new ClassValue<ExistingUserCache<?>>() {
+        @Override
+        protected ExistingUserCache<?> computeValue(Class<?> configClass) {
+            // Grown to the requested size by forConfigClass
+            return new ExistingUserCache<>(1);
+        }
+    };
+    private static final AtomicLong INVALIDATION_GENERATION = new AtomicLong();
+
+    private final Map<String, USER> users;
+    private int maxSize;
+    private long invalidationGeneration = INVALIDATION_GENERATION.get();
+
+    /**
+     * Returns the shared cache of the given configuration class. If the cache already
+     * exists and is smaller than the given size, the cache is grown to the given size.
+     * @param configClass Configuration class
+     * @param maxSize Maximum number of cached users
+     * @return Shared cache
+     */
+    @SuppressWarnings("unchecked")
+    public static <USER> ExistingUserCache<USER> forConfigClass(Class<?> configClass, int maxSize) {
+        ExistingUserCache<USER> cache = (ExistingUserCache<USER>) CACHES.get(configClass);
+        cache.ensureMaxSize(maxSize);
+        return cache;
+    }
+
+    /**
+     * Removes all users from all caches. Each cache is cleared when it is used next time.
+     */
+    public static void invalidateAllCaches() {
+        INVALIDATION_GENERATION.incrementAndGet();
+    }
+
+    public ExistingUserCache(int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Cache size must be at least 1 but was " + maxSize);
+        }
+        this.maxSize = maxSize;
+        this.users = new LinkedHashMap<String, USER>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, USER> eldest) {
+                return size() > ExistingUserCache.this.maxSize;
+            }
+        };
+    }
+
+    /**
+     * Returns the cached user or loads and caches the user with the given loader.
+     * Users that are not found (null) are not cached.
+     * @param username Username
+     * @param loader Loader used if the user isn't cached
+     * @return User or null if the user doesn't exist
+     */
+    public USER get(String username, Function<String, USER> loader) {
+        synchronized (this) {
+            clearIfInvalidated();
+            USER user = users.get(username);
+            if (user != null) {
+                return user;
+            }
+        }
+
+        // Loaded outside the lock so that slow lookups don't block other users
+        USER user = loader.apply(username);
+        if (user != null) {
+            synchronized (this) {
+                users.put(username, user);
+            }
+        }
+        return user;
+    }
+
+    public synchronized void invalidate(String username) {
+        users.remove(username);
+    }
+
+    public synchronized void invalidateAll() {
+        users.clear();
+    }
+
+    public synchronized int size() {
+        clearIfInvalidated();
+        return users.size();
+    }
+
+    private void clearIfInvalidated() {
+        long generation = INVALIDATION_GENERATION.get();
+        if (invalidationGeneration != generation) {
+            users.clear();
+            invalidationGeneration = generation;
+        }
+    }
+
+    private synchronized void ensureMaxSize(int maxSize) {
+        if (maxSize > this.maxSize) {
+            this.maxSize = maxSize;
+        }
+    }
+}
@@ -13,8 +13,10 @@ import fi.vincit.multiusertest.util.UserIdentifier;
  */
 public class IdentifierResolver<USER, ROLE> {
 
-    private RoleContainer<ROLE> consumer;
-    private RoleContainer<ROLE> producer;
+    private final RoleContainer<ROLE> consumer;
+    private final RoleContainer<ROLE> producer;
+
+    private UserIdentifier consumerIdentifier;
 
     public IdentifierResolver(UserResolver<USER, ROLE> userResolver) {
         this.consumer = userResolver.getConsumer();
@@ -25,7 +27,8 @@ public class IdentifierResolver<USER, ROLE> {
      * Returns the user identifier that should be used with the
      * given login role. E.g. when resolving identifier for consumer
      * it may return producer identifier if the current consumer
-     * identifier requires it.
+     * identifier requires it. The identifiers are resolved only once
+     * and the returned instances are shared.
      * @param loginRole Login role
      * @return User identifier
      */
@@ -33,7 +36,10 @@ public class IdentifierResolver<USER, ROLE> {
         if (loginRole == LoginRole.PRODUCER) {
             return getProducerIdentifier();
         } else {
-            return getConsumerIdentifier();
+            if (consumerIdentifier == null) {
+                consumerIdentifier = getConsumerIdentifier();
+            }
+            return consumerIdentifier;
         }
     }
 
@@ -41,7 +47,7 @@ public class IdentifierResolver<USER, ROLE> {
         RoleContainer.RoleMode roleMode = consumer.getMode();
 
         if (roleMode == RoleContainer.RoleMode.EXISTING_USER) {
-            return new UserIdentifier(UserIdentifier.Type.USER, consumer.getIdentifier());
+            return UserIdentifier.of(UserIdentifier.Type.USER, consumer.getIdentifier());
         } else if (roleMode == RoleContainer.RoleMode.PRODUCER_USER) {
             return UserIdentifier.getProducer();
         } else if (roleMode == RoleContainer.RoleMode.ANONYMOUS) {
@@ -50,9 +56,9 @@ public class IdentifierResolver<USER, ROLE> {
             if (producer.getMode() != RoleContainer.RoleMode.SET_USER_ROLE) {
                 throw new IllegalStateException("Cannot use NEW_WITH_PRODUCER_ROLE when producer doesn't have role");
             }
-            return new UserIdentifier(UserIdentifier.Type.ROLE, producer.getIdentifier());
+            return UserIdentifier.of(UserIdentifier.Type.ROLE, producer.getIdentifier());
         } else {
-            return new UserIdentifier(UserIdentifier.Type.ROLE, consumer.getIdentifier());
+            return UserIdentifier.of(UserIdentifier.Type.ROLE, consumer.getIdentifier());
         }
     }
 
@@ -0,0 +1,56 @@
+package fi.vincit.multiusertest.test;
+
+import fi.vincit.multiusertest.util.LoginRole;
+
+/**
+ * User to be created with {@link BatchUserFactory#createUsers(java.util.List)}.
+ * Contains the same information that is given to
+ * {@link UserFactory#createUser(String, String, String, Object, LoginRole)}.
+ * @param <ROLE> Role type in the system under test
+ * @since 0.7
+ */
+public class NewUser<ROLE> {
+
+    private final String username;
+    private final String firstName;
+    private final String lastName;
+    private final ROLE role;
+    private final String roleIdentifier;
+    private final LoginRole loginRole;
+
+    public NewUser(String username, String firstName, String lastName, ROLE role, String roleIdentifier, LoginRole loginRole) {
+        this.username = username;
+        this.firstName = firstName;
+        this.lastName = lastName;
+        this.role = role;
+        this.roleIdentifier = roleIdentifier;
+        this.loginRole = loginRole;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public String getFirstName() {
+        return firstName;
+    }
+
+    public String getLastName() {
+        return lastName;
+    }
+
+    public ROLE getRole() {
+        return role;
+    }
+
+    /**
+     * @return Role identifier the role was converted from
+     */
+    public String getRoleIdentifier() {
+        return roleIdentifier;
+    }
+
+    public LoginRole getLoginRole() {
+        return loginRole;
+    }
+}
@@ -0,0 +1,24 @@
+package fi.vincit.multiusertest.test;
+
+import fi.vincit.multiusertest.util.LoginRole;
+
+/**
+ * User factory for users that can be reused by multiple tests with the {@link UserPool}.
+ * Required when the user pool is enabled with
+ * {@link fi.vincit.multiusertest.annotation.MultiUserTestConfig#userPool()}.
+ * @param <USER> User type in the system under test
+ * @param <ROLE> Role type in the system under test
+ * @since 0.7
+ */
+public interface PooledUserFactory<USER, ROLE> extends UserFactory<USER, ROLE> {
+
+    /**
+     * Restores the state of a pooled user before the user is leased to another test.
+     * Called only for users that have already been used by a previous test.
+     * @param user User created with {@link #createUser(String, String, String, Object, LoginRole)}
+     * @param userRole Role the user was created with
+     * @param loginRole Login role the user was created for
+     */
+    void resetUser(USER user, ROLE userRole, LoginRole loginRole);
+
+}
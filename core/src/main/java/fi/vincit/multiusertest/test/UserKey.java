@@ -0,0 +1,38 @@
+package fi.vincit.multiusertest.test;
+
+import fi.vincit.multiusertest.util.LoginRole;
+
+import java.util.Objects;
+
+/**
+ * Identifies interchangeable created users: users created for the same
+ * role identifier and login role.
+ */
+final class UserKey {
+
+    private final String roleIdentifier;
+    private final LoginRole loginRole;
+
+    UserKey(String roleIdentifier, LoginRole loginRole) {
+        this.roleIdentifier = Objects.requireNonNull(roleIdentifier);
+        this.loginRole = Objects.requireNonNull(loginRole);
+    }
+
+    static UserKey of(NewUser<?> newUser) {
+        return new UserKey(newUser.getRoleIdentifier(), newUser.getLoginRole());
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        UserKey userKey = (UserKey) o;
+        return roleIdentifier.equals(userKey.roleIdentifier) && loginRole == userKey.loginRole;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * roleIdentifier.hashCode() + loginRole.hashCode();
+    }
+}
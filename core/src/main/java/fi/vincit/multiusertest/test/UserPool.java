@@ -0,0 +1,200 @@
+package fi.vincit.multiusertest.test;
+
+import fi.vincit.multiusertest.util.LoginRole;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+/**
+ * <p>
+ * Pool of created users. Instead of creating new users for every test the users
+ * are created once per login role and role identifier and leased to tests. When a test
+ * has finished its users are released back to the pool and reset with
+ * {@link PooledUserFactory#resetUser(Object, Object, LoginRole)} before they are
+ * leased again.
+ * </p>
+ * <p>
+ * A user is leased to only one test at a time so pooling can be used with parallel
+ * combinations. The pooled users have to outlive the test that created them, so tests
+ * rolling back a transaction after each test have to create the users outside of the
+ * test transaction.
+ * </p>
+ * <p>
+ * If the user factory is a {@link BatchUserFactory} the pool can be provisioned
+ * with the users of all producer-consumer combinations of a test class using a single
+ * {@link BatchUserFactory#createUsers(List)} call.
+ * </p>
+ * @param <USER> User type in the system under test
+ * @param <ROLE> Role type in the system under test
+ * @since 0.7
+ */
+public class UserPool<USER, ROLE> {
+
+    private static final ClassValue<UserPool<?, ?>> JVM_POOLS = new ClassValue<UserPool<?, ?>>() {
+        @Override
+        protected UserPool<?, ?> computeValue(Class<?> configClass) {
+            return new UserPool<>();
+        }
+    };
+
+    private static final ClassValue<ConcurrentMap<Class<?>, UserPool<?, ?>>> CLASS_POOLS =
+            new ClassValue<ConcurrentMap<Class<?>, UserPool<?, ?>>>() {
+                @Override
+                protected ConcurrentMap<Class<?>, UserPool<?, ?>> computeValue(Class<?> testClass) {
+                    return new ConcurrentHashMap<>();
+                }
+            };
+
+    private final ConcurrentMap<UserKey, Queue<PooledUser<USER>>> idleUsers = new ConcurrentHashMap<>();
+    private final Set<UserKey> createdKeys = Collections.newSetFromMap(new ConcurrentHashMap<>());
+    private final Set<Class<?>> provisionedClasses = Collections.newSetFromMap(new ConcurrentHashMap<>());
+
+    /**
+     * Returns the shared pool for the given scope.
+     * @param scope Pool scope
+     * @param testClass Test class
+     * @param configClass Configuration class creating the users
+     * @return Pool of the scope. Empty if scope is {@link UserPoolScope#NONE}.
+     */
+    @SuppressWarnings("unchecked")
+    public static <USER, ROLE> Optional<UserPool<USER, ROLE>> forScope(UserPoolScope scope, Class<?> testClass, Class<?> configClass) {
+        switch (scope) {
+            case NONE:
+                return Optional.empty();
+            case CLASS:
+                return Optional.of((UserPool<USER, ROLE>) CLASS_POOLS.get(testClass)
+                        .computeIfAbsent(configClass, c -> new UserPool<>()));
+            case JVM:
+                return Optional.of((UserPool<USER, ROLE>) JVM_POOLS.get(configClass));
+            default:
+                throw new IllegalArgumentException("Invalid user pool scope: " + scope);
+        }
+    }
+
+    /**
+     * Leases a user with the given role. Reuses an available user if there is one,
+     * otherwise creates a new user. Users that have been used by a previous test are
+     * reset before they are returned.
+     * @param userFactory Factory used to create and reset the users
+     * @param newUser User to create if there is no available user
+     * @return Lease of the user
+     */
+    public Lease lease(PooledUserFactory<USER, ROLE> userFactory, NewUser<ROLE> newUser) {
+        UserKey key = UserKey.of(newUser);
+        PooledUser<USER> pooledUser = getIdleUsers(key).poll();
+        USER user;
+        if (pooledUser == null) {
+            createdKeys.add(key);
+            user = userFactory.createUser(
+                    newUser.getUsername(),
+                    newUser.getFirstName(),
+                    newUser.getLastName(),
+                    newUser.getRole(),
+                    newUser.getLoginRole()
+            );
+        } else {
+            user = pooledUser.user;
+            if (pooledUser.used) {
+                userFactory.resetUser(user, newUser.getRole(), newUser.getLoginRole());
+            }
+        }
+        return new Lease(key, user);
+    }
+
+    /**
+     * Creates the users needed by the given test class with a single call unless
+     * the class has already been provisioned. Users are created only for the roles
+     * that don't have any users in the pool yet.
+     * @param testClass Test class
+     * @param userFactory Factory used to create the users
+     * @param newUsers Supplies the users the tests of the class need
+     */
+    public void provision(Class<?> testClass, BatchUserFactory<USER, ROLE> userFactory, Supplier<List<NewUser<ROLE>>> newUsers) {
+        if (provisionedClasses.contains(testClass)) {
+            return;
+        }
+        synchronized (this) {
+            if (!provisionedClasses.add(testClass)) {
+                return;
+            }
+
+            List<NewUser<ROLE>> usersToCreate = new ArrayList<>();
+            List<UserKey> keys = new ArrayList<>();
+            for (NewUser<ROLE> newUser : newUsers.get()) {
+                UserKey key = UserKey.of(newUser);
+                if (createdKeys.add(key)) {
+                    usersToCreate.add(newUser);
+                    keys.add(key);
+                }
+            }
+            if (usersToCreate.isEmpty()) {
+                return;
+            }
+
+            List<USER> users = userFactory.createUsers(usersToCreate);
+            if (users.size() != usersToCreate.size()) {
+                throw new IllegalStateException("Expected " + usersToCreate.size() + " users to be created but got " + users.size());
+            }
+            for (int i = 0; i < users.size(); ++i) {
+                getIdleUsers(keys.get(i)).offer(new PooledUser<>(users.get(i), false));
+            }
+        }
+    }
+
+    /**
+     * @param roleIdentifier Role identifier
+     * @param loginRole Login role
+     * @return Number of users currently available for the role
+     */
+    public int getIdleUserCount(String roleIdentifier, LoginRole loginRole) {
+        return getIdleUsers(new UserKey(roleIdentifier, loginRole)).size();
+    }
+
+    private Queue<PooledUser<USER>> getIdleUsers(UserKey key) {
+        return idleUsers.computeIfAbsent(key, k -> new ConcurrentLinkedQueue<>());
+    }
+
+    /**
+     * User leased to a test.
+     */
+    public class Lease {
+
+        private final UserKey key;
+        private final USER user;
+
+        private Lease(UserKey key, USER user) {
+            this.key = key;
+            this.user = user;
+        }
+
+        public USER getUser() {
+            return user;
+        }
+
+        /**
+         * Returns the user back to the pool
+         */
+        public void release() {
+            getIdleUsers(key).offer(new PooledUser<>(user, true));
+        }
+    }
+
+    private static final class PooledUser<USER> {
+
+        private final USER user;
+        private final boolean used;
+
+        PooledUser(USER user, boolean used) {
+            this.user = user;
+            this.used = used;
+        }
+    }
+}
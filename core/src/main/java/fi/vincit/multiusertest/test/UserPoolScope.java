@@ -0,0 +1,21 @@
+package fi.vincit.multiusertest.test;
+
+/**
+ * Defines how long users created by the {@link UserPool} are reused.
+ * @since 0.7
+ */
+public enum UserPoolScope {
+    /**
+     * Users are not pooled. New users are created for each test.
+     */
+    NONE,
+    /**
+     * Users are created once per test class and reused by the tests of the class.
+     */
+    CLASS,
+    /**
+     * Users are created once per configuration class and reused by all test classes
+     * using the same configuration class.
+     */
+    JVM
+}
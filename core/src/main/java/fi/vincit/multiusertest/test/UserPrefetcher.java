@@ -0,0 +1,245 @@
+package fi.vincit.multiusertest.test;
+
+import fi.vincit.multiusertest.util.LoginRole;
+import fi.vincit.multiusertest.util.TestClassModel;
+import fi.vincit.multiusertest.util.TestConfiguration;
+import fi.vincit.multiusertest.util.UserCombination;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+
+/**
+ * <p>
+ * Creates the users of the next producer-consumer combination in a background
+ * thread while the tests of the current combination are run. The combinations are
+ * planned using the combinations the runner of the test class publishes when the tests are
+ * run, see {@link TestClassModel#getCombinations()}. The prefetched users are handed over to the tests
+ * through a bounded queue per role identifier and login role, so at most the configured
+ * number of users per role are created ahead. If a test needs a user that hasn't been
+ * prefetched yet the user is created by the test as usual. If creating the users fails
+ * the error is thrown by the next {@link #take(NewUser)} that doesn't find a prefetched user,
+ * so it fails the test that would have used the users.
+ * </p>
+ * <p>
+ * The configuration class is used to create the users from the background thread,
+ * so its {@link UserFactory} implementation must be safe to use from another thread.
+ * The users have to be created outside of the test transaction. When the database is reset
+ * after each test, the prefetched users are discarded with {@link #clear(Class)}.
+ * </p>
+ * @param <USER> User type in the system under test
+ * @param <ROLE> Role type in the system under test
+ * @since 0.7
+ */
+public class UserPrefetcher<USER, ROLE> {
+
+    private static final ExecutorService PREFETCH_EXECUTOR = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "mutr-user-prefetch");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static final ClassValue<ConcurrentMap<Class<?>, UserPrefetcher<?, ?>>> PREFETCHERS =
+            new ClassValue<ConcurrentMap<Class<?>, UserPrefetcher<?, ?>>>() {
+                @Override
+                protected ConcurrentMap<Class<?>, UserPrefetcher<?, ?>> computeValue(Class<?> testClass) {
+                    return new ConcurrentHashMap<>();
+                }
+            };
+
+    private final Supplier<List<UserCombination>> plan;
+    private final ToIntFunction<UserCombination> testCounts;
+    private final int capacity;
+    private final Executor executor;
+
+    private final ConcurrentMap<UserKey, BlockingQueue<USER>> prefetchedUsers = new ConcurrentHashMap<>();
+    private final Set<Integer> scheduledCombinations = new HashSet<>();
+    private final AtomicReference<RuntimeException> failure = new AtomicReference<>();
+    private final AtomicLong generation = new AtomicLong();
+    private List<UserCombination> scheduledPlan;
+
+    /**
+     * Returns the shared prefetcher of the given test class and configuration class.
+     * @param testClass Test class
+     * @param configClass Configuration class creating the users
+     * @return Prefetcher. Empty if prefetching is not enabled for the test class.
+     */
+    @SuppressWarnings("unchecked")
+    public static <USER, ROLE> Optional<UserPrefetcher<USER, ROLE>> forTestClass(Class<?> testClass, Class<?> configClass) {
+        TestConfiguration configuration = TestConfiguration.fromClass(testClass);
+        if (configuration.getUserPrefetch() == 0) {
+            return Optional.empty();
+        }
+        return Optional.of((UserPrefetcher<USER, ROLE>) PREFETCHERS.get(testClass).computeIfAbsent(configClass, c ->
+                new UserPrefetcher<>(
+                        () -> TestClassModel.of(testClass).getCombinations(),
+                        combination -> TestClassModel.of(testClass).getExecutionMatrix().getRow(combination).getRunCount(),
+                        configuration.getUserPrefetch(),
+                        PREFETCH_EXECUTOR
+                )
+        ));
+    }
+
+    /**
+     * @param plan Combinations in the order they are run
+     * @param testCounts Number of tests run with a combination
+     * @param capacity Maximum number of users prefetched per role identifier and login role
+     * @param executor Executor creating the users
+     */
+    public UserPrefetcher(List<UserCombination> plan, ToIntFunction<UserCombination> testCounts, int capacity, Executor executor) {
+        this(copyOf(plan), testCounts, capacity, executor);
+    }
+
+    private UserPrefetcher(Supplier<List<UserCombination>> plan, ToIntFunction<UserCombination> testCounts, int capacity, Executor executor) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be at least 1 but was " + capacity);
+        }
+        this.plan = plan;
+        this.testCounts = testCounts;
+        this.capacity = capacity;
+        this.executor = executor;
+    }
+
+    /**
+     * Starts creating the users of the combination run after the given combination
+     * unless they have already been scheduled.
+     * @param current Combination currently run
+     * @param userFactory Factory used to create the users
+     * @param roleConverter Role converter
+     */
+    public void prefetchNext(UserCombination current, UserFactory<USER, ROLE> userFactory, RoleConverter<ROLE> roleConverter) {
+        List<UserCombination> plan = this.plan.get();
+        int next = plan.indexOf(current) + 1;
+        if (next == 0 || next >= plan.size() || !schedule(plan, next)) {
+            return;
+        }
+        UserCombination combination = plan.get(next);
+        int testCount = testCounts.applyAsInt(combination);
+        long scheduledGeneration = generation.get();
+        executor.execute(() -> prefetch(combination, testCount, userFactory, roleConverter, scheduledGeneration));
+    }
+
+    private synchronized boolean schedule(List<UserCombination> plan, int index) {
+        // A new plan is published when the test class is run again
+        if (plan != scheduledPlan) {
+            scheduledPlan = plan;
+            scheduledCombinations.clear();
+        }
+        return scheduledCombinations.add(index);
+    }
+
+    private static Supplier<List<UserCombination>> copyOf(List<UserCombination> plan) {
+        List<UserCombination> copy = Collections.unmodifiableList(new ArrayList<>(plan));
+        return () -> copy;
+    }
+
+    private void prefetch(UserCombination combination, int testCount, UserFactory<USER, ROLE> userFactory, RoleConverter<ROLE> roleConverter, long scheduledGeneration) {
+        try {
+            List<NewUser<ROLE>> usersToCreate = getUsersToCreate(combination, testCount, userFactory, roleConverter);
+            List<USER> users = UserResolver.createNewUsers(userFactory, usersToCreate);
+            synchronized (prefetchedUsers) {
+                // Users created before the database was reset don't exist anymore
+                if (generation.get() != scheduledGeneration) {
+                    return;
+                }
+                for (int i = 0; i < users.size(); ++i) {
+                    getPrefetchedUsers(UserKey.of(usersToCreate.get(i))).offer(users.get(i));
+                }
+            }
+        } catch (RuntimeException e) {
+            if (generation.get() == scheduledGeneration) {
+                failure.compareAndSet(null, e);
+            }
+        }
+    }
+
+    private List<NewUser<ROLE>> getUsersToCreate(UserCombination combination, int testCount, UserFactory<USER, ROLE> userFactory, RoleConverter<ROLE> roleConverter) {
+        // Only the prefetch thread adds users, so the free space can only grow while the users are created
+        Map<UserKey, Integer> freeSpace = new HashMap<>();
+        List<NewUser<ROLE>> usersToCreate = new ArrayList<>();
+        for (int i = 0; i < testCount; ++i) {
+            List<NewUser<ROLE>> newUsers =
+                    new UserResolver<>(userFactory, roleConverter, combination.getProducer(), combination.getConsumer())
+                            .getNewUsers();
+            for (NewUser<ROLE> newUser : newUsers) {
+                UserKey key = UserKey.of(newUser);
+                int free = freeSpace.computeIfAbsent(key, k -> getPrefetchedUsers(k).remainingCapacity());
+                if (free > 0) {
+                    freeSpace.put(key, free - 1);
+                    usersToCreate.add(newUser);
+                }
+            }
+        }
+        return usersToCreate;
+    }
+
+    /**
+     * Takes a prefetched user that can be used instead of creating the given user.
+     * @param newUser User to create
+     * @return Prefetched user or empty if there are no prefetched users for the role
+     * @throws IllegalStateException If there are no prefetched users for the role and prefetching
+     * users has failed since the previous failure was thrown
+     */
+    public Optional<USER> take(NewUser<ROLE> newUser) {
+        USER user = getPrefetchedUsers(UserKey.of(newUser)).poll();
+        if (user == null) {
+            RuntimeException prefetchFailure = failure.getAndSet(null);
+            if (prefetchFailure != null) {
+                throw new IllegalStateException("Prefetching users failed", prefetchFailure);
+            }
+        }
+        return Optional.ofNullable(user);
+    }
+
+    /**
+     * Discards the prefetched users and the users being prefetched, e.g. after the
+     * database has been reset. The discarded users are not prefetched again.
+     * @since 0.7
+     */
+    public void clear() {
+        synchronized (prefetchedUsers) {
+            generation.incrementAndGet();
+            prefetchedUsers.values().forEach(BlockingQueue::clear);
+            failure.set(null);
+        }
+    }
+
+    /**
+     * Discards the prefetched users of all the prefetchers of the given test class.
+     * @param testClass Test class
+     * @see #clear()
+     * @since 0.7
+     */
+    public static void clear(Class<?> testClass) {
+        PREFETCHERS.get(testClass).values().forEach(UserPrefetcher::clear);
+    }
+
+    /**
+     * @param roleIdentifier Role identifier
+     * @param loginRole Login role
+     * @return Number of prefetched users currently available for the role
+     */
+    public int getPrefetchedUserCount(String roleIdentifier, LoginRole loginRole) {
+        return getPrefetchedUsers(new UserKey(roleIdentifier, loginRole)).size();
+    }
+
+    private BlockingQueue<USER> getPrefetchedUsers(UserKey key) {
+        return prefetchedUsers.computeIfAbsent(key, k -> new ArrayBlockingQueue<>(capacity));
+    }
+}
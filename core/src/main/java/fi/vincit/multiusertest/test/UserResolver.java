@@ -4,6 +4,12 @@ import fi.vincit.multiusertest.util.LoginRole;
 import fi.vincit.multiusertest.util.RoleContainer;
 import fi.vincit.multiusertest.util.UserIdentifier;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+
 /**
  * Utility class for resolving user from user identifiers.
  * Creates new users to the system if necessary.
@@ -14,12 +20,23 @@ public class UserResolver<USER, ROLE> {
 
     private final RoleContainer<ROLE> producerRoleContainer;
     private USER producer;
+    private boolean producerPreset;
 
     private final RoleContainer<ROLE> consumerRoleContainer;
     private USER consumer;
 
     private final UserFactory<USER, ROLE> userFactory;
 
+    private UserPool<USER, ROLE> userPool;
+    private final List<UserPool<USER, ROLE>.Lease> leases = new ArrayList<>();
+
+    private ExistingUserCache<USER> existingUserCache;
+
+    private boolean lazyConsumer;
+    private NewUser<ROLE> pendingConsumer;
+
+    private UserPrefetcher<USER, ROLE> userPrefetcher;
+
     /**
      * Initializes the resolver. Calling {@link this#resolve()} will actually
      * resolve the users and creates them if necessary.
@@ -34,42 +51,65 @@ public class UserResolver<USER, ROLE> {
         this.consumerRoleContainer = RoleContainer.forConsumer(consumer, producerRoleContainer, roleConverter);
     }
 
-    private void initializeConsumer() {
+    private Optional<NewUser<ROLE>> getNewConsumer() {
         if (consumerRoleContainer.getMode() == RoleContainer.RoleMode.SET_USER_ROLE) {
-            consumer = userFactory.createUser(userFactory.getRandomUsername(), "Test", "Consumer", consumerRoleContainer.getRole(), LoginRole.CONSUMER);
+            return Optional.of(newUser(consumerRoleContainer.getRole(), consumerRoleContainer.getIdentifier(), LoginRole.CONSUMER));
         } else if (consumerRoleContainer.getMode() == RoleContainer.RoleMode.PRODUCER_USER) {
-            if (producerRoleContainer.getMode() == RoleContainer.RoleMode.EXISTING_USER) {
-                // Do nothing, resolved in getter
-            } else {
-                consumer = producer;
-            }
+            // Producer used as consumer, resolved after producer is created or in getter
+            return Optional.empty();
         } else if (consumerRoleContainer.getMode() == RoleContainer.RoleMode.NEW_WITH_PRODUCER_ROLE) {
             if (producerRoleContainer.getMode() == RoleContainer.RoleMode.EXISTING_USER) {
                 // NOOP
+                return Optional.empty();
             } else {
-                consumer = userFactory.createUser(userFactory.getRandomUsername(), "Test", "Consumer", producerRoleContainer.getRole(), LoginRole.CONSUMER);
+                return Optional.of(newUser(producerRoleContainer.getRole(), producerRoleContainer.getIdentifier(), LoginRole.CONSUMER));
             }
         } else if (consumerRoleContainer.getMode() == RoleContainer.RoleMode.EXISTING_USER) {
             // Do nothing, resolved in getter
+            return Optional.empty();
         } else if (consumerRoleContainer.getMode() == RoleContainer.RoleMode.ANONYMOUS) {
             // Do nothing, consumer is not used
+            return Optional.empty();
         } else {
             throw new IllegalArgumentException("Invalid consumer mode: " + consumerRoleContainer.getMode());
         }
     }
 
-    private void initializeProducer() {
+    private Optional<NewUser<ROLE>> getNewProducer() {
         if (producerRoleContainer.getMode() == RoleContainer.RoleMode.SET_USER_ROLE) {
-            producer = userFactory.createUser(userFactory.getRandomUsername(), "Test", "Producer", producerRoleContainer.getRole(), LoginRole.PRODUCER);
+            if (producerPreset) {
+                // Do nothing, producer has been given
+                return Optional.empty();
+            }
+            return Optional.of(newUser(producerRoleContainer.getRole(), producerRoleContainer.getIdentifier(), LoginRole.PRODUCER));
         } else if (producerRoleContainer.getMode() == RoleContainer.RoleMode.EXISTING_USER) {
             // Do nothing, resolved in getter
+            return Optional.empty();
         } else if (producerRoleContainer.getMode() == RoleContainer.RoleMode.ANONYMOUS) {
             // Do nothing, consumer is not used
+            return Optional.empty();
         } else {
             throw new IllegalArgumentException("Invalid producer consumer mode: " + producerRoleContainer.getMode());
         }
     }
 
+    private NewUser<ROLE> newUser(ROLE role, String roleIdentifier, LoginRole loginRole) {
+        String lastName = loginRole == LoginRole.PRODUCER ? "Producer" : "Consumer";
+        return new NewUser<>(userFactory.getRandomUsername(), "Test", lastName, role, roleIdentifier, loginRole);
+    }
+
+    /**
+     * Returns the users that are created when the resolver is resolved.
+     * @return New producer and consumer users. Empty if no new users are needed.
+     * @since 0.7
+     */
+    public List<NewUser<ROLE>> getNewUsers() {
+        List<NewUser<ROLE>> newUsers = new ArrayList<>(2);
+        getNewProducer().ifPresent(newUsers::add);
+        getNewConsumer().ifPresent(newUsers::add);
+        return newUsers;
+    }
+
     public RoleContainer<ROLE> getProducer() {
         return producerRoleContainer;
     }
@@ -80,27 +120,41 @@ public class UserResolver<USER, ROLE> {
 
     /**
      * Returns consumer user to use. {@link this#resolve()} must be called before.
+     * Existing users are searched only once and then returned from memory until
+     * {@link #invalidate()} is called.
      * @return Consumer user instance
      */
     public USER resolveConsumer() {
         if (consumerRoleContainer.getMode() == RoleContainer.RoleMode.EXISTING_USER) {
-            return userFactory.getUserByUsername(consumerRoleContainer.getIdentifier());
+            if (consumer == null) {
+                consumer = getExistingUser(consumerRoleContainer.getIdentifier());
+            }
+            return consumer;
         } else if (consumerRoleContainer.getMode() == RoleContainer.RoleMode.ANONYMOUS) {
             return null;
         } else if (consumerRoleContainer.getMode() == RoleContainer.RoleMode.PRODUCER_USER) {
             return resolverProducer();
         } else {
+            if (pendingConsumer != null) {
+                consumer = createUsers(Collections.singletonList(pendingConsumer)).get(0);
+                pendingConsumer = null;
+            }
             return consumer;
         }
     }
 
     /**
      * Returns producer user to use. {@link this#resolve()} must be called before.
+     * Existing users are searched only once and then returned from memory until
+     * {@link #invalidate()} is called.
      * @return Producer user instance
      */
     public USER resolverProducer() {
         if (producerRoleContainer.getMode() == RoleContainer.RoleMode.EXISTING_USER) {
-            return userFactory.getUserByUsername(producerRoleContainer.getIdentifier());
+            if (producer == null) {
+                producer = getExistingUser(producerRoleContainer.getIdentifier());
+            }
+            return producer;
         } else if (producerRoleContainer.getMode() == RoleContainer.RoleMode.ANONYMOUS) {
             return null;
         } else {
@@ -108,12 +162,203 @@ public class UserResolver<USER, ROLE> {
         }
     }
 
+    private USER getExistingUser(String username) {
+        if (existingUserCache != null) {
+            return existingUserCache.get(username, userFactory::getUserByUsername);
+        } else {
+            return userFactory.getUserByUsername(username);
+        }
+    }
+
+    /**
+     * Searches existing users through the given cache that can be shared with
+     * other resolvers.
+     * @param existingUserCache Cache of existing users
+     * @since 0.7
+     */
+    public void setExistingUserCache(ExistingUserCache<USER> existingUserCache) {
+        this.existingUserCache = existingUserCache;
+    }
+
+    /**
+     * When enabled {@link #resolve()} creates only the producer and a new consumer
+     * is created on the first {@link #resolveConsumer()} call. Tests that never use
+     * the consumer don't create it at all.
+     * @param lazyConsumer Whether to create the consumer lazily
+     * @since 0.7
+     */
+    public void setLazyConsumer(boolean lazyConsumer) {
+        this.lazyConsumer = lazyConsumer;
+    }
+
+    /**
+     * Uses the users created by the given prefetcher when available instead
+     * of creating new users. Not used when the users are leased from a user pool.
+     * @param userPrefetcher User prefetcher
+     * @since 0.7
+     */
+    public void setUserPrefetcher(UserPrefetcher<USER, ROLE> userPrefetcher) {
+        this.userPrefetcher = userPrefetcher;
+    }
+
+    /**
+     * Uses the given user as the producer instead of creating a new one when
+     * {@link #resolve()} is called. Only applies to producers defined with a role,
+     * existing and anonymous producers are resolved as usual.
+     * @param producer Producer user created earlier for the same producer definition
+     * @since 0.7
+     */
+    public void setProducer(USER producer) {
+        if (producerRoleContainer.getMode() == RoleContainer.RoleMode.SET_USER_ROLE) {
+            this.producer = producer;
+            this.producerPreset = true;
+        }
+    }
+
+    /**
+     * @return True if a new consumer is needed but hasn't been created yet
+     * @since 0.7
+     */
+    public boolean isConsumerPending() {
+        return pendingConsumer != null;
+    }
+
+    /**
+     * Forgets the existing users searched by this resolver and removes them from the
+     * shared existing user cache, so that they are searched again on next use. Should
+     * be called if a test modifies an existing user.
+     * @since 0.7
+     */
+    public void invalidate() {
+        if (producerRoleContainer.getMode() == RoleContainer.RoleMode.EXISTING_USER) {
+            producer = null;
+            if (existingUserCache != null) {
+                existingUserCache.invalidate(producerRoleContainer.getIdentifier());
+            }
+        }
+        if (consumerRoleContainer.getMode() == RoleContainer.RoleMode.EXISTING_USER) {
+            consumer = null;
+            if (existingUserCache != null) {
+                existingUserCache.invalidate(consumerRoleContainer.getIdentifier());
+            }
+        }
+    }
+
     /**
      * Resolves the producer and consumer users. If user needs to be created
-     * creates one.
+     * creates one. If the user factory is a {@link BatchUserFactory} the
+     * users are created with a single call. If lazy consumer is enabled
+     * the consumer is created later when it is first used.
      */
     public void resolve() {
-        initializeProducer();
-        initializeConsumer();
+        List<NewUser<ROLE>> newUsers = getNewUsers();
+        if (lazyConsumer) {
+            for (Iterator<NewUser<ROLE>> it = newUsers.iterator(); it.hasNext(); ) {
+                NewUser<ROLE> newUser = it.next();
+                if (newUser.getLoginRole() == LoginRole.CONSUMER) {
+                    pendingConsumer = newUser;
+                    it.remove();
+                }
+            }
+        }
+        List<USER> createdUsers = createUsers(newUsers);
+        for (int i = 0; i < newUsers.size(); ++i) {
+            if (newUsers.get(i).getLoginRole() == LoginRole.PRODUCER) {
+                producer = createdUsers.get(i);
+            } else {
+                consumer = createdUsers.get(i);
+            }
+        }
+
+        if (consumerRoleContainer.getMode() == RoleContainer.RoleMode.PRODUCER_USER
+                && producerRoleContainer.getMode() != RoleContainer.RoleMode.EXISTING_USER) {
+            consumer = producer;
+        }
+    }
+
+    /**
+     * Resolves the producer and consumer users leasing the created users from the
+     * given pool. The users have to be returned to the pool by calling {@link #release()}
+     * after the test.
+     * @param userPool User pool
+     * @throws IllegalStateException If the user factory doesn't implement {@link PooledUserFactory}
+     * @since 0.7
+     */
+    public void resolve(UserPool<USER, ROLE> userPool) {
+        if (!(userFactory instanceof PooledUserFactory)) {
+            throw new IllegalStateException("User pool requires the user factory to implement PooledUserFactory: "
+                    + userFactory.getClass().getName());
+        }
+        this.userPool = userPool;
+        resolve();
+    }
+
+    /**
+     * Releases the users leased from the user pool. Does nothing if the users weren't
+     * resolved using a pool.
+     * @since 0.7
+     */
+    public void release() {
+        for (UserPool<USER, ROLE>.Lease lease : leases) {
+            lease.release();
+        }
+        leases.clear();
+    }
+
+    private List<USER> createUsers(List<NewUser<ROLE>> newUsers) {
+        if (userPool != null) {
+            List<USER> users = new ArrayList<>(newUsers.size());
+            for (NewUser<ROLE> newUser : newUsers) {
+                UserPool<USER, ROLE>.Lease lease = userPool.lease((PooledUserFactory<USER, ROLE>) userFactory, newUser);
+                leases.add(lease);
+                users.add(lease.getUser());
+            }
+            return users;
+        } else if (userPrefetcher != null) {
+            List<USER> users = new ArrayList<>(newUsers.size());
+            List<NewUser<ROLE>> usersToCreate = new ArrayList<>();
+            for (NewUser<ROLE> newUser : newUsers) {
+                Optional<USER> prefetchedUser = userPrefetcher.take(newUser);
+                users.add(prefetchedUser.orElse(null));
+                if (!prefetchedUser.isPresent()) {
+                    usersToCreate.add(newUser);
+                }
+            }
+            Iterator<USER> createdUsers = createNewUsers(userFactory, usersToCreate).iterator();
+            for (int i = 0; i < users.size(); ++i) {
+                if (users.get(i) == null) {
+                    users.set(i, createdUsers.next());
+                }
+            }
+            return users;
+        } else {
+            return createNewUsers(userFactory, newUsers);
+        }
+    }
+
+    /**
+     * Creates the given users with a single call if the user factory is a
+     * {@link BatchUserFactory}, otherwise one by one.
+     */
+    static <USER, ROLE> List<USER> createNewUsers(UserFactory<USER, ROLE> userFactory, List<NewUser<ROLE>> newUsers) {
+        if (userFactory instanceof BatchUserFactory && !newUsers.isEmpty()) {
+            List<USER> users = ((BatchUserFactory<USER, ROLE>) userFactory).createUsers(newUsers);
+            if (users.size() != newUsers.size()) {
+                throw new IllegalStateException("Expected " + newUsers.size() + " users to be created but got " + users.size());
+            }
+            return users;
+        } else {
+            List<USER> users = new ArrayList<>(newUsers.size());
+            for (NewUser<ROLE> newUser : newUsers) {
+                users.add(userFactory.createUser(
+                        newUser.getUsername(),
+                        newUser.getFirstName(),
+                        newUser.getLastName(),
+                        newUser.getRole(),
+                        newUser.getLoginRole()
+                ));
+            }
+            return users;
+        }
     }
 }
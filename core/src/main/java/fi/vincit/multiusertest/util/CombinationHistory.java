@@ -0,0 +1,290 @@
+package fi.vincit.multiusertest.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.stream.Collectors;
+
+/**
+ * <p>
+ * Durations and failures of the earlier runs of producer-consumer combinations and their
+ * test methods stored in a small properties file. The history is read when it is first used
+ * and the entries recorded during the run are merged to the file by {@link #save()}. Recorded
+ * entries are used only by the next run so the order of the combinations doesn't change
+ * during the run. The file is locked while it is written so test JVMs run in parallel can
+ * share the same file.
+ * </p>
+ * <p>
+ * The file is configured with the <i>mutr.history.file</i> system property. By default
+ * <i>build/mutr-history.properties</i> relative to the working directory is used.
+ * </p>
+ * @since 0.7
+ */
+public class CombinationHistory {
+
+    public static final String HISTORY_FILE_PROPERTY = "mutr.history.file";
+    public static final String DEFAULT_HISTORY_FILE = "build/mutr-history.properties";
+
+    private static final String DURATION_PREFIX = "duration.";
+    private static final String FAILURE_PREFIX = "failed.";
+    private static final String METHOD_SEPARATOR = "#";
+
+    private static volatile CombinationHistory defaultHistory;
+
+    private final Path file;
+    private final Map<String, String> entries;
+    private final Set<String> failedCombinations;
+    private final ConcurrentMap<String, String> recordedEntries = new ConcurrentHashMap<>();
+    private final Set<String> removedEntries = ConcurrentHashMap.newKeySet();
+
+    /**
+     * @return History shared by all test classes in the JVM stored in the file configured
+     * with the <i>mutr.history.file</i> system property
+     */
+    public static CombinationHistory getDefault() {
+        CombinationHistory history = defaultHistory;
+        if (history == null) {
+            synchronized (CombinationHistory.class) {
+                history = defaultHistory;
+                if (history == null) {
+                    history = new CombinationHistory(Paths.get(
+                            System.getProperty(HISTORY_FILE_PROPERTY, DEFAULT_HISTORY_FILE)
+                    ));
+                    defaultHistory = history;
+                }
+            }
+        }
+        return history;
+    }
+
+    /**
+     * @return True if the history file has been configured explicitly with the
+     * <i>mutr.history.file</i> system property
+     */
+    public static boolean isConfigured() {
+        String value = System.getProperty(HISTORY_FILE_PROPERTY);
+        return value != null && !value.trim().isEmpty();
+    }
+
+    /**
+     * Reads the history from the given file. A missing or unreadable file is treated
+     * as an empty history.
+     * @param file History file
+     */
+    public CombinationHistory(Path file) {
+        this.file = file;
+        this.entries = read(file);
+        this.failedCombinations = entries.keySet().stream()
+                .filter(key -> key.startsWith(FAILURE_PREFIX))
+                .map(key -> key.contains(METHOD_SEPARATOR) ? key.substring(0, key.lastIndexOf(METHOD_SEPARATOR)) : key)
+                .collect(Collectors.toSet());
+    }
+
+    /**
+     * @param testClass Test class
+     * @param combination Combination of the test class
+     * @return Duration of the combination in milliseconds in the latest recorded run.
+     * Empty if the combination hasn't been run.
+     */
+    public Optional<Long> getDuration(Class<?> testClass, UserCombination combination) {
+        return getLong(DURATION_PREFIX + key(testClass, combination));
+    }
+
+    /**
+     * @param testClass Test class
+     * @param combination Combination of the test class
+     * @param methodName Test method name
+     * @return Duration of the method run with the combination in milliseconds in the latest
+     * recorded run. Empty if the method hasn't been run with the combination.
+     */
+    public Optional<Long> getMethodDuration(Class<?> testClass, UserCombination combination, String methodName) {
+        return getLong(DURATION_PREFIX + key(testClass, combination, methodName));
+    }
+
+    /**
+     * @param testClass Test class
+     * @return True if any combination of the test class has a recorded duration
+     */
+    public boolean hasDurations(Class<?> testClass) {
+        String prefix = DURATION_PREFIX + testClass.getName() + "|";
+        return entries.keySet().stream().anyMatch(key -> key.startsWith(prefix));
+    }
+
+    /**
+     * @param testClass Test class
+     * @param combination Combination of the test class
+     * @return True if the combination or any of its test methods failed when the
+     * combination was last run
+     */
+    public boolean hasFailed(Class<?> testClass, UserCombination combination) {
+        return failedCombinations.contains(FAILURE_PREFIX + key(testClass, combination));
+    }
+
+    /**
+     * @param testClass Test class
+     * @param combination Combination of the test class
+     * @param methodName Test method name
+     * @return True if the method failed when it was last run with the combination
+     */
+    public boolean hasMethodFailed(Class<?> testClass, UserCombination combination, String methodName) {
+        return entries.containsKey(FAILURE_PREFIX + key(testClass, combination, methodName));
+    }
+
+    /**
+     * @param testClass Test class
+     * @param combination Combination of the test class
+     * @param durationMillis Duration of the combination in milliseconds
+     */
+    public void recordDuration(Class<?> testClass, UserCombination combination, long durationMillis) {
+        record(DURATION_PREFIX + key(testClass, combination), String.valueOf(durationMillis));
+    }
+
+    /**
+     * @param testClass Test class
+     * @param combination Combination of the test class
+     * @param methodName Test method name
+     * @param durationMillis Duration of the method in milliseconds
+     */
+    public void recordMethodDuration(Class<?> testClass, UserCombination combination, String methodName, long durationMillis) {
+        record(DURATION_PREFIX + key(testClass, combination, methodName), String.valueOf(durationMillis));
+    }
+
+    /**
+     * Records a failure of the combination that isn't a failure of a single test method,
+     * e.g. a failing {@link fi.vincit.multiusertest.annotation.BeforeCombination} method.
+     * @param testClass Test class
+     * @param combination Combination of the test class
+     */
+    public void recordFailure(Class<?> testClass, UserCombination combination) {
+        record(FAILURE_PREFIX + key(testClass, combination), "true");
+    }
+
+    /**
+     * @param testClass Test class
+     * @param combination Combination of the test class
+     * @param methodName Test method name
+     */
+    public void recordMethodFailure(Class<?> testClass, UserCombination combination, String methodName) {
+        record(FAILURE_PREFIX + key(testClass, combination, methodName), "true");
+    }
+
+    /**
+     * Removes the failure recorded with {@link #recordFailure(Class, UserCombination)}.
+     * @param testClass Test class
+     * @param combination Combination of the test class
+     */
+    public void clearFailure(Class<?> testClass, UserCombination combination) {
+        remove(FAILURE_PREFIX + key(testClass, combination));
+    }
+
+    /**
+     * @param testClass Test class
+     * @param combination Combination of the test class
+     * @param methodName Test method name
+     */
+    public void clearMethodFailure(Class<?> testClass, UserCombination combination, String methodName) {
+        remove(FAILURE_PREFIX + key(testClass, combination, methodName));
+    }
+
+    /**
+     * Merges the entries recorded since the last save to the history file. Entries
+     * written by other JVMs after the file was read are kept.
+     * @throws IOException If the file can't be written
+     */
+    public synchronized void save() throws IOException {
+        if (recordedEntries.isEmpty() && removedEntries.isEmpty()) {
+            return;
+        }
+        Map<String, String> saved = new HashMap<>(recordedEntries);
+        Set<String> removed = new HashSet<>(removedEntries);
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            FileLock lock = channel.lock();
+            try {
+                Properties properties = new Properties();
+                properties.load(Channels.newInputStream(channel));
+                removed.forEach(properties::remove);
+                properties.putAll(saved);
+
+                channel.truncate(0);
+                OutputStream output = Channels.newOutputStream(channel);
+                properties.store(output, "Multi user test runner history");
+                output.flush();
+            } finally {
+                lock.release();
+            }
+        }
+        saved.forEach(recordedEntries::remove);
+        removedEntries.removeAll(removed);
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    private void record(String key, String value) {
+        removedEntries.remove(key);
+        recordedEntries.put(key, value);
+    }
+
+    private void remove(String key) {
+        recordedEntries.remove(key);
+        removedEntries.add(key);
+    }
+
+    private Optional<String> get(String key) {
+        return Optional.ofNullable(entries.get(key));
+    }
+
+    private Optional<Long> getLong(String key) {
+        try {
+            return get(key).map(Long::valueOf);
+        } catch (NumberFormatException e) {
+            return Optional.empty();
+        }
+    }
+
+    private static String key(Class<?> testClass, UserCombination combination) {
+        return testClass.getName() + "|" + combination.getProducer() + "|" + combination.getConsumer();
+    }
+
+    private static String key(Class<?> testClass, UserCombination combination, String methodName) {
+        return key(testClass, combination) + METHOD_SEPARATOR + methodName;
+    }
+
+    private static Map<String, String> read(Path file) {
+        Map<String, String> values = new HashMap<>();
+        if (!Files.isRegularFile(file)) {
+            return values;
+        }
+        Properties properties = new Properties();
+        try (InputStream input = Files.newInputStream(file)) {
+            properties.load(input);
+        } catch (IOException | IllegalArgumentException e) {
+            // Broken history only affects the order of the combinations
+            return values;
+        }
+        for (String key : properties.stringPropertyNames()) {
+            values.put(key, properties.getProperty(key));
+        }
+        return values;
+    }
+}
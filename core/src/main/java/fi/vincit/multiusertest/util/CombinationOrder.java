@@ -0,0 +1,142 @@
+package fi.vincit.multiusertest.util;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.OptionalDouble;
+
+/**
+ * <p>
+ * Defines the order in which the producer-consumer combinations of a test class are run.
+ * The order configured with {@link fi.vincit.multiusertest.annotation.MultiUserTestConfig#combinationOrder()}
+ * can be overridden for all test classes with the <i>mutr.combinationOrder</i> system property,
+ * e.g. <code>-Dmutr.combinationOrder=DECLARATION</code>.
+ * </p>
+ * @since 0.7
+ */
+public enum CombinationOrder {
+    /**
+     * Combinations are run in the order the producers and consumers are declared.
+     * No history is recorded.
+     */
+    DECLARATION,
+    /**
+     * Combinations are run longest first using the durations recorded to
+     * {@link CombinationHistory} by earlier runs, so that with
+     * {@link fi.vincit.multiusertest.annotation.MultiUserTestConfig#parallelism()} the longest
+     * combinations don't end up running alone at the end. Each combination is ordered by its own
+     * duration. Combinations without a recorded duration are expected to take the average duration
+     * of the recorded ones. Combinations with equal durations are run in the declaration order.
+     * Without any history the declaration order is used.
+     */
+    LONGEST_FIRST,
+    /**
+     * Combinations that failed on the previous run are run first, and within them the test methods
+     * that failed are run first. The failures are recorded to {@link CombinationHistory} when each
+     * combination has been run and removed when the method passes again. The rest of the
+     * combinations are run in {@link #LONGEST_FIRST} order.
+     */
+    FAILED_FIRST;
+
+    public static final String ORDER_PROPERTY = "mutr.combinationOrder";
+
+    /**
+     * @param configuration Test class configuration
+     * @return Order set with the <i>mutr.combinationOrder</i> system property or
+     * the order of the configuration if the property is not set
+     * @throws IllegalArgumentException If the property value is invalid
+     */
+    public static CombinationOrder resolve(TestConfiguration configuration) {
+        String value = System.getProperty(ORDER_PROPERTY);
+        if (value == null || value.trim().isEmpty()) {
+            return configuration.getCombinationOrder();
+        }
+        try {
+            return valueOf(value.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid combination order <" + value + ">", e);
+        }
+    }
+
+    /**
+     * @return True if the durations and failures of the combinations are recorded to the history
+     */
+    public boolean usesHistory() {
+        return this != DECLARATION;
+    }
+
+    /**
+     * @param testClass Test class
+     * @param combinations Combinations of the test class in declaration order
+     * @param history History of the earlier runs
+     * @return Combinations in the order they are run
+     */
+    public List<UserCombination> order(Class<?> testClass, List<UserCombination> combinations, CombinationHistory history) {
+        switch (this) {
+            case LONGEST_FIRST:
+                return longestFirst(testClass, combinations, history);
+            case FAILED_FIRST:
+                return failedFirst(testClass, combinations, history);
+            default:
+                return combinations;
+        }
+    }
+
+    /**
+     * @param testClass Test class
+     * @param combination Combination of the test class
+     * @param history History of the earlier runs
+     * @return Comparator that sorts the test methods of the combination in the order they are run.
+     * Empty if the declaration order is used.
+     */
+    public Optional<Comparator<String>> getMethodOrder(Class<?> testClass, UserCombination combination, CombinationHistory history) {
+        if (this != FAILED_FIRST || !history.hasFailed(testClass, combination)) {
+            return Optional.empty();
+        }
+        return Optional.of(Comparator.comparing(
+                (String methodName) -> !history.hasMethodFailed(testClass, combination, methodName)
+        ));
+    }
+
+    private static List<UserCombination> failedFirst(Class<?> testClass, List<UserCombination> combinations, CombinationHistory history) {
+        List<UserCombination> failed = new ArrayList<>();
+        List<UserCombination> passed = new ArrayList<>();
+        for (UserCombination combination : combinations) {
+            if (history.hasFailed(testClass, combination)) {
+                failed.add(combination);
+            } else {
+                passed.add(combination);
+            }
+        }
+        if (failed.isEmpty()) {
+            return longestFirst(testClass, combinations, history);
+        }
+        failed.addAll(longestFirst(testClass, passed, history));
+        return failed;
+    }
+
+    private static List<UserCombination> longestFirst(Class<?> testClass, List<UserCombination> combinations, CombinationHistory history) {
+        if (!history.hasDurations(testClass)) {
+            return combinations;
+        }
+
+        OptionalDouble averageDuration = combinations.stream()
+                .map(combination -> history.getDuration(testClass, combination))
+                .filter(Optional::isPresent)
+                .mapToLong(Optional::get)
+                .average();
+        if (!averageDuration.isPresent()) {
+            return combinations;
+        }
+
+        double unknownDuration = averageDuration.getAsDouble();
+        List<UserCombination> ordered = new ArrayList<>(combinations);
+        ordered.sort(Comparator.comparingDouble(
+                (UserCombination combination) -> history.getDuration(testClass, combination)
+                        .map(Long::doubleValue)
+                        .orElse(unknownDuration)
+        ).reversed());
+        return ordered;
+    }
+}
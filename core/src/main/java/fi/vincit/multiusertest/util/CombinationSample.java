@@ -0,0 +1,141 @@
+package fi.vincit.multiusertest.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+/**
+ * <p>
+ * Selects a random sample of the producer-consumer combinations of a test class, e.g. for a
+ * quick smoke run of a large matrix on every push. The combinations of each test class are shuffled
+ * with the seed and split to windows of the sample size. Each round runs the next window, so
+ * successive rounds rotate through the whole matrix and every combination is run once in
+ * {@link #getRoundCount(int)} rounds. The same seed and round always select the same combinations.
+ * </p>
+ * <p>
+ * The sample size is configured with {@link fi.vincit.multiusertest.annotation.MultiUserTestConfig#sampleSize()}
+ * or for all test classes with the <i>mutr.sample.size</i> system property. The round is set with the
+ * <i>mutr.sample.round</i> system property, e.g. to the build number, and the seed with the
+ * <i>mutr.sample.seed</i> system property. Both default to zero.
+ * </p>
+ * @since 0.7
+ */
+public class CombinationSample {
+
+    public static final String SIZE_PROPERTY = "mutr.sample.size";
+    public static final String SEED_PROPERTY = "mutr.sample.seed";
+    public static final String ROUND_PROPERTY = "mutr.sample.round";
+
+    private final int size;
+    private final long seed;
+    private final long round;
+
+    /**
+     * @param configuration Test class configuration
+     * @return Sample using the size set with the <i>mutr.sample.size</i> system property or
+     * the sample size of the configuration, and the seed and the round set with system properties
+     * @throws IllegalArgumentException If a property value is invalid
+     */
+    public static CombinationSample resolve(TestConfiguration configuration) {
+        int size = Math.toIntExact(getLongProperty(SIZE_PROPERTY, configuration.getSampleSize()));
+        return new CombinationSample(
+                size,
+                getLongProperty(SEED_PROPERTY, 0L),
+                getLongProperty(ROUND_PROPERTY, 0L)
+        );
+    }
+
+    /**
+     * @param size Number of combinations run per test class. Zero runs all combinations.
+     * @param seed Seed used to shuffle the combinations
+     * @param round Round of the sample, e.g. the build number
+     * @throws IllegalArgumentException If the size is negative
+     */
+    public CombinationSample(int size, long seed, long round) {
+        if (size < 0) {
+            throw new IllegalArgumentException("Sample size must not be negative but was " + size);
+        }
+        this.size = size;
+        this.seed = seed;
+        this.round = round;
+    }
+
+    /**
+     * @return True if all combinations are run
+     */
+    public boolean isAll() {
+        return size == 0;
+    }
+
+    /**
+     * @param testClass Test class
+     * @param combinations Combinations of the test class
+     * @return Sampled combinations in the given order
+     */
+    public List<UserCombination> select(Class<?> testClass, List<UserCombination> combinations) {
+        if (isAll() || size >= combinations.size()) {
+            return combinations;
+        }
+        List<Integer> permutation = new ArrayList<>(combinations.size());
+        for (int i = 0; i < combinations.size(); ++i) {
+            permutation.add(i);
+        }
+        // java.util.Random is specified so the permutation is the same in every JVM
+        Collections.shuffle(permutation, new Random(seed * 31 + testClass.getName().hashCode()));
+
+        long window = Math.floorMod(round, (long) getRoundCount(combinations.size()));
+        TreeSet<Integer> selectedIndices = new TreeSet<>();
+        for (int i = 0; i < size; ++i) {
+            // The last window is filled from the beginning of the permutation
+            selectedIndices.add(permutation.get((int) ((window * size + i) % combinations.size())));
+        }
+
+        List<UserCombination> selected = new ArrayList<>(size);
+        for (int index : selectedIndices) {
+            selected.add(combinations.get(index));
+        }
+        return selected;
+    }
+
+    /**
+     * @param combinationCount Number of combinations of a test class
+     * @return Number of successive rounds needed to run all combinations
+     */
+    public int getRoundCount(int combinationCount) {
+        if (isAll() || size >= combinationCount) {
+            return 1;
+        }
+        return (combinationCount + size - 1) / size;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public long getRound() {
+        return round;
+    }
+
+    private static long getLongProperty(String property, long defaultValue) {
+        String value = System.getProperty(property);
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid value <" + value + "> for " + property + ". Value must be a number", e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "size=" + size + ", seed=" + seed + ", round=" + round;
+    }
+}
@@ -0,0 +1,107 @@
+package fi.vincit.multiusertest.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * <p>
+ * Selects the producer-consumer combinations to run, e.g. when rerunning a single failing
+ * combination. Only the runners of the selected combinations are created so the other
+ * combinations don't have to be initialized.
+ * </p>
+ * <p>
+ * The selection is configured with the <i>mutr.combination</i> system property using the names
+ * the combinations have in test reports, e.g.
+ * <code>-Dmutr.combination="producer={role:ROLE_USER}, consumer={anonymous}"</code>. Multiple
+ * combinations are separated with a semicolon. Without the property all combinations are run.
+ * </p>
+ * @since 0.7
+ */
+public class CombinationSelection {
+
+    public static final String COMBINATION_PROPERTY = "mutr.combination";
+
+    private static final CombinationSelection ALL = new CombinationSelection(Collections.emptySet());
+
+    private final Set<String> combinationNames;
+
+    /**
+     * @return Selection configured with the <i>mutr.combination</i> system property. All
+     * combinations if the property is not set.
+     */
+    public static CombinationSelection fromSystemProperties() {
+        String value = System.getProperty(COMBINATION_PROPERTY);
+        if (value == null || value.trim().isEmpty()) {
+            return ALL;
+        }
+        return parse(value);
+    }
+
+    /**
+     * @param value Combination names separated with a semicolon, e.g.
+     * <i>producer={role:ROLE_USER}, consumer={anonymous}</i>
+     * @return Parsed selection
+     * @throws IllegalArgumentException If the value doesn't contain any combination
+     */
+    public static CombinationSelection parse(String value) {
+        Set<String> names = new LinkedHashSet<>();
+        for (String name : value.split(";")) {
+            if (!name.trim().isEmpty()) {
+                names.add(normalize(name));
+            }
+        }
+        if (names.isEmpty()) {
+            throw new IllegalArgumentException("Invalid combination selection <" + value
+                    + ">. Combinations must be in format producer={<producer>}, consumer={<consumer>}");
+        }
+        return new CombinationSelection(names);
+    }
+
+    private CombinationSelection(Set<String> combinationNames) {
+        this.combinationNames = combinationNames;
+    }
+
+    /**
+     * @return True if all combinations are selected
+     */
+    public boolean isAll() {
+        return combinationNames.isEmpty();
+    }
+
+    /**
+     * @param combination Combination
+     * @return True if the combination is selected
+     */
+    public boolean contains(UserCombination combination) {
+        return isAll() || combinationNames.contains(normalize(combination.toString()));
+    }
+
+    /**
+     * @param combinations Combinations
+     * @return Selected combinations in the given order
+     */
+    public List<UserCombination> filter(List<UserCombination> combinations) {
+        if (isAll()) {
+            return combinations;
+        }
+        List<UserCombination> selected = new ArrayList<>();
+        for (UserCombination combination : combinations) {
+            if (contains(combination)) {
+                selected.add(combination);
+            }
+        }
+        return selected;
+    }
+
+    private static String normalize(String name) {
+        return name.replaceAll("\\s", "");
+    }
+
+    @Override
+    public String toString() {
+        return isAll() ? "all" : String.join(";", combinationNames);
+    }
+}
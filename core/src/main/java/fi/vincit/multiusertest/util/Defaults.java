@@ -1,5 +1,7 @@
 package fi.vincit.multiusertest.util;
 
+import fi.vincit.multiusertest.test.UserPoolScope;
+
 public class Defaults {
 
     private Defaults() {
@@ -10,4 +12,40 @@ public class Defaults {
         return IllegalStateException.class;
     }
 
+    public static int getParallelism() {
+        return 1;
+    }
+
+    public static UserPoolScope getUserPoolScope() {
+        return UserPoolScope.NONE;
+    }
+
+    public static int getExistingUserCacheSize() {
+        return 0;
+    }
+
+    public static boolean isLazyConsumer() {
+        return false;
+    }
+
+    public static int getUserPrefetch() {
+        return 0;
+    }
+
+    public static boolean isLoginElision() {
+        return false;
+    }
+
+    public static int getAuthenticationCacheSize() {
+        return 0;
+    }
+
+    public static CombinationOrder getCombinationOrder() {
+        return CombinationOrder.DECLARATION;
+    }
+
+    public static int getSampleSize() {
+        return 0;
+    }
+
 }
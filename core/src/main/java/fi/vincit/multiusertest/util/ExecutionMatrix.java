@@ -0,0 +1,191 @@
+package fi.vincit.multiusertest.util;
+
+import fi.vincit.multiusertest.annotation.IgnoreForUsers;
+import fi.vincit.multiusertest.annotation.RunWithUsers;
+import org.junit.Test;
+import org.junit.runners.model.FrameworkMethod;
+import org.junit.runners.model.TestClass;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * <p>
+ * Precompiled information of which test methods are run with which producer-consumer
+ * combination. The method level {@link RunWithUsers} and {@link IgnoreForUsers}
+ * annotations are resolved only once per test class and each combination gets a row
+ * of bits telling which methods are run with the combination. After that checking
+ * whether a method should be run is a constant time lookup.
+ * </p>
+ * <p>
+ * Methods that the matrix wasn't compiled with are not indexed and have to be
+ * checked with {@link TestMethodFilter}.
+ * </p>
+ * @since 0.7
+ */
+public class ExecutionMatrix {
+
+    private final Map<Method, Integer> methodIndices;
+    private final List<Optional<TestConfiguration>> methodConfigurations;
+    private final Map<Integer, RuntimeException> invalidMethods;
+    private final ConcurrentMap<UserCombination, Row> rows = new ConcurrentHashMap<>();
+
+    /**
+     * Compiles the matrix for the test methods of the given test class.
+     * @param testClass Test class
+     * @return Execution matrix without any combination rows
+     */
+    public static ExecutionMatrix compile(TestClass testClass) {
+        List<Method> methods = new ArrayList<>();
+        for (FrameworkMethod method : testClass.getAnnotatedMethods(Test.class)) {
+            methods.add(method.getMethod());
+        }
+        return compile(methods);
+    }
+
+    /**
+     * Compiles the matrix for the given methods.
+     * @param methods Test methods
+     * @return Execution matrix without any combination rows
+     */
+    public static ExecutionMatrix compile(List<Method> methods) {
+        Map<Method, Integer> methodIndices = new HashMap<>();
+        List<Optional<TestConfiguration>> methodConfigurations = new ArrayList<>();
+        Map<Integer, RuntimeException> invalidMethods = new HashMap<>();
+
+        for (Method method : methods) {
+            if (methodIndices.containsKey(method)) {
+                continue;
+            }
+            int index = methodConfigurations.size();
+            methodIndices.put(method, index);
+            try {
+                methodConfigurations.add(TestConfiguration.fromMethod(method));
+            } catch (RuntimeException e) {
+                // Reported when the method is checked like TestMethodFilter does
+                methodConfigurations.add(Optional.empty());
+                invalidMethods.put(index, e);
+            }
+        }
+        return new ExecutionMatrix(methodIndices, methodConfigurations, invalidMethods);
+    }
+
+    private ExecutionMatrix(Map<Method, Integer> methodIndices,
+                            List<Optional<TestConfiguration>> methodConfigurations,
+                            Map<Integer, RuntimeException> invalidMethods) {
+        this.methodIndices = methodIndices;
+        this.methodConfigurations = methodConfigurations;
+        this.invalidMethods = invalidMethods;
+    }
+
+    /**
+     * Returns the row of the given combination. The row is compiled when it
+     * is requested for the first time.
+     * @param combination Producer-consumer combination
+     * @return Row of the combination
+     */
+    public Row getRow(UserCombination combination) {
+        return rows.computeIfAbsent(combination, this::compileRow);
+    }
+
+    private Row compileRow(UserCombination combination) {
+        BitSet runs = new BitSet(methodConfigurations.size());
+        for (int i = 0; i < methodConfigurations.size(); ++i) {
+            Optional<TestConfiguration> configuration = methodConfigurations.get(i);
+            if (!configuration.isPresent() || TestMethodFilter.shouldRun(
+                    configuration.get(),
+                    combination.getProducer(),
+                    combination.getConsumer())) {
+                runs.set(i);
+            }
+        }
+        return new Row(runs);
+    }
+
+    /**
+     * Removes the combinations that are equivalent to an earlier combination
+     * (see {@link UserCombination#isEquivalentTo(UserCombination)}) and run the same
+     * methods. Running such a combination would run the same tests again with the
+     * same kind of users.
+     * @param combinations Combinations in the order they are run
+     * @return Distinct combinations in the same order
+     */
+    public List<UserCombination> distinct(List<UserCombination> combinations) {
+        List<UserCombination> distinctCombinations = new ArrayList<>(combinations.size());
+        for (UserCombination combination : combinations) {
+            if (!containsEquivalent(distinctCombinations, combination)) {
+                distinctCombinations.add(combination);
+            }
+        }
+        return distinctCombinations;
+    }
+
+    private boolean containsEquivalent(List<UserCombination> combinations, UserCombination combination) {
+        for (UserCombination existing : combinations) {
+            if (existing.isEquivalentTo(combination)
+                    && getRow(existing).runs.equals(getRow(combination).runs)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return Number of methods in the matrix
+     */
+    public int getMethodCount() {
+        return methodConfigurations.size();
+    }
+
+    /**
+     * Methods run with a single producer-consumer combination.
+     */
+    public class Row {
+
+        private final BitSet runs;
+
+        private Row(BitSet runs) {
+            this.runs = runs;
+        }
+
+        /**
+         * @param method Test method
+         * @return True if the matrix was compiled with the given method
+         */
+        public boolean contains(FrameworkMethod method) {
+            return methodIndices.containsKey(method.getMethod());
+        }
+
+        /**
+         * @param method Test method the matrix was compiled with
+         * @return True if the method should be run with the combination, otherwise false.
+         * @throws IllegalArgumentException If the matrix wasn't compiled with the method
+         * @throws IllegalStateException If the method is configured incorrectly
+         */
+        public boolean shouldRun(FrameworkMethod method) {
+            Integer index = methodIndices.get(method.getMethod());
+            if (index == null) {
+                throw new IllegalArgumentException("Method " + method.getName() + " not found from the matrix");
+            }
+            RuntimeException invalidMethod = invalidMethods.get(index);
+            if (invalidMethod != null) {
+                throw invalidMethod;
+            }
+            return runs.get(index);
+        }
+
+        /**
+         * @return Number of methods run with the combination
+         */
+        public int getRunCount() {
+            return runs.cardinality();
+        }
+    }
+}
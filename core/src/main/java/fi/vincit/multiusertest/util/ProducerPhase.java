@@ -0,0 +1,175 @@
+package fi.vincit.multiusertest.util;
+
+import fi.vincit.multiusertest.annotation.ProducerSetup;
+import fi.vincit.multiusertest.util.snapshot.ProducerSnapshotStrategy;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * <p>
+ * Memoized {@link ProducerSetup} phase of a test class run with one producer definition.
+ * The first test run with the producer claims the phase and runs the producer setup. Tests
+ * with the same producer started while the setup is running wait until it has completed
+ * and then reuse the producer user and the snapshot. If the claiming test fails before
+ * completing the phase the next test claims it.
+ * </p>
+ * @since 0.7
+ */
+public class ProducerPhase {
+
+    private static final ClassValue<ConcurrentMap<UserIdentifier, ProducerPhase>> PHASES =
+            new ClassValue<ConcurrentMap<UserIdentifier, ProducerPhase>>() {
+                @Override
+                protected ConcurrentMap<UserIdentifier, ProducerPhase> computeValue(Class<?> testClass) {
+                    return new ConcurrentHashMap<>();
+                }
+            };
+
+    private enum State {
+        NEW,
+        RUNNING,
+        DONE
+    }
+
+    private State state = State.NEW;
+    private Object owner;
+    private Object producer;
+    private Object snapshot;
+
+    /**
+     * @param testClass Test class
+     * @param producerIdentifier Producer definition
+     * @return Shared phase of the test class and producer
+     */
+    public static ProducerPhase of(Class<?> testClass, UserIdentifier producerIdentifier) {
+        return PHASES.get(testClass).computeIfAbsent(producerIdentifier, identifier -> new ProducerPhase());
+    }
+
+    /**
+     * Discards the phases of the given test class so that the producer setup is run
+     * again if the test class is run again in the same JVM. The snapshots of the completed
+     * phases are released with {@link ProducerSnapshotStrategy#release(Object)}. Called on
+     * the thread that ran the tests when the test class has been run.
+     * @param testClass Test class
+     * @throws Exception If a snapshot can't be released. The other snapshots are still released.
+     */
+    public static void resetAll(Class<?> testClass) throws Exception {
+        ConcurrentMap<UserIdentifier, ProducerPhase> phases = PHASES.get(testClass);
+        Exception failure = null;
+        try {
+            for (ProducerPhase phase : phases.values()) {
+                Object snapshot = phase.getSnapshot();
+                if (snapshot == null) {
+                    continue;
+                }
+                try {
+                    getSnapshotStrategy(testClass).release(snapshot);
+                } catch (Exception e) {
+                    if (failure == null) {
+                        failure = e;
+                    } else {
+                        failure.addSuppressed(e);
+                    }
+                }
+            }
+        } finally {
+            phases.clear();
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private static ProducerSnapshotStrategy getSnapshotStrategy(Class<?> testClass) {
+        return TestClassModel.of(testClass).getProducerSetup()
+                .map(TestClassModel.ProducerSetupModel::getSnapshotStrategy)
+                .orElseThrow(() -> new IllegalStateException("No producer setup: " + testClass.getName()));
+    }
+
+    ProducerPhase() {
+    }
+
+    /**
+     * Claims the phase for the given test unless it has already been completed. Waits
+     * if another test is running the phase.
+     * @param testInstance Test instance
+     * @return True if the given test has to run the producer setup, false if the
+     * phase has already been completed.
+     */
+    public synchronized boolean claim(Object testInstance) {
+        while (state == State.RUNNING) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for the producer setup", e);
+            }
+        }
+        if (state == State.DONE) {
+            return false;
+        }
+        state = State.RUNNING;
+        owner = testInstance;
+        return true;
+    }
+
+    /**
+     * @param testInstance Test instance
+     * @return True if the given test has claimed the phase and hasn't completed it yet
+     */
+    public synchronized boolean isClaimedBy(Object testInstance) {
+        return state == State.RUNNING && owner == testInstance;
+    }
+
+    /**
+     * Completes the phase claimed by the given test.
+     * @param testInstance Test instance that claimed the phase
+     * @param producer Producer user used in the phase
+     * @param snapshot Snapshot of the state after the producer setup
+     */
+    public synchronized void complete(Object testInstance, Object producer, Object snapshot) {
+        if (!isClaimedBy(testInstance)) {
+            throw new IllegalStateException("Producer phase is not claimed by the test");
+        }
+        this.producer = producer;
+        this.snapshot = snapshot;
+        this.owner = null;
+        this.state = State.DONE;
+        notifyAll();
+    }
+
+    /**
+     * Gives up the phase if the given test claimed it but didn't complete it,
+     * so that the next test can run the producer setup.
+     * @param testInstance Test instance
+     */
+    public synchronized void abandon(Object testInstance) {
+        if (isClaimedBy(testInstance)) {
+            owner = null;
+            state = State.NEW;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Forgets the completed phase so that the next test runs the producer setup again.
+     * Used when the data created by the producer setup has been removed, e.g. by rolling
+     * back the transaction it was created in. Does nothing if the phase is running.
+     */
+    public synchronized void reset() {
+        if (state == State.DONE) {
+            producer = null;
+            snapshot = null;
+            state = State.NEW;
+        }
+    }
+
+    public synchronized Object getProducer() {
+        return producer;
+    }
+
+    public synchronized Object getSnapshot() {
+        return snapshot;
+    }
+}
@@ -1,21 +1,22 @@
 package fi.vincit.multiusertest.util;
 
-import fi.vincit.multiusertest.annotation.MultiUserConfigClass;
 import fi.vincit.multiusertest.rule.AuthorizationRule;
 import fi.vincit.multiusertest.test.AbstractMultiUserConfig;
 import fi.vincit.multiusertest.test.MultiUserConfig;
+import fi.vincit.multiusertest.test.UserPoolScope;
 import fi.vincit.multiusertest.test.UserRoleIT;
+import fi.vincit.multiusertest.util.snapshot.ProducerSnapshotStrategy;
 import org.junit.Before;
-import org.junit.Rule;
-import org.junit.runners.model.FrameworkField;
 import org.junit.runners.model.FrameworkMethod;
+import org.junit.runners.model.MultipleFailureException;
 import org.junit.runners.model.Statement;
 import org.junit.runners.model.TestClass;
 
-import java.lang.reflect.Field;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.function.Predicate;
 
 /**
  * Helper class for delegating calls from JUnit runner.
@@ -27,6 +28,7 @@ public class RunnerDelegate {
     private final UserIdentifier producerIdentifier;
     private final UserIdentifier userIdentifier;
     private final TestMethodFilter shouldRunChecker;
+    private final Optional<ExecutionMatrix.Row> executionRow;
 
     public RunnerDelegate(UserIdentifier producerIdentifier, UserIdentifier consumerIdentifier) {
         Objects.requireNonNull(producerIdentifier);
@@ -35,6 +37,28 @@ public class RunnerDelegate {
         this.producerIdentifier = producerIdentifier;
         this.userIdentifier = consumerIdentifier;
         this.shouldRunChecker = new TestMethodFilter(producerIdentifier, consumerIdentifier);
+        this.executionRow = Optional.empty();
+    }
+
+    /**
+     * Creates a delegate that checks the test methods using the precompiled
+     * {@link ExecutionMatrix} of the test class.
+     * @param testClass Test class
+     * @param producerIdentifier Producer identifier
+     * @param consumerIdentifier Consumer identifier
+     * @since 0.7
+     */
+    public RunnerDelegate(TestClass testClass, UserIdentifier producerIdentifier, UserIdentifier consumerIdentifier) {
+        Objects.requireNonNull(testClass);
+        Objects.requireNonNull(producerIdentifier);
+        Objects.requireNonNull(consumerIdentifier);
+
+        this.producerIdentifier = producerIdentifier;
+        this.userIdentifier = consumerIdentifier;
+        this.shouldRunChecker = new TestMethodFilter(producerIdentifier, consumerIdentifier);
+        this.executionRow = Optional.of(TestClassModel.of(testClass.getJavaClass())
+                .getExecutionMatrix()
+                .getRow(new UserCombination(producerIdentifier, consumerIdentifier)));
     }
 
     // Only for testing
@@ -46,10 +70,21 @@ public class RunnerDelegate {
         this.producerIdentifier = producerIdentifier;
         this.userIdentifier = userIdentifier;
         this.shouldRunChecker = shouldRunChecker;
+        this.executionRow = Optional.empty();
     }
 
     public List<FrameworkMethod> filterMethods(List<FrameworkMethod> methods) {
-        List<FrameworkMethod> filteredMethods = shouldRunChecker.filter(methods);
+        List<FrameworkMethod> filteredMethods;
+        if (executionRow.isPresent()) {
+            filteredMethods = new ArrayList<>(methods.size());
+            for (FrameworkMethod method : methods) {
+                if (shouldRun(method)) {
+                    filteredMethods.add(method);
+                }
+            }
+        } else {
+            filteredMethods = shouldRunChecker.filter(methods);
+        }
         if (!filteredMethods.isEmpty()) {
             return filteredMethods;
         } else {
@@ -58,7 +93,14 @@ public class RunnerDelegate {
     }
 
     public boolean isIgnored(FrameworkMethod child, boolean isIgnoredByParent) {
-        return !shouldRunChecker.shouldRun(child) || isIgnoredByParent;
+        return !shouldRun(child) || isIgnoredByParent;
+    }
+
+    private boolean shouldRun(FrameworkMethod method) {
+        if (executionRow.isPresent() && executionRow.get().contains(method)) {
+            return executionRow.get().shouldRun(method);
+        }
+        return shouldRunChecker.shouldRun(method);
     }
 
     public String testName(FrameworkMethod method) {
@@ -85,66 +127,24 @@ public class RunnerDelegate {
     }
 
     private boolean hasComponentConfig(Object testInstance) {
-        try {
-            return findFieldWithConfig(testInstance).isPresent();
-        } catch (IllegalAccessException e) {
-            throw new IllegalStateException(e);
-        }
+        return TestFieldAccessors.of(testInstance.getClass()).hasConfig();
     }
 
-    private MultiUserConfig getConfigComponent(Object testInstance) {
-        Optional<MultiUserConfig> config = Optional.empty();
-        try {
-            Optional<Field> field = findFieldWithConfig(testInstance);
+    private MultiUserConfig<?, ?> getConfigComponent(Object testInstance) {
+        Optional<MultiUserConfig<?, ?>> config = TestFieldAccessors.of(testInstance.getClass()).getConfig(testInstance);
 
-            if (field.isPresent()) {
-                Field fieldInstance = field.get();
-                fieldInstance.setAccessible(true);
-                config = Optional.ofNullable((MultiUserConfig) fieldInstance.get(testInstance));
-                fieldInstance.setAccessible(false);
-            }
-
-            if (config.isPresent()) {
-                return config.get();
-            } else {
-                throw new IllegalStateException("MultiUserConfigClass not found on " + testInstance.getClass().getSimpleName());
-            }
-        } catch (IllegalAccessException e) {
-            throw new IllegalStateException(e);
-        }
-    }
-
-    private Optional<Field> findFieldWithConfig(Object testInstance) throws IllegalAccessException {
-        for (Field field : testInstance.getClass().getDeclaredFields()) {
-            if (field.isAnnotationPresent(MultiUserConfigClass.class)) {
-                return Optional.of(field);
-            }
-        }
-
-        for (Field field : testInstance.getClass().getFields()) {
-            if (field.isAnnotationPresent(MultiUserConfigClass.class)) {
-                return Optional.of(field);
-            }
+        if (config.isPresent()) {
+            return config.get();
+        } else {
+            throw new IllegalStateException("MultiUserConfigClass not found on " + testInstance.getClass().getSimpleName());
         }
-        return Optional.empty();
     }
 
     public Statement withBefores(final TestClass testClass, final Object target, final Statement statement) {
         final Statement initializeConfig = new Statement() {
             @Override
             public void evaluate() throws Throwable {
-                UserRoleIT userRoleIt = getConfigComponent(target);
-                userRoleIt.setUsers(producerIdentifier, userIdentifier);
-
-                if (userRoleIt instanceof AbstractMultiUserConfig) {
-                    AbstractMultiUserConfig multiUserConfig = (AbstractMultiUserConfig) userRoleIt;
-                    AuthorizationRule authorizationRule = getAuthorizationRule(testClass, target);
-
-                    multiUserConfig.setAuthorizationRule(authorizationRule, target);
-                    multiUserConfig.initialize();
-                } else {
-                    throw new IllegalStateException("Invalid userRoleIt implementation: " + userRoleIt.getClass().toString());
-                }
+                initializeConfig(target, getAuthorizationRule(target));
             }
         };
 
@@ -156,8 +156,8 @@ public class RunnerDelegate {
                 for (FrameworkMethod before : befores) {
                     before.invokeExplosively(target);
                 }
-                UserRoleIT userRoleIt = getConfigComponent(target);
-                userRoleIt.logInAs(LoginRole.PRODUCER);
+                logInAsProducer(target);
+                runProducerSetup(target);
             } catch (Throwable t) {
                 throw new RuntimeException(t);
             }
@@ -167,15 +167,241 @@ public class RunnerDelegate {
 
     }
 
-    private AuthorizationRule getAuthorizationRule(TestClass testClass, Object target) throws IllegalAccessException {
-        List<FrameworkField> ruleFields = testClass.getAnnotatedFields(Rule.class);
+    /**
+     * Wraps the given statement so that the users leased for the test are released
+     * after the statement has been evaluated.
+     * @param target Test instance
+     * @param statement Statement running the test and its after methods
+     * @return Statement
+     * @since 0.7
+     */
+    public Statement withAfters(final Object target, final Statement statement) {
+        return new Statement() {
+            @Override
+            public void evaluate() throws Throwable {
+                try {
+                    statement.evaluate();
+                } finally {
+                    try {
+                        releaseUsers(target);
+                    } finally {
+                        abandonProducerSetup(target);
+                    }
+                }
+            }
+        };
+    }
 
-        for (FrameworkField ruleField : ruleFields) {
-            if (ruleField.getType().isAssignableFrom(AuthorizationRule.class)) {
-                return (AuthorizationRule) ruleField.get(target);
+    /**
+     * Wraps the statement running the children of a combination runner with the combination
+     * hooks, see {@link #withCombinationHooks(Class, Statement)}. The hooks aren't run if all
+     * the children are ignored.
+     * @param testClass Test class
+     * @param children Children of the runner
+     * @param isIgnored Returns true if the runner ignores the child
+     * @param statement Statement running the children
+     * @return Statement
+     * @since 0.7
+     */
+    public Statement childrenInvoker(Class<?> testClass, List<FrameworkMethod> children, Predicate<FrameworkMethod> isIgnored, Statement statement) {
+        for (FrameworkMethod child : children) {
+            if (!isIgnored.test(child)) {
+                return withCombinationHooks(testClass, statement);
             }
         }
+        return statement;
+    }
 
-        throw new IllegalStateException("Test class must have AuthorizationRule set");
+    /**
+     * Wraps the given statement so that the {@link fi.vincit.multiusertest.annotation.BeforeCombination}
+     * methods of the test class are run before it and the {@link fi.vincit.multiusertest.annotation.AfterCombination}
+     * methods after it. The after methods are run even if the before methods or the statement fail.
+     * @param testClass Test class
+     * @param statement Statement running all the tests of the combination
+     * @return Statement
+     * @since 0.7
+     */
+    public Statement withCombinationHooks(final Class<?> testClass, final Statement statement) {
+        return new Statement() {
+            @Override
+            public void evaluate() throws Throwable {
+                List<Throwable> errors = new ArrayList<>();
+                try {
+                    runBeforeCombination(testClass);
+                    statement.evaluate();
+                } catch (Throwable t) {
+                    errors.add(t);
+                } finally {
+                    try {
+                        runAfterCombination(testClass);
+                    } catch (Throwable t) {
+                        errors.add(t);
+                    }
+                }
+                MultipleFailureException.assertEmpty(errors);
+            }
+        };
     }
+
+    /**
+     * Runs the {@link fi.vincit.multiusertest.annotation.BeforeCombination} methods of the
+     * test class with the producer and consumer of this delegate. Stops at the first failure.
+     * @param testClass Test class
+     * @throws Throwable Exception thrown by a method
+     * @since 0.7
+     */
+    public void runBeforeCombination(Class<?> testClass) throws Throwable {
+        for (FrameworkMethod method : TestClassModel.of(testClass).getBeforeCombinationMethods()) {
+            invokeCombinationMethod(testClass, method);
+        }
+    }
+
+    /**
+     * Runs the {@link fi.vincit.multiusertest.annotation.AfterCombination} methods of the
+     * test class with the producer and consumer of this delegate. All the methods are run
+     * even if some of them fail.
+     * @param testClass Test class
+     * @throws Throwable Exception thrown by a method. {@link MultipleFailureException} if more than one method failed.
+     * @since 0.7
+     */
+    public void runAfterCombination(Class<?> testClass) throws Throwable {
+        List<Throwable> errors = new ArrayList<>();
+        for (FrameworkMethod method : TestClassModel.of(testClass).getAfterCombinationMethods()) {
+            try {
+                invokeCombinationMethod(testClass, method);
+            } catch (Throwable t) {
+                errors.add(t);
+            }
+        }
+        MultipleFailureException.assertEmpty(errors);
+    }
+
+    private void invokeCombinationMethod(Class<?> testClass, FrameworkMethod method) throws Throwable {
+        Class<?>[] parameterTypes = method.getMethod().getParameterTypes();
+        Object[] parameters = new Object[parameterTypes.length];
+        for (int i = 0; i < parameterTypes.length; ++i) {
+            if (parameterTypes[i] == UserCombination.class) {
+                parameters[i] = new UserCombination(producerIdentifier, userIdentifier);
+            } else if (parameterTypes[i] == TestConfiguration.class) {
+                parameters[i] = TestConfiguration.fromClass(testClass);
+            } else {
+                throw new IllegalStateException("Unsupported parameter type " + parameterTypes[i].getName()
+                        + " in method " + method.getName());
+            }
+        }
+        method.invokeExplosively(null, parameters);
+    }
+
+    /**
+     * Releases the users leased by the configuration of the given test instance.
+     * @param target Test instance
+     * @since 0.7
+     */
+    public void releaseUsers(Object target) {
+        UserRoleIT<?> userRoleIt = getConfigComponent(target);
+        if (userRoleIt instanceof AbstractMultiUserConfig) {
+            ((AbstractMultiUserConfig<?, ?>) userRoleIt).releaseUsers();
+        }
+    }
+
+    /**
+     * Sets the producer and consumer to the configuration of the given test instance
+     * and resolves the users. Has to be called before the test's before methods are run.
+     * @param target Test instance
+     * @param authorizationRule Authorization rule of the test instance
+     * @since 0.7
+     */
+    public void initializeConfig(Object target, AuthorizationRule authorizationRule) {
+        UserRoleIT<?> userRoleIt = getConfigComponent(target);
+        userRoleIt.setUsers(producerIdentifier, userIdentifier);
+
+        if (userRoleIt instanceof AbstractMultiUserConfig) {
+            AbstractMultiUserConfig<?, ?> multiUserConfig = (AbstractMultiUserConfig<?, ?>) userRoleIt;
+
+            multiUserConfig.setAuthorizationRule(authorizationRule, target);
+            multiUserConfig.setTestClass(target.getClass());
+            if (TestClassModel.of(target.getClass()).getProducerSetup().isPresent()) {
+                ProducerPhase phase = getProducerPhase(target);
+                if (!phase.claim(target)) {
+                    setProducer(multiUserConfig, phase.getProducer());
+                }
+            }
+            multiUserConfig.initialize();
+        } else {
+            throw new IllegalStateException("Invalid userRoleIt implementation: " + userRoleIt.getClass().toString());
+        }
+    }
+
+    /**
+     * Logs in the producer using the configuration of the given test instance. Has to be called
+     * after the test's before methods and before the actual test method.
+     * @param target Test instance
+     * @since 0.7
+     */
+    public void logInAsProducer(Object target) {
+        UserRoleIT<?> userRoleIt = getConfigComponent(target);
+        userRoleIt.logInAs(LoginRole.PRODUCER);
+    }
+
+    /**
+     * Runs the {@link fi.vincit.multiusertest.annotation.ProducerSetup} method of the given
+     * test instance if the test is the first one run with the producer. Otherwise restores
+     * the snapshot taken after the setup was run. Has to be called after the producer has
+     * been logged in. Does nothing if the test class doesn't have a producer setup method.
+     * @param target Test instance
+     * @throws Throwable Exception thrown by the producer setup method or snapshot strategy
+     * @since 0.7
+     */
+    public void runProducerSetup(Object target) throws Throwable {
+        Optional<TestClassModel.ProducerSetupModel> producerSetup = TestClassModel.of(target.getClass()).getProducerSetup();
+        if (!producerSetup.isPresent()) {
+            return;
+        }
+
+        ProducerPhase phase = getProducerPhase(target);
+        ProducerSnapshotStrategy snapshotStrategy = producerSetup.get().getSnapshotStrategy();
+        if (phase.isClaimedBy(target)) {
+            producerSetup.get().getMethod().invokeExplosively(target);
+            Object producer = ((AbstractMultiUserConfig<?, ?>) getConfigComponent(target)).getProducer();
+            phase.complete(target, producer, snapshotStrategy.snapshot(target));
+        } else {
+            snapshotStrategy.restore(phase.getSnapshot(), target);
+        }
+    }
+
+    /**
+     * Gives up the producer phase claimed by the given test instance if the producer setup
+     * wasn't completed, so that the next test with the same producer runs the setup.
+     * @param target Test instance
+     * @since 0.7
+     */
+    public void abandonProducerSetup(Object target) {
+        if (TestClassModel.of(target.getClass()).getProducerSetup().isPresent()) {
+            getProducerPhase(target).abandon(target);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <USER> void setProducer(AbstractMultiUserConfig<USER, ?> config, Object producer) {
+        // The producer was created by a configuration of the same test class
+        config.setProducer((USER) producer);
+    }
+
+    private ProducerPhase getProducerPhase(Object target) {
+        if (TestConfiguration.fromClass(target.getClass()).getUserPoolScope() != UserPoolScope.NONE) {
+            throw new IllegalStateException("@ProducerSetup can't be used with user pool: " + target.getClass().getName());
+        }
+        return ProducerPhase.of(target.getClass(), producerIdentifier);
+    }
+
+    /**
+     * @param target Test instance
+     * @return Authorization rule of the test instance. Null if the rule member is null.
+     * @throws IllegalStateException If the test class doesn't have an authorization rule member
+     * @since 0.7
+     */
+    public AuthorizationRule getAuthorizationRule(Object target) {
+        return TestFieldAccessors.of(target.getClass()).getAuthorizationRule(target);
+    }
+
 }
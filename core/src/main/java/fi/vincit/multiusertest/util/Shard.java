@@ -0,0 +1,124 @@
+package fi.vincit.multiusertest.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>
+ * Selects the producer-consumer combinations run in the current JVM when the test suite
+ * is split to several JVMs (e.g. Gradle's <code>maxParallelForks</code>). Each combination of
+ * a test class is assigned to one shard by a stable hash of the test class name and the
+ * combination, so the combinations of a single test class are spread over all the shards
+ * and every JVM assigns them the same way.
+ * </p>
+ * <p>
+ * The shard is configured with the <i>mutr.shard</i> system property in format
+ * <i>&lt;index&gt;/&lt;count&gt;</i> where index is between 1 and count, e.g.
+ * <code>-Dmutr.shard=2/8</code>. Without the property all combinations are run.
+ * </p>
+ * @since 0.7
+ */
+public class Shard {
+
+    public static final String SHARD_PROPERTY = "mutr.shard";
+
+    private static final Shard ALL = new Shard(1, 1);
+
+    private final int index;
+    private final int count;
+
+    /**
+     * @return Shard configured with the <i>mutr.shard</i> system property. All combinations
+     * if the property is not set.
+     * @throws IllegalArgumentException If the property value is invalid
+     */
+    public static Shard fromSystemProperties() {
+        String value = System.getProperty(SHARD_PROPERTY);
+        if (value == null || value.trim().isEmpty()) {
+            return ALL;
+        }
+        return parse(value);
+    }
+
+    /**
+     * @param value Shard in format <i>&lt;index&gt;/&lt;count&gt;</i>, e.g. <i>2/8</i>
+     * @return Parsed shard
+     * @throws IllegalArgumentException If the value is invalid
+     */
+    public static Shard parse(String value) {
+        String[] parts = value.trim().split("/");
+        if (parts.length != 2) {
+            throw new IllegalArgumentException("Invalid shard <" + value + ">. Shard must be in format <index>/<count>, e.g. 2/8");
+        }
+        try {
+            return new Shard(Integer.parseInt(parts[0].trim()), Integer.parseInt(parts[1].trim()));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid shard <" + value + ">. Shard must be in format <index>/<count>, e.g. 2/8", e);
+        }
+    }
+
+    /**
+     * @param index Index of the shard starting from 1
+     * @param count Number of shards
+     * @throws IllegalArgumentException If the index is not between 1 and count
+     */
+    public Shard(int index, int count) {
+        if (count < 1 || index < 1 || index > count) {
+            throw new IllegalArgumentException("Shard index must be between 1 and " + count + " but was " + index);
+        }
+        this.index = index;
+        this.count = count;
+    }
+
+    /**
+     * @param testClass Test class
+     * @param combination Combination of the test class
+     * @return True if the combination is run in this shard
+     */
+    public boolean contains(Class<?> testClass, UserCombination combination) {
+        return count == 1 || Math.floorMod(hash(testClass, combination), count) == index - 1;
+    }
+
+    /**
+     * @param testClass Test class
+     * @param combinations Combinations of the test class
+     * @return Combinations run in this shard in the given order
+     */
+    public List<UserCombination> filter(Class<?> testClass, List<UserCombination> combinations) {
+        if (count == 1) {
+            return combinations;
+        }
+        List<UserCombination> shardCombinations = new ArrayList<>();
+        for (UserCombination combination : combinations) {
+            if (contains(testClass, combination)) {
+                shardCombinations.add(combination);
+            }
+        }
+        return shardCombinations;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    private static int hash(Class<?> testClass, UserCombination combination) {
+        // String.hashCode is specified so the hash is the same in every JVM
+        int hash = (testClass.getName() + "|" + combination.getProducer() + "|" + combination.getConsumer()).hashCode();
+        // Spread the bits since the strings of a test class differ only by their last characters
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        hash *= 0xc2b2ae35;
+        hash ^= hash >>> 16;
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return index + "/" + count;
+    }
+}
@@ -0,0 +1,229 @@
+package fi.vincit.multiusertest.util;
+
+import fi.vincit.multiusertest.annotation.AfterCombination;
+import fi.vincit.multiusertest.annotation.BeforeCombination;
+import fi.vincit.multiusertest.annotation.ProducerSetup;
+import fi.vincit.multiusertest.util.snapshot.ProducerSnapshotStrategy;
+import org.junit.runners.model.FrameworkMethod;
+import org.junit.runners.model.TestClass;
+
+import java.lang.annotation.Annotation;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Consumer;
+
+/**
+ * <p>
+ * Scanned and validated model of a test class shared by
+ * {@link fi.vincit.multiusertest.runner.junit.MultiUserTestRunner} and all producer-consumer
+ * combination runners of the test class. JUnit's {@link TestClass} scans the annotations of
+ * the whole class hierarchy and each runner validates the class when it is constructed. Without
+ * sharing this is done once for each combination.
+ * </p>
+ * <p>
+ * Runners should use the model by overriding <code>createTestClass</code> and
+ * <code>collectInitializationErrors</code> methods:
+ * </p>
+ * <pre>
+ * protected TestClass createTestClass(Class&lt;?&gt; testClass) {
+ *     return TestClassModel.of(testClass).getTestClass();
+ * }
+ *
+ * protected void collectInitializationErrors(List&lt;Throwable&gt; errors) {
+ *     errors.addAll(TestClassModel.of(getTestClass().getJavaClass())
+ *             .getInitializationErrors(getClass(), super::collectInitializationErrors));
+ * }
+ * </pre>
+ * @since 0.7
+ */
+public class TestClassModel {
+
+    private static final ClassValue<TestClassModel> MODELS = new ClassValue<TestClassModel>() {
+        @Override
+        protected TestClassModel computeValue(Class<?> type) {
+            return new TestClassModel(new TestClass(type));
+        }
+    };
+
+    private static final List<Class<?>> COMBINATION_PARAMETER_TYPES =
+            Collections.unmodifiableList(Arrays.asList(UserCombination.class, TestConfiguration.class));
+
+    private final TestClass testClass;
+    private final ConcurrentMap<Class<?>, List<Throwable>> initializationErrors = new ConcurrentHashMap<>();
+    private volatile ExecutionMatrix executionMatrix;
+    private volatile Optional<ProducerSetupModel> producerSetup;
+    private volatile List<UserCombination> combinations = Collections.emptyList();
+
+    /**
+     * Returns the shared model for the given test class. The class is scanned
+     * only when the model is requested for the first time.
+     * @param testClass Test class
+     * @return Shared model
+     */
+    public static TestClassModel of(Class<?> testClass) {
+        return MODELS.get(testClass);
+    }
+
+    TestClassModel(TestClass testClass) {
+        this.testClass = testClass;
+    }
+
+    /**
+     * @return Scanned test class
+     */
+    public TestClass getTestClass() {
+        return testClass;
+    }
+
+    /**
+     * Returns the execution matrix of the test class' test methods. The matrix
+     * is compiled when it is requested for the first time.
+     * @return Execution matrix
+     */
+    public ExecutionMatrix getExecutionMatrix() {
+        ExecutionMatrix matrix = executionMatrix;
+        if (matrix == null) {
+            synchronized (this) {
+                matrix = executionMatrix;
+                if (matrix == null) {
+                    matrix = ExecutionMatrix.compile(testClass);
+                    executionMatrix = matrix;
+                }
+            }
+        }
+        return matrix;
+    }
+
+    /**
+     * Returns the producer-consumer combinations the test class is run with in the order they are run.
+     * The combinations are published by the runner of the test class when it starts running the tests,
+     * see {@link #publishCombinations(List)}, so they include only the combinations that are actually
+     * run after JUnit filters, the combination selection, the sample and the shard have been applied.
+     * @return Combinations run by the test class. Empty if the test class isn't run by a runner
+     * publishing its combinations.
+     */
+    public List<UserCombination> getCombinations() {
+        return combinations;
+    }
+
+    /**
+     * Publishes the combinations the runner of the test class runs, in the order they are run.
+     * Replaces the combinations published by an earlier run of the test class.
+     * @param combinations Combinations
+     */
+    public void publishCombinations(List<UserCombination> combinations) {
+        this.combinations = Collections.unmodifiableList(new ArrayList<>(combinations));
+    }
+
+    /**
+     * Returns the {@link ProducerSetup} method of the test class and its snapshot strategy.
+     * The method is searched and the strategy instantiated when requested for the first time.
+     * @return Producer setup. Empty if the class doesn't have a producer setup method.
+     * @throws IllegalStateException If the class has more than one producer setup method or
+     * the snapshot strategy can't be instantiated
+     */
+    public Optional<ProducerSetupModel> getProducerSetup() {
+        Optional<ProducerSetupModel> setup = producerSetup;
+        if (setup == null) {
+            synchronized (this) {
+                setup = producerSetup;
+                if (setup == null) {
+                    setup = findProducerSetup();
+                    producerSetup = setup;
+                }
+            }
+        }
+        return setup;
+    }
+
+    private Optional<ProducerSetupModel> findProducerSetup() {
+        List<FrameworkMethod> methods = testClass.getAnnotatedMethods(ProducerSetup.class);
+        if (methods.isEmpty()) {
+            return Optional.empty();
+        } else if (methods.size() > 1) {
+            throw new IllegalStateException("Test class " + testClass.getName()
+                    + " can have only one method annotated with @ProducerSetup");
+        }
+        FrameworkMethod method = methods.get(0);
+        Class<? extends ProducerSnapshotStrategy> strategyClass =
+                method.getAnnotation(ProducerSetup.class).snapshot();
+        try {
+            return Optional.of(new ProducerSetupModel(method, strategyClass.newInstance()));
+        } catch (InstantiationException | IllegalAccessException e) {
+            throw new IllegalStateException("Invalid producer snapshot strategy " + strategyClass.getName(), e);
+        }
+    }
+
+    /**
+     * @return {@link BeforeCombination} methods of the test class
+     */
+    public List<FrameworkMethod> getBeforeCombinationMethods() {
+        return testClass.getAnnotatedMethods(BeforeCombination.class);
+    }
+
+    /**
+     * @return {@link AfterCombination} methods of the test class
+     */
+    public List<FrameworkMethod> getAfterCombinationMethods() {
+        return testClass.getAnnotatedMethods(AfterCombination.class);
+    }
+
+    /**
+     * Returns the errors found when the test class was validated by the given runner type.
+     * The validation is done only once per runner type since all the combination runners
+     * of the same type validate the test class the same way. The combination hook methods
+     * are validated in addition to the given validation.
+     * @param runnerType Type of the runner validating the test class
+     * @param validator Validation to run if the class hasn't been validated by the runner type yet
+     * @return Validation errors. Empty list if the class is valid.
+     */
+    public List<Throwable> getInitializationErrors(Class<?> runnerType, Consumer<List<Throwable>> validator) {
+        return initializationErrors.computeIfAbsent(runnerType, type -> {
+            List<Throwable> errors = new ArrayList<>();
+            validator.accept(errors);
+            validateCombinationMethods(BeforeCombination.class, errors);
+            validateCombinationMethods(AfterCombination.class, errors);
+            return Collections.unmodifiableList(errors);
+        });
+    }
+
+    private void validateCombinationMethods(Class<? extends Annotation> annotation, List<Throwable> errors) {
+        for (FrameworkMethod method : testClass.getAnnotatedMethods(annotation)) {
+            method.validatePublicVoid(true, errors);
+            for (Class<?> parameterType : method.getMethod().getParameterTypes()) {
+                if (!COMBINATION_PARAMETER_TYPES.contains(parameterType)) {
+                    errors.add(new Exception("Method " + method.getName() + " has unsupported parameter type "
+                            + parameterType.getName() + ". Supported types are UserCombination and TestConfiguration"));
+                }
+            }
+        }
+    }
+
+    /**
+     * {@link ProducerSetup} method of a test class
+     */
+    public static class ProducerSetupModel {
+
+        private final FrameworkMethod method;
+        private final ProducerSnapshotStrategy snapshotStrategy;
+
+        ProducerSetupModel(FrameworkMethod method, ProducerSnapshotStrategy snapshotStrategy) {
+            this.method = method;
+            this.snapshotStrategy = snapshotStrategy;
+        }
+
+        public FrameworkMethod getMethod() {
+            return method;
+        }
+
+        public ProducerSnapshotStrategy getSnapshotStrategy() {
+            return snapshotStrategy;
+        }
+    }
+
+}
@@ -6,10 +6,14 @@ import fi.vincit.multiusertest.annotation.RunWithUsers;
 import fi.vincit.multiusertest.rule.EmptyUserDefinitionClass;
 import fi.vincit.multiusertest.rule.UserDefinitionClass;
 import fi.vincit.multiusertest.runner.junit.framework.BlockMultiUserTestClassRunner;
+import fi.vincit.multiusertest.test.UserPoolScope;
 import fi.vincit.multiusertest.util.merge.AlphabeticalMergeStrategy;
 import fi.vincit.multiusertest.util.merge.MergeStrategy;
 
+import java.lang.reflect.Method;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import static java.util.stream.Collectors.toCollection;
 
@@ -22,9 +26,67 @@ public class TestConfiguration {
     private final Collection<UserIdentifier> consumerIdentifiers;
     private final Optional<Class<?>> runner;
     private final Optional<Class<? extends Throwable>> defaultException;
+    private final int parallelism;
+    private final UserPoolScope userPoolScope;
+    private final int existingUserCacheSize;
+    private final boolean lazyConsumer;
+    private final int userPrefetch;
+    private final boolean loginElision;
+    private final int authenticationCacheSize;
+    private final CombinationOrder combinationOrder;
+    private final int sampleSize;
 
     private static final AlphabeticalMergeStrategy DEFAULT_MERGE_STRATEGY = new AlphabeticalMergeStrategy();
 
+    private static final ClassValue<TestConfiguration> CLASS_CONFIGURATIONS = new ClassValue<TestConfiguration>() {
+        @Override
+        protected TestConfiguration computeValue(Class<?> type) {
+            return fromRunWithUsers(
+                    Optional.ofNullable(type.getAnnotation(RunWithUsers.class)),
+                    Optional.ofNullable(type.getAnnotation(MultiUserTestConfig.class))
+            ).toImmutable();
+        }
+    };
+
+    private static final ClassValue<ConcurrentMap<Method, Optional<TestConfiguration>>> METHOD_CONFIGURATIONS =
+            new ClassValue<ConcurrentMap<Method, Optional<TestConfiguration>>>() {
+                @Override
+                protected ConcurrentMap<Method, Optional<TestConfiguration>> computeValue(Class<?> type) {
+                    return new ConcurrentHashMap<>();
+                }
+            };
+
+    /**
+     * Returns the configuration defined by the {@link RunWithUsers} and {@link MultiUserTestConfig}
+     * annotations of the given class. The configuration is resolved only once per class and
+     * the returned instance is shared so its identifier collections can't be modified.
+     * @param cls Test class or configuration class
+     * @return Shared configuration of the class
+     * @since 0.7
+     */
+    public static TestConfiguration fromClass(Class<?> cls) {
+        return CLASS_CONFIGURATIONS.get(cls);
+    }
+
+    /**
+     * Returns the configuration defined by the method's {@link RunWithUsers} or {@link IgnoreForUsers}
+     * annotation. The configuration is resolved only once per method and the returned instance is shared
+     * so its identifier collections can't be modified.
+     * @param method Test method
+     * @return Shared configuration of the method. Empty if the method doesn't have either annotation.
+     * @throws IllegalStateException If the method has both annotations
+     * @since 0.7
+     */
+    public static Optional<TestConfiguration> fromMethod(Method method) {
+        return METHOD_CONFIGURATIONS.get(method.getDeclaringClass()).computeIfAbsent(method, m ->
+                TestMethodFilter.getMethodConfiguration(
+                        Optional.ofNullable(m.getAnnotation(RunWithUsers.class)),
+                        Optional.ofNullable(m.getAnnotation(IgnoreForUsers.class)),
+                        m.getDeclaringClass()
+                ).map(TestConfiguration::toImmutable)
+        );
+    }
+
     public static TestConfiguration fromIgnoreForUsers(Optional<IgnoreForUsers> ignoredUsers, Optional<RunWithUsers> classUsers) {
 
         Class<?> runner = BlockMultiUserTestClassRunner.class;
@@ -97,37 +159,41 @@ public class TestConfiguration {
      */
     public static TestConfiguration fromRunWithUsers(Optional<RunWithUsers> testUsers, Optional<MultiUserTestConfig> multiUserTestConfig) {
 
-        Collection<UserIdentifier> producerIdentifiers = Collections.emptySet();
-        Collection<UserIdentifier> consumerIdentifier = Collections.emptySet();
-        Class<?> runner = BlockMultiUserTestClassRunner.class;
-        Class<? extends Throwable> defaultException = Defaults.getDefaultException();
+        Builder builder = builder()
+                .runner(BlockMultiUserTestClassRunner.class)
+                .defaultException(Defaults.getDefaultException());
 
         if (testUsers.isPresent()) {
             final RunWithUsers runWithUsers = testUsers.get();
-            producerIdentifiers = getDefinitions(
+            builder.producerIdentifiers(getDefinitions(
                     runWithUsers.producers(),
                     resolveUserDefinitionClass(runWithUsers.producerClass())
                             .getUsers(),
                     DEFAULT_MERGE_STRATEGY
-            );
-            consumerIdentifier = getDefinitions(
+            ));
+            builder.consumerIdentifiers(getDefinitions(
                     runWithUsers.consumers(),
                     resolveUserDefinitionClass(runWithUsers.consumerClass())
                             .getUsers(),
                     DEFAULT_MERGE_STRATEGY
-            );
+            ));
         }
         if (multiUserTestConfig.isPresent()) {
-            runner = multiUserTestConfig.get().runner();
-            defaultException = multiUserTestConfig.get().defaultException();
+            final MultiUserTestConfig config = multiUserTestConfig.get();
+            builder.runner(config.runner())
+                    .defaultException(config.defaultException())
+                    .parallelism(config.parallelism())
+                    .userPoolScope(config.userPool())
+                    .existingUserCacheSize(config.existingUserCacheSize())
+                    .lazyConsumer(config.lazyConsumer())
+                    .userPrefetch(config.userPrefetch())
+                    .loginElision(config.loginElision())
+                    .authenticationCacheSize(config.authenticationCacheSize())
+                    .combinationOrder(config.combinationOrder())
+                    .sampleSize(config.sampleSize());
         }
 
-        return new TestConfiguration(
-                producerIdentifiers,
-                consumerIdentifier,
-                runner,
-                defaultException
-        );
+        return builder.build();
     }
 
     static Collection<UserIdentifier> getDefinitions(String[] definitionsPrimary,
@@ -155,10 +221,74 @@ public class TestConfiguration {
     }
 
     TestConfiguration(Collection<UserIdentifier> producerIdentifiers, Collection<UserIdentifier> consumerIdentifiers, Class<?> runner, Class<? extends Throwable> defaultException) {
-        this.producerIdentifiers = producerIdentifiers;
-        this.consumerIdentifiers = consumerIdentifiers;
-        this.runner = Optional.ofNullable(runner);
-        this.defaultException = Optional.ofNullable(defaultException);
+        this(builder()
+                .producerIdentifiers(producerIdentifiers)
+                .consumerIdentifiers(consumerIdentifiers)
+                .runner(runner)
+                .defaultException(defaultException));
+    }
+
+    private TestConfiguration(Builder builder) {
+        if (builder.parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1 but was " + builder.parallelism);
+        }
+        if (builder.existingUserCacheSize < 0) {
+            throw new IllegalArgumentException("Existing user cache size must not be negative but was " + builder.existingUserCacheSize);
+        }
+        if (builder.userPrefetch < 0) {
+            throw new IllegalArgumentException("User prefetch must not be negative but was " + builder.userPrefetch);
+        }
+        if (builder.authenticationCacheSize < 0) {
+            throw new IllegalArgumentException("Authentication cache size must not be negative but was " + builder.authenticationCacheSize);
+        }
+        if (builder.sampleSize < 0) {
+            throw new IllegalArgumentException("Sample size must not be negative but was " + builder.sampleSize);
+        }
+        this.producerIdentifiers = builder.producerIdentifiers;
+        this.consumerIdentifiers = builder.consumerIdentifiers;
+        this.runner = Optional.ofNullable(builder.runner);
+        this.defaultException = Optional.ofNullable(builder.defaultException);
+        this.parallelism = builder.parallelism;
+        this.userPoolScope = Objects.requireNonNull(builder.userPoolScope, "User pool scope must not be null");
+        this.existingUserCacheSize = builder.existingUserCacheSize;
+        this.lazyConsumer = builder.lazyConsumer;
+        this.userPrefetch = builder.userPrefetch;
+        this.loginElision = builder.loginElision;
+        this.authenticationCacheSize = builder.authenticationCacheSize;
+        this.combinationOrder = Objects.requireNonNull(builder.combinationOrder, "Combination order must not be null");
+        this.sampleSize = builder.sampleSize;
+    }
+
+    /**
+     * @return Builder for a configuration. Options that are not set use the {@link Defaults}.
+     * @since 0.7
+     */
+    static Builder builder() {
+        return new Builder();
+    }
+
+    private TestConfiguration toImmutable() {
+        return toBuilder()
+                .producerIdentifiers(Collections.unmodifiableSet(new LinkedHashSet<>(producerIdentifiers)))
+                .consumerIdentifiers(Collections.unmodifiableSet(new LinkedHashSet<>(consumerIdentifiers)))
+                .build();
+    }
+
+    private Builder toBuilder() {
+        return builder()
+                .producerIdentifiers(producerIdentifiers)
+                .consumerIdentifiers(consumerIdentifiers)
+                .runner(runner.orElse(null))
+                .defaultException(defaultException.orElse(null))
+                .parallelism(parallelism)
+                .userPoolScope(userPoolScope)
+                .existingUserCacheSize(existingUserCacheSize)
+                .lazyConsumer(lazyConsumer)
+                .userPrefetch(userPrefetch)
+                .loginElision(loginElision)
+                .authenticationCacheSize(authenticationCacheSize)
+                .combinationOrder(combinationOrder)
+                .sampleSize(sampleSize);
     }
 
     public Collection<UserIdentifier> getProducerIdentifiers() {
@@ -176,4 +306,178 @@ public class TestConfiguration {
     public Optional<Class<? extends Throwable>> getDefaultException() {
         return defaultException;
     }
+
+    /**
+     * @return Maximum number of producer-consumer combinations run concurrently
+     * @since 0.7
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * @return Scope of the user pool
+     * @since 0.7
+     */
+    public UserPoolScope getUserPoolScope() {
+        return userPoolScope;
+    }
+
+    /**
+     * @return Maximum number of existing users cached per configuration class.
+     * Zero if existing users are not cached.
+     * @since 0.7
+     */
+    public int getExistingUserCacheSize() {
+        return existingUserCacheSize;
+    }
+
+    /**
+     * @return True if new consumers are created only when first used
+     * @since 0.7
+     */
+    public boolean isLazyConsumer() {
+        return lazyConsumer;
+    }
+
+    /**
+     * @return Maximum number of users per role created ahead in background.
+     * Zero if users are not prefetched.
+     * @since 0.7
+     */
+    public int getUserPrefetch() {
+        return userPrefetch;
+    }
+
+    /**
+     * @return True if logging in again with the logged in user is skipped
+     * @since 0.7
+     */
+    public boolean isLoginElision() {
+        return loginElision;
+    }
+
+    /**
+     * @return Maximum number of authentication objects cached per configuration class.
+     * Zero if authentication objects are not cached.
+     * @since 0.7
+     */
+    public int getAuthenticationCacheSize() {
+        return authenticationCacheSize;
+    }
+
+    /**
+     * @return Order in which the producer-consumer combinations are run
+     * @since 0.7
+     */
+    public CombinationOrder getCombinationOrder() {
+        return combinationOrder;
+    }
+
+    /**
+     * @return Number of randomly sampled combinations run per test class.
+     * Zero if all combinations are run.
+     * @since 0.7
+     */
+    public int getSampleSize() {
+        return sampleSize;
+    }
+
+    /**
+     * Builder for {@link TestConfiguration}. The options are validated when {@link #build()} is called.
+     * @since 0.7
+     */
+    static final class Builder {
+
+        private Collection<UserIdentifier> producerIdentifiers = Collections.emptySet();
+        private Collection<UserIdentifier> consumerIdentifiers = Collections.emptySet();
+        private Class<?> runner;
+        private Class<? extends Throwable> defaultException;
+        private int parallelism = Defaults.getParallelism();
+        private UserPoolScope userPoolScope = Defaults.getUserPoolScope();
+        private int existingUserCacheSize = Defaults.getExistingUserCacheSize();
+        private boolean lazyConsumer = Defaults.isLazyConsumer();
+        private int userPrefetch = Defaults.getUserPrefetch();
+        private boolean loginElision = Defaults.isLoginElision();
+        private int authenticationCacheSize = Defaults.getAuthenticationCacheSize();
+        private CombinationOrder combinationOrder = Defaults.getCombinationOrder();
+        private int sampleSize = Defaults.getSampleSize();
+
+        private Builder() {
+        }
+
+        Builder producerIdentifiers(Collection<UserIdentifier> producerIdentifiers) {
+            this.producerIdentifiers = producerIdentifiers;
+            return this;
+        }
+
+        Builder consumerIdentifiers(Collection<UserIdentifier> consumerIdentifiers) {
+            this.consumerIdentifiers = consumerIdentifiers;
+            return this;
+        }
+
+        Builder runner(Class<?> runner) {
+            this.runner = runner;
+            return this;
+        }
+
+        Builder defaultException(Class<? extends Throwable> defaultException) {
+            this.defaultException = defaultException;
+            return this;
+        }
+
+        Builder parallelism(int parallelism) {
+            this.parallelism = parallelism;
+            return this;
+        }
+
+        Builder userPoolScope(UserPoolScope userPoolScope) {
+            this.userPoolScope = userPoolScope;
+            return this;
+        }
+
+        Builder existingUserCacheSize(int existingUserCacheSize) {
+            this.existingUserCacheSize = existingUserCacheSize;
+            return this;
+        }
+
+        Builder lazyConsumer(boolean lazyConsumer) {
+            this.lazyConsumer = lazyConsumer;
+            return this;
+        }
+
+        Builder userPrefetch(int userPrefetch) {
+            this.userPrefetch = userPrefetch;
+            return this;
+        }
+
+        Builder loginElision(boolean loginElision) {
+            this.loginElision = loginElision;
+            return this;
+        }
+
+        Builder authenticationCacheSize(int authenticationCacheSize) {
+            this.authenticationCacheSize = authenticationCacheSize;
+            return this;
+        }
+
+        Builder combinationOrder(CombinationOrder combinationOrder) {
+            this.combinationOrder = combinationOrder;
+            return this;
+        }
+
+        Builder sampleSize(int sampleSize) {
+            this.sampleSize = sampleSize;
+            return this;
+        }
+
+        /**
+         * @return Configuration
+         * @throws IllegalArgumentException If an option is invalid
+         * @throws NullPointerException If the user pool scope or the combination order is null
+         */
+        TestConfiguration build() {
+            return new TestConfiguration(this);
+        }
+    }
 }
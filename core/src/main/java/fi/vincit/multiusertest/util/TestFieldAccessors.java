@@ -0,0 +1,141 @@
+package fi.vincit.multiusertest.util;
+
+import fi.vincit.multiusertest.annotation.MultiUserConfigClass;
+import fi.vincit.multiusertest.rule.AuthorizationRule;
+import fi.vincit.multiusertest.test.MultiUserConfig;
+import org.junit.Rule;
+import org.junit.runners.model.FrameworkField;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.util.Optional;
+
+/**
+ * Getters for the configuration and {@link AuthorizationRule} members of a test class.
+ * The members are searched only once per test class and read using cached method handles
+ * so that setting up a test doesn't need to scan the fields of the test class.
+ * @since 0.7
+ */
+class TestFieldAccessors {
+
+    private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+
+    private static final ClassValue<TestFieldAccessors> ACCESSORS = new ClassValue<TestFieldAccessors>() {
+        @Override
+        protected TestFieldAccessors computeValue(Class<?> type) {
+            return new TestFieldAccessors(type, findConfigField(type).map(TestFieldAccessors::toGetter));
+        }
+    };
+
+    private final Class<?> testClass;
+    private final Optional<MethodHandle> configGetter;
+    // Resolved lazily since only JUnit 4 test classes are scanned for rules and
+    // only classes run with the JUnit 5 extension need the field fallback
+    private volatile Optional<MethodHandle> authorizationRuleGetter;
+
+    /**
+     * @param testClass Class of the test instance
+     * @return Shared accessors of the class
+     */
+    static TestFieldAccessors of(Class<?> testClass) {
+        return ACCESSORS.get(testClass);
+    }
+
+    private TestFieldAccessors(Class<?> testClass, Optional<MethodHandle> configGetter) {
+        this.testClass = testClass;
+        this.configGetter = configGetter;
+    }
+
+    /**
+     * @return True if the class has a member annotated with {@link MultiUserConfigClass}
+     */
+    boolean hasConfig() {
+        return configGetter.isPresent();
+    }
+
+    /**
+     * @param testInstance Test instance
+     * @return Value of the configuration member. Empty if the class doesn't have
+     * the member or the member is null.
+     */
+    Optional<MultiUserConfig<?, ?>> getConfig(Object testInstance) {
+        if (configGetter.isPresent()) {
+            return Optional.ofNullable((MultiUserConfig<?, ?>) get(configGetter.get(), testInstance));
+        } else {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * @param testInstance Test instance
+     * @return Value of the {@link Rule} member for {@link AuthorizationRule} or, if the class doesn't have
+     * one, of the first {@link AuthorizationRule} field (JUnit 5 tests). Null if the member is null.
+     * @throws IllegalStateException If the class doesn't have authorization rule member
+     */
+    AuthorizationRule getAuthorizationRule(Object testInstance) {
+        Optional<MethodHandle> getter = authorizationRuleGetter;
+        if (getter == null) {
+            getter = findAuthorizationRuleField(testClass).map(TestFieldAccessors::toGetter);
+            authorizationRuleGetter = getter;
+        }
+
+        if (getter.isPresent()) {
+            return (AuthorizationRule) get(getter.get(), testInstance);
+        } else {
+            throw new IllegalStateException("Test class must have AuthorizationRule set");
+        }
+    }
+
+    private static Object get(MethodHandle getter, Object testInstance) {
+        try {
+            return getter.invokeExact(testInstance);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    private static Optional<Field> findConfigField(Class<?> testClass) {
+        for (Field field : testClass.getDeclaredFields()) {
+            if (field.isAnnotationPresent(MultiUserConfigClass.class)) {
+                return Optional.of(field);
+            }
+        }
+
+        for (Field field : testClass.getFields()) {
+            if (field.isAnnotationPresent(MultiUserConfigClass.class)) {
+                return Optional.of(field);
+            }
+        }
+        return Optional.empty();
+    }
+
+    private static Optional<Field> findAuthorizationRuleField(Class<?> testClass) {
+        for (FrameworkField ruleField : TestClassModel.of(testClass).getTestClass().getAnnotatedFields(Rule.class)) {
+            if (ruleField.getType().isAssignableFrom(AuthorizationRule.class)) {
+                return Optional.of(ruleField.getField());
+            }
+        }
+
+        for (Class<?> cls = testClass; cls != null && cls != Object.class; cls = cls.getSuperclass()) {
+            for (Field field : cls.getDeclaredFields()) {
+                if (AuthorizationRule.class.isAssignableFrom(field.getType())) {
+                    return Optional.of(field);
+                }
+            }
+        }
+        return Optional.empty();
+    }
+
+    private static MethodHandle toGetter(Field field) {
+        try {
+            field.setAccessible(true);
+            return MethodHandles.lookup().unreflectGetter(field).asType(GETTER_TYPE);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
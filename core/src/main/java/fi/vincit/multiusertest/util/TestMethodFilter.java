@@ -4,6 +4,7 @@ import fi.vincit.multiusertest.annotation.IgnoreForUsers;
 import fi.vincit.multiusertest.annotation.RunWithUsers;
 import org.junit.runners.model.FrameworkMethod;
 
+import java.lang.reflect.Method;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -33,32 +34,74 @@ public class TestMethodFilter {
      * @return True if given method should be run, otherwise false.
      */
     public boolean shouldRun(FrameworkMethod frameworkMethod) {
+        return shouldRun(
+                Optional.ofNullable(frameworkMethod.getAnnotation(RunWithUsers.class)),
+                Optional.ofNullable(frameworkMethod.getAnnotation(IgnoreForUsers.class)),
+                frameworkMethod.getDeclaringClass()
+        );
+    }
 
-        Optional<RunWithUsers> runWithUsersAnnotation =
-                Optional.ofNullable(frameworkMethod.getAnnotation(RunWithUsers.class));
-        Optional<IgnoreForUsers> ignoreForUsersAnnotation =
-                Optional.ofNullable(frameworkMethod.getAnnotation(IgnoreForUsers.class));
+    /**
+     * @param method Method to test against identifiers
+     * @return True if given method should be run, otherwise false.
+     * @since 0.7
+     */
+    public boolean shouldRun(Method method) {
+        Optional<TestConfiguration> configuration = TestConfiguration.fromMethod(method);
+        return !configuration.isPresent()
+                || shouldRun(configuration.get(), producerIdentifier, consumerIdentifier);
+    }
+
+    private boolean shouldRun(Optional<RunWithUsers> runWithUsersAnnotation,
+                              Optional<IgnoreForUsers> ignoreForUsersAnnotation,
+                              Class<?> declaringClass) {
+        Optional<TestConfiguration> configuration =
+                getMethodConfiguration(runWithUsersAnnotation, ignoreForUsersAnnotation, declaringClass);
 
+        // FIXME: Is this correct?
+        return !configuration.isPresent()
+                || shouldRun(configuration.get(), producerIdentifier, consumerIdentifier);
+    }
+
+    /**
+     * Resolves the users the method is configured to be run with.
+     * @param runWithUsersAnnotation Method's RunWithUsers annotation
+     * @param ignoreForUsersAnnotation Method's IgnoreForUsers annotation
+     * @param declaringClass Class declaring the method
+     * @return Method configuration. Empty if the method is run with all combinations.
+     * @throws IllegalStateException If both annotations are present
+     */
+    static Optional<TestConfiguration> getMethodConfiguration(Optional<RunWithUsers> runWithUsersAnnotation,
+                                                              Optional<IgnoreForUsers> ignoreForUsersAnnotation,
+                                                              Class<?> declaringClass) {
         if (runWithUsersAnnotation.isPresent() && ignoreForUsersAnnotation.isPresent()) {
             throw new IllegalStateException("Method can only have RunWithUsers or IgnoreForUsers annotation but not both.");
         }
 
-        TestConfiguration configuration;
         if (runWithUsersAnnotation.isPresent()) {
-            configuration = TestConfiguration.fromRunWithUsers(
+            return Optional.of(TestConfiguration.fromRunWithUsers(
                     runWithUsersAnnotation,
                     Optional.empty()
-            );
+            ));
         } else if (ignoreForUsersAnnotation.isPresent()) {
-            configuration = TestConfiguration.fromIgnoreForUsers(
+            return Optional.of(TestConfiguration.fromIgnoreForUsers(
                     ignoreForUsersAnnotation,
-                    Optional.ofNullable(frameworkMethod.getDeclaringClass().getAnnotation(RunWithUsers.class))
-            );
+                    Optional.ofNullable(declaringClass.getAnnotation(RunWithUsers.class))
+            ));
         } else {
-            // FIXME: Is this correct?
-            return true;
+            return Optional.empty();
         }
+    }
 
+    /**
+     * @param configuration Method configuration
+     * @param producerIdentifier Producer of the combination
+     * @param consumerIdentifier Consumer of the combination
+     * @return True if the method should be run with the combination, otherwise false.
+     */
+    static boolean shouldRun(TestConfiguration configuration,
+                             UserIdentifier producerIdentifier,
+                             UserIdentifier consumerIdentifier) {
         Collection<UserIdentifier> filterProducers = configuration.getProducerIdentifiers();
         Collection<UserIdentifier> filterConsumers = configuration.getConsumerIdentifiers();
 
@@ -0,0 +1,133 @@
+package fi.vincit.multiusertest.util;
+
+import fi.vincit.multiusertest.annotation.RunWithUsers;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * A single producer-consumer combination the tests of a test class are run with.
+ * @since 0.7
+ */
+public class UserCombination {
+
+    private final UserIdentifier producer;
+    private final UserIdentifier consumer;
+
+    /**
+     * Creates all producer-consumer combinations for the given identifiers. The combinations
+     * are returned in the order tests are run: for each producer all consumers in the given order.
+     * If no consumers are given {@link RunWithUsers#WITH_PRODUCER_ROLE} is used as the consumer.
+     * A combination equal to an earlier one (e.g. a definition listed twice or multi-role
+     * definitions with the same roles in a different order) is returned only once.
+     * @param producerIdentifiers Producer identifiers
+     * @param consumerIdentifiers Consumer identifiers
+     * @return All distinct combinations for the given identifiers
+     * @throws IllegalArgumentException If the identifiers are not valid
+     */
+    public static List<UserCombination> combine(Collection<UserIdentifier> producerIdentifiers, Collection<UserIdentifier> consumerIdentifiers) {
+        if (consumerIdentifiers.isEmpty()) {
+            consumerIdentifiers = Collections.singletonList(UserIdentifier.getWithProducerRole());
+        }
+        validateProducers(producerIdentifiers);
+        validateConsumers(producerIdentifiers, consumerIdentifiers);
+
+        Set<UserCombination> combinations = new LinkedHashSet<>(producerIdentifiers.size() * consumerIdentifiers.size());
+        for (UserIdentifier producerIdentifier : producerIdentifiers) {
+            for (UserIdentifier consumerIdentifier : consumerIdentifiers) {
+                combinations.add(new UserCombination(producerIdentifier, consumerIdentifier));
+            }
+        }
+        return new ArrayList<>(combinations);
+    }
+
+    static void validateConsumers(Collection<UserIdentifier> producerIdentifiers, Collection<UserIdentifier> consumerIdentifiers) {
+        boolean containsExistingUserDefinition = false;
+        for (UserIdentifier identifier : producerIdentifiers) {
+            if (identifier.getType() == UserIdentifier.Type.USER) {
+                containsExistingUserDefinition = true;
+            }
+        }
+
+        if (containsExistingUserDefinition
+                && consumerIdentifiers.contains(UserIdentifier.getWithProducerRole())) {
+            throw new IllegalArgumentException("User definitions can't contain WITH_PRODUCER_ROLE when producers have a 'user' definition");
+        }
+    }
+
+    static void validateProducers(Collection<UserIdentifier> producerIdentifiers) {
+        if (producerIdentifiers.isEmpty()) {
+            throw new IllegalArgumentException("Producer must be specified");
+        }
+
+        if (producerIdentifiers.contains(UserIdentifier.getProducer())) {
+            throw new IllegalArgumentException("Producer can't use PRODUCER role");
+        }
+
+        if (producerIdentifiers.contains(UserIdentifier.getWithProducerRole())) {
+            throw new IllegalArgumentException("Producer can't use WITH_PRODUCER_ROLE role");
+        }
+    }
+
+    public UserCombination(UserIdentifier producer, UserIdentifier consumer) {
+        Objects.requireNonNull(producer, "Producer must not be null");
+        Objects.requireNonNull(consumer, "Consumer must not be null");
+        this.producer = producer;
+        this.consumer = consumer;
+    }
+
+    public UserIdentifier getProducer() {
+        return producer;
+    }
+
+    public UserIdentifier getConsumer() {
+        return consumer;
+    }
+
+    /**
+     * Checks whether the combination uses the same kind of users as the given combination.
+     * A {@link RunWithUsers#WITH_PRODUCER_ROLE} consumer is equivalent to a consumer
+     * with the producer's role, since both create a new user with the same role.
+     * @param other Other combination
+     * @return True if the combinations are equal or equivalent
+     */
+    public boolean isEquivalentTo(UserCombination other) {
+        return producer.equals(other.producer) && getEffectiveConsumer().equals(other.getEffectiveConsumer());
+    }
+
+    private UserIdentifier getEffectiveConsumer() {
+        if (consumer.getType() == UserIdentifier.Type.WITH_PRODUCER_ROLE
+                && producer.getType() == UserIdentifier.Type.ROLE) {
+            return producer;
+        }
+        return consumer;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("producer={%s}, consumer={%s}", producer, consumer);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+
+        UserCombination that = (UserCombination) o;
+        return producer.equals(that.producer) && consumer.equals(that.consumer);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * producer.hashCode() + consumer.hashCode();
+    }
+}
@@ -1,169 +1,243 @@
-package fi.vincit.multiusertest.util;
-
-import fi.vincit.multiusertest.annotation.RunWithUsers;
-import fi.vincit.multiusertest.runner.junit.MultiUserTestRunner;
-
-import java.util.Collection;
-import java.util.Collections;
-import java.util.function.Function;
-import java.util.stream.Stream;
-
-import static java.util.stream.Collectors.toSet;
-
-/**
- * Generic definition of a user to use in the tests. Defines what kind of
- * user is being used in the tests. E.g. is user created with a certain role or is an existing
- * user used.
- */
-public class UserIdentifier {
-
-    public static final String ROLE_SPLITTER = ":";
-    public static final String IDENTIFIER_SPLITTER = ":";
-
-
-    /**
-     * Definitions for user types. Specifies what kind of
-     * user is created for logging in or should an existing user be used.
-     */
-    public enum Type {
-        /**
-         * Same as producer user
-         */
-        PRODUCER,
-        /**
-         * New user with the same role as the producer used
-         */
-        WITH_PRODUCER_ROLE,
-        /**
-         * User with certain role.
-         */
-        ROLE,
-        /**
-         * Existing user. No new user created.
-         */
-        USER,
-        /**
-         * Not logged in user.
-         */
-        ANONYMOUS
-    }
-
-    private final Type type;
-    private final String identifier;
-    private final Collection<String> identifierParts;
-
-    /**
-     * Parses a user identifier string and creates a {@link UserIdentifier} instance.
-     * user identifier string is in format <i><type>:<identifier></identifier></i> e.g. <i>user:admin</i> or <i>role:ROLE_ADMIN</i>
-     * @param identifierString User identifier string to parse
-     * @return UserIdentifier object
-     */
-    public static UserIdentifier parse(String identifierString) {
-        if (identifierString.equals(RunWithUsers.PRODUCER)) {
-            return getProducer();
-        } else if (identifierString.equals(RunWithUsers.WITH_PRODUCER_ROLE)) {
-            return getWithProducerRole();
-        } else if (identifierString.equals(RunWithUsers.ANONYMOUS)) {
-            return getAnonymous();
-        } else if (identifierString.startsWith(MultiUserTestRunner.USER_PREFIX) || identifierString.startsWith(MultiUserTestRunner.ROLE_PREFIX)) {
-            String[] data = identifierString.split(IDENTIFIER_SPLITTER, 2);
-            return new UserIdentifier(Type.valueOf(data[0].toUpperCase()), data[1]);
-        } else {
-            throw new IllegalArgumentException("invalid producer parameter: <" + identifierString +
-                    ">. Parameter has to start with \"role:\" or \"user:\" or it has to be RunWithUsers.PRODUCER or RunWithUsers.WITH_PRODUCER_ROLE.");
-        }
-    }
-
-    /**
-     * Utility method for splitting multi-role identifier to Strings
-     * and mapping them to wanted type.
-     * An utility method is used to preserve backwards compatibility.
-     * In future major version updates this may change.
-     * @since 0.5
-     * @param identifier Identifier without type
-     * @param mapper Mapper function for String -> role type mapping
-     * @return One or more identifiers
-     */
-    public static <T> Collection<T> mapMultiRoleIdentifier(String identifier, Function<String, T> mapper) {
-        if (identifier != null) {
-            return Stream.of(identifier.split(ROLE_SPLITTER))
-                    .filter(role -> !role.isEmpty())
-                    .map(mapper)
-                    .collect(toSet());
-        } else {
-            return Collections.emptySet();
-        }
-    }
-
-    public static UserIdentifier getAnonymous() {
-        return new UserIdentifier(Type.ANONYMOUS, null);
-    }
-
-    public static UserIdentifier getProducer() {
-        return new UserIdentifier(Type.PRODUCER, null);
-    }
-
-    public static UserIdentifier getWithProducerRole() {
-        return new UserIdentifier(Type.WITH_PRODUCER_ROLE, null);
-    }
-
-    /**
-     * Creates a new {@link UserIdentifier} with the given type and identifier.
-     * Usually objects are instantiated using {@link this#parse(String)} for creating objects.
-     * @param type Role type
-     * @param identifier Identifier (user name or role name)
-     */
-    public UserIdentifier(Type type, String identifier) {
-        this.type = type;
-        this.identifier = identifier;
-        this.identifierParts = mapMultiRoleIdentifier(identifier, Function.identity());
-    }
-
-    public Type getType() {
-        return type;
-    }
-
-    public String getIdentifier() {
-        return identifier;
-    }
-
-    @Override
-    public String toString() {
-        final String typeString = type.toString().toLowerCase();
-        if (identifier != null) {
-            return typeString + IDENTIFIER_SPLITTER + identifier;
-        } else {
-            return typeString;
-        }
-    }
-
-    @Override
-    public boolean equals(Object o) {
-        if (this == o) {
-            return true;
-        }
-        if (o == null || getClass() != o.getClass()) {
-            return false;
-        }
-
-        UserIdentifier that = (UserIdentifier) o;
-
-        if (type != that.type) {
-            return false;
-        }
-
-        if (identifierParts != null) {
-            return identifierParts.equals(that.identifierParts);
-        } else {
-            return that.identifierParts == null;
-        }
-
-    }
-
-    @Override
-    public int hashCode() {
-        int result = type.hashCode();
-        result = 31 * result + (identifierParts != null ? identifierParts.hashCode() : 0);
-        return result;
-    }
-}
+package fi.vincit.multiusertest.util;
+
+import fi.vincit.multiusertest.annotation.RunWithUsers;
+import fi.vincit.multiusertest.runner.junit.MultiUserTestRunner;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Objects;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+import static java.util.stream.Collectors.toSet;
+
+/**
+ * <p>
+ * Generic definition of a user to use in the tests. Defines what kind of
+ * user is being used in the tests. E.g. is user created with a certain role or is an existing
+ * user used.
+ * </p>
+ * <p>
+ * Identifiers are immutable. {@link #parse(String)} and {@link #of(Type, String)} return
+ * shared canonical instances so that the same definition is always the same object and comparing
+ * identifiers is an identity check. The roles of a canonical role identifier are sorted and
+ * duplicates removed, so e.g. <i>role:B:A</i> and <i>role:A:B</i> are both <i>role:A:B</i>.
+ * Identifiers created with the public constructor keep their spelling and are equal to the
+ * canonical identifier with the same type and roles.
+ * </p>
+ */
+public class UserIdentifier {
+
+    public static final String ROLE_SPLITTER = ":";
+    public static final String IDENTIFIER_SPLITTER = ":";
+
+    private static final ConcurrentMap<String, UserIdentifier> PARSED_IDENTIFIERS = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String, UserIdentifier> IDENTIFIERS = new ConcurrentHashMap<>();
+
+    /**
+     * Definitions for user types. Specifies what kind of
+     * user is created for logging in or should an existing user be used.
+     */
+    public enum Type {
+        /**
+         * Same as producer user
+         */
+        PRODUCER,
+        /**
+         * New user with the same role as the producer used
+         */
+        WITH_PRODUCER_ROLE,
+        /**
+         * User with certain role.
+         */
+        ROLE,
+        /**
+         * Existing user. No new user created.
+         */
+        USER,
+        /**
+         * Not logged in user.
+         */
+        ANONYMOUS
+    }
+
+    private static final UserIdentifier PRODUCER = new UserIdentifier(Type.PRODUCER, null, true);
+    private static final UserIdentifier WITH_PRODUCER_ROLE = new UserIdentifier(Type.WITH_PRODUCER_ROLE, null, true);
+    private static final UserIdentifier ANONYMOUS = new UserIdentifier(Type.ANONYMOUS, null, true);
+
+    private final Type type;
+    private final String identifier;
+    private final String canonicalIdentifier;
+    private final boolean canonical;
+    private final int hash;
+
+    /**
+     * Parses a user identifier string and creates a {@link UserIdentifier} instance.
+     * user identifier string is in format <i><type>:<identifier></identifier></i> e.g. <i>user:admin</i> or <i>role:ROLE_ADMIN</i>
+     * @param identifierString User identifier string to parse
+     * @return UserIdentifier object
+     */
+    public static UserIdentifier parse(String identifierString) {
+        UserIdentifier userIdentifier = PARSED_IDENTIFIERS.get(identifierString);
+        if (userIdentifier == null) {
+            userIdentifier = parseIdentifier(identifierString);
+            UserIdentifier existing = PARSED_IDENTIFIERS.putIfAbsent(identifierString, userIdentifier);
+            if (existing != null) {
+                userIdentifier = existing;
+            }
+        }
+        return userIdentifier;
+    }
+
+    private static UserIdentifier parseIdentifier(String identifierString) {
+        if (identifierString.equals(RunWithUsers.PRODUCER)) {
+            return getProducer();
+        } else if (identifierString.equals(RunWithUsers.WITH_PRODUCER_ROLE)) {
+            return getWithProducerRole();
+        } else if (identifierString.equals(RunWithUsers.ANONYMOUS)) {
+            return getAnonymous();
+        } else if (identifierString.startsWith(MultiUserTestRunner.USER_PREFIX) || identifierString.startsWith(MultiUserTestRunner.ROLE_PREFIX)) {
+            String[] data = identifierString.split(IDENTIFIER_SPLITTER, 2);
+            return of(Type.valueOf(data[0].toUpperCase()), data[1]);
+        } else {
+            throw new IllegalArgumentException("invalid producer parameter: <" + identifierString +
+                    ">. Parameter has to start with \"role:\" or \"user:\" or it has to be RunWithUsers.PRODUCER or RunWithUsers.WITH_PRODUCER_ROLE.");
+        }
+    }
+
+    /**
+     * Utility method for splitting multi-role identifier to Strings
+     * and mapping them to wanted type.
+     * An utility method is used to preserve backwards compatibility.
+     * In future major version updates this may change.
+     * @since 0.5
+     * @param identifier Identifier without type
+     * @param mapper Mapper function for String -> role type mapping
+     * @return One or more identifiers
+     */
+    public static <T> Collection<T> mapMultiRoleIdentifier(String identifier, Function<String, T> mapper) {
+        if (identifier != null) {
+            return Stream.of(identifier.split(ROLE_SPLITTER))
+                    .filter(role -> !role.isEmpty())
+                    .map(mapper)
+                    .collect(toSet());
+        } else {
+            return Collections.emptySet();
+        }
+    }
+
+    public static UserIdentifier getAnonymous() {
+        return ANONYMOUS;
+    }
+
+    public static UserIdentifier getProducer() {
+        return PRODUCER;
+    }
+
+    public static UserIdentifier getWithProducerRole() {
+        return WITH_PRODUCER_ROLE;
+    }
+
+    /**
+     * Returns the shared canonical {@link UserIdentifier} with the given type and identifier.
+     * @param type Role type
+     * @param identifier Identifier (user name or role name)
+     * @return Shared identifier
+     * @since 0.7
+     */
+    public static UserIdentifier of(Type type, String identifier) {
+        switch (type) {
+            case PRODUCER: return PRODUCER;
+            case WITH_PRODUCER_ROLE: return WITH_PRODUCER_ROLE;
+            case ANONYMOUS: return ANONYMOUS;
+            default: break;
+        }
+        String canonicalIdentifier = canonicalize(type, identifier);
+        String key = canonicalIdentifier != null ? type + IDENTIFIER_SPLITTER + canonicalIdentifier : type.name();
+        UserIdentifier userIdentifier = IDENTIFIERS.get(key);
+        if (userIdentifier == null) {
+            userIdentifier = new UserIdentifier(type, canonicalIdentifier, true);
+            UserIdentifier existing = IDENTIFIERS.putIfAbsent(key, userIdentifier);
+            if (existing != null) {
+                userIdentifier = existing;
+            }
+        }
+        return userIdentifier;
+    }
+
+    /**
+     * Roles are sorted and duplicate and empty roles removed. User names
+     * are kept as they are.
+     */
+    private static String canonicalize(Type type, String identifier) {
+        if (type != Type.ROLE || identifier == null) {
+            return identifier;
+        }
+        TreeSet<String> roles = new TreeSet<>(mapMultiRoleIdentifier(identifier, Function.identity()));
+        return roles.isEmpty() ? null : String.join(ROLE_SPLITTER, roles);
+    }
+
+    /**
+     * Creates a new {@link UserIdentifier} with the given type and identifier.
+     * Usually objects are instantiated using {@link this#parse(String)} or
+     * {@link this#of(Type, String)} which return shared canonical instances.
+     * @param type Role type
+     * @param identifier Identifier (user name or role name)
+     */
+    public UserIdentifier(Type type, String identifier) {
+        this(type, identifier, false);
+    }
+
+    private UserIdentifier(Type type, String identifier, boolean canonical) {
+        this.type = type;
+        this.identifier = identifier;
+        this.canonicalIdentifier = canonicalize(type, identifier);
+        this.canonical = canonical;
+        this.hash = 31 * type.hashCode() + Objects.hashCode(canonicalIdentifier);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getIdentifier() {
+        return identifier;
+    }
+
+    @Override
+    public String toString() {
+        final String typeString = type.toString().toLowerCase();
+        if (identifier != null) {
+            return typeString + IDENTIFIER_SPLITTER + identifier;
+        } else {
+            return typeString;
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+
+        UserIdentifier that = (UserIdentifier) o;
+        if (canonical && that.canonical) {
+            return false;
+        }
+
+        return type == that.type
+                && hash == that.hash
+                && Objects.equals(canonicalIdentifier, that.canonicalIdentifier);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+}
@@ -0,0 +1,161 @@
+package fi.vincit.multiusertest.util.snapshot;
+
+import fi.vincit.multiusertest.annotation.MultiUserConfigClass;
+import fi.vincit.multiusertest.rule.AuthorizationRule;
+import org.junit.ClassRule;
+import org.junit.Rule;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.NotSerializableException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * <p>
+ * Default {@link ProducerSnapshotStrategy}. Copies the instance fields of the test
+ * class set by the producer setup to the later test instances. Each test gets its own
+ * deep copy of the field values, so changes a consumer makes to the objects created by
+ * the producer setup are not seen by the other consumers. The values are copied with
+ * Java serialization, so they have to be {@link java.io.Serializable}. References between
+ * the fields are kept in the copies.
+ * </p>
+ * <p>
+ * Static, final and transient fields, the configuration class field, rules, the authorization
+ * rule and fields injected by a dependency injection framework (<code>Autowired</code>,
+ * <code>Inject</code> or <code>Resource</code>) are not copied. Fields that hold values which
+ * can't be serialized and don't have to be restored should be made transient. Fields set by the
+ * <code>Before</code> methods are overwritten too, so state that has to be separate for
+ * each test should be kept in final fields or created in the test method.
+ * </p>
+ * @since 0.7
+ */
+public class FieldSnapshotStrategy implements ProducerSnapshotStrategy {
+
+    private static final Set<String> INJECTION_ANNOTATIONS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            "org.springframework.beans.factory.annotation.Autowired",
+            "javax.inject.Inject",
+            "javax.annotation.Resource"
+    )));
+
+    /**
+     * @throws IllegalStateException If a field value can't be serialized
+     */
+    @Override
+    public Object snapshot(Object testInstance) throws IllegalAccessException, IOException {
+        List<Field> fields = getSnapshotFields(testInstance.getClass());
+        Object[] values = new Object[fields.size()];
+        for (int i = 0; i < fields.size(); ++i) {
+            values[i] = fields.get(i).get(testInstance);
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream output = new ObjectOutputStream(bytes)) {
+            output.writeObject(values);
+        } catch (NotSerializableException e) {
+            throw new IllegalStateException("Producer setup state of " + testInstance.getClass().getName()
+                    + " can't be copied. Make " + e.getMessage() + " serializable, make the field transient"
+                    + " or use another ProducerSnapshotStrategy", e);
+        }
+        return new Snapshot(fields, bytes.toByteArray());
+    }
+
+    @Override
+    public void restore(Object snapshot, Object testInstance) throws IllegalAccessException, IOException, ClassNotFoundException {
+        Snapshot fieldSnapshot = (Snapshot) snapshot;
+        Object[] values = fieldSnapshot.copyValues(testInstance.getClass().getClassLoader());
+        for (int i = 0; i < values.length; ++i) {
+            fieldSnapshot.fields.get(i).set(testInstance, values[i]);
+        }
+    }
+
+    /**
+     * @param field Instance field of the test class or its superclasses
+     * @return True if the field is copied to the later tests
+     */
+    protected boolean isSnapshotField(Field field) {
+        int modifiers = field.getModifiers();
+        return !Modifier.isStatic(modifiers)
+                && !Modifier.isFinal(modifiers)
+                && !Modifier.isTransient(modifiers)
+                && !field.isSynthetic()
+                && !field.isAnnotationPresent(MultiUserConfigClass.class)
+                && !field.isAnnotationPresent(Rule.class)
+                && !field.isAnnotationPresent(ClassRule.class)
+                && !isInjected(field)
+                && !AuthorizationRule.class.isAssignableFrom(field.getType());
+    }
+
+    private List<Field> getSnapshotFields(Class<?> testClass) {
+        List<Field> fields = new ArrayList<>();
+        for (Class<?> cls = testClass; cls != null && cls != Object.class; cls = cls.getSuperclass()) {
+            for (Field field : cls.getDeclaredFields()) {
+                if (isSnapshotField(field)) {
+                    field.setAccessible(true);
+                    fields.add(field);
+                }
+            }
+        }
+        return fields;
+    }
+
+    private static boolean isInjected(Field field) {
+        for (Annotation annotation : field.getAnnotations()) {
+            if (INJECTION_ANNOTATIONS.contains(annotation.annotationType().getName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static class Snapshot {
+
+        private final List<Field> fields;
+        private final byte[] values;
+
+        Snapshot(List<Field> fields, byte[] values) {
+            this.fields = fields;
+            this.values = values;
+        }
+
+        Object[] copyValues(ClassLoader classLoader) throws IOException, ClassNotFoundException {
+            try (ObjectInputStream input = new ClassLoaderObjectInputStream(new ByteArrayInputStream(values), classLoader)) {
+                return (Object[]) input.readObject();
+            }
+        }
+    }
+
+    /**
+     * Resolves the classes of the copied values with the class loader of the test class.
+     */
+    private static class ClassLoaderObjectInputStream extends ObjectInputStream {
+
+        private final ClassLoader classLoader;
+
+        ClassLoaderObjectInputStream(InputStream input, ClassLoader classLoader) throws IOException {
+            super(input);
+            this.classLoader = classLoader;
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass description) throws IOException, ClassNotFoundException {
+            try {
+                return Class.forName(description.getName(), false, classLoader);
+            } catch (ClassNotFoundException e) {
+                return super.resolveClass(description);
+            }
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package fi.vincit.multiusertest.util.snapshot;
+
+import fi.vincit.multiusertest.annotation.ProducerSetup;
+
+/**
+ * Captures the state created by a {@link ProducerSetup} method and restores it for
+ * the later tests run with the same producer. Implementations must have a public
+ * no-argument constructor. One strategy instance is used per test class.
+ * <p>
+ * The consumers must not see each other's changes, so {@link #restore(Object, Object)} has to
+ * give each test its own copy of the state, e.g. a deep copy of the objects like
+ * {@link FieldSnapshotStrategy} or a database savepoint.
+ * </p>
+ * @since 0.7
+ */
+public interface ProducerSnapshotStrategy {
+
+    /**
+     * Called once per producer after the producer setup method has been run.
+     * @param testInstance Test instance that ran the producer setup
+     * @return Snapshot passed to {@link #restore(Object, Object)}
+     * @throws Exception If the snapshot can't be taken
+     */
+    Object snapshot(Object testInstance) throws Exception;
+
+    /**
+     * Called for each later test run with the same producer instead of the producer
+     * setup method. Called after the <code>Before</code> methods with the producer logged in.
+     * @param snapshot Snapshot returned by {@link #snapshot(Object)}
+     * @param testInstance Test instance to restore the state to
+     * @throws Exception If the state can't be restored
+     */
+    void restore(Object snapshot, Object testInstance) throws Exception;
+
+    /**
+     * Called once for each snapshot when the test class has been run, also when the
+     * tests of the producer were filtered out or failed. Can be used to remove the
+     * data created by the producer setup. Does nothing by default.
+     * @param snapshot Snapshot returned by {@link #snapshot(Object)}
+     * @throws Exception If the snapshot can't be released
+     * @since 0.7
+     */
+    default void release(Object snapshot) throws Exception {
+    }
+}
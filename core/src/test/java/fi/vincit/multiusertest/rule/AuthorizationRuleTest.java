@@ -1,6 +1,8 @@
 package fi.vincit.multiusertest.rule;
 
+import fi.vincit.multiusertest.rule.expectation2.ExpectationTable;
 import fi.vincit.multiusertest.rule.expectation2.TestExpectation;
+import fi.vincit.multiusertest.rule.expectation2.value.TestValueExpectation;
 import fi.vincit.multiusertest.rule.expection.Expectation;
 import fi.vincit.multiusertest.util.UserIdentifier;
 import fi.vincit.multiusertest.util.UserIdentifiers;
@@ -12,6 +14,7 @@ import org.junit.runners.model.Statement;
 
 import java.io.IOException;
 
+import static fi.vincit.multiusertest.rule.expectation2.TestExpectations.expectValue;
 import static fi.vincit.multiusertest.util.UserIdentifiers.anyOf;
 import static org.hamcrest.core.Is.is;
 import static org.junit.Assert.assertThat;
@@ -180,4 +183,44 @@ public class AuthorizationRuleTest {
         rule.apply(null, mock(Description.class))
                 .evaluate();
     }
+
+    @Test
+    public void testCallWithExpectationTable() throws Throwable {
+        TestExpectation fooExpectation = mock(TestExpectation.class);
+        TestExpectation otherwise = mock(TestExpectation.class);
+        ExpectationTable<TestExpectation> table = ExpectationTable.forFunctionCalls()
+                .whenCalledWith(anyOf("user:Foo"))
+                .then(fooExpectation)
+                .otherwise(otherwise)
+                .build();
+
+        AuthorizationRule rule = new AuthorizationRule();
+        rule.setRole(UserIdentifier.parse("user:Foo"));
+        rule.testCall(() -> {}, table);
+
+        rule.setRole(UserIdentifier.parse("user:Bar"));
+        rule.testCall(() -> {}, table);
+
+        verify(fooExpectation).handleExceptionNotThrown(UserIdentifier.parse("user:Foo"));
+        verify(otherwise).handleExceptionNotThrown(UserIdentifier.parse("user:Bar"));
+
+        // Expectation construction is never left open
+        rule.apply(null, mock(Description.class))
+                .evaluate();
+    }
+
+    @Test
+    public void testCallWithValueExpectationTable() throws Throwable {
+        ExpectationTable<TestValueExpectation<Integer>> table = ExpectationTable.<Integer>forReturnValues()
+                .whenCalledWith(anyOf("user:Foo"))
+                .then(expectValue(1))
+                .build();
+
+        AuthorizationRule rule = new AuthorizationRule();
+        rule.setRole(UserIdentifier.parse("user:Foo"));
+        rule.testCall(() -> 1, table);
+
+        expectedException.expect(AssertionError.class);
+        rule.testCall(() -> 2, table);
+    }
 }
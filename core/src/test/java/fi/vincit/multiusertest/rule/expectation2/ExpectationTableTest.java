@@ -0,0 +1,126 @@
+package fi.vincit.multiusertest.rule.expectation2;
+
+import fi.vincit.multiusertest.rule.expectation2.call.FunctionCallWhenThen;
+import fi.vincit.multiusertest.rule.expectation2.value.ReturnValueWhenThen;
+import fi.vincit.multiusertest.rule.expectation2.value.TestValueExpectation;
+import fi.vincit.multiusertest.util.UserIdentifier;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import static fi.vincit.multiusertest.util.UserIdentifiers.roles;
+import static fi.vincit.multiusertest.util.UserIdentifiers.users;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+
+public class ExpectationTableTest {
+
+    @Rule
+    public ExpectedException expectedException = ExpectedException.none();
+
+    @Test
+    public void getExpectation() {
+        TestExpectation userExpectation = mock(TestExpectation.class);
+        TestExpectation adminExpectation = mock(TestExpectation.class);
+
+        ExpectationTable<TestExpectation> table = ExpectationTable.forFunctionCalls()
+                .whenCalledWithAnyOf(roles("ROLE_USER"), users("foo"))
+                .then(userExpectation)
+                .whenCalledWithAnyOf("role:ROLE_ADMIN")
+                .then(adminExpectation)
+                .build();
+
+        assertThat(table.getExpectation(UserIdentifier.parse("role:ROLE_USER")), sameInstance(userExpectation));
+        assertThat(table.getExpectation(UserIdentifier.parse("user:foo")), sameInstance(userExpectation));
+        assertThat(table.getExpectation(UserIdentifier.parse("role:ROLE_ADMIN")), sameInstance(adminExpectation));
+    }
+
+    @Test
+    public void getExpectation_Default() {
+        ExpectationTable<TestExpectation> table = ExpectationTable.forFunctionCalls()
+                .whenCalledWithAnyOf("role:ROLE_ADMIN")
+                .then(mock(TestExpectation.class))
+                .build();
+
+        assertThat(table.getExpectation(UserIdentifier.parse("role:ROLE_USER")),
+                sameInstance(FunctionCallWhenThen.defaultExpectation()));
+    }
+
+    @Test
+    public void getExpectation_DefaultForValues() {
+        ExpectationTable<TestValueExpectation<Integer>> table = ExpectationTable.<Integer>forReturnValues()
+                .build();
+
+        assertThat(table.getExpectation(UserIdentifier.parse("role:ROLE_USER")),
+                sameInstance(ReturnValueWhenThen.<Integer>defaultExpectation()));
+    }
+
+    @Test
+    public void getExpectation_Otherwise() {
+        TestExpectation otherwise = mock(TestExpectation.class);
+        ExpectationTable<TestExpectation> table = ExpectationTable.forFunctionCalls()
+                .otherwise(otherwise)
+                .build();
+
+        assertThat(table.getExpectation(UserIdentifier.getAnonymous()), sameInstance(otherwise));
+    }
+
+    @Test
+    public void builderChangesDontAffectBuiltTable() {
+        ExpectationTable.Builder<TestExpectation> builder = ExpectationTable.forFunctionCalls();
+        ExpectationTable<TestExpectation> table = builder.build();
+
+        TestExpectation expectation = mock(TestExpectation.class);
+        builder.whenCalledWithAnyOf("role:ROLE_USER").then(expectation);
+
+        assertThat(table.getExpectation(UserIdentifier.parse("role:ROLE_USER")) == expectation, is(false));
+    }
+
+    @Test
+    public void then_ThrowsIfIdentifierAlreadyHasExpectation() {
+        expectedException.expect(IllegalStateException.class);
+        expectedException.expectMessage("User identifier role:ROLE_USER already has expectation");
+
+        ExpectationTable.forFunctionCalls()
+                .whenCalledWithAnyOf("role:ROLE_USER")
+                .then(mock(TestExpectation.class))
+                .whenCalledWithAnyOf("role:ROLE_USER")
+                .then(mock(TestExpectation.class));
+    }
+
+    @Test
+    public void then_ThrowsIfNoIdentifiers() {
+        expectedException.expect(IllegalStateException.class);
+        expectedException.expectMessage("Call whenCalledWith before calling then method");
+
+        ExpectationTable.forFunctionCalls()
+                .then(mock(TestExpectation.class));
+    }
+
+    @Test
+    public void whenCalledWith_ThrowsIfSameAddedTwice() {
+        expectedException.expect(IllegalStateException.class);
+        expectedException.expectMessage("User identifier role:ROLE_USER already set");
+
+        ExpectationTable.forFunctionCalls()
+                .whenCalledWithAnyOf("role:ROLE_USER", "role:ROLE_USER");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void whenCalledWith_ThrowsIfEmpty() {
+        ExpectationTable.forFunctionCalls()
+                .whenCalledWith(new UserIdentifier[0]);
+    }
+
+    @Test
+    public void build_ThrowsIfThenNotCalled() {
+        expectedException.expect(IllegalStateException.class);
+        expectedException.expectMessage("Call then method before building the expectation table");
+
+        ExpectationTable.forFunctionCalls()
+                .whenCalledWithAnyOf("role:ROLE_USER")
+                .build();
+    }
+}
@@ -2,17 +2,34 @@ package fi.vincit.multiusertest.runner.junit;
 
 import fi.vincit.multiusertest.annotation.MultiUserTestConfig;
 import fi.vincit.multiusertest.annotation.RunWithUsers;
+import fi.vincit.multiusertest.runner.junit.framework.BlockMultiUserTestClassRunner;
+import fi.vincit.multiusertest.util.CombinationSelection;
+import fi.vincit.multiusertest.util.TestClassModel;
+import fi.vincit.multiusertest.util.UserCombination;
 import fi.vincit.multiusertest.util.UserIdentifier;
 import org.junit.Ignore;
 import org.junit.Test;
 import org.junit.runner.Description;
+import org.junit.runner.Result;
+import org.junit.runner.Runner;
+import org.junit.runner.manipulation.Filter;
+import org.junit.runner.manipulation.NoTestsRemainException;
 import org.junit.runner.notification.RunNotifier;
 import org.junit.runners.ParentRunner;
 import org.junit.runners.model.FrameworkMethod;
 import org.junit.runners.model.InitializationError;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
 
 import static org.hamcrest.core.Is.is;
 import static org.junit.Assert.assertThat;
@@ -109,6 +126,58 @@ public class MultiUserTestRunnerTest {
     public static class ExistingProducerNewUserWithProducerRole {
     }
 
+    @RunWithUsers(producers = {"role:ROLE_USERS", "role:ROLE_ADMIN"}, consumers = {"user:Foo", "role:Bar"})
+    @MultiUserTestConfig(runner = TestRunner.class, parallelism = 3)
+    @Ignore
+    public static class Parallel {
+    }
+
+    @RunWithUsers(producers = {"role:ROLE_USERS", "role:ROLE_USERS"},
+            consumers = {"role:A:B", "role:B:A", RunWithUsers.WITH_PRODUCER_ROLE, "role:ROLE_USERS"})
+    @MultiUserTestConfig(runner = TestRunner.class)
+    @Ignore
+    public static class EquivalentCombinations {
+    }
+
+    @RunWithUsers(producers = "role:ROLE_USERS")
+    @MultiUserTestConfig(runner = TestRunner.class, parallelism = 0)
+    @Ignore
+    public static class InvalidParallelism {
+    }
+
+    @Ignore
+    public static class CountingRunner extends BlockMultiUserTestClassRunner {
+
+        static final AtomicInteger CREATED = new AtomicInteger();
+
+        public CountingRunner(Class<?> clazz, UserIdentifier producer, UserIdentifier consumer) throws InitializationError {
+            super(clazz, producer, consumer);
+            CREATED.incrementAndGet();
+        }
+    }
+
+    @RunWithUsers(producers = {"role:ROLE_USERS", "role:ROLE_ADMIN"}, consumers = {"role:Bar", RunWithUsers.ANONYMOUS})
+    @MultiUserTestConfig(runner = CountingRunner.class)
+    @Ignore
+    public static class Lazy {
+        @Test
+        public void first() {
+        }
+
+        @Test
+        public void second() {
+        }
+    }
+
+    @RunWithUsers(producers = {"role:ROLE_USERS", "role:ROLE_ADMIN"}, consumers = {"role:Bar", RunWithUsers.ANONYMOUS})
+    @MultiUserTestConfig(runner = CountingRunner.class, sampleSize = 3)
+    @Ignore
+    public static class Sampled {
+        @Test
+        public void test() {
+        }
+    }
+
     @Test(expected = IllegalStateException.class)
     public void testClassWithoutRunWithUsersAnnotation() throws Throwable {
         createMultiUserTestRunner(NoAnnotation.class);
@@ -171,8 +240,226 @@ public class MultiUserTestRunnerTest {
         createMultiUserTestRunner(ExistingProducerNewUserWithProducerRole.class);
     }
 
+    @Test
+    public void testClassWith_Parallelism() throws Throwable {
+        MultiUserTestRunner runner = createMultiUserTestRunner(Parallel.class);
+        RunNotifier notifier = new RunNotifier();
+        Result result = new Result();
+        notifier.addListener(result.createListener());
+
+        runner.run(notifier);
+
+        assertThat(runner.getChildren().size(), is(4));
+        assertThat(result.getFailureCount(), is(0));
+    }
+
+    @Test
+    public void testClassWith_EquivalentCombinations() throws Throwable {
+        MultiUserTestRunner runner = createMultiUserTestRunner(EquivalentCombinations.class);
+
+        assertThat(runner.getChildren().size(), is(2));
+        // Duplicate definitions are removed already from the configuration
+        assertThat(runner.getSkippedCombinationCount(), is(1));
+        assertThat(runner.getDescription().getDisplayName(), is(EquivalentCombinations.class.getName()));
+
+        Set<UserIdentifier> consumers = runner.getChildren().stream()
+                .map(child -> ((TestRunner) child).getConsumer())
+                .collect(Collectors.toSet());
+        assertThat(consumers, is(new HashSet<>(Arrays.asList(
+                UserIdentifier.parse("role:A:B"),
+                UserIdentifier.getWithProducerRole()
+        ))));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testClassWith_InvalidParallelism() throws Throwable {
+        createMultiUserTestRunner(InvalidParallelism.class);
+    }
+
+    @Test
+    public void testClassWith_RunnersCreatedLazily() throws Throwable {
+        CountingRunner.CREATED.set(0);
+        MultiUserTestRunner runner = createMultiUserTestRunner(Lazy.class);
+
+        assertThat(CountingRunner.CREATED.get(), is(0));
+        assertThat(runner.getChildren().size(), is(4));
+        assertThat(CountingRunner.CREATED.get(), is(4));
+    }
+
+    @Test
+    public void testClassWith_FilterByCombination() throws Throwable {
+        CountingRunner.CREATED.set(0);
+        MultiUserTestRunner runner = createMultiUserTestRunner(Lazy.class);
+        String combinationName = "producer={role:ROLE_USERS}, consumer={anonymous}";
+
+        runner.filter(new Filter() {
+            @Override
+            public boolean shouldRun(Description description) {
+                return description.isTest() || description.getDisplayName().equals(combinationName);
+            }
+
+            @Override
+            public String describe() {
+                return combinationName;
+            }
+        });
+
+        assertThat(runner.getChildren().size(), is(1));
+        assertThat(runner.getChildren().get(0).getDescription().getDisplayName(), is(combinationName));
+        assertThat(runner.getChildren().get(0).testCount(), is(2));
+        assertThat(CountingRunner.CREATED.get(), is(1));
+    }
+
+    @Test
+    public void testClassWith_RunCombinationsPublished() throws Throwable {
+        MultiUserTestRunner runner = createMultiUserTestRunner(Lazy.class);
+        runner.run(new RunNotifier());
+
+        assertThat(TestClassModel.of(Lazy.class).getCombinations().size(), is(4));
+
+        MultiUserTestRunner filteredRunner = createMultiUserTestRunner(Lazy.class);
+        filteredRunner.getChildren();
+        filteredRunner.filter(matchCombination("producer={role:ROLE_ADMIN}, consumer={role:Bar}"));
+        filteredRunner.run(new RunNotifier());
+
+        assertThat(TestClassModel.of(Lazy.class).getCombinations(), is(Collections.singletonList(
+                new UserCombination(UserIdentifier.parse("role:ROLE_ADMIN"), UserIdentifier.parse("role:Bar"))
+        )));
+    }
+
+    @Test
+    public void testClassWith_FilterByMethod() throws Throwable {
+        CountingRunner.CREATED.set(0);
+        MultiUserTestRunner runner = createMultiUserTestRunner(Lazy.class);
+
+        Filter.matchMethodDescription(Description.createTestDescription(Lazy.class, "second")).apply(runner);
+
+        assertThat(runner.getChildren().size(), is(4));
+        for (Runner child : runner.getChildren()) {
+            assertThat(child.testCount(), is(1));
+            assertThat(child.getDescription().getChildren().get(0).getMethodName(), is("second"));
+        }
+    }
+
+    @Test(expected = NoTestsRemainException.class)
+    public void testClassWith_FilterMatchesNothing() throws Throwable {
+        MultiUserTestRunner runner = createMultiUserTestRunner(Lazy.class);
+
+        runner.filter(Filter.matchMethodDescription(Description.createTestDescription(Lazy.class, "missing")));
+    }
+
+    @Test
+    public void testClassWith_CombinationSelectedWithSystemProperty() throws Throwable {
+        CountingRunner.CREATED.set(0);
+        String previous = System.setProperty(CombinationSelection.COMBINATION_PROPERTY,
+                "producer={role:ROLE_ADMIN}, consumer={role:Bar}");
+        try {
+            MultiUserTestRunner runner = createMultiUserTestRunner(Lazy.class);
+
+            assertThat(runner.getChildren().size(), is(1));
+            assertThat(runner.getChildren().get(0).getDescription().getDisplayName(), is("producer={role:ROLE_ADMIN}, consumer={role:Bar}"));
+            assertThat(CountingRunner.CREATED.get(), is(1));
+        } finally {
+            if (previous != null) {
+                System.setProperty(CombinationSelection.COMBINATION_PROPERTY, previous);
+            } else {
+                System.clearProperty(CombinationSelection.COMBINATION_PROPERTY);
+            }
+        }
+    }
+
+    @Test
+    public void testClassWith_EquivalentCombinationsLogged() throws Throwable {
+        MultiUserTestRunner runner = createMultiUserTestRunner(EquivalentCombinations.class);
+
+        List<String> messages = runLogged(runner);
+
+        assertThat(messages, is(Collections.singletonList(
+                EquivalentCombinations.class.getName() + ": 1 equivalent combination skipped")));
+    }
+
+    @Test
+    public void testClassWith_Sample() throws Throwable {
+        MultiUserTestRunner runner = createMultiUserTestRunner(Sampled.class);
+
+        assertThat(runner.getChildren().size(), is(3));
+        assertThat(runner.getCombinationSample().isPresent(), is(true));
+        assertThat(runner.getCombinationSample().get().getSize(), is(3));
+        assertThat(runner.getDescription().getDisplayName(), is(Sampled.class.getName()));
+    }
+
+    @Test
+    public void testClassWith_SampleLogged() throws Throwable {
+        MultiUserTestRunner runner = createMultiUserTestRunner(Sampled.class);
+
+        List<String> messages = runLogged(runner);
+
+        assertThat(messages, is(Collections.singletonList(Sampled.class.getName()
+                + ": running sample of 4 combinations: size=3, seed=0, round=0."
+                + " Rerun the sample with -Dmutr.sample.seed=0 -Dmutr.sample.round=0")));
+    }
+
+    @Test
+    public void testClassWith_SampleNotUsedWithSelectedCombination() throws Throwable {
+        String previous = System.setProperty(CombinationSelection.COMBINATION_PROPERTY,
+                "producer={role:ROLE_ADMIN}, consumer={role:Bar}");
+        try {
+            MultiUserTestRunner runner = createMultiUserTestRunner(Sampled.class);
+
+            assertThat(runner.getChildren().size(), is(1));
+            assertThat(runner.getCombinationSample().isPresent(), is(false));
+            assertThat(runner.getDescription().getDisplayName(), is(Sampled.class.getName()));
+        } finally {
+            if (previous != null) {
+                System.setProperty(CombinationSelection.COMBINATION_PROPERTY, previous);
+            } else {
+                System.clearProperty(CombinationSelection.COMBINATION_PROPERTY);
+            }
+        }
+    }
+
+    private static Filter matchCombination(String combinationName) {
+        return new Filter() {
+            @Override
+            public boolean shouldRun(Description description) {
+                return description.isTest() || description.getDisplayName().equals(combinationName);
+            }
+
+            @Override
+            public String describe() {
+                return combinationName;
+            }
+        };
+    }
+
     private MultiUserTestRunner createMultiUserTestRunner(Class testClass) throws Throwable {
         return new MultiUserTestRunner(testClass);
     }
 
+    private static List<String> runLogged(MultiUserTestRunner runner) {
+        Logger logger = Logger.getLogger(MultiUserTestRunner.class.getName());
+        List<String> messages = new ArrayList<>();
+        Handler handler = new Handler() {
+            @Override
+            public void publish(LogRecord record) {
+                messages.add(record.getMessage());
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        logger.addHandler(handler);
+        try {
+            runner.run(new RunNotifier());
+        } finally {
+            logger.removeHandler(handler);
+        }
+        return messages;
+    }
+
 }
@@ -0,0 +1,79 @@
+package fi.vincit.multiusertest.runner.junit;
+
+import org.junit.Test;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class ParallelRunnerSchedulerTest {
+
+    @Test
+    public void runsAllScheduledChildren() {
+        ParallelRunnerScheduler scheduler = new ParallelRunnerScheduler(3);
+        AtomicInteger calls = new AtomicInteger();
+
+        for (int i = 0; i < 10; ++i) {
+            scheduler.schedule(calls::incrementAndGet);
+        }
+        scheduler.finished();
+
+        assertThat(calls.get(), is(10));
+    }
+
+    @Test
+    public void runsChildrenConcurrently() throws InterruptedException {
+        ParallelRunnerScheduler scheduler = new ParallelRunnerScheduler(2);
+        CountDownLatch bothStarted = new CountDownLatch(2);
+        Set<String> threads = ConcurrentHashMap.newKeySet();
+
+        Runnable child = () -> {
+            threads.add(Thread.currentThread().getName());
+            bothStarted.countDown();
+            try {
+                assertTrue(bothStarted.await(5, TimeUnit.SECONDS));
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        };
+        scheduler.schedule(child);
+        scheduler.schedule(child);
+        scheduler.finished();
+
+        assertThat(bothStarted.getCount(), is(0L));
+        assertThat(threads.size(), is(2));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void rethrowsChildFailure() {
+        ParallelRunnerScheduler scheduler = new ParallelRunnerScheduler(2);
+        scheduler.schedule(() -> {
+            throw new IllegalStateException("Failed");
+        });
+        scheduler.finished();
+    }
+
+    @Test
+    public void canBeReusedAfterFinished() {
+        ParallelRunnerScheduler scheduler = new ParallelRunnerScheduler(2);
+        AtomicInteger calls = new AtomicInteger();
+
+        scheduler.schedule(calls::incrementAndGet);
+        scheduler.finished();
+        scheduler.schedule(calls::incrementAndGet);
+        scheduler.finished();
+
+        assertThat(calls.get(), is(2));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidParallelism() {
+        new ParallelRunnerScheduler(0);
+    }
+}
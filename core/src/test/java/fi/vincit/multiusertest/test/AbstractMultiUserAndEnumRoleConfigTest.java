@@ -0,0 +1,85 @@
+package fi.vincit.multiusertest.test;
+
+import fi.vincit.multiusertest.util.LoginRole;
+import org.junit.Test;
+
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class AbstractMultiUserAndEnumRoleConfigTest {
+
+    enum Role {
+        ROLE_ADMIN, ROLE_USER, ROLE_VISITOR
+    }
+
+    static class EnumRoleConfig extends AbstractMultiUserAndEnumRoleConfig<String, Role> {
+
+        static final AtomicInteger conversions = new AtomicInteger();
+
+        EnumRoleConfig() {
+            super(Role.class);
+        }
+
+        @Override
+        protected Role identifierPartToRole(String identifier) {
+            conversions.incrementAndGet();
+            return Role.valueOf("ROLE_" + identifier);
+        }
+
+        @Override
+        public void loginWithUser(String user) {
+        }
+
+        @Override
+        public String createUser(String username, String firstName, String lastName, Collection<Role> userRole, LoginRole loginRole) {
+            return username;
+        }
+
+        @Override
+        public String getUserByUsername(String username) {
+            return username;
+        }
+    }
+
+    @Test
+    public void multipleRoles() {
+        assertThat(new EnumRoleConfig().stringToRole("ADMIN:USER"), is((Collection<Role>) EnumSet.of(Role.ROLE_ADMIN, Role.ROLE_USER)));
+    }
+
+    @Test
+    public void singleRole() {
+        assertThat(new EnumRoleConfig().stringToRole("VISITOR"), is((Collection<Role>) EnumSet.of(Role.ROLE_VISITOR)));
+    }
+
+    @Test
+    public void nullRole() {
+        assertThat(new EnumRoleConfig().stringToRole(null).isEmpty(), is(true));
+    }
+
+    @Test
+    public void convertedOncePerConfigClass() {
+        new EnumRoleConfig().stringToRole("USER:VISITOR");
+        int conversions = EnumRoleConfig.conversions.get();
+
+        new EnumRoleConfig().stringToRole("USER:VISITOR");
+        new EnumRoleConfig().stringToRole("USER:VISITOR");
+
+        assertThat(EnumRoleConfig.conversions.get(), is(conversions));
+    }
+
+    @Test
+    public void returnsCopy() {
+        EnumRoleConfig config = new EnumRoleConfig();
+        Collection<Role> roles = config.stringToRole("ADMIN");
+        roles.add(Role.ROLE_USER);
+
+        assertThat(config.stringToRole("ADMIN"), not(sameInstance(roles)));
+        assertThat(config.stringToRole("ADMIN"), is((Collection<Role>) EnumSet.of(Role.ROLE_ADMIN)));
+    }
+}
@@ -0,0 +1,77 @@
+package fi.vincit.multiusertest.test;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+public class AuthenticationCacheTest {
+
+    @Test
+    public void get_BuildsOnlyOnce() {
+        AuthenticationCache<String, Object> cache = new AuthenticationCache<>(10);
+        AtomicInteger builds = new AtomicInteger();
+        Function<String, Object> factory = user -> {
+            builds.incrementAndGet();
+            return new Object();
+        };
+
+        Object authentication = cache.get("foo", factory);
+        assertThat(cache.get("foo", factory), sameInstance(authentication));
+        assertThat(builds.get(), is(1));
+    }
+
+    @Test
+    public void get_EvictsLeastRecentlyUsed() {
+        AuthenticationCache<String, String> cache = new AuthenticationCache<>(2);
+        AtomicInteger builds = new AtomicInteger();
+        Function<String, String> factory = user -> {
+            builds.incrementAndGet();
+            return "auth-" + user;
+        };
+
+        cache.get("a", factory);
+        cache.get("b", factory);
+        cache.get("a", factory);
+        cache.get("c", factory);
+        assertThat(cache.size(), is(2));
+
+        cache.get("a", factory);
+        assertThat(builds.get(), is(3));
+        cache.get("b", factory);
+        assertThat(builds.get(), is(4));
+    }
+
+    @Test
+    public void invalidate() {
+        AuthenticationCache<String, String> cache = new AuthenticationCache<>(10);
+        cache.get("a", user -> "a");
+        cache.get("b", user -> "b");
+
+        cache.invalidate("a");
+        assertThat(cache.size(), is(1));
+        assertThat(cache.get("a", user -> "a2"), is("a2"));
+
+        cache.invalidateAll();
+        assertThat(cache.size(), is(0));
+    }
+
+    @Test
+    public void forConfigClass_SharedPerClass() {
+        AuthenticationCache<String, String> cache = AuthenticationCache.forConfigClass(ConfigA.class, 1);
+        assertThat(AuthenticationCache.forConfigClass(ConfigA.class, 1), sameInstance(cache));
+        assertThat(AuthenticationCache.<String, String>forConfigClass(ConfigB.class, 1) == cache, is(false));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_ThrowsIfSizeTooSmall() {
+        new AuthenticationCache<String, String>(0);
+    }
+
+    private static class ConfigA {}
+    private static class ConfigB {}
+}
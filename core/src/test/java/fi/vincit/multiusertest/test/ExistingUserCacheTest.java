@@ -0,0 +1,117 @@
+package fi.vincit.multiusertest.test;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+public class ExistingUserCacheTest {
+
+    @Test
+    public void get_LoadsOnlyOnce() {
+        ExistingUserCache<String> cache = new ExistingUserCache<>(10);
+        AtomicInteger loads = new AtomicInteger();
+        Function<String, String> loader = username -> {
+            loads.incrementAndGet();
+            return "user-" + username;
+        };
+
+        assertThat(cache.get("foo", loader), is("user-foo"));
+        assertThat(cache.get("foo", loader), is("user-foo"));
+        assertThat(loads.get(), is(1));
+    }
+
+    @Test
+    public void get_DoesNotCacheMissingUsers() {
+        ExistingUserCache<String> cache = new ExistingUserCache<>(10);
+        AtomicInteger loads = new AtomicInteger();
+        Function<String, String> loader = username -> {
+            loads.incrementAndGet();
+            return null;
+        };
+
+        assertThat(cache.get("foo", loader), nullValue());
+        assertThat(cache.get("foo", loader), nullValue());
+        assertThat(loads.get(), is(2));
+        assertThat(cache.size(), is(0));
+    }
+
+    @Test
+    public void get_EvictsLeastRecentlyUsed() {
+        ExistingUserCache<String> cache = new ExistingUserCache<>(2);
+        AtomicInteger loads = new AtomicInteger();
+        Function<String, String> loader = username -> {
+            loads.incrementAndGet();
+            return "user-" + username;
+        };
+
+        cache.get("a", loader);
+        cache.get("b", loader);
+        cache.get("a", loader);
+        cache.get("c", loader);
+        assertThat(cache.size(), is(2));
+        assertThat(loads.get(), is(3));
+
+        cache.get("a", loader);
+        assertThat(loads.get(), is(3));
+        cache.get("b", loader);
+        assertThat(loads.get(), is(4));
+    }
+
+    @Test
+    public void invalidate() {
+        ExistingUserCache<String> cache = new ExistingUserCache<>(10);
+        cache.get("a", username -> "a");
+        cache.get("b", username -> "b");
+
+        cache.invalidate("a");
+        assertThat(cache.size(), is(1));
+        assertThat(cache.get("a", username -> "a2"), is("a2"));
+
+        cache.invalidateAll();
+        assertThat(cache.size(), is(0));
+    }
+
+    @Test
+    public void forConfigClass_SharedPerClass() {
+        ExistingUserCache<String> cache = ExistingUserCache.forConfigClass(ConfigA.class, 1);
+        assertThat(ExistingUserCache.forConfigClass(ConfigA.class, 1), sameInstance(cache));
+        assertThat(ExistingUserCache.<String>forConfigClass(ConfigB.class, 1) == cache, is(false));
+    }
+
+    @Test
+    public void forConfigClass_GrowsCache() {
+        ExistingUserCache<String> cache = ExistingUserCache.forConfigClass(ConfigC.class, 1);
+        ExistingUserCache.forConfigClass(ConfigC.class, 2);
+
+        cache.get("a", username -> "a");
+        cache.get("b", username -> "b");
+        assertThat(cache.size(), is(2));
+    }
+
+    @Test
+    public void invalidateAllCaches() {
+        ExistingUserCache<String> cache = ExistingUserCache.forConfigClass(ConfigD.class, 2);
+        cache.get("a", username -> "a");
+
+        ExistingUserCache.invalidateAllCaches();
+
+        assertThat(cache.size(), is(0));
+        assertThat(cache.get("a", username -> "a2"), is("a2"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_ThrowsIfSizeTooSmall() {
+        new ExistingUserCache<String>(0);
+    }
+
+    private static class ConfigA {}
+    private static class ConfigB {}
+    private static class ConfigC {}
+    private static class ConfigD {}
+}
@@ -6,6 +6,7 @@ import fi.vincit.multiusertest.util.UserIdentifier;
 import org.junit.Test;
 
 import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsSame.sameInstance;
 import static org.junit.Assert.assertThat;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
@@ -97,6 +98,17 @@ public class IdentifierResolverTest {
         resolver.getIdentifierFor(LoginRole.CONSUMER);
     }
 
+    @Test
+    public void identifiersAreShared() {
+        RoleContainer producer = RoleContainer.forProducer(UserIdentifier.parse("role:role1"), resolver);
+        RoleContainer consumer = RoleContainer.forConsumer(UserIdentifier.parse("role:role2"), producer, resolver);
+
+        IdentifierResolver resolver = new IdentifierResolver(mockUserResolver(producer, consumer));
+
+        assertThat(resolver.getIdentifierFor(LoginRole.CONSUMER), sameInstance(UserIdentifier.parse("role:role2")));
+        assertThat(resolver.getIdentifierFor(LoginRole.CONSUMER), sameInstance(resolver.getIdentifierFor(LoginRole.CONSUMER)));
+    }
+
 
 
     private UserResolver mockUserResolver(RoleContainer producer, RoleContainer consumer) {
@@ -0,0 +1,150 @@
+package fi.vincit.multiusertest.test;
+
+import fi.vincit.multiusertest.util.LoginRole;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyList;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class UserPoolTest {
+
+    @Test
+    public void leaseCreatesUser() {
+        PooledUserFactory<String, String> factory = mockFactory();
+        UserPool<String, String> pool = new UserPool<>();
+
+        UserPool<String, String>.Lease lease = pool.lease(factory, newUser(factory, LoginRole.PRODUCER));
+
+        assertThat(lease.getUser(), is("user-1"));
+        verify(factory).createUser("user-1", "Test", "Producer", "admin", LoginRole.PRODUCER);
+        verify(factory, never()).resetUser(anyString(), anyString(), any(LoginRole.class));
+    }
+
+    @Test
+    public void releasedUserIsResetAndReused() {
+        PooledUserFactory<String, String> factory = mockFactory();
+        UserPool<String, String> pool = new UserPool<>();
+
+        pool.lease(factory, newUser(factory, LoginRole.PRODUCER)).release();
+        assertThat(pool.getIdleUserCount("ROLE_ADMIN", LoginRole.PRODUCER), is(1));
+
+        UserPool<String, String>.Lease lease = pool.lease(factory, newUser(factory, LoginRole.PRODUCER));
+
+        assertThat(lease.getUser(), is("user-1"));
+        assertThat(pool.getIdleUserCount("ROLE_ADMIN", LoginRole.PRODUCER), is(0));
+        verify(factory, times(1)).createUser(anyString(), anyString(), anyString(), anyString(), any(LoginRole.class));
+        verify(factory).resetUser("user-1", "admin", LoginRole.PRODUCER);
+    }
+
+    @Test
+    public void leasedUserIsNotShared() {
+        PooledUserFactory<String, String> factory = mockFactory();
+        UserPool<String, String> pool = new UserPool<>();
+
+        String first = pool.lease(factory, newUser(factory, LoginRole.PRODUCER)).getUser();
+        String second = pool.lease(factory, newUser(factory, LoginRole.PRODUCER)).getUser();
+
+        assertThat(first, not(second));
+    }
+
+    @Test
+    public void usersArePooledByLoginRole() {
+        PooledUserFactory<String, String> factory = mockFactory();
+        UserPool<String, String> pool = new UserPool<>();
+
+        pool.lease(factory, newUser(factory, LoginRole.PRODUCER)).release();
+        UserPool<String, String>.Lease lease = pool.lease(factory, newUser(factory, LoginRole.CONSUMER));
+
+        assertThat(lease.getUser(), is("user-2"));
+        verify(factory).createUser("user-2", "Test", "Consumer", "admin", LoginRole.CONSUMER);
+    }
+
+    @Test
+    public void provision() {
+        BatchPooledUserFactory factory = mock(BatchPooledUserFactory.class);
+        when(factory.createUsers(anyList())).thenReturn(Arrays.asList("producer", "consumer"));
+        UserPool<String, String> pool = new UserPool<>();
+
+        pool.provision(UserPoolTest.class, factory, () -> Arrays.asList(
+                new NewUser<>("user-1", "Test", "Producer", "admin", "ROLE_ADMIN", LoginRole.PRODUCER),
+                new NewUser<>("user-2", "Test", "Consumer", "admin", "ROLE_ADMIN", LoginRole.CONSUMER),
+                // Same role is created only once
+                new NewUser<>("user-3", "Test", "Producer", "admin", "ROLE_ADMIN", LoginRole.PRODUCER)
+        ));
+
+        assertThat(pool.getIdleUserCount("ROLE_ADMIN", LoginRole.PRODUCER), is(1));
+        assertThat(pool.getIdleUserCount("ROLE_ADMIN", LoginRole.CONSUMER), is(1));
+
+        UserPool<String, String>.Lease lease = pool.lease(factory, newUser(factory, LoginRole.CONSUMER));
+        assertThat(lease.getUser(), is("consumer"));
+
+        verify(factory, times(1)).createUsers(anyList());
+        verify(factory, never()).createUser(anyString(), anyString(), anyString(), anyString(), any(LoginRole.class));
+        // Provisioned users are new so they don't have to be reset
+        verify(factory, never()).resetUser(anyString(), anyString(), any(LoginRole.class));
+    }
+
+    @Test
+    public void provision_OnlyOncePerClass() {
+        BatchPooledUserFactory factory = mock(BatchPooledUserFactory.class);
+        when(factory.createUsers(anyList())).thenReturn(Collections.singletonList("producer"));
+        UserPool<String, String> pool = new UserPool<>();
+
+        Supplier<List<NewUser<String>>> newUsers = () -> Collections.singletonList(
+                new NewUser<>("user-1", "Test", "Producer", "admin", "ROLE_ADMIN", LoginRole.PRODUCER)
+        );
+        pool.provision(UserPoolTest.class, factory, newUsers);
+        pool.provision(UserPoolTest.class, factory, newUsers);
+        // Roles already in the pool are not created again for other classes
+        pool.provision(UserResolverTest.class, factory, newUsers);
+
+        verify(factory, times(1)).createUsers(anyList());
+        assertThat(pool.getIdleUserCount("ROLE_ADMIN", LoginRole.PRODUCER), is(1));
+    }
+
+    @Test
+    public void forScope() {
+        assertThat(UserPool.forScope(UserPoolScope.NONE, UserPoolTest.class, String.class).isPresent(), is(false));
+
+        assertThat(UserPool.forScope(UserPoolScope.CLASS, UserPoolTest.class, String.class).get(),
+                sameInstance(UserPool.forScope(UserPoolScope.CLASS, UserPoolTest.class, String.class).get()));
+        assertThat(UserPool.forScope(UserPoolScope.CLASS, UserPoolTest.class, String.class).get(),
+                not(sameInstance(UserPool.forScope(UserPoolScope.CLASS, UserResolverTest.class, String.class).get())));
+
+        assertThat(UserPool.forScope(UserPoolScope.JVM, UserPoolTest.class, String.class).get(),
+                sameInstance(UserPool.forScope(UserPoolScope.JVM, UserResolverTest.class, String.class).get()));
+        assertThat(UserPool.forScope(UserPoolScope.JVM, UserPoolTest.class, String.class).get(),
+                not(sameInstance(UserPool.forScope(UserPoolScope.JVM, UserPoolTest.class, Integer.class).get())));
+    }
+
+    private interface BatchPooledUserFactory extends BatchUserFactory<String, String>, PooledUserFactory<String, String> {
+    }
+
+    private static NewUser<String> newUser(PooledUserFactory<String, String> factory, LoginRole loginRole) {
+        String lastName = loginRole == LoginRole.PRODUCER ? "Producer" : "Consumer";
+        return new NewUser<>(factory.getRandomUsername(), "Test", lastName, "admin", "ROLE_ADMIN", loginRole);
+    }
+
+    private PooledUserFactory<String, String> mockFactory() {
+        PooledUserFactory<String, String> factory = mock(PooledUserFactory.class);
+        when(factory.getRandomUsername()).thenReturn("user-1", "user-2", "user-3");
+        when(factory.createUser(anyString(), anyString(), anyString(), anyString(), any(LoginRole.class)))
+                .thenAnswer(invocation -> invocation.getArguments()[0]);
+        return factory;
+    }
+}
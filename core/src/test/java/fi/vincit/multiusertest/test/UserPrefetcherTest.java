@@ -0,0 +1,194 @@
+package fi.vincit.multiusertest.test;
+
+import fi.vincit.multiusertest.util.LoginRole;
+import fi.vincit.multiusertest.util.UserCombination;
+import fi.vincit.multiusertest.util.UserIdentifier;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyList;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class UserPrefetcherTest {
+
+    private static final UserCombination ADMIN_USER = combination("role:admin", "role:user");
+    private static final UserCombination USER_ADMIN = combination("role:user", "role:admin");
+    private static final UserCombination USER_USER = combination("role:user", "role:user");
+
+    private final RoleConverter<String> roleConverter = role -> role;
+
+    @Test
+    public void prefetchNext() {
+        UserFactory<String, String> factory = mockFactory();
+        UserPrefetcher<String, String> prefetcher = new UserPrefetcher<>(
+                Arrays.asList(ADMIN_USER, USER_ADMIN), combination -> 2, 10, Runnable::run
+        );
+
+        prefetcher.prefetchNext(ADMIN_USER, factory, roleConverter);
+
+        assertThat(prefetcher.getPrefetchedUserCount("user", LoginRole.PRODUCER), is(2));
+        assertThat(prefetcher.getPrefetchedUserCount("admin", LoginRole.CONSUMER), is(2));
+        assertThat(prefetcher.getPrefetchedUserCount("admin", LoginRole.PRODUCER), is(0));
+    }
+
+    @Test
+    public void prefetchNext_OnlyOncePerCombination() {
+        UserFactory<String, String> factory = mockFactory();
+        UserPrefetcher<String, String> prefetcher = new UserPrefetcher<>(
+                Arrays.asList(ADMIN_USER, USER_ADMIN), combination -> 1, 10, Runnable::run
+        );
+
+        prefetcher.prefetchNext(ADMIN_USER, factory, roleConverter);
+        prefetcher.prefetchNext(ADMIN_USER, factory, roleConverter);
+
+        verify(factory, times(2)).createUser(anyString(), anyString(), anyString(), anyString(), any(LoginRole.class));
+    }
+
+    @Test
+    public void prefetchNext_LastCombination() {
+        UserFactory<String, String> factory = mockFactory();
+        UserPrefetcher<String, String> prefetcher = new UserPrefetcher<>(
+                Arrays.asList(ADMIN_USER, USER_ADMIN), combination -> 1, 10, Runnable::run
+        );
+
+        prefetcher.prefetchNext(USER_ADMIN, factory, roleConverter);
+        prefetcher.prefetchNext(USER_USER, factory, roleConverter);
+
+        verify(factory, never()).createUser(anyString(), anyString(), anyString(), anyString(), any(LoginRole.class));
+    }
+
+    @Test
+    public void prefetchNext_Bounded() {
+        UserFactory<String, String> factory = mockFactory();
+        UserPrefetcher<String, String> prefetcher = new UserPrefetcher<>(
+                Arrays.asList(ADMIN_USER, USER_ADMIN, USER_USER), combination -> 5, 3, Runnable::run
+        );
+
+        prefetcher.prefetchNext(ADMIN_USER, factory, roleConverter);
+        prefetcher.prefetchNext(USER_ADMIN, factory, roleConverter);
+
+        assertThat(prefetcher.getPrefetchedUserCount("user", LoginRole.PRODUCER), is(3));
+        assertThat(prefetcher.getPrefetchedUserCount("admin", LoginRole.CONSUMER), is(3));
+        assertThat(prefetcher.getPrefetchedUserCount("user", LoginRole.CONSUMER), is(3));
+        verify(factory, times(9)).createUser(anyString(), anyString(), anyString(), anyString(), any(LoginRole.class));
+    }
+
+    @Test
+    public void prefetchNext_WithBatchUserFactory() {
+        BatchUserFactory<String, String> factory = mock(BatchUserFactory.class);
+        when(factory.getRandomUsername()).thenReturn("user");
+        when(factory.createUsers(anyList())).thenAnswer(invocation -> {
+            List<String> users = new ArrayList<>();
+            for (Object newUser : (List<?>) invocation.getArguments()[0]) {
+                users.add(((NewUser<?>) newUser).getRoleIdentifier());
+            }
+            return users;
+        });
+        UserPrefetcher<String, String> prefetcher = new UserPrefetcher<>(
+                Arrays.asList(ADMIN_USER, USER_ADMIN), combination -> 2, 10, Runnable::run
+        );
+
+        prefetcher.prefetchNext(ADMIN_USER, factory, roleConverter);
+
+        verify(factory, times(1)).createUsers(anyList());
+        assertThat(prefetcher.take(new NewUser<>("u", "Test", "Consumer", "admin", "admin", LoginRole.CONSUMER)).get(),
+                is("admin"));
+    }
+
+    @Test
+    public void take() {
+        UserFactory<String, String> factory = mockFactory();
+        UserPrefetcher<String, String> prefetcher = new UserPrefetcher<>(
+                Arrays.asList(ADMIN_USER, USER_ADMIN), combination -> 1, 10, Runnable::run
+        );
+        prefetcher.prefetchNext(ADMIN_USER, factory, roleConverter);
+
+        NewUser<String> producer = new NewUser<>("u", "Test", "Producer", "user", "user", LoginRole.PRODUCER);
+        assertThat(prefetcher.take(producer).isPresent(), is(true));
+        assertThat(prefetcher.take(producer).isPresent(), is(false));
+    }
+
+    @Test
+    public void take_ThrowsPrefetchFailure() {
+        IllegalStateException prefetchFailure = new IllegalStateException("Failed");
+        UserFactory<String, String> factory = mock(UserFactory.class);
+        when(factory.getRandomUsername()).thenReturn("user");
+        when(factory.createUser(anyString(), anyString(), anyString(), anyString(), any(LoginRole.class)))
+                .thenThrow(prefetchFailure);
+        UserPrefetcher<String, String> prefetcher = new UserPrefetcher<>(
+                Arrays.asList(ADMIN_USER, USER_ADMIN), combination -> 1, 10, Runnable::run
+        );
+
+        prefetcher.prefetchNext(ADMIN_USER, factory, roleConverter);
+
+        assertThat(prefetcher.getPrefetchedUserCount("user", LoginRole.PRODUCER), is(0));
+        NewUser<String> producer = new NewUser<>("u", "Test", "Producer", "user", "user", LoginRole.PRODUCER);
+        try {
+            prefetcher.take(producer);
+            fail("Prefetch failure not thrown");
+        } catch (IllegalStateException e) {
+            assertThat(e.getCause(), sameInstance((Throwable) prefetchFailure));
+        }
+        assertThat(prefetcher.take(producer).isPresent(), is(false));
+    }
+
+    @Test
+    public void clear() {
+        UserFactory<String, String> factory = mockFactory();
+        UserPrefetcher<String, String> prefetcher = new UserPrefetcher<>(
+                Arrays.asList(ADMIN_USER, USER_ADMIN), combination -> 1, 10, Runnable::run
+        );
+        prefetcher.prefetchNext(ADMIN_USER, factory, roleConverter);
+
+        prefetcher.clear();
+
+        assertThat(prefetcher.getPrefetchedUserCount("user", LoginRole.PRODUCER), is(0));
+        assertThat(prefetcher.getPrefetchedUserCount("admin", LoginRole.CONSUMER), is(0));
+    }
+
+    @Test
+    public void clear_DiscardsUsersBeingPrefetched() {
+        List<Runnable> tasks = new ArrayList<>();
+        UserPrefetcher<String, String> prefetcher = new UserPrefetcher<>(
+                Arrays.asList(ADMIN_USER, USER_ADMIN), combination -> 1, 10, tasks::add
+        );
+        prefetcher.prefetchNext(ADMIN_USER, mockFactory(), roleConverter);
+
+        prefetcher.clear();
+        tasks.forEach(Runnable::run);
+
+        assertThat(prefetcher.getPrefetchedUserCount("user", LoginRole.PRODUCER), is(0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_ThrowsIfCapacityTooSmall() {
+        new UserPrefetcher<String, String>(Arrays.asList(ADMIN_USER), combination -> 1, 0, Runnable::run);
+    }
+
+    private static UserCombination combination(String producer, String consumer) {
+        return new UserCombination(UserIdentifier.parse(producer), UserIdentifier.parse(consumer));
+    }
+
+    private UserFactory<String, String> mockFactory() {
+        UserFactory<String, String> factory = mock(UserFactory.class);
+        AtomicInteger counter = new AtomicInteger();
+        when(factory.getRandomUsername()).thenAnswer(invocation -> "user-" + counter.incrementAndGet());
+        when(factory.createUser(anyString(), anyString(), anyString(), anyString(), any(LoginRole.class)))
+                .thenAnswer(invocation -> invocation.getArguments()[0]);
+        return factory;
+    }
+}
@@ -4,6 +4,7 @@ import static org.hamcrest.core.Is.is;
 import static org.hamcrest.core.IsNull.nullValue;
 import static org.junit.Assert.assertThat;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyList;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
@@ -14,7 +15,11 @@ import static org.mockito.Mockito.when;
 
 import org.junit.Test;
 
+import java.util.Arrays;
+import java.util.List;
+
 import fi.vincit.multiusertest.util.LoginRole;
+import fi.vincit.multiusertest.util.UserCombination;
 import fi.vincit.multiusertest.util.UserIdentifier;
 
 public class UserResolverTest {
@@ -129,8 +134,326 @@ public class UserResolverTest {
         assertThat(resolver.resolverProducer(), is("producer_user"));
         assertThat(resolver.resolveConsumer(), is("producer_user"));
 
+        verify(factory, times(1)).getUserByUsername("user1");
+
+    }
+
+    @Test
+    public void resolveLazyConsumer() {
+        RoleConverter<String> roleConverter = mock(RoleConverter.class);
+        when(roleConverter.stringToRole(anyString())).thenReturn("role");
+
+        UserFactory<String, String> factory = mockFactory("producer", "consumer");
+
+        UserResolver<String, String> resolver = new UserResolver<>(
+                factory,
+                roleConverter,
+                UserIdentifier.parse("role:role1"),
+                UserIdentifier.parse("role:role2")
+        );
+        resolver.setLazyConsumer(true);
+        resolver.resolve();
+
+        assertThat(resolver.resolverProducer(), is("producer"));
+        assertThat(resolver.isConsumerPending(), is(true));
+        assertThat(new IdentifierResolver<>(resolver).getIdentifierFor(LoginRole.CONSUMER),
+                is(UserIdentifier.parse("role:role2")));
+        verify(factory, never()).createUser(anyString(), anyString(), anyString(), anyString(), eq(LoginRole.CONSUMER));
+
+        assertThat(resolver.resolveConsumer(), is("consumer"));
+        assertThat(resolver.resolveConsumer(), is("consumer"));
+        assertThat(resolver.isConsumerPending(), is(false));
+        verify(factory, times(1)).createUser(anyString(), anyString(), anyString(), anyString(), eq(LoginRole.CONSUMER));
+    }
+
+    @Test
+    public void resolveWithPresetProducer() {
+        RoleConverter<String> roleConverter = mock(RoleConverter.class);
+        when(roleConverter.stringToRole(anyString())).thenReturn("role");
+
+        UserFactory<String, String> factory = mockFactory("producer", "consumer");
+
+        UserResolver<String, String> resolver = new UserResolver<>(
+                factory,
+                roleConverter,
+                UserIdentifier.parse("role:role1"),
+                UserIdentifier.parse("role:role2")
+        );
+        resolver.setProducer("earlier-producer");
+        resolver.resolve();
+
+        assertThat(resolver.resolverProducer(), is("earlier-producer"));
+        assertThat(resolver.resolveConsumer(), is("consumer"));
+        verify(factory, never()).createUser(anyString(), anyString(), anyString(), anyString(), eq(LoginRole.PRODUCER));
+    }
+
+    @Test
+    public void resolveLazyConsumer_ProducerAsConsumer() {
+        RoleConverter<String> roleConverter = mock(RoleConverter.class);
+        when(roleConverter.stringToRole(anyString())).thenReturn("role");
+
+        UserFactory<String, String> factory = mockFactory("producer", "consumer");
+
+        UserResolver<String, String> resolver = new UserResolver<>(
+                factory,
+                roleConverter,
+                UserIdentifier.parse("role:role1"),
+                UserIdentifier.getProducer()
+        );
+        resolver.setLazyConsumer(true);
+        resolver.resolve();
+
+        assertThat(resolver.isConsumerPending(), is(false));
+        assertThat(resolver.resolveConsumer(), is("producer"));
+        verify(factory, never()).createUser(anyString(), anyString(), anyString(), anyString(), eq(LoginRole.CONSUMER));
+    }
+
+    @Test
+    public void resolveLazyConsumerWithUserPool() {
+        RoleConverter<String> roleConverter = mock(RoleConverter.class);
+        when(roleConverter.stringToRole(anyString())).thenReturn("role");
+
+        PooledUserFactory<String, String> factory = mock(PooledUserFactory.class);
+        when(factory.createUser(anyString(), anyString(), anyString(), anyString(), eq(LoginRole.PRODUCER)))
+                .thenReturn("producer");
+        when(factory.createUser(anyString(), anyString(), anyString(), anyString(), eq(LoginRole.CONSUMER)))
+                .thenReturn("consumer");
+        UserPool<String, String> pool = new UserPool<>();
+
+        UserResolver<String, String> resolver = new UserResolver<>(
+                factory,
+                roleConverter,
+                UserIdentifier.parse("role:role1"),
+                UserIdentifier.parse("role:role2")
+        );
+        resolver.setLazyConsumer(true);
+        resolver.resolve(pool);
+        assertThat(resolver.resolveConsumer(), is("consumer"));
+        resolver.release();
+
+        assertThat(pool.getIdleUserCount("role1", LoginRole.PRODUCER), is(1));
+        assertThat(pool.getIdleUserCount("role2", LoginRole.CONSUMER), is(1));
+    }
+
+    @Test
+    public void resolveWithUserPrefetcher() {
+        RoleConverter<String> roleConverter = mock(RoleConverter.class);
+        when(roleConverter.stringToRole(anyString())).thenReturn("role");
+
+        UserFactory<String, String> factory = mockFactory("producer", "consumer");
+        UserFactory<String, String> prefetchFactory = mockFactory("prefetched_producer", "prefetched_consumer");
+        UserCombination current = new UserCombination(UserIdentifier.parse("role:role2"), UserIdentifier.parse("role:role2"));
+        UserCombination next = new UserCombination(UserIdentifier.parse("role:role1"), UserIdentifier.parse("role:role2"));
+        UserPrefetcher<String, String> prefetcher = new UserPrefetcher<>(
+                Arrays.asList(current, next), combination -> 1, 1, Runnable::run
+        );
+        prefetcher.prefetchNext(current, prefetchFactory, roleConverter);
+
+        UserResolver<String, String> resolver = new UserResolver<>(
+                factory,
+                roleConverter,
+                UserIdentifier.parse("role:role1"),
+                UserIdentifier.parse("role:role3")
+        );
+        resolver.setUserPrefetcher(prefetcher);
+        resolver.resolve();
+
+        assertThat(resolver.resolverProducer(), is("prefetched_producer"));
+        assertThat(resolver.resolveConsumer(), is("consumer"));
+        verify(factory, never()).createUser(anyString(), anyString(), anyString(), anyString(), eq(LoginRole.PRODUCER));
+    }
+
+    @Test
+    public void resolveExistingUsersOnlyOnce() {
+        RoleConverter<String> roleConverter = mock(RoleConverter.class);
+        UserFactory<String, String> factory = mockFactoryExisting("producer_user", "consumer_user");
+
+        UserResolver<String, String> resolver = new UserResolver<>(
+                factory,
+                roleConverter,
+                UserIdentifier.parse("user:user1"),
+                UserIdentifier.parse("user:user2")
+        );
+        resolver.resolve();
+
+        resolver.resolverProducer();
+        resolver.resolveConsumer();
+        assertThat(resolver.resolverProducer(), is("producer_user"));
+        assertThat(resolver.resolveConsumer(), is("consumer_user"));
+
+        verify(factory, times(1)).getUserByUsername("user1");
+        verify(factory, times(1)).getUserByUsername("user2");
+    }
+
+    @Test
+    public void invalidate() {
+        RoleConverter<String> roleConverter = mock(RoleConverter.class);
+        UserFactory<String, String> factory = mockFactoryExisting("producer_user", "consumer_user");
+
+        UserResolver<String, String> resolver = new UserResolver<>(
+                factory,
+                roleConverter,
+                UserIdentifier.parse("user:user1"),
+                UserIdentifier.parse("user:user2")
+        );
+        resolver.resolve();
+        resolver.resolverProducer();
+        resolver.resolveConsumer();
+
+        resolver.invalidate();
+        assertThat(resolver.resolverProducer(), is("producer_user"));
+        assertThat(resolver.resolveConsumer(), is("consumer_user"));
+
         verify(factory, times(2)).getUserByUsername("user1");
+        verify(factory, times(2)).getUserByUsername("user2");
+    }
+
+    @Test
+    public void resolveExistingUsersWithSharedCache() {
+        RoleConverter<String> roleConverter = mock(RoleConverter.class);
+        UserFactory<String, String> factory = mockFactoryExisting("producer_user", "consumer_user");
+        ExistingUserCache<String> cache = new ExistingUserCache<>(10);
+
+        for (int i = 0; i < 3; ++i) {
+            UserResolver<String, String> resolver = new UserResolver<>(
+                    factory,
+                    roleConverter,
+                    UserIdentifier.parse("user:user1"),
+                    UserIdentifier.parse("user:user2")
+            );
+            resolver.setExistingUserCache(cache);
+            resolver.resolve();
+            assertThat(resolver.resolverProducer(), is("producer_user"));
+            assertThat(resolver.resolveConsumer(), is("consumer_user"));
+        }
+
+        verify(factory, times(1)).getUserByUsername("user1");
+        verify(factory, times(1)).getUserByUsername("user2");
+    }
+
+    @Test
+    public void invalidateRemovesUsersFromSharedCache() {
+        RoleConverter<String> roleConverter = mock(RoleConverter.class);
+        UserFactory<String, String> factory = mockFactoryExisting("producer_user", "consumer_user");
+        ExistingUserCache<String> cache = new ExistingUserCache<>(10);
+
+        UserResolver<String, String> resolver = new UserResolver<>(
+                factory,
+                roleConverter,
+                UserIdentifier.parse("user:user1"),
+                UserIdentifier.parse("role:role1")
+        );
+        resolver.setExistingUserCache(cache);
+        resolver.resolve();
+        resolver.resolverProducer();
+        assertThat(cache.size(), is(1));
+
+        resolver.invalidate();
+
+        assertThat(cache.size(), is(0));
+    }
+
+    @Test
+    public void resolveWithUserPool() {
+        RoleConverter<String> roleConverter = mock(RoleConverter.class);
+        when(roleConverter.stringToRole(anyString())).thenReturn("role");
+
+        PooledUserFactory<String, String> factory = mock(PooledUserFactory.class);
+        when(factory.createUser(anyString(), anyString(), anyString(), anyString(), eq(LoginRole.PRODUCER)))
+                .thenReturn("producer");
+        when(factory.createUser(anyString(), anyString(), anyString(), anyString(), eq(LoginRole.CONSUMER)))
+                .thenReturn("consumer");
+        UserPool<String, String> pool = new UserPool<>();
+
+        UserResolver<String, String> resolver = new UserResolver<>(
+                factory,
+                roleConverter,
+                UserIdentifier.parse("role:role1"),
+                UserIdentifier.parse("role:role2")
+        );
+        resolver.resolve(pool);
+        resolver.release();
 
+        UserResolver<String, String> nextResolver = new UserResolver<>(
+                factory,
+                roleConverter,
+                UserIdentifier.parse("role:role1"),
+                UserIdentifier.parse("role:role2")
+        );
+        nextResolver.resolve(pool);
+
+        assertThat(nextResolver.resolverProducer(), is("producer"));
+        assertThat(nextResolver.resolveConsumer(), is("consumer"));
+        verify(factory, times(2)).createUser(anyString(), anyString(), anyString(), anyString(), any(LoginRole.class));
+        verify(factory).resetUser("producer", "role", LoginRole.PRODUCER);
+        verify(factory).resetUser("consumer", "role", LoginRole.CONSUMER);
+    }
+
+    @Test
+    public void resolveWithBatchUserFactory() {
+        RoleConverter<String> roleConverter = mock(RoleConverter.class);
+        when(roleConverter.stringToRole(anyString())).thenReturn("role");
+
+        BatchUserFactory<String, String> factory = mock(BatchUserFactory.class);
+        when(factory.createUsers(anyList())).thenReturn(Arrays.asList("producer", "consumer"));
+
+        UserResolver<String, String> resolver = new UserResolver<>(
+                factory,
+                roleConverter,
+                UserIdentifier.parse("role:role1"),
+                UserIdentifier.parse("role:role2")
+        );
+        resolver.resolve();
+
+        assertThat(resolver.resolverProducer(), is("producer"));
+        assertThat(resolver.resolveConsumer(), is("consumer"));
+        verify(factory, times(1)).createUsers(anyList());
+        verify(factory, never()).createUser(anyString(), anyString(), anyString(), anyString(), any(LoginRole.class));
+    }
+
+    @Test
+    public void getNewUsers() {
+        RoleConverter<String> roleConverter = mock(RoleConverter.class);
+        when(roleConverter.stringToRole("role1")).thenReturn("role");
+
+        UserResolver<String, String> resolver = new UserResolver<>(
+                mockFactoryEmpty(),
+                roleConverter,
+                UserIdentifier.parse("role:role1"),
+                UserIdentifier.getWithProducerRole()
+        );
+
+        List<NewUser<String>> newUsers = resolver.getNewUsers();
+        assertThat(newUsers.size(), is(2));
+        assertThat(newUsers.get(0).getLoginRole(), is(LoginRole.PRODUCER));
+        assertThat(newUsers.get(0).getRoleIdentifier(), is("role1"));
+        assertThat(newUsers.get(0).getLastName(), is("Producer"));
+        assertThat(newUsers.get(1).getLoginRole(), is(LoginRole.CONSUMER));
+        assertThat(newUsers.get(1).getRoleIdentifier(), is("role1"));
+        assertThat(newUsers.get(1).getRole(), is("role"));
+    }
+
+    @Test
+    public void getNewUsers_ExistingUsers() {
+        UserResolver<String, String> resolver = new UserResolver<>(
+                mockFactoryEmpty(),
+                mock(RoleConverter.class),
+                UserIdentifier.parse("user:user1"),
+                UserIdentifier.getProducer()
+        );
+
+        assertThat(resolver.getNewUsers().isEmpty(), is(true));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void resolveWithUserPool_RequiresPooledUserFactory() {
+        UserResolver<String, String> resolver = new UserResolver<>(
+                mockFactoryEmpty(),
+                mock(RoleConverter.class),
+                UserIdentifier.parse("user:user1"),
+                UserIdentifier.parse("user:user2")
+        );
+        resolver.resolve(new UserPool<>());
     }
 
     private UserFactory<String, String> mockFactory(String producer, String consumer) {
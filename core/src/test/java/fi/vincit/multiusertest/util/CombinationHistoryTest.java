@@ -0,0 +1,153 @@
+package fi.vincit.multiusertest.util;
+
+import fi.vincit.multiusertest.runner.junit.CombinationHistoryRecorder;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.Description;
+import org.junit.runner.notification.Failure;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class CombinationHistoryTest {
+
+    private static final UserCombination ADMIN_USER =
+            new UserCombination(UserIdentifier.parse("role:ROLE_ADMIN"), UserIdentifier.parse("role:ROLE_USER"));
+    private static final UserCombination USER_ADMIN =
+            new UserCombination(UserIdentifier.parse("role:ROLE_USER"), UserIdentifier.parse("role:ROLE_ADMIN"));
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void emptyWhenFileDoesNotExist() throws Exception {
+        CombinationHistory history = new CombinationHistory(folder.getRoot().toPath().resolve("missing.properties"));
+
+        assertThat(history.hasDurations(CombinationHistoryTest.class), is(false));
+        assertThat(history.getDuration(CombinationHistoryTest.class, ADMIN_USER), is(Optional.empty()));
+    }
+
+    @Test
+    public void savedDurationsReadByNextRun() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("build/history.properties");
+        CombinationHistory history = new CombinationHistory(file);
+        history.recordDuration(CombinationHistoryTest.class, ADMIN_USER, 120);
+        history.recordMethodDuration(CombinationHistoryTest.class, ADMIN_USER, "testMethod", 100);
+
+        assertThat("Recorded durations are used only by the next run",
+                history.getDuration(CombinationHistoryTest.class, ADMIN_USER), is(Optional.empty()));
+
+        history.save();
+        CombinationHistory nextRun = new CombinationHistory(file);
+
+        assertThat(nextRun.hasDurations(CombinationHistoryTest.class), is(true));
+        assertThat(nextRun.getDuration(CombinationHistoryTest.class, ADMIN_USER), is(Optional.of(120L)));
+        assertThat(nextRun.getMethodDuration(CombinationHistoryTest.class, ADMIN_USER, "testMethod"), is(Optional.of(100L)));
+        assertThat(nextRun.getDuration(CombinationHistoryTest.class, USER_ADMIN), is(Optional.empty()));
+    }
+
+    @Test
+    public void saveKeepsEntriesSavedByOthers() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("history.properties");
+        CombinationHistory first = new CombinationHistory(file);
+        CombinationHistory second = new CombinationHistory(file);
+
+        first.recordDuration(CombinationHistoryTest.class, ADMIN_USER, 10);
+        second.recordDuration(CombinationHistoryTest.class, USER_ADMIN, 20);
+        first.save();
+        second.save();
+
+        CombinationHistory nextRun = new CombinationHistory(file);
+        assertThat(nextRun.getDuration(CombinationHistoryTest.class, ADMIN_USER), is(Optional.of(10L)));
+        assertThat(nextRun.getDuration(CombinationHistoryTest.class, USER_ADMIN), is(Optional.of(20L)));
+    }
+
+    @Test
+    public void failuresRecordedAndCleared() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("history.properties");
+        CombinationHistory history = new CombinationHistory(file);
+        history.recordMethodFailure(CombinationHistoryTest.class, ADMIN_USER, "testMethod");
+        history.recordFailure(CombinationHistoryTest.class, USER_ADMIN);
+        history.save();
+
+        CombinationHistory secondRun = new CombinationHistory(file);
+        assertThat(secondRun.hasFailed(CombinationHistoryTest.class, ADMIN_USER), is(true));
+        assertThat(secondRun.hasMethodFailed(CombinationHistoryTest.class, ADMIN_USER, "testMethod"), is(true));
+        assertThat(secondRun.hasMethodFailed(CombinationHistoryTest.class, ADMIN_USER, "otherMethod"), is(false));
+        assertThat(secondRun.hasFailed(CombinationHistoryTest.class, USER_ADMIN), is(true));
+
+        secondRun.clearMethodFailure(CombinationHistoryTest.class, ADMIN_USER, "testMethod");
+        secondRun.clearFailure(CombinationHistoryTest.class, USER_ADMIN);
+        secondRun.save();
+
+        CombinationHistory thirdRun = new CombinationHistory(file);
+        assertThat(thirdRun.hasFailed(CombinationHistoryTest.class, ADMIN_USER), is(false));
+        assertThat(thirdRun.hasFailed(CombinationHistoryTest.class, USER_ADMIN), is(false));
+    }
+
+    @Test
+    public void invalidFileIgnored() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("history.properties");
+        Files.write(file, "duration.fi.vincit.Foo|role\\:A|role\\:B=foo\n\\u00".getBytes("ISO-8859-1"));
+
+        CombinationHistory history = new CombinationHistory(file);
+
+        assertThat(history.hasDurations(CombinationHistoryTest.class), is(false));
+    }
+
+    @Test
+    public void recorderRecordsCombinationAndMethodDurations() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("history.properties");
+        CombinationHistoryRecorder recorder = new CombinationHistoryRecorder(CombinationHistoryTest.class, new CombinationHistory(file));
+        Description description = Description.createTestDescription(CombinationHistoryTest.class, "testMethod");
+
+        recorder.runCombination(ADMIN_USER, () -> {
+            recorder.testStarted(description);
+            recorder.testFinished(description);
+        });
+        recorder.save();
+
+        CombinationHistory nextRun = new CombinationHistory(file);
+        assertThat(nextRun.getDuration(CombinationHistoryTest.class, ADMIN_USER).isPresent(), is(true));
+        assertThat(nextRun.getMethodDuration(CombinationHistoryTest.class, ADMIN_USER, "testMethod").isPresent(), is(true));
+    }
+
+    @Test
+    public void recorderRecordsFailuresAndClearsThemWhenPassed() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("history.properties");
+        Description description = Description.createTestDescription(CombinationHistoryTest.class, "testMethod");
+        Description combinationDescription = Description.createSuiteDescription("Combination");
+
+        CombinationHistoryRecorder failingRun = new CombinationHistoryRecorder(CombinationHistoryTest.class, new CombinationHistory(file));
+        failingRun.runCombination(ADMIN_USER, () -> {
+            failingRun.testStarted(description);
+            failingRun.testFailure(new Failure(description, new AssertionError()));
+            failingRun.testFinished(description);
+        });
+        failingRun.runCombination(USER_ADMIN, () ->
+                failingRun.testFailure(new Failure(combinationDescription, new IllegalStateException()))
+        );
+
+        CombinationHistory secondHistory = new CombinationHistory(file);
+        assertThat("Saved after each combination", secondHistory.hasMethodFailed(CombinationHistoryTest.class, ADMIN_USER, "testMethod"), is(true));
+        assertThat(secondHistory.hasFailed(CombinationHistoryTest.class, USER_ADMIN), is(true));
+
+        CombinationHistoryRecorder passingRun = new CombinationHistoryRecorder(CombinationHistoryTest.class, secondHistory);
+        passingRun.runCombination(ADMIN_USER, () -> {
+            passingRun.testStarted(description);
+            passingRun.testFinished(description);
+        });
+        passingRun.runCombination(USER_ADMIN, () -> {
+        });
+
+        CombinationHistory thirdHistory = new CombinationHistory(file);
+        assertThat(thirdHistory.hasFailed(CombinationHistoryTest.class, ADMIN_USER), is(false));
+        assertThat(thirdHistory.hasFailed(CombinationHistoryTest.class, USER_ADMIN), is(false));
+    }
+
+}
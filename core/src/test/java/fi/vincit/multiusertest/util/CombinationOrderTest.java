@@ -0,0 +1,290 @@
+package fi.vincit.multiusertest.util;
+
+import fi.vincit.multiusertest.annotation.MultiUserTestConfig;
+import fi.vincit.multiusertest.annotation.RunWithUsers;
+import fi.vincit.multiusertest.runner.junit.MultiUserTestRunnerTest;
+import fi.vincit.multiusertest.runner.junit.TestRunnerFactory;
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.Description;
+import org.junit.runner.Runner;
+import org.junit.runners.BlockJUnit4ClassRunner;
+import org.junit.runners.model.InitializationError;
+import org.junit.runners.model.TestClass;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class CombinationOrderTest {
+
+    private static final UserIdentifier ADMIN = UserIdentifier.parse("role:ROLE_ADMIN");
+    private static final UserIdentifier USER = UserIdentifier.parse("role:ROLE_USER");
+    private static final UserIdentifier VISITOR = UserIdentifier.parse("role:ROLE_VISITOR");
+
+    private static final List<UserCombination> COMBINATIONS =
+            UserCombination.combine(Arrays.asList(ADMIN, USER), Arrays.asList(ADMIN, USER, VISITOR));
+
+    @RunWithUsers(producers = {"role:ROLE_ADMIN", "role:ROLE_USER"}, consumers = {"role:ROLE_ADMIN", "role:ROLE_USER", "role:ROLE_VISITOR"})
+    @MultiUserTestConfig(runner = MultiUserTestRunnerTest.TestRunner.class, combinationOrder = CombinationOrder.LONGEST_FIRST)
+    @Ignore
+    public static class LongestFirst {
+    }
+
+    @RunWithUsers(producers = {"role:ROLE_ADMIN", "role:ROLE_USER"}, consumers = {"role:ROLE_ADMIN", "role:ROLE_USER", "role:ROLE_VISITOR"})
+    @MultiUserTestConfig(runner = MethodRunner.class, combinationOrder = CombinationOrder.FAILED_FIRST)
+    @Ignore
+    public static class FailedFirst {
+        @Test
+        public void first() {
+        }
+
+        @Test
+        public void second() {
+        }
+
+        @Test
+        public void third() {
+        }
+    }
+
+    @Ignore
+    public static class MethodRunner extends BlockJUnit4ClassRunner {
+        private final UserCombination combination;
+
+        public MethodRunner(Class<?> testClass, UserIdentifier producer, UserIdentifier consumer) throws InitializationError {
+            super(testClass);
+            this.combination = new UserCombination(producer, consumer);
+        }
+
+        public UserCombination getCombination() {
+            return combination;
+        }
+
+        public List<String> getMethodNames() {
+            return getDescription().getChildren().stream()
+                    .map(Description::getMethodName)
+                    .collect(Collectors.toList());
+        }
+    }
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path file;
+
+    @Before
+    public void init() {
+        file = folder.getRoot().toPath().resolve("history.properties");
+    }
+
+    @Test
+    public void declarationOrderIgnoresHistory() throws Exception {
+        CombinationHistory history = history(
+                new UserCombination(USER, VISITOR), 100L
+        );
+
+        assertThat(CombinationOrder.DECLARATION.order(LongestFirst.class, COMBINATIONS, history), is(COMBINATIONS));
+    }
+
+    @Test
+    public void longestFirstWithoutHistoryUsesDeclarationOrder() {
+        CombinationHistory history = new CombinationHistory(file);
+
+        assertThat(CombinationOrder.LONGEST_FIRST.order(LongestFirst.class, COMBINATIONS, history), is(COMBINATIONS));
+    }
+
+    @Test
+    public void longestFirstOrdersEachCombinationByItsDuration() throws Exception {
+        CombinationHistory history = history(
+                new UserCombination(ADMIN, ADMIN), 10L,
+                new UserCombination(ADMIN, USER), 20L,
+                new UserCombination(ADMIN, VISITOR), 30L,
+                new UserCombination(USER, ADMIN), 5L,
+                new UserCombination(USER, USER), 100L,
+                new UserCombination(USER, VISITOR), 1L
+        );
+
+        assertThat(CombinationOrder.LONGEST_FIRST.order(LongestFirst.class, COMBINATIONS, history), is(Arrays.asList(
+                new UserCombination(USER, USER),
+                new UserCombination(ADMIN, VISITOR),
+                new UserCombination(ADMIN, USER),
+                new UserCombination(ADMIN, ADMIN),
+                new UserCombination(USER, ADMIN),
+                new UserCombination(USER, VISITOR)
+        )));
+    }
+
+    @Test
+    public void longestFirstRunsSlowCombinationOfLightProducerFirst() throws Exception {
+        CombinationHistory history = history(
+                new UserCombination(ADMIN, ADMIN), 40L,
+                new UserCombination(ADMIN, USER), 40L,
+                new UserCombination(ADMIN, VISITOR), 40L,
+                new UserCombination(USER, ADMIN), 1L,
+                new UserCombination(USER, USER), 50L,
+                new UserCombination(USER, VISITOR), 1L
+        );
+
+        List<UserCombination> order = CombinationOrder.LONGEST_FIRST.order(LongestFirst.class, COMBINATIONS, history);
+
+        assertThat(order.get(0), is(new UserCombination(USER, USER)));
+    }
+
+    @Test
+    public void longestFirstExpectsUnknownCombinationsToTakeAverageDuration() throws Exception {
+        CombinationHistory history = history(
+                new UserCombination(ADMIN, ADMIN), 10L,
+                new UserCombination(ADMIN, USER), 20L,
+                new UserCombination(ADMIN, VISITOR), 30L,
+                new UserCombination(USER, USER), 100L
+        );
+
+        assertThat(CombinationOrder.LONGEST_FIRST.order(LongestFirst.class, COMBINATIONS, history), is(Arrays.asList(
+                new UserCombination(USER, USER),
+                new UserCombination(USER, ADMIN),
+                new UserCombination(USER, VISITOR),
+                new UserCombination(ADMIN, VISITOR),
+                new UserCombination(ADMIN, USER),
+                new UserCombination(ADMIN, ADMIN)
+        )));
+    }
+
+    @Test
+    public void failedFirstRunsFailedCombinationsFirst() throws Exception {
+        CombinationHistory history = new CombinationHistory(file);
+        history.recordDuration(LongestFirst.class, new UserCombination(ADMIN, ADMIN), 10L);
+        history.recordDuration(LongestFirst.class, new UserCombination(ADMIN, USER), 20L);
+        history.recordDuration(LongestFirst.class, new UserCombination(ADMIN, VISITOR), 30L);
+        history.recordDuration(LongestFirst.class, new UserCombination(USER, ADMIN), 40L);
+        history.recordDuration(LongestFirst.class, new UserCombination(USER, USER), 50L);
+        history.recordDuration(LongestFirst.class, new UserCombination(USER, VISITOR), 60L);
+        history.recordMethodFailure(LongestFirst.class, new UserCombination(USER, ADMIN), "testMethod");
+        history.recordFailure(LongestFirst.class, new UserCombination(ADMIN, VISITOR));
+        history.save();
+
+        assertThat(CombinationOrder.FAILED_FIRST.order(LongestFirst.class, COMBINATIONS, new CombinationHistory(file)), is(Arrays.asList(
+                new UserCombination(ADMIN, VISITOR),
+                new UserCombination(USER, ADMIN),
+                new UserCombination(USER, VISITOR),
+                new UserCombination(USER, USER),
+                new UserCombination(ADMIN, USER),
+                new UserCombination(ADMIN, ADMIN)
+        )));
+    }
+
+    @Test
+    public void failedFirstWithoutHistoryUsesDeclarationOrder() {
+        CombinationHistory history = new CombinationHistory(file);
+
+        assertThat(CombinationOrder.FAILED_FIRST.order(LongestFirst.class, COMBINATIONS, history), is(COMBINATIONS));
+    }
+
+    @Test
+    public void factoryRunsFailedMethodsFirst() throws Exception {
+        CombinationHistory history = new CombinationHistory(file);
+        history.recordMethodFailure(FailedFirst.class, new UserCombination(USER, VISITOR), "third");
+        history.recordMethodFailure(FailedFirst.class, new UserCombination(USER, VISITOR), "second");
+        history.save();
+        TestRunnerFactory factory = new TestRunnerFactory(
+                new TestClass(FailedFirst.class),
+                MethodRunner.class.getConstructor(Class.class, UserIdentifier.class, UserIdentifier.class),
+                new Shard(1, 1),
+                new CombinationHistory(file)
+        );
+
+        List<Runner> runners = factory.createRunnersForRoles(Arrays.asList(ADMIN, USER), Arrays.asList(ADMIN, USER, VISITOR));
+
+        MethodRunner failedRunner = (MethodRunner) runners.get(0);
+        assertThat(failedRunner.getCombination(), is(new UserCombination(USER, VISITOR)));
+        assertThat(new HashSet<>(failedRunner.getMethodNames().subList(0, 2)), is(new HashSet<>(Arrays.asList("second", "third"))));
+        assertThat(failedRunner.getMethodNames().get(2), is("first"));
+    }
+
+    @Test
+    public void factoryCreatesRunnersInOrder() throws Exception {
+        CombinationHistory history = history(
+                new UserCombination(ADMIN, ADMIN), 1L,
+                new UserCombination(USER, VISITOR), 50L
+        );
+        TestRunnerFactory factory = new TestRunnerFactory(
+                new TestClass(LongestFirst.class),
+                MultiUserTestRunnerTest.TestRunner.class.getConstructor(Class.class, UserIdentifier.class, UserIdentifier.class),
+                new Shard(1, 1),
+                history
+        );
+
+        List<UserCombination> created = new ArrayList<>();
+        for (Runner runner : factory.createRunnersForRoles(Arrays.asList(ADMIN, USER), Arrays.asList(ADMIN, USER, VISITOR))) {
+            MultiUserTestRunnerTest.TestRunner testRunner = (MultiUserTestRunnerTest.TestRunner) runner;
+            created.add(new UserCombination(testRunner.getProducer(), testRunner.getConsumer()));
+            assertThat(factory.getRunnerCombinations().get(runner), is(created.get(created.size() - 1)));
+        }
+
+        assertThat(created, is(Arrays.asList(
+                new UserCombination(USER, VISITOR),
+                new UserCombination(ADMIN, USER),
+                new UserCombination(ADMIN, VISITOR),
+                new UserCombination(USER, ADMIN),
+                new UserCombination(USER, USER),
+                new UserCombination(ADMIN, ADMIN)
+        )));
+    }
+
+    @Test
+    public void resolveUsesConfiguration() {
+        String previous = System.clearProperty(CombinationOrder.ORDER_PROPERTY);
+        try {
+            assertThat(CombinationOrder.resolve(TestConfiguration.fromClass(LongestFirst.class)), is(CombinationOrder.LONGEST_FIRST));
+            assertThat(CombinationOrder.resolve(TestConfiguration.fromClass(CombinationOrderTest.class)), is(CombinationOrder.DECLARATION));
+        } finally {
+            restoreProperty(previous);
+        }
+    }
+
+    @Test
+    public void resolveSystemPropertyOverridesConfiguration() {
+        String previous = System.setProperty(CombinationOrder.ORDER_PROPERTY, "declaration");
+        try {
+            assertThat(CombinationOrder.resolve(TestConfiguration.fromClass(LongestFirst.class)), is(CombinationOrder.DECLARATION));
+        } finally {
+            restoreProperty(previous);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void resolveInvalidSystemProperty() {
+        String previous = System.setProperty(CombinationOrder.ORDER_PROPERTY, "fastest");
+        try {
+            CombinationOrder.resolve(TestConfiguration.fromClass(LongestFirst.class));
+        } finally {
+            restoreProperty(previous);
+        }
+    }
+
+    private CombinationHistory history(Object... durations) throws Exception {
+        CombinationHistory history = new CombinationHistory(file);
+        for (int i = 0; i < durations.length; i += 2) {
+            history.recordDuration(LongestFirst.class, (UserCombination) durations[i], (Long) durations[i + 1]);
+        }
+        history.save();
+        return new CombinationHistory(file);
+    }
+
+    private static void restoreProperty(String previous) {
+        if (previous != null) {
+            System.setProperty(CombinationOrder.ORDER_PROPERTY, previous);
+        } else {
+            System.clearProperty(CombinationOrder.ORDER_PROPERTY);
+        }
+    }
+}
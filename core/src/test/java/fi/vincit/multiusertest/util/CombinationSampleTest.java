@@ -0,0 +1,144 @@
+package fi.vincit.multiusertest.util;
+
+import fi.vincit.multiusertest.annotation.MultiUserTestConfig;
+import fi.vincit.multiusertest.annotation.RunWithUsers;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class CombinationSampleTest {
+
+    private static final List<UserCombination> COMBINATIONS = UserCombination.combine(
+            identifiers("role:ROLE_SYSTEM_ADMIN", "role:ROLE_ADMIN", "role:ROLE_USER", "user:admin", RunWithUsers.ANONYMOUS),
+            identifiers("role:ROLE_SYSTEM_ADMIN", "role:ROLE_ADMIN", "role:ROLE_USER", "user:admin", RunWithUsers.ANONYMOUS)
+    );
+
+    @RunWithUsers(producers = "role:ROLE_ADMIN")
+    @MultiUserTestConfig(sampleSize = 3)
+    @Ignore
+    public static class Sampled {
+    }
+
+    @Test
+    public void allByDefault() {
+        CombinationSample sample = new CombinationSample(0, 0, 0);
+
+        assertThat(sample.isAll(), is(true));
+        assertThat(sample.select(CombinationSampleTest.class, COMBINATIONS), is(COMBINATIONS));
+        assertThat(sample.getRoundCount(COMBINATIONS.size()), is(1));
+    }
+
+    @Test
+    public void sampleLargerThanCombinations() {
+        CombinationSample sample = new CombinationSample(COMBINATIONS.size(), 0, 3);
+
+        assertThat(sample.select(CombinationSampleTest.class, COMBINATIONS), is(COMBINATIONS));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeSize() {
+        new CombinationSample(-1, 0, 0);
+    }
+
+    @Test
+    public void sampleInDeclarationOrder() {
+        List<UserCombination> selected = new CombinationSample(7, 42, 1).select(CombinationSampleTest.class, COMBINATIONS);
+
+        assertThat(selected.size(), is(7));
+        List<Integer> indices = selected.stream().map(COMBINATIONS::indexOf).collect(Collectors.toList());
+        assertThat(indices, is(indices.stream().sorted().collect(Collectors.toList())));
+    }
+
+    @Test
+    public void sameSampleForSameSeedAndRound() {
+        assertThat(new CombinationSample(5, 42, 3).select(CombinationSampleTest.class, COMBINATIONS),
+                is(new CombinationSample(5, 42, 3).select(CombinationSampleTest.class, COMBINATIONS)));
+    }
+
+    @Test
+    public void roundsRotateThroughAllCombinations() {
+        CombinationSample first = new CombinationSample(5, 42, 0);
+        int rounds = first.getRoundCount(COMBINATIONS.size());
+        assertThat(rounds, is(5));
+
+        List<UserCombination> allRounds = new ArrayList<>();
+        for (long round = 10; round < 10 + rounds; ++round) {
+            allRounds.addAll(new CombinationSample(5, 42, round).select(CombinationSampleTest.class, COMBINATIONS));
+        }
+
+        assertThat(allRounds.size(), is(COMBINATIONS.size()));
+        assertThat(new HashSet<>(allRounds), is(new HashSet<>(COMBINATIONS)));
+    }
+
+    @Test
+    public void lastRoundFilledFromBeginning() {
+        CombinationSample sample = new CombinationSample(7, 42, 0);
+        int rounds = sample.getRoundCount(COMBINATIONS.size());
+        assertThat(rounds, is(4));
+
+        HashSet<UserCombination> allRounds = new HashSet<>();
+        for (long round = 0; round < rounds; ++round) {
+            List<UserCombination> selected = new CombinationSample(7, 42, round).select(CombinationSampleTest.class, COMBINATIONS);
+            assertThat(selected.size(), is(7));
+            allRounds.addAll(selected);
+        }
+
+        assertThat(allRounds, is(new HashSet<>(COMBINATIONS)));
+    }
+
+    @Test
+    public void resolveUsesConfiguration() {
+        withProperties(null, null, null, () -> {
+            CombinationSample sample = CombinationSample.resolve(TestConfiguration.fromClass(Sampled.class));
+            assertThat(sample.getSize(), is(3));
+            assertThat(sample.getSeed(), is(0L));
+            assertThat(sample.getRound(), is(0L));
+        });
+    }
+
+    @Test
+    public void resolveSystemPropertiesOverrideConfiguration() {
+        withProperties("5", "42", "1234", () -> {
+            CombinationSample sample = CombinationSample.resolve(TestConfiguration.fromClass(Sampled.class));
+            assertThat(sample.getSize(), is(5));
+            assertThat(sample.getSeed(), is(42L));
+            assertThat(sample.getRound(), is(1234L));
+        });
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void resolveInvalidRound() {
+        withProperties(null, null, "build-12", () ->
+                CombinationSample.resolve(TestConfiguration.fromClass(Sampled.class))
+        );
+    }
+
+    private static void withProperties(String size, String seed, String round, Runnable test) {
+        String previousSize = setProperty(CombinationSample.SIZE_PROPERTY, size);
+        String previousSeed = setProperty(CombinationSample.SEED_PROPERTY, seed);
+        String previousRound = setProperty(CombinationSample.ROUND_PROPERTY, round);
+        try {
+            test.run();
+        } finally {
+            setProperty(CombinationSample.SIZE_PROPERTY, previousSize);
+            setProperty(CombinationSample.SEED_PROPERTY, previousSeed);
+            setProperty(CombinationSample.ROUND_PROPERTY, previousRound);
+        }
+    }
+
+    private static String setProperty(String property, String value) {
+        return value != null ? System.setProperty(property, value) : System.clearProperty(property);
+    }
+
+    private static List<UserIdentifier> identifiers(String... identifiers) {
+        return Stream.of(identifiers).map(UserIdentifier::parse).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,64 @@
+package fi.vincit.multiusertest.util;
+
+import fi.vincit.multiusertest.annotation.RunWithUsers;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class CombinationSelectionTest {
+
+    private static final UserIdentifier USER = UserIdentifier.parse("role:ROLE_USER");
+    private static final UserIdentifier ADMIN = UserIdentifier.parse("role:ROLE_ADMIN");
+    private static final UserIdentifier ANONYMOUS = UserIdentifier.parse(RunWithUsers.ANONYMOUS);
+
+    private static final List<UserCombination> COMBINATIONS =
+            UserCombination.combine(Arrays.asList(USER, ADMIN), Arrays.asList(USER, ANONYMOUS));
+
+    @Test
+    public void parseCombinationName() {
+        CombinationSelection selection = CombinationSelection.parse("producer={role:ROLE_USER}, consumer={anonymous}");
+
+        assertThat(selection.filter(COMBINATIONS), is(Arrays.asList(new UserCombination(USER, ANONYMOUS))));
+    }
+
+    @Test
+    public void parseMultipleCombinationsIgnoresWhitespace() {
+        CombinationSelection selection = CombinationSelection.parse(
+                " producer={role:ROLE_ADMIN},consumer={role:ROLE_USER} ; producer = {role:ROLE_USER}, consumer = {anonymous};"
+        );
+
+        assertThat(selection.filter(COMBINATIONS), is(Arrays.asList(
+                new UserCombination(USER, ANONYMOUS),
+                new UserCombination(ADMIN, USER)
+        )));
+    }
+
+    @Test
+    public void unknownCombinationSelectsNothing() {
+        CombinationSelection selection = CombinationSelection.parse("producer={role:ROLE_VISITOR}, consumer={anonymous}");
+
+        assertThat(selection.filter(COMBINATIONS).isEmpty(), is(true));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parseEmpty() {
+        CombinationSelection.parse(" ; ");
+    }
+
+    @Test
+    public void fromSystemProperties_AllByDefault() {
+        String previous = System.clearProperty(CombinationSelection.COMBINATION_PROPERTY);
+        try {
+            assertThat(CombinationSelection.fromSystemProperties().isAll(), is(true));
+            assertThat(CombinationSelection.fromSystemProperties().filter(COMBINATIONS), is(COMBINATIONS));
+        } finally {
+            if (previous != null) {
+                System.setProperty(CombinationSelection.COMBINATION_PROPERTY, previous);
+            }
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package fi.vincit.multiusertest.util;
+
+import fi.vincit.multiusertest.annotation.IgnoreForUsers;
+import fi.vincit.multiusertest.annotation.RunWithUsers;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runners.model.FrameworkMethod;
+import org.junit.runners.model.TestClass;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class ExecutionMatrixTest {
+
+    @RunWithUsers(producers = {"role:ROLE_ADMIN", "role:ROLE_USER"},
+            consumers = {"role:ROLE_ADMIN", "role:ROLE_USER"})
+    @Ignore
+    public static class TestMethods {
+        @Test
+        public void all() {
+        }
+
+        @Test
+        @RunWithUsers(producers = "role:ROLE_ADMIN", consumers = "role:ROLE_USER")
+        public void adminProducerUserConsumer() {
+        }
+
+        @Test
+        @IgnoreForUsers(producers = "role:ROLE_USER")
+        public void notUserProducer() {
+        }
+
+        @Test
+        @RunWithUsers(producers = "role:ROLE_ADMIN")
+        @IgnoreForUsers(producers = "role:ROLE_USER")
+        public void invalid() {
+        }
+
+        public void notTest() {
+        }
+    }
+
+    @Ignore
+    public static class AllMethodsRunWithAllUsers {
+        @Test
+        public void test() {
+        }
+    }
+
+    private final ExecutionMatrix matrix = ExecutionMatrix.compile(new TestClass(TestMethods.class));
+
+    @Test
+    public void methodCount() {
+        assertThat(matrix.getMethodCount(), is(4));
+    }
+
+    @Test
+    public void adminAdmin() throws Exception {
+        ExecutionMatrix.Row row = matrix.getRow(combination("role:ROLE_ADMIN", "role:ROLE_ADMIN"));
+        assertThat(row.shouldRun(method("all")), is(true));
+        assertThat(row.shouldRun(method("adminProducerUserConsumer")), is(false));
+        assertThat(row.shouldRun(method("notUserProducer")), is(true));
+    }
+
+    @Test
+    public void adminUser() throws Exception {
+        ExecutionMatrix.Row row = matrix.getRow(combination("role:ROLE_ADMIN", "role:ROLE_USER"));
+        assertThat(row.shouldRun(method("all")), is(true));
+        assertThat(row.shouldRun(method("adminProducerUserConsumer")), is(true));
+        assertThat(row.shouldRun(method("notUserProducer")), is(true));
+    }
+
+    @Test
+    public void userAdmin() throws Exception {
+        ExecutionMatrix.Row row = matrix.getRow(combination("role:ROLE_USER", "role:ROLE_ADMIN"));
+        assertThat(row.shouldRun(method("all")), is(true));
+        assertThat(row.shouldRun(method("adminProducerUserConsumer")), is(false));
+        assertThat(row.shouldRun(method("notUserProducer")), is(false));
+    }
+
+    @Test
+    public void sameAsTestMethodFilter() throws Exception {
+        String[] identifiers = {"role:ROLE_ADMIN", "role:ROLE_USER"};
+        for (String producer : identifiers) {
+            for (String consumer : identifiers) {
+                TestMethodFilter filter = new TestMethodFilter(UserIdentifier.parse(producer), UserIdentifier.parse(consumer));
+                ExecutionMatrix.Row row = matrix.getRow(combination(producer, consumer));
+                for (String method : new String[] {"all", "adminProducerUserConsumer", "notUserProducer"}) {
+                    assertThat(row.shouldRun(method(method)), is(filter.shouldRun(method(method))));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void rowCompiledOnce() {
+        UserCombination combination = combination("role:ROLE_ADMIN", "role:ROLE_USER");
+        assertThat(matrix.getRow(combination) == matrix.getRow(combination), is(true));
+    }
+
+    @Test
+    public void runCount() {
+        assertThat(matrix.getRow(combination("role:ROLE_USER", "role:ROLE_USER")).getRunCount(), is(2));
+    }
+
+    @Test
+    public void containsOnlyTestMethods() throws Exception {
+        ExecutionMatrix.Row row = matrix.getRow(combination("role:ROLE_ADMIN", "role:ROLE_USER"));
+        assertThat(row.contains(method("all")), is(true));
+        assertThat(row.contains(method("notTest")), is(false));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void invalidMethodThrowsWhenChecked() throws Exception {
+        matrix.getRow(combination("role:ROLE_ADMIN", "role:ROLE_USER")).shouldRun(method("invalid"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void notCompiledMethodThrows() throws Exception {
+        matrix.getRow(combination("role:ROLE_ADMIN", "role:ROLE_USER")).shouldRun(method("notTest"));
+    }
+
+    @Test
+    public void distinctSkipsEquivalentCombinationRunningSameMethods() {
+        ExecutionMatrix allUsersMatrix = ExecutionMatrix.compile(new TestClass(AllMethodsRunWithAllUsers.class));
+        List<UserCombination> combinations = Arrays.asList(
+                combination("role:ROLE_ADMIN", RunWithUsers.WITH_PRODUCER_ROLE),
+                combination("role:ROLE_ADMIN", "role:ROLE_ADMIN"),
+                combination("role:ROLE_ADMIN", "role:ROLE_USER")
+        );
+
+        assertThat(allUsersMatrix.distinct(combinations), is(Arrays.asList(
+                combination("role:ROLE_ADMIN", RunWithUsers.WITH_PRODUCER_ROLE),
+                combination("role:ROLE_ADMIN", "role:ROLE_USER")
+        )));
+    }
+
+    @Test
+    public void distinctKeepsEquivalentCombinationRunningDifferentMethods() {
+        // notUserProducer is run with consumer ROLE_ADMIN but not with WITH_PRODUCER_ROLE
+        List<UserCombination> combinations = Arrays.asList(
+                combination("role:ROLE_ADMIN", RunWithUsers.WITH_PRODUCER_ROLE),
+                combination("role:ROLE_ADMIN", "role:ROLE_ADMIN")
+        );
+
+        assertThat(matrix.distinct(combinations), is(combinations));
+    }
+
+    private static UserCombination combination(String producer, String consumer) {
+        return new UserCombination(UserIdentifier.parse(producer), UserIdentifier.parse(consumer));
+    }
+
+    private static FrameworkMethod method(String name) throws NoSuchMethodException {
+        return new FrameworkMethod(TestMethods.class.getMethod(name));
+    }
+}
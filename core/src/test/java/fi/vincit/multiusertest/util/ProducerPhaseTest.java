@@ -0,0 +1,144 @@
+package fi.vincit.multiusertest.util;
+
+import fi.vincit.multiusertest.annotation.ProducerSetup;
+import fi.vincit.multiusertest.util.snapshot.ProducerSnapshotStrategy;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+public class ProducerPhaseTest {
+
+    @Ignore
+    public static class SnapshotReleaseTest {
+        @ProducerSetup(snapshot = ReleaseRecordingStrategy.class)
+        public void producerSetup() {
+        }
+    }
+
+    public static class ReleaseRecordingStrategy implements ProducerSnapshotStrategy {
+
+        static final List<Object> releasedSnapshots = new ArrayList<>();
+
+        @Override
+        public Object snapshot(Object testInstance) {
+            return new Object();
+        }
+
+        @Override
+        public void restore(Object snapshot, Object testInstance) {
+        }
+
+        @Override
+        public void release(Object snapshot) {
+            releasedSnapshots.add(snapshot);
+        }
+    }
+
+    @Test
+    public void claim_OnlyFirstTestRunsSetup() {
+        ProducerPhase phase = new ProducerPhase();
+        Object first = new Object();
+        Object second = new Object();
+        Object producer = new Object();
+        Object snapshot = new Object();
+
+        assertThat(phase.claim(first), is(true));
+        assertThat(phase.isClaimedBy(first), is(true));
+        phase.complete(first, producer, snapshot);
+
+        assertThat(phase.claim(second), is(false));
+        assertThat(phase.isClaimedBy(second), is(false));
+        assertThat(phase.getProducer(), sameInstance(producer));
+        assertThat(phase.getSnapshot(), sameInstance(snapshot));
+    }
+
+    @Test
+    public void abandon_NextTestRunsSetup() {
+        ProducerPhase phase = new ProducerPhase();
+        Object first = new Object();
+        Object second = new Object();
+
+        assertThat(phase.claim(first), is(true));
+        phase.abandon(first);
+
+        assertThat(phase.claim(second), is(true));
+        assertThat(phase.isClaimedBy(second), is(true));
+    }
+
+    @Test
+    public void abandon_DoesNothingAfterComplete() {
+        ProducerPhase phase = new ProducerPhase();
+        Object first = new Object();
+
+        phase.claim(first);
+        phase.complete(first, null, null);
+        phase.abandon(first);
+
+        assertThat(phase.claim(new Object()), is(false));
+    }
+
+    @Test
+    public void reset_NextTestRunsSetup() {
+        ProducerPhase phase = new ProducerPhase();
+        Object first = new Object();
+
+        phase.claim(first);
+        phase.complete(first, new Object(), new Object());
+        phase.reset();
+
+        assertThat(phase.getProducer(), is((Object) null));
+        assertThat(phase.claim(new Object()), is(true));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void complete_NotClaimed() {
+        new ProducerPhase().complete(new Object(), null, null);
+    }
+
+    @Test
+    public void of_SharedPerTestClassAndProducer() {
+        UserIdentifier producer = UserIdentifier.parse("role:ROLE_ADMIN");
+
+        assertThat(ProducerPhase.of(ProducerPhaseTest.class, producer),
+                sameInstance(ProducerPhase.of(ProducerPhaseTest.class, UserIdentifier.parse("role:ROLE_ADMIN"))));
+        assertThat(ProducerPhase.of(ProducerPhaseTest.class, producer)
+                == ProducerPhase.of(ProducerPhaseTest.class, UserIdentifier.parse("role:ROLE_USER")), is(false));
+        assertThat(ProducerPhase.of(ProducerPhaseTest.class, producer)
+                == ProducerPhase.of(TestClassModelTest.class, producer), is(false));
+    }
+
+    @Test
+    public void resetAll_DiscardsPhasesOfTestClass() throws Exception {
+        UserIdentifier producer = UserIdentifier.parse("role:ROLE_ADMIN");
+        ProducerPhase phase = ProducerPhase.of(ProducerPhaseTest.class, producer);
+        ProducerPhase otherClassPhase = ProducerPhase.of(TestClassModelTest.class, producer);
+
+        ProducerPhase.resetAll(ProducerPhaseTest.class);
+
+        assertThat(ProducerPhase.of(ProducerPhaseTest.class, producer) == phase, is(false));
+        assertThat(ProducerPhase.of(TestClassModelTest.class, producer), sameInstance(otherClassPhase));
+    }
+
+    @Test
+    public void resetAll_ReleasesCompletedSnapshots() throws Exception {
+        ReleaseRecordingStrategy.releasedSnapshots.clear();
+        Object snapshot = new Object();
+        Object testInstance = new Object();
+        ProducerPhase completed = ProducerPhase.of(SnapshotReleaseTest.class, UserIdentifier.parse("role:ROLE_ADMIN"));
+        completed.claim(testInstance);
+        completed.complete(testInstance, new Object(), snapshot);
+        ProducerPhase.of(SnapshotReleaseTest.class, UserIdentifier.parse("role:ROLE_USER")).claim(new Object());
+
+        ProducerPhase.resetAll(SnapshotReleaseTest.class);
+
+        assertThat(ReleaseRecordingStrategy.releasedSnapshots, is(Collections.singletonList(snapshot)));
+        assertThat(ProducerPhase.of(SnapshotReleaseTest.class, UserIdentifier.parse("role:ROLE_ADMIN")).claim(new Object()), is(true));
+    }
+}
@@ -0,0 +1,118 @@
+package fi.vincit.multiusertest.util;
+
+import fi.vincit.multiusertest.annotation.RunWithUsers;
+import fi.vincit.multiusertest.runner.junit.MultiUserTestRunnerTest;
+import fi.vincit.multiusertest.runner.junit.TestRunnerFactory;
+import org.junit.Test;
+import org.junit.runner.Runner;
+import org.junit.runners.model.TestClass;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class ShardTest {
+
+    private static final List<UserCombination> COMBINATIONS = UserCombination.combine(
+            identifiers("role:ROLE_SYSTEM_ADMIN", "role:ROLE_ADMIN", "role:ROLE_USER", "role:ROLE_VISITOR", "user:admin", RunWithUsers.ANONYMOUS),
+            identifiers("role:ROLE_SYSTEM_ADMIN", "role:ROLE_ADMIN", "role:ROLE_USER", "role:ROLE_VISITOR", "user:admin", RunWithUsers.ANONYMOUS)
+    );
+
+    @Test
+    public void parse() {
+        Shard shard = Shard.parse(" 2/8 ");
+        assertThat(shard.getIndex(), is(2));
+        assertThat(shard.getCount(), is(8));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parse_InvalidFormat() {
+        Shard.parse("2");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parse_NotNumber() {
+        Shard.parse("a/8");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parse_IndexStartsFromOne() {
+        Shard.parse("0/8");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parse_IndexGreaterThanCount() {
+        Shard.parse("9/8");
+    }
+
+    @Test
+    public void fromSystemProperties_AllByDefault() {
+        String previous = System.clearProperty(Shard.SHARD_PROPERTY);
+        try {
+            assertThat(Shard.fromSystemProperties().filter(ShardTest.class, COMBINATIONS), is(COMBINATIONS));
+        } finally {
+            if (previous != null) {
+                System.setProperty(Shard.SHARD_PROPERTY, previous);
+            }
+        }
+    }
+
+    @Test
+    public void combinationInExactlyOneShard() {
+        int shardCount = 8;
+        List<UserCombination> allShards = new ArrayList<>();
+        for (int index = 1; index <= shardCount; ++index) {
+            List<UserCombination> shardCombinations = new Shard(index, shardCount).filter(ShardTest.class, COMBINATIONS);
+            assertThat(shardCombinations.size(), greaterThan(0));
+            allShards.addAll(shardCombinations);
+        }
+
+        assertThat(allShards.size(), is(COMBINATIONS.size()));
+        assertThat(new HashSet<>(allShards), is(new HashSet<>(COMBINATIONS)));
+    }
+
+    @Test
+    public void sameShardForSameCombination() {
+        Shard shard = new Shard(3, 8);
+        for (UserCombination combination : COMBINATIONS) {
+            UserCombination copy = new UserCombination(
+                    new UserIdentifier(combination.getProducer().getType(), combination.getProducer().getIdentifier()),
+                    new UserIdentifier(combination.getConsumer().getType(), combination.getConsumer().getIdentifier())
+            );
+            assertThat(new Shard(3, 8).contains(ShardTest.class, copy), is(shard.contains(ShardTest.class, combination)));
+        }
+    }
+
+    @Test
+    public void factoryCreatesRunnersOfShard() throws Exception {
+        Set<UserCombination> created = new HashSet<>();
+        int runnerCount = 0;
+        for (int index = 1; index <= 3; ++index) {
+            TestRunnerFactory factory = new TestRunnerFactory(
+                    new TestClass(MultiUserTestRunnerTest.TestRunner.class),
+                    MultiUserTestRunnerTest.TestRunner.class.getConstructor(Class.class, UserIdentifier.class, UserIdentifier.class),
+                    new Shard(index, 3)
+            );
+            for (Runner runner : factory.createRunnersForRoles(identifiers("role:ROLE_ADMIN", "role:ROLE_USER"),
+                    identifiers("role:ROLE_ADMIN", "role:ROLE_USER", RunWithUsers.ANONYMOUS))) {
+                MultiUserTestRunnerTest.TestRunner testRunner = (MultiUserTestRunnerTest.TestRunner) runner;
+                created.add(new UserCombination(testRunner.getProducer(), testRunner.getConsumer()));
+                runnerCount++;
+            }
+        }
+
+        assertThat(runnerCount, is(6));
+        assertThat(created.size(), is(6));
+    }
+
+    private static List<UserIdentifier> identifiers(String... identifiers) {
+        return Stream.of(identifiers).map(UserIdentifier::parse).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,117 @@
+package fi.vincit.multiusertest.util;
+
+import fi.vincit.multiusertest.annotation.AfterCombination;
+import fi.vincit.multiusertest.annotation.BeforeCombination;
+import fi.vincit.multiusertest.annotation.RunWithUsers;
+import fi.vincit.multiusertest.runner.junit.MultiUserTestRunner;
+import fi.vincit.multiusertest.runner.junit.TestRunnerFactory;
+import fi.vincit.multiusertest.runner.junit.framework.BlockMultiUserTestClassRunner;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runner.Runner;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class TestClassModelTest {
+
+    @RunWithUsers(producers = {"role:ROLE_ADMIN", "role:ROLE_USER"},
+            consumers = {"role:ROLE_ADMIN", "role:ROLE_USER"})
+    @RunWith(MultiUserTestRunner.class)
+    @Ignore
+    public static class SharedClass {
+        @Test
+        public void test() {
+        }
+    }
+
+    @Ignore
+    public static class InvalidCombinationHooks {
+        @BeforeCombination
+        public void notStatic(UserCombination combination) {
+        }
+
+        @AfterCombination
+        public static void invalidParameter(String parameter) {
+        }
+
+        @Test
+        public void test() {
+        }
+    }
+
+    @Test
+    public void sameModelForSameClass() {
+        assertThat(TestClassModel.of(SharedClass.class), sameInstance(TestClassModel.of(SharedClass.class)));
+    }
+
+    @Test
+    public void combinationRunnersShareTestClass() throws Throwable {
+        MultiUserTestRunner runner = new MultiUserTestRunner(SharedClass.class);
+        TestRunnerFactory factory = new TestRunnerFactory(
+                runner.getTestClass(),
+                BlockMultiUserTestClassRunner.class.getConstructor(Class.class, UserIdentifier.class, UserIdentifier.class)
+        );
+
+        List<Runner> children = factory.createRunnersForRoles(
+                identifiers("role:ROLE_ADMIN", "role:ROLE_USER"),
+                identifiers("role:ROLE_ADMIN", "role:ROLE_USER")
+        );
+        assertThat(children.size(), is(4));
+        for (Runner child : children) {
+            BlockMultiUserTestClassRunner combinationRunner = (BlockMultiUserTestClassRunner) child;
+            assertThat(combinationRunner.getTestClass(), sameInstance(runner.getTestClass()));
+        }
+    }
+
+    @Test
+    public void validatedOncePerRunnerType() {
+        TestClassModel model = new TestClassModel(TestClassModel.of(SharedClass.class).getTestClass());
+        AtomicInteger validations = new AtomicInteger();
+
+        model.getInitializationErrors(String.class, errors -> validations.incrementAndGet());
+        model.getInitializationErrors(String.class, errors -> validations.incrementAndGet());
+        assertThat(validations.get(), is(1));
+
+        model.getInitializationErrors(Integer.class, errors -> validations.incrementAndGet());
+        assertThat(validations.get(), is(2));
+    }
+
+    @Test
+    public void validationErrorsReturned() {
+        TestClassModel model = new TestClassModel(TestClassModel.of(SharedClass.class).getTestClass());
+        Exception error = new Exception("Invalid");
+
+        List<Throwable> errors = new ArrayList<>(model.getInitializationErrors(String.class, e -> e.add(error)));
+        errors.addAll(model.getInitializationErrors(String.class, e -> e.add(new Exception())));
+
+        assertThat(errors.size(), is(2));
+        assertThat(errors.get(0), sameInstance((Throwable) error));
+        assertThat(errors.get(1), sameInstance((Throwable) error));
+    }
+
+    @Test
+    public void combinationHooksValidated() {
+        TestClassModel model = TestClassModel.of(InvalidCombinationHooks.class);
+
+        List<Throwable> errors = model.getInitializationErrors(String.class, e -> {});
+
+        assertThat(errors.size(), is(2));
+        assertThat(errors.get(0).getMessage(), is("Method notStatic() should be static"));
+        assertThat(errors.get(1).getMessage(), is("Method invalidParameter has unsupported parameter type " +
+                "java.lang.String. Supported types are UserCombination and TestConfiguration"));
+    }
+
+    private static List<UserIdentifier> identifiers(String... identifiers) {
+        return Stream.of(identifiers).map(UserIdentifier::parse).collect(Collectors.toList());
+    }
+
+}
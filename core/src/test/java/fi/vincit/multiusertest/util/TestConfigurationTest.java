@@ -1,6 +1,7 @@
 package fi.vincit.multiusertest.util;
 
 import fi.vincit.multiusertest.annotation.IgnoreForUsers;
+import fi.vincit.multiusertest.annotation.MultiUserTestConfig;
 import fi.vincit.multiusertest.annotation.RunWithUsers;
 import fi.vincit.multiusertest.rule.EmptyUserDefinitionClass;
 import fi.vincit.multiusertest.rule.UserDefinitionClass;
@@ -15,6 +16,7 @@ import java.util.stream.Stream;
 
 import static org.hamcrest.CoreMatchers.instanceOf;
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
 import static org.junit.Assert.assertThat;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
@@ -96,6 +98,100 @@ public class TestConfigurationTest {
         assertThat(definitions.size(), is(0));
     }
 
+    @RunWithUsers(producers = {"role:B", "role:A"}, consumers = "role:C")
+    @MultiUserTestConfig(defaultException = IllegalArgumentException.class)
+    public static class ConfiguredClass {
+        @RunWithUsers(producers = "role:A")
+        public void runWithUsers() {
+        }
+
+        @IgnoreForUsers(producers = "role:A")
+        public void ignoreForUsers() {
+        }
+
+        public void noConfiguration() {
+        }
+    }
+
+    @Test
+    public void fromClass() {
+        TestConfiguration configuration = TestConfiguration.fromClass(ConfiguredClass.class);
+
+        assertThat(configuration.getProducerIdentifiers(), is(asSet("role:A", "role:B")));
+        assertThat(configuration.getConsumerIdentifiers(), is(asSet("role:C")));
+        assertThat(configuration.getDefaultException().get(), is((Object) IllegalArgumentException.class));
+    }
+
+    @Test
+    public void fromClass_cached() {
+        assertThat(TestConfiguration.fromClass(ConfiguredClass.class),
+                sameInstance(TestConfiguration.fromClass(ConfiguredClass.class)));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void fromClass_immutable() {
+        TestConfiguration.fromClass(ConfiguredClass.class).getProducerIdentifiers().clear();
+    }
+
+    @Test
+    public void fromMethod() throws NoSuchMethodException {
+        Optional<TestConfiguration> runWithUsers =
+                TestConfiguration.fromMethod(ConfiguredClass.class.getMethod("runWithUsers"));
+        Optional<TestConfiguration> ignoreForUsers =
+                TestConfiguration.fromMethod(ConfiguredClass.class.getMethod("ignoreForUsers"));
+
+        assertThat(runWithUsers.get().getProducerIdentifiers(), is(asSet("role:A")));
+        assertThat(ignoreForUsers.get().getProducerIdentifiers(), is(asSet("role:B")));
+        assertThat(TestConfiguration.fromMethod(ConfiguredClass.class.getMethod("noConfiguration")).isPresent(), is(false));
+    }
+
+    @Test
+    public void fromMethod_cached() throws NoSuchMethodException {
+        assertThat(TestConfiguration.fromMethod(ConfiguredClass.class.getMethod("runWithUsers")).get(),
+                sameInstance(TestConfiguration.fromMethod(ConfiguredClass.class.getMethod("runWithUsers")).get()));
+    }
+
+    @Test
+    public void builder_defaults() {
+        TestConfiguration configuration = TestConfiguration.builder().build();
+
+        assertThat(configuration.getProducerIdentifiers().isEmpty(), is(true));
+        assertThat(configuration.getRunner().isPresent(), is(false));
+        assertThat(configuration.getParallelism(), is(Defaults.getParallelism()));
+        assertThat(configuration.getUserPoolScope(), is(Defaults.getUserPoolScope()));
+        assertThat(configuration.getCombinationOrder(), is(Defaults.getCombinationOrder()));
+        assertThat(configuration.getSampleSize(), is(Defaults.getSampleSize()));
+    }
+
+    @Test
+    public void builder() {
+        TestConfiguration configuration = TestConfiguration.builder()
+                .producerIdentifiers(asSet("role:A"))
+                .parallelism(4)
+                .userPrefetch(2)
+                .loginElision(true)
+                .combinationOrder(CombinationOrder.LONGEST_FIRST)
+                .sampleSize(3)
+                .build();
+
+        assertThat(configuration.getProducerIdentifiers(), is(asSet("role:A")));
+        assertThat(configuration.getParallelism(), is(4));
+        assertThat(configuration.getUserPrefetch(), is(2));
+        assertThat(configuration.isLoginElision(), is(true));
+        assertThat(configuration.getCombinationOrder(), is(CombinationOrder.LONGEST_FIRST));
+        assertThat(configuration.getSampleSize(), is(3));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void builder_invalidParallelism() {
+        TestConfiguration.builder().parallelism(0).build();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void builder_negativeSampleSize() {
+        TestConfiguration.builder().sampleSize(-1).build();
+    }
+
     private static Set<UserIdentifier> asSet(String... identifierDefs) {
         return Stream.of(identifierDefs).map(UserIdentifier::parse).collect(Collectors.toSet());
     }
@@ -0,0 +1,102 @@
+package fi.vincit.multiusertest.util;
+
+import fi.vincit.multiusertest.annotation.MultiUserConfigClass;
+import fi.vincit.multiusertest.rule.AuthorizationRule;
+import fi.vincit.multiusertest.test.MultiUserConfig;
+import org.junit.Ignore;
+import org.junit.Rule;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+
+public class TestFieldAccessorsTest {
+
+    @Ignore
+    public static class ConfiguredTest {
+        @MultiUserConfigClass
+        private final MultiUserConfig config;
+
+        @Rule
+        public AuthorizationRule authorizationRule = new AuthorizationRule();
+
+        public ConfiguredTest(MultiUserConfig config) {
+            this.config = config;
+        }
+    }
+
+    @Ignore
+    public static class InheritedConfig {
+        @MultiUserConfigClass
+        public MultiUserConfig config;
+    }
+
+    @Ignore
+    public static class InheritedConfigTest extends InheritedConfig {
+    }
+
+    @Ignore
+    public static class JUnit5Test {
+        private AuthorizationRule authorization = new AuthorizationRule();
+    }
+
+    @Ignore
+    public static class InheritedJUnit5Test extends JUnit5Test {
+    }
+
+    @Test
+    public void config() {
+        MultiUserConfig config = mock(MultiUserConfig.class);
+        ConfiguredTest testInstance = new ConfiguredTest(config);
+
+        TestFieldAccessors accessors = TestFieldAccessors.of(ConfiguredTest.class);
+        assertThat(accessors.hasConfig(), is(true));
+        assertThat(accessors.getConfig(testInstance).get(), sameInstance(config));
+    }
+
+    @Test
+    public void nullConfig() {
+        TestFieldAccessors accessors = TestFieldAccessors.of(ConfiguredTest.class);
+        assertThat(accessors.getConfig(new ConfiguredTest(null)).isPresent(), is(false));
+    }
+
+    @Test
+    public void inheritedPublicConfig() {
+        InheritedConfigTest testInstance = new InheritedConfigTest();
+        testInstance.config = mock(MultiUserConfig.class);
+
+        TestFieldAccessors accessors = TestFieldAccessors.of(InheritedConfigTest.class);
+        assertThat(accessors.hasConfig(), is(true));
+        assertThat(accessors.getConfig(testInstance).get(), sameInstance(testInstance.config));
+    }
+
+    @Test
+    public void noConfig() {
+        TestFieldAccessors accessors = TestFieldAccessors.of(Object.class);
+        assertThat(accessors.hasConfig(), is(false));
+        assertThat(accessors.getConfig(new Object()).isPresent(), is(false));
+    }
+
+    @Test
+    public void authorizationRule() {
+        ConfiguredTest testInstance = new ConfiguredTest(null);
+
+        assertThat(TestFieldAccessors.of(ConfiguredTest.class).getAuthorizationRule(testInstance),
+                sameInstance(testInstance.authorizationRule));
+    }
+
+    @Test
+    public void authorizationRuleWithoutRuleAnnotation() {
+        InheritedJUnit5Test testInstance = new InheritedJUnit5Test();
+
+        assertThat(TestFieldAccessors.of(InheritedJUnit5Test.class).getAuthorizationRule(testInstance),
+                sameInstance(((JUnit5Test) testInstance).authorization));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void noAuthorizationRule() {
+        TestFieldAccessors.of(InheritedConfigTest.class).getAuthorizationRule(new InheritedConfigTest());
+    }
+}
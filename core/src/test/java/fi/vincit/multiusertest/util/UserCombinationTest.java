@@ -0,0 +1,82 @@
+package fi.vincit.multiusertest.util;
+
+import fi.vincit.multiusertest.annotation.RunWithUsers;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class UserCombinationTest {
+
+    @Test
+    public void combine() {
+        List<UserCombination> combinations = UserCombination.combine(
+                identifiers("role:ROLE_ADMIN", "role:ROLE_USER"),
+                identifiers("role:ROLE_VISITOR", RunWithUsers.PRODUCER)
+        );
+
+        assertThat(combinations, is(Arrays.asList(
+                combination("role:ROLE_ADMIN", "role:ROLE_VISITOR"),
+                combination("role:ROLE_ADMIN", RunWithUsers.PRODUCER),
+                combination("role:ROLE_USER", "role:ROLE_VISITOR"),
+                combination("role:ROLE_USER", RunWithUsers.PRODUCER)
+        )));
+    }
+
+    @Test
+    public void combine_DefaultConsumer() {
+        assertThat(UserCombination.combine(identifiers("role:ROLE_ADMIN"), Collections.emptyList()),
+                is(Collections.singletonList(combination("role:ROLE_ADMIN", RunWithUsers.WITH_PRODUCER_ROLE))));
+    }
+
+    @Test
+    public void combine_DuplicateDefinitionsRemoved() {
+        List<UserCombination> combinations = UserCombination.combine(
+                identifiers("role:ROLE_USER", "role:ROLE_ADMIN", "role:ROLE_USER"),
+                identifiers("role:ROLE_A:ROLE_B", "role:ROLE_B:ROLE_A")
+        );
+
+        assertThat(combinations, is(Arrays.asList(
+                combination("role:ROLE_USER", "role:ROLE_A:ROLE_B"),
+                combination("role:ROLE_ADMIN", "role:ROLE_A:ROLE_B")
+        )));
+    }
+
+    @Test
+    public void isEquivalentTo_WithProducerRole() {
+        UserCombination withProducerRole = combination("role:ROLE_ADMIN", RunWithUsers.WITH_PRODUCER_ROLE);
+
+        assertThat(withProducerRole.isEquivalentTo(combination("role:ROLE_ADMIN", "role:ROLE_ADMIN")), is(true));
+        assertThat(combination("role:ROLE_ADMIN", "role:ROLE_ADMIN").isEquivalentTo(withProducerRole), is(true));
+        assertThat(withProducerRole.isEquivalentTo(combination("role:ROLE_ADMIN", "role:ROLE_USER")), is(false));
+        assertThat(withProducerRole.isEquivalentTo(combination("role:ROLE_USER", "role:ROLE_ADMIN")), is(false));
+    }
+
+    @Test
+    public void isEquivalentTo_MultiRole() {
+        assertThat(combination("role:ROLE_A:ROLE_B", RunWithUsers.WITH_PRODUCER_ROLE)
+                .isEquivalentTo(combination("role:ROLE_B:ROLE_A", "role:ROLE_A:ROLE_B")), is(true));
+    }
+
+    @Test
+    public void isEquivalentTo_ProducerUserIsNotWithProducerRole() {
+        assertThat(combination("role:ROLE_ADMIN", RunWithUsers.PRODUCER)
+                .isEquivalentTo(combination("role:ROLE_ADMIN", "role:ROLE_ADMIN")), is(false));
+        assertThat(combination(RunWithUsers.ANONYMOUS, RunWithUsers.WITH_PRODUCER_ROLE)
+                .isEquivalentTo(combination(RunWithUsers.ANONYMOUS, RunWithUsers.ANONYMOUS)), is(false));
+    }
+
+    private static UserCombination combination(String producer, String consumer) {
+        return new UserCombination(UserIdentifier.parse(producer), UserIdentifier.parse(consumer));
+    }
+
+    private static List<UserIdentifier> identifiers(String... identifiers) {
+        return Stream.of(identifiers).map(UserIdentifier::parse).collect(Collectors.toList());
+    }
+}
@@ -1,233 +1,287 @@
-package fi.vincit.multiusertest.util;
-
-import fi.vincit.multiusertest.annotation.RunWithUsers;
-import org.junit.Test;
-
-import java.util.Collection;
-import java.util.HashSet;
-
-import static java.util.Arrays.asList;
-import static org.hamcrest.core.Is.is;
-import static org.hamcrest.core.IsNot.not;
-import static org.hamcrest.core.IsNull.nullValue;
-import static org.junit.Assert.assertThat;
-
-public class UserIdentifierTest {
-
-    @Test
-    public void testEquals_Role() {
-        UserIdentifier userIdentifier1 = new UserIdentifier(UserIdentifier.Type.ROLE, "foo");
-        UserIdentifier userIdentifier2 = new UserIdentifier(UserIdentifier.Type.ROLE, "foo");
-
-        assertThat(userIdentifier1.equals(userIdentifier2), is(true));
-    }
-
-    @Test
-    public void testEquals_User() {
-        UserIdentifier userIdentifier1 = new UserIdentifier(UserIdentifier.Type.USER, "Foo");
-        UserIdentifier userIdentifier2 = new UserIdentifier(UserIdentifier.Type.USER, "Foo");
-
-        assertThat(userIdentifier1.equals(userIdentifier2), is(true));
-    }
-
-    @Test
-    public void testEquals_Producer() {
-        UserIdentifier userIdentifier1 = new UserIdentifier(UserIdentifier.Type.PRODUCER, null);
-        UserIdentifier userIdentifier2 = new UserIdentifier(UserIdentifier.Type.PRODUCER, null);
-
-        assertThat(userIdentifier1.equals(userIdentifier2), is(true));
-    }
-
-    @Test
-    public void testEquals_WithProducerRole() {
-        UserIdentifier userIdentifier1 = new UserIdentifier(UserIdentifier.Type.WITH_PRODUCER_ROLE, null);
-        UserIdentifier userIdentifier2 = new UserIdentifier(UserIdentifier.Type.WITH_PRODUCER_ROLE, null);
-
-        assertThat(userIdentifier1.equals(userIdentifier2), is(true));
-    }
-
-    @Test
-    public void testEquals_SameIdentifierDifferentType() {
-        UserIdentifier userIdentifier1 = new UserIdentifier(UserIdentifier.Type.USER, "foo");
-        UserIdentifier userIdentifier2 = new UserIdentifier(UserIdentifier.Type.ROLE, "foo");
-
-        assertThat(userIdentifier1.equals(userIdentifier2), is(false));
-    }
-
-    @Test
-    public void testEquals_DifferentIdentifierSameType() {
-        UserIdentifier userIdentifier1 = new UserIdentifier(UserIdentifier.Type.ROLE, "Foo");
-        UserIdentifier userIdentifier2 = new UserIdentifier(UserIdentifier.Type.ROLE, "foo");
-
-        assertThat(userIdentifier1.equals(userIdentifier2), is(false));
-    }
-
-    @Test
-    public void testEquals_SameObject() {
-        UserIdentifier userIdentifier1 = new UserIdentifier(UserIdentifier.Type.ROLE, "Foo");
-
-        assertThat(userIdentifier1.equals(userIdentifier1), is(true));
-    }
-
-    @Test
-    public void testEquals_WrongClass() {
-        UserIdentifier userIdentifier1 = new UserIdentifier(UserIdentifier.Type.ROLE, "Foo");
-
-        assertThat(userIdentifier1.equals(1L), is(false));
-    }
-
-    @Test
-    public void testEquals_Multirole() {
-        UserIdentifier userIdentifier1 = new UserIdentifier(UserIdentifier.Type.ROLE, "foo:bar");
-        UserIdentifier userIdentifier2 = new UserIdentifier(UserIdentifier.Type.ROLE, "bar:foo");
-
-        assertThat(userIdentifier1.equals(userIdentifier2), is(true));
-    }
-
-    @Test
-    public void testEquals_NullIdentifierFails() {
-        UserIdentifier userIdentifier1 = new UserIdentifier(UserIdentifier.Type.PRODUCER, null);
-        UserIdentifier userIdentifier2 = new UserIdentifier(UserIdentifier.Type.PRODUCER, "Foo");
-
-        assertThat(userIdentifier1.equals(userIdentifier2), is(false));
-    }
-
-    @Test
-    public void testHashCode_Equals() {
-        UserIdentifier userIdentifier1 = new UserIdentifier(UserIdentifier.Type.PRODUCER, "Foo");
-        UserIdentifier userIdentifier2 = new UserIdentifier(UserIdentifier.Type.PRODUCER, "Foo");
-
-        assertThat(userIdentifier1.hashCode(), is(userIdentifier2.hashCode()));
-    }
-
-    @Test
-    public void testHashCode_MultiRole_Equals() {
-        UserIdentifier userIdentifier1 = new UserIdentifier(UserIdentifier.Type.ROLE, "Foo:Bar");
-        UserIdentifier userIdentifier2 = new UserIdentifier(UserIdentifier.Type.ROLE, "Bar:Foo");
-
-        assertThat(userIdentifier1.hashCode(), is(userIdentifier2.hashCode()));
-    }
-
-    @Test
-    public void testHashCode_notEqual_Identifier() {
-        UserIdentifier userIdentifier1 = new UserIdentifier(UserIdentifier.Type.PRODUCER, "Foo1");
-        UserIdentifier userIdentifier2 = new UserIdentifier(UserIdentifier.Type.PRODUCER, "Foo2");
-
-        assertThat(userIdentifier1.hashCode(), is(not(userIdentifier2.hashCode())));
-    }
-
-    @Test
-    public void testHashCode_notEqual_Type() {
-        UserIdentifier userIdentifier1 = new UserIdentifier(UserIdentifier.Type.USER, "Foo");
-        UserIdentifier userIdentifier2 = new UserIdentifier(UserIdentifier.Type.PRODUCER, "Foo");
-
-        assertThat(userIdentifier1.hashCode(), is(not(userIdentifier2.hashCode())));
-    }
-
-    @Test
-    public void testToString_Role() {
-        assertThat(new UserIdentifier(UserIdentifier.Type.ROLE, "Foo").toString(), is("role:Foo"));
-    }
-
-    @Test
-    public void testToString_User() {
-        assertThat(new UserIdentifier(UserIdentifier.Type.USER, "Foo").toString(), is("user:Foo"));
-    }
-
-    @Test
-    public void testToString_WithProducerRole() {
-        assertThat(UserIdentifier.getWithProducerRole().toString(), is("with_producer_role"));
-    }
-
-    @Test
-    public void testToString_Producer() {
-        assertThat(UserIdentifier.getProducer().toString(), is("producer"));
-    }
-
-    @Test
-    public void testParseWithProducerRole() {
-        UserIdentifier identifier = UserIdentifier.parse(RunWithUsers.WITH_PRODUCER_ROLE);
-
-        assertThat(identifier.getType(), is(UserIdentifier.Type.WITH_PRODUCER_ROLE));
-        assertThat(identifier.getIdentifier(), nullValue());
-    }
-
-    @Test
-    public void testParseProducer() {
-        UserIdentifier identifier = UserIdentifier.parse(RunWithUsers.PRODUCER);
-
-        assertThat(identifier.getType(), is(UserIdentifier.Type.PRODUCER));
-        assertThat(identifier.getIdentifier(), nullValue());
-    }
-
-    @Test
-    public void testParseRole() {
-        UserIdentifier identifier = UserIdentifier.parse("role:Foo");
-
-        assertThat(identifier.getType(), is(UserIdentifier.Type.ROLE));
-        assertThat(identifier.getIdentifier(), is("Foo"));
-    }
-
-    @Test
-    public void testParseUser() {
-        UserIdentifier identifier = UserIdentifier.parse("user:Bar");
-
-        assertThat(identifier.getType(), is(UserIdentifier.Type.USER));
-        assertThat(identifier.getIdentifier(), is("Bar"));
-    }
-
-    @Test
-    public void testParseMultiRole() {
-        UserIdentifier identifier = UserIdentifier.parse("role:foo:bar");
-        assertThat(identifier.getType(), is(UserIdentifier.Type.ROLE));
-        assertThat(identifier.getIdentifier(), is("foo:bar"));
-    }
-
-    @Test(expected = IllegalArgumentException.class)
-    public void testParse_IllegalType() {
-        UserIdentifier.parse("foo:bar");
-    }
-
-    @Test
-    public void testMapMultiRole() {
-        Collection<String> mapped = UserIdentifier.mapMultiRoleIdentifier("foo:bar", String::toUpperCase);
-        assertThat(mapped, is(new HashSet<>(asList("FOO", "BAR"))));
-    }
-
-    @Test
-    public void testMapMultiRole_null() {
-        Collection<String> mapped = UserIdentifier.mapMultiRoleIdentifier(null, String::toUpperCase);
-        assertThat(mapped.size(), is(0));
-    }
-
-    @Test
-    public void testMapMultiRole_empty() {
-        Collection<String> mapped = UserIdentifier.mapMultiRoleIdentifier("", String::toUpperCase);
-        assertThat(mapped.size(), is(0));
-    }
-
-    @Test
-    public void testMapMultiRole_manyEmpty() {
-        Collection<String> mapped = UserIdentifier.mapMultiRoleIdentifier(":::", String::toUpperCase);
-        assertThat(mapped.size(), is(0));
-    }
-
-    @Test
-    public void testMapMultiRole_one() {
-        Collection<String> mapped = UserIdentifier.mapMultiRoleIdentifier("foo", String::toUpperCase);
-        assertThat(mapped, is(new HashSet<>(asList("FOO"))));
-    }
-
-    @Test
-    public void testMapMultiRole_removeEmpty() {
-        Collection<String> mapped = UserIdentifier.mapMultiRoleIdentifier(":foo:", String::toUpperCase);
-        assertThat(mapped, is(new HashSet<>(asList("FOO"))));
-    }
-
-    @Test
-    public void testMapMultiRole_removeManyEmpty() {
-        Collection<String> mapped = UserIdentifier.mapMultiRoleIdentifier(":foo::", String::toUpperCase);
-        assertThat(mapped, is(new HashSet<>(asList("FOO"))));
-    }
-
-}
+package fi.vincit.multiusertest.util;
+
+import fi.vincit.multiusertest.annotation.RunWithUsers;
+import org.junit.Test;
+
+import java.util.Collection;
+import java.util.HashSet;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNot.not;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class UserIdentifierTest {
+
+    @Test
+    public void testEquals_Role() {
+        UserIdentifier userIdentifier1 = new UserIdentifier(UserIdentifier.Type.ROLE, "foo");
+        UserIdentifier userIdentifier2 = new UserIdentifier(UserIdentifier.Type.ROLE, "foo");
+
+        assertThat(userIdentifier1.equals(userIdentifier2), is(true));
+    }
+
+    @Test
+    public void testEquals_User() {
+        UserIdentifier userIdentifier1 = new UserIdentifier(UserIdentifier.Type.USER, "Foo");
+        UserIdentifier userIdentifier2 = new UserIdentifier(UserIdentifier.Type.USER, "Foo");
+
+        assertThat(userIdentifier1.equals(userIdentifier2), is(true));
+    }
+
+    @Test
+    public void testEquals_Producer() {
+        UserIdentifier userIdentifier1 = new UserIdentifier(UserIdentifier.Type.PRODUCER, null);
+        UserIdentifier userIdentifier2 = new UserIdentifier(UserIdentifier.Type.PRODUCER, null);
+
+        assertThat(userIdentifier1.equals(userIdentifier2), is(true));
+    }
+
+    @Test
+    public void testEquals_WithProducerRole() {
+        UserIdentifier userIdentifier1 = new UserIdentifier(UserIdentifier.Type.WITH_PRODUCER_ROLE, null);
+        UserIdentifier userIdentifier2 = new UserIdentifier(UserIdentifier.Type.WITH_PRODUCER_ROLE, null);
+
+        assertThat(userIdentifier1.equals(userIdentifier2), is(true));
+    }
+
+    @Test
+    public void testEquals_SameIdentifierDifferentType() {
+        UserIdentifier userIdentifier1 = new UserIdentifier(UserIdentifier.Type.USER, "foo");
+        UserIdentifier userIdentifier2 = new UserIdentifier(UserIdentifier.Type.ROLE, "foo");
+
+        assertThat(userIdentifier1.equals(userIdentifier2), is(false));
+    }
+
+    @Test
+    public void testEquals_DifferentIdentifierSameType() {
+        UserIdentifier userIdentifier1 = new UserIdentifier(UserIdentifier.Type.ROLE, "Foo");
+        UserIdentifier userIdentifier2 = new UserIdentifier(UserIdentifier.Type.ROLE, "foo");
+
+        assertThat(userIdentifier1.equals(userIdentifier2), is(false));
+    }
+
+    @Test
+    public void testEquals_SameObject() {
+        UserIdentifier userIdentifier1 = new UserIdentifier(UserIdentifier.Type.ROLE, "Foo");
+
+        assertThat(userIdentifier1.equals(userIdentifier1), is(true));
+    }
+
+    @Test
+    public void testEquals_WrongClass() {
+        UserIdentifier userIdentifier1 = new UserIdentifier(UserIdentifier.Type.ROLE, "Foo");
+
+        assertThat(userIdentifier1.equals(1L), is(false));
+    }
+
+    @Test
+    public void testEquals_Multirole() {
+        UserIdentifier userIdentifier1 = new UserIdentifier(UserIdentifier.Type.ROLE, "foo:bar");
+        UserIdentifier userIdentifier2 = new UserIdentifier(UserIdentifier.Type.ROLE, "bar:foo");
+
+        assertThat(userIdentifier1.equals(userIdentifier2), is(true));
+    }
+
+    @Test
+    public void testEquals_NullIdentifierFails() {
+        UserIdentifier userIdentifier1 = new UserIdentifier(UserIdentifier.Type.PRODUCER, null);
+        UserIdentifier userIdentifier2 = new UserIdentifier(UserIdentifier.Type.PRODUCER, "Foo");
+
+        assertThat(userIdentifier1.equals(userIdentifier2), is(false));
+    }
+
+    @Test
+    public void testHashCode_Equals() {
+        UserIdentifier userIdentifier1 = new UserIdentifier(UserIdentifier.Type.PRODUCER, "Foo");
+        UserIdentifier userIdentifier2 = new UserIdentifier(UserIdentifier.Type.PRODUCER, "Foo");
+
+        assertThat(userIdentifier1.hashCode(), is(userIdentifier2.hashCode()));
+    }
+
+    @Test
+    public void testHashCode_MultiRole_Equals() {
+        UserIdentifier userIdentifier1 = new UserIdentifier(UserIdentifier.Type.ROLE, "Foo:Bar");
+        UserIdentifier userIdentifier2 = new UserIdentifier(UserIdentifier.Type.ROLE, "Bar:Foo");
+
+        assertThat(userIdentifier1.hashCode(), is(userIdentifier2.hashCode()));
+    }
+
+    @Test
+    public void testHashCode_notEqual_Identifier() {
+        UserIdentifier userIdentifier1 = new UserIdentifier(UserIdentifier.Type.PRODUCER, "Foo1");
+        UserIdentifier userIdentifier2 = new UserIdentifier(UserIdentifier.Type.PRODUCER, "Foo2");
+
+        assertThat(userIdentifier1.hashCode(), is(not(userIdentifier2.hashCode())));
+    }
+
+    @Test
+    public void testHashCode_notEqual_Type() {
+        UserIdentifier userIdentifier1 = new UserIdentifier(UserIdentifier.Type.USER, "Foo");
+        UserIdentifier userIdentifier2 = new UserIdentifier(UserIdentifier.Type.PRODUCER, "Foo");
+
+        assertThat(userIdentifier1.hashCode(), is(not(userIdentifier2.hashCode())));
+    }
+
+    @Test
+    public void testToString_Role() {
+        assertThat(new UserIdentifier(UserIdentifier.Type.ROLE, "Foo").toString(), is("role:Foo"));
+    }
+
+    @Test
+    public void testToString_User() {
+        assertThat(new UserIdentifier(UserIdentifier.Type.USER, "Foo").toString(), is("user:Foo"));
+    }
+
+    @Test
+    public void testToString_WithProducerRole() {
+        assertThat(UserIdentifier.getWithProducerRole().toString(), is("with_producer_role"));
+    }
+
+    @Test
+    public void testToString_Producer() {
+        assertThat(UserIdentifier.getProducer().toString(), is("producer"));
+    }
+
+    @Test
+    public void testParseWithProducerRole() {
+        UserIdentifier identifier = UserIdentifier.parse(RunWithUsers.WITH_PRODUCER_ROLE);
+
+        assertThat(identifier.getType(), is(UserIdentifier.Type.WITH_PRODUCER_ROLE));
+        assertThat(identifier.getIdentifier(), nullValue());
+    }
+
+    @Test
+    public void testParseProducer() {
+        UserIdentifier identifier = UserIdentifier.parse(RunWithUsers.PRODUCER);
+
+        assertThat(identifier.getType(), is(UserIdentifier.Type.PRODUCER));
+        assertThat(identifier.getIdentifier(), nullValue());
+    }
+
+    @Test
+    public void testParseRole() {
+        UserIdentifier identifier = UserIdentifier.parse("role:Foo");
+
+        assertThat(identifier.getType(), is(UserIdentifier.Type.ROLE));
+        assertThat(identifier.getIdentifier(), is("Foo"));
+    }
+
+    @Test
+    public void testParseUser() {
+        UserIdentifier identifier = UserIdentifier.parse("user:Bar");
+
+        assertThat(identifier.getType(), is(UserIdentifier.Type.USER));
+        assertThat(identifier.getIdentifier(), is("Bar"));
+    }
+
+    @Test
+    public void testParseMultiRole() {
+        UserIdentifier identifier = UserIdentifier.parse("role:foo:bar");
+        assertThat(identifier.getType(), is(UserIdentifier.Type.ROLE));
+        assertThat(identifier.getIdentifier(), is("bar:foo"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testParse_IllegalType() {
+        UserIdentifier.parse("foo:bar");
+    }
+
+    @Test
+    public void testMapMultiRole() {
+        Collection<String> mapped = UserIdentifier.mapMultiRoleIdentifier("foo:bar", String::toUpperCase);
+        assertThat(mapped, is(new HashSet<>(asList("FOO", "BAR"))));
+    }
+
+    @Test
+    public void testMapMultiRole_null() {
+        Collection<String> mapped = UserIdentifier.mapMultiRoleIdentifier(null, String::toUpperCase);
+        assertThat(mapped.size(), is(0));
+    }
+
+    @Test
+    public void testMapMultiRole_empty() {
+        Collection<String> mapped = UserIdentifier.mapMultiRoleIdentifier("", String::toUpperCase);
+        assertThat(mapped.size(), is(0));
+    }
+
+    @Test
+    public void testMapMultiRole_manyEmpty() {
+        Collection<String> mapped = UserIdentifier.mapMultiRoleIdentifier(":::", String::toUpperCase);
+        assertThat(mapped.size(), is(0));
+    }
+
+    @Test
+    public void testMapMultiRole_one() {
+        Collection<String> mapped = UserIdentifier.mapMultiRoleIdentifier("foo", String::toUpperCase);
+        assertThat(mapped, is(new HashSet<>(asList("FOO"))));
+    }
+
+    @Test
+    public void testMapMultiRole_removeEmpty() {
+        Collection<String> mapped = UserIdentifier.mapMultiRoleIdentifier(":foo:", String::toUpperCase);
+        assertThat(mapped, is(new HashSet<>(asList("FOO"))));
+    }
+
+    @Test
+    public void testMapMultiRole_removeManyEmpty() {
+        Collection<String> mapped = UserIdentifier.mapMultiRoleIdentifier(":foo::", String::toUpperCase);
+        assertThat(mapped, is(new HashSet<>(asList("FOO"))));
+    }
+
+    @Test
+    public void testParse_sharedInstance() {
+        assertThat(UserIdentifier.parse("role:ROLE_ADMIN"), sameInstance(UserIdentifier.parse("role:ROLE_ADMIN")));
+        assertThat(UserIdentifier.parse("user:admin"), sameInstance(UserIdentifier.of(UserIdentifier.Type.USER, "admin")));
+    }
+
+    @Test
+    public void testParse_specialIdentifiers() {
+        assertThat(UserIdentifier.parse(RunWithUsers.PRODUCER), sameInstance(UserIdentifier.getProducer()));
+        assertThat(UserIdentifier.parse(RunWithUsers.WITH_PRODUCER_ROLE), sameInstance(UserIdentifier.getWithProducerRole()));
+        assertThat(UserIdentifier.parse(RunWithUsers.ANONYMOUS), sameInstance(UserIdentifier.getAnonymous()));
+        assertThat(UserIdentifier.of(UserIdentifier.Type.PRODUCER, null), sameInstance(UserIdentifier.getProducer()));
+    }
+
+    @Test
+    public void testParse_multiRoleOrderSharesCanonicalInstance() {
+        UserIdentifier identifier1 = UserIdentifier.parse("role:A:B");
+        UserIdentifier identifier2 = UserIdentifier.parse("role:B:A");
+
+        assertThat(identifier2, sameInstance(identifier1));
+        assertThat(UserIdentifier.parse("role:B::A:B"), sameInstance(identifier1));
+        assertThat(identifier2.toString(), is("role:A:B"));
+    }
+
+    @Test
+    public void testOf_nullIdentifierSharedInstance() {
+        assertThat(UserIdentifier.of(UserIdentifier.Type.ROLE, null), sameInstance(UserIdentifier.of(UserIdentifier.Type.ROLE, null)));
+        assertThat(UserIdentifier.of(UserIdentifier.Type.USER, null), sameInstance(UserIdentifier.of(UserIdentifier.Type.USER, null)));
+    }
+
+    @Test
+    public void testOf_userNameKeepsSpelling() {
+        UserIdentifier identifier = UserIdentifier.of(UserIdentifier.Type.USER, "b:a");
+
+        assertThat(identifier.getIdentifier(), is("b:a"));
+        assertThat(identifier, not(UserIdentifier.of(UserIdentifier.Type.USER, "a:b")));
+    }
+
+    @Test
+    public void testEquals_differentCanonicalInstances() {
+        assertThat(UserIdentifier.parse("role:A"), not(UserIdentifier.parse("role:B")));
+        assertThat(UserIdentifier.parse("role:A"), not(UserIdentifier.parse("user:A")));
+    }
+
+    @Test
+    public void testEquals_constructedAndParsed() {
+        UserIdentifier constructed = new UserIdentifier(UserIdentifier.Type.ROLE, "B:A");
+        UserIdentifier parsed = UserIdentifier.parse("role:A:B");
+
+        assertThat(constructed, is(parsed));
+        assertThat(constructed.hashCode(), is(parsed.hashCode()));
+    }
+
+}
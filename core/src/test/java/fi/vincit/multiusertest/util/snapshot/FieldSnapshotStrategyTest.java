@@ -0,0 +1,96 @@
+package fi.vincit.multiusertest.util.snapshot;
+
+import fi.vincit.multiusertest.annotation.MultiUserConfigClass;
+import fi.vincit.multiusertest.rule.AuthorizationRule;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class FieldSnapshotStrategyTest {
+
+    public static class BaseTestClass {
+        private String inherited;
+    }
+
+    public static class TestClass extends BaseTestClass {
+        @MultiUserConfigClass
+        public Object config;
+        @Rule
+        public AuthorizationRule authorizationRule;
+        public AuthorizationRule unannotatedRule;
+        private List<String> data;
+        private transient Object notCopied;
+        private final String constant = "constant";
+    }
+
+    public static class NotSerializableTestClass {
+        private Object data = new Object();
+    }
+
+    @Test
+    public void restore_CopiesInstanceFields() throws Exception {
+        TestClass producerTest = new TestClass();
+        producerTest.data = new ArrayList<>(Collections.singletonList("product"));
+        producerTest.notCopied = new Object();
+        ((BaseTestClass) producerTest).inherited = "inherited";
+
+        FieldSnapshotStrategy strategy = new FieldSnapshotStrategy();
+        Object snapshot = strategy.snapshot(producerTest);
+
+        TestClass consumerTest = new TestClass();
+        strategy.restore(snapshot, consumerTest);
+
+        assertThat(consumerTest.data, is(producerTest.data));
+        assertThat(((BaseTestClass) consumerTest).inherited, is("inherited"));
+        assertThat(consumerTest.notCopied, nullValue());
+    }
+
+    @Test
+    public void restore_ConsumersDontSeeEachOthersChanges() throws Exception {
+        TestClass producerTest = new TestClass();
+        producerTest.data = new ArrayList<>(Collections.singletonList("product"));
+
+        FieldSnapshotStrategy strategy = new FieldSnapshotStrategy();
+        Object snapshot = strategy.snapshot(producerTest);
+
+        TestClass firstConsumerTest = new TestClass();
+        strategy.restore(snapshot, firstConsumerTest);
+        firstConsumerTest.data.add("consumer-data");
+
+        TestClass secondConsumerTest = new TestClass();
+        strategy.restore(snapshot, secondConsumerTest);
+
+        assertThat(secondConsumerTest.data, is(Collections.singletonList("product")));
+        assertThat(producerTest.data, is(Collections.singletonList("product")));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void snapshot_NotSerializable() throws Exception {
+        new FieldSnapshotStrategy().snapshot(new NotSerializableTestClass());
+    }
+
+    @Test
+    public void restore_SkipsConfigAndRules() throws Exception {
+        TestClass producerTest = new TestClass();
+        producerTest.config = new ArrayList<>();
+        producerTest.authorizationRule = new AuthorizationRule();
+        producerTest.unannotatedRule = new AuthorizationRule();
+
+        FieldSnapshotStrategy strategy = new FieldSnapshotStrategy();
+        Object snapshot = strategy.snapshot(producerTest);
+
+        TestClass consumerTest = new TestClass();
+        strategy.restore(snapshot, consumerTest);
+
+        assertThat(consumerTest.config, nullValue());
+        assertThat(consumerTest.authorizationRule, nullValue());
+        assertThat(consumerTest.unannotatedRule, nullValue());
+    }
+}
@@ -0,0 +1,147 @@
+package fi.vincit.mutrproject;
+
+import fi.vincit.multiusertest.util.reset.DatabaseResetStrategy;
+import fi.vincit.multiusertest.util.reset.H2ScriptResetStrategy;
+import fi.vincit.multiusertest.util.reset.RollbackResetStrategy;
+import fi.vincit.multiusertest.util.reset.TruncateResetStrategy;
+import fi.vincit.mutrproject.feature.todo.model.TodoItem;
+import fi.vincit.mutrproject.feature.todo.model.TodoList;
+import fi.vincit.mutrproject.feature.todo.repository.TodoItemRepository;
+import fi.vincit.mutrproject.feature.todo.repository.TodoListRepository;
+import fi.vincit.mutrproject.feature.user.model.Role;
+import fi.vincit.mutrproject.feature.user.model.User;
+import fi.vincit.mutrproject.feature.user.repository.UserRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the time it takes to reset the example database after a test that has
+ * created users and todo lists. Compares the JPA <code>deleteAll</code> cleanup the
+ * example tests used to do to the built-in
+ * {@link DatabaseResetStrategy} implementations. The test data is created before
+ * each invocation and isn't included in the measured time.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DatabaseResetBenchmark {
+
+    @Param({"deleteAll", "rollback", "truncate", "script"})
+    public String strategy;
+
+    @Param({"1", "10"})
+    public int users;
+
+    private static final int LISTS_PER_USER = 3;
+    private static final int ITEMS_PER_LIST = 5;
+
+    private ConfigurableApplicationContext context;
+    private UserRepository userRepository;
+    private TodoListRepository todoListRepository;
+    private TodoItemRepository todoItemRepository;
+    private TransactionTemplate transactionTemplate;
+    private DatabaseResetStrategy resetStrategy;
+    private int userCount;
+
+    @Setup(Level.Trial)
+    public void startApplication() throws SQLException {
+        context = new SpringApplicationBuilder(Application.class).web(false).run();
+        userRepository = context.getBean(UserRepository.class);
+        todoListRepository = context.getBean(TodoListRepository.class);
+        todoItemRepository = context.getBean(TodoItemRepository.class);
+        PlatformTransactionManager transactionManager = context.getBean(PlatformTransactionManager.class);
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        DataSource dataSource = context.getBean(DataSource.class);
+
+        switch (strategy) {
+            case "deleteAll":
+                resetStrategy = this::deleteAll;
+                break;
+            case "rollback":
+                resetStrategy = new RollbackResetStrategy(transactionManager);
+                break;
+            case "truncate":
+                resetStrategy = TruncateResetStrategy.forH2(dataSource, Arrays.asList("todo_list_item", "todo_list", "user_role", "user"));
+                break;
+            case "script":
+                H2ScriptResetStrategy scriptStrategy = new H2ScriptResetStrategy(dataSource);
+                scriptStrategy.snapshot();
+                resetStrategy = scriptStrategy;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown strategy: " + strategy);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void stopApplication() {
+        context.close();
+    }
+
+    @Setup(Level.Invocation)
+    public void createTestData() throws SQLException {
+        resetStrategy.beforeTest();
+        if (strategy.equals("rollback")) {
+            // Created in the test transaction that is rolled back
+            insertTestData();
+        } else {
+            transactionTemplate.execute(status -> {
+                insertTestData();
+                return null;
+            });
+        }
+    }
+
+    @Benchmark
+    public void reset() throws SQLException {
+        resetStrategy.afterTest();
+    }
+
+    private void insertTestData() {
+        for (int i = 0; i < users; ++i) {
+            String username = "user" + userCount++;
+            User user = userRepository.save(
+                    new User("Test", username, "password", Collections.singletonList(Role.ROLE_USER))
+            );
+            for (int j = 0; j < LISTS_PER_USER; ++j) {
+                TodoList list = todoListRepository.save(new TodoList("L", false, user));
+                for (int k = 0; k < ITEMS_PER_LIST; ++k) {
+                    todoItemRepository.save(new TodoItem(list.getId(), "I", false));
+                }
+            }
+        }
+    }
+
+    private void deleteAll() {
+        transactionTemplate.execute(status -> {
+            todoItemRepository.deleteAll();
+            todoListRepository.deleteAll();
+            userRepository.deleteAll();
+            return null;
+        });
+    }
+}
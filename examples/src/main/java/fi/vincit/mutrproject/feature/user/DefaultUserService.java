@@ -2,6 +2,7 @@ package fi.vincit.mutrproject.feature.user;
 
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 import org.springframework.beans.factory.annotation.Autowired;
@@ -53,6 +54,12 @@ public class DefaultUserService implements UserService, UserDetailsService {
         return userRepository.save(user);
     }
 
+    @Transactional
+    @Override
+    public List<User> createUsers(List<User> users) {
+        return userRepository.save(users);
+    }
+
     @Override
     @Transactional
     public void clearUsers() {
@@ -1,6 +1,7 @@
 package fi.vincit.mutrproject.feature.user;
 
 import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 import fi.vincit.mutrproject.feature.user.model.Role;
@@ -13,6 +14,8 @@ public interface UserService {
 
     User createUser(String username, String password, Collection<Role> roles);
 
+    List<User> createUsers(List<User> users);
+
     void clearUsers();
 
     void loginUser(User user);
@@ -1,14 +1,24 @@
 package fi.vincit.mutrproject.configuration;
 
 import fi.vincit.multiusertest.test.MultiUserConfig;
+import fi.vincit.multiusertest.util.reset.DatabaseResetStrategy;
+import fi.vincit.multiusertest.util.reset.TruncateResetStrategy;
 import fi.vincit.mutrproject.feature.user.model.Role;
 import fi.vincit.mutrproject.feature.user.model.User;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import javax.sql.DataSource;
+import java.util.Arrays;
+
 @Configuration
 public class TestConfig {
 
+    @Bean
+    public DatabaseResetStrategy databaseResetStrategy(DataSource dataSource) {
+        return TruncateResetStrategy.forH2(dataSource, Arrays.asList("todo_list_item", "todo_list", "user_role", "user"));
+    }
+
     @Bean
     public MultiUserConfig<User, Role> multiUserConfig() {
         return new TestMultiUserConfig();
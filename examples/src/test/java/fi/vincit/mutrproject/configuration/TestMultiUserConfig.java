@@ -1,11 +1,21 @@
 package fi.vincit.mutrproject.configuration;
 
 import fi.vincit.multiusertest.test.AbstractMultiUserConfig;
+import fi.vincit.multiusertest.test.BatchUserFactory;
+import fi.vincit.multiusertest.test.NewUser;
 import fi.vincit.multiusertest.util.LoginRole;
 import fi.vincit.mutrproject.feature.user.UserService;
 import fi.vincit.mutrproject.feature.user.model.Role;
 import fi.vincit.mutrproject.feature.user.model.User;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
 
 /**
  * Basic example for configuring MUTR config class. This config class
@@ -14,19 +24,35 @@ import org.springframework.beans.factory.annotation.Autowired;
  * Basically this class configures:
  * <ol>
  *     <li>How to convert test class role definitions (e.g. role:ROLE_ADMIN) to real system used role types whether it is enum, string or something else</li>
- *     <li>How create new user to the system</li>
- *     <li>How to login in to the system</li>
+ *     <li>How create new user to the system. Users of a test are created in a single transaction
+ *     by implementing {@link BatchUserFactory}.</li>
+ *     <li>How to login in to the system. The authentication token is built using
+ *     {@link #getAuthentication(Object, java.util.function.Function)} so that it can be
+ *     reused when <code>authenticationCacheSize</code> is configured. The users are loaded
+ *     again for each test and {@link User} doesn't implement <code>equals</code>, so the
+ *     tokens are cached by the username and roles of the user.</li>
  *     <li>How to get system user by username</li>
  * </ol>
  */
-public class TestMultiUserConfig extends AbstractMultiUserConfig<User, Role> {
+public class TestMultiUserConfig extends AbstractMultiUserConfig<User, Role> implements BatchUserFactory<User, Role> {
 
     @Autowired
     private UserService userService;
 
     @Override
     public void loginWithUser(User user) {
-        userService.loginUser(user);
+        if (user != null) {
+            SecurityContextHolder.getContext().setAuthentication(getAuthentication(user,
+                    u -> new UsernamePasswordAuthenticationToken(u, null, u.getAuthorities())
+            ));
+        } else {
+            userService.logout();
+        }
+    }
+
+    @Override
+    protected Object getAuthenticationKey(User user) {
+        return Arrays.asList(user.getUsername(), new HashSet<>(user.getAuthorities()));
     }
 
     @Override
@@ -34,6 +60,20 @@ public class TestMultiUserConfig extends AbstractMultiUserConfig<User, Role> {
         return userService.createUser(username, username, userRole);
     }
 
+    @Override
+    public List<User> createUsers(List<NewUser<Role>> newUsers) {
+        List<User> users = new ArrayList<>(newUsers.size());
+        for (NewUser<Role> newUser : newUsers) {
+            users.add(new User(
+                    newUser.getUsername(),
+                    newUser.getUsername(),
+                    newUser.getUsername(),
+                    Collections.singletonList(newUser.getRole())
+            ));
+        }
+        return userService.createUsers(users);
+    }
+
     @Override
     public Role stringToRole(String role) {
         return Role.valueOf(role);
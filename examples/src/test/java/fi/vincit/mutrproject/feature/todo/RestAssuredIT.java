@@ -7,6 +7,7 @@ import fi.vincit.multiusertest.annotation.RunWithUsers;
 import fi.vincit.multiusertest.rule.AuthorizationRule;
 import fi.vincit.multiusertest.runner.junit.MultiUserTestRunner;
 import fi.vincit.multiusertest.util.LoginRole;
+import fi.vincit.multiusertest.util.reset.DatabaseResetTestExecutionListener;
 import fi.vincit.mutrproject.Application;
 import fi.vincit.mutrproject.config.SecurityConfig;
 import fi.vincit.mutrproject.configuration.TestMultiUserRestConfig;
@@ -14,7 +15,6 @@ import fi.vincit.mutrproject.feature.todo.command.TodoItemCommand;
 import fi.vincit.mutrproject.feature.todo.command.TodoListCommand;
 import fi.vincit.mutrproject.feature.user.UserService;
 import fi.vincit.mutrproject.feature.user.model.Role;
-import fi.vincit.mutrproject.util.DatabaseUtil;
 import org.apache.http.HttpStatus;
 import org.junit.*;
 import org.junit.runner.RunWith;
@@ -41,6 +41,7 @@ import static org.hamcrest.Matchers.hasSize;
  */
 @TestExecutionListeners({DependencyInjectionTestExecutionListener.class,
         DirtiesContextTestExecutionListener.class,
+        DatabaseResetTestExecutionListener.class,
         TransactionalTestExecutionListener.class})
 @MultiUserTestConfig(
         defaultException = AccessDeniedException.class)
@@ -61,9 +62,6 @@ public class RestAssuredIT {
     @Autowired
     private UserService userService;
 
-    @Autowired
-    private DatabaseUtil databaseUtil;
-
     @ClassRule
     public static final SpringClassRule SPRING_CLASS_RULE = new SpringClassRule();
 
@@ -88,7 +86,6 @@ public class RestAssuredIT {
     @After
     public void tearDown() {
         userService.logout();
-        databaseUtil.clearDb();
     }
 
 
@@ -6,12 +6,11 @@ import fi.vincit.multiusertest.annotation.RunWithUsers;
 import fi.vincit.multiusertest.rule.AuthorizationRule;
 import fi.vincit.multiusertest.runner.junit.MultiUserTestRunner;
 import fi.vincit.multiusertest.util.LoginRole;
+import fi.vincit.multiusertest.util.reset.DatabaseResetTestExecutionListener;
 import fi.vincit.mutrproject.Application;
 import fi.vincit.mutrproject.config.SecurityConfig;
 import fi.vincit.mutrproject.configuration.TestMultiRoleConfig;
 import fi.vincit.mutrproject.testconfig.AbstractConfiguredMultiRoleIT;
-import fi.vincit.mutrproject.util.DatabaseUtil;
-import org.junit.After;
 import org.junit.ClassRule;
 import org.junit.Rule;
 import org.junit.Test;
@@ -35,6 +34,7 @@ import static fi.vincit.multiusertest.rule.expectation2.TestExpectations.expectN
  */
 @TestExecutionListeners({DependencyInjectionTestExecutionListener.class,
         DirtiesContextTestExecutionListener.class,
+        DatabaseResetTestExecutionListener.class,
         TransactionalTestExecutionListener.class})
 @MultiUserTestConfig(
         defaultException = AccessDeniedException.class)
@@ -49,9 +49,6 @@ public class TodoServiceMultiRoleIT {
     @Autowired
     private TodoService todoService;
 
-    @Autowired
-    private DatabaseUtil databaseUtil;
-
     @Autowired
     @MultiUserConfigClass
     public TestMultiRoleConfig config;
@@ -66,11 +63,6 @@ public class TodoServiceMultiRoleIT {
     public final SpringMethodRule springMethodRule = new SpringMethodRule();
 
 
-    @After
-    public void tearDown() {
-        databaseUtil.clearDb();
-    }
-
     @Test
     public void getPrivateTodoList() throws Throwable {
         long id = todoService.createTodoList("Test list", false);
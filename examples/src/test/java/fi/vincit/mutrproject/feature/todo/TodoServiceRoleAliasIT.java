@@ -6,11 +6,10 @@ import fi.vincit.multiusertest.annotation.RunWithUsers;
 import fi.vincit.multiusertest.rule.AuthorizationRule;
 import fi.vincit.multiusertest.runner.junit.MultiUserTestRunner;
 import fi.vincit.multiusertest.util.LoginRole;
+import fi.vincit.multiusertest.util.reset.DatabaseResetTestExecutionListener;
 import fi.vincit.mutrproject.Application;
 import fi.vincit.mutrproject.config.SecurityConfig;
 import fi.vincit.mutrproject.configuration.TestMultiUserAliasConfig;
-import fi.vincit.mutrproject.util.DatabaseUtil;
-import org.junit.After;
 import org.junit.ClassRule;
 import org.junit.Rule;
 import org.junit.Test;
@@ -34,6 +33,7 @@ import static fi.vincit.multiusertest.rule.expectation2.TestExpectations.expectN
  */
 @TestExecutionListeners({DependencyInjectionTestExecutionListener.class,
         DirtiesContextTestExecutionListener.class,
+        DatabaseResetTestExecutionListener.class,
         TransactionalTestExecutionListener.class})
 @MultiUserTestConfig(
         defaultException = AccessDeniedException.class)
@@ -48,9 +48,6 @@ public class TodoServiceRoleAliasIT {
     @Autowired
     private TodoService todoService;
 
-    @Autowired
-    private DatabaseUtil databaseUtil;
-
     @ClassRule
     public static final SpringClassRule SPRING_CLASS_RULE = new SpringClassRule();
 
@@ -65,11 +62,6 @@ public class TodoServiceRoleAliasIT {
     @Rule
     public AuthorizationRule authorizationRule = new AuthorizationRule();
 
-    @After
-    public void clear() {
-        databaseUtil.clearDb();
-    }
-
     @Test
     public void getPrivateTodoList() throws Throwable {
         long id = todoService.createTodoList("Test list", false);
@@ -5,11 +5,11 @@ import fi.vincit.multiusertest.annotation.MultiUserConfigClass;
 import fi.vincit.multiusertest.annotation.MultiUserTestConfig;
 import fi.vincit.multiusertest.rule.AuthorizationRule;
 import fi.vincit.multiusertest.runner.junit.MultiUserTestRunner;
+import fi.vincit.multiusertest.util.reset.DatabaseResetTestExecutionListener;
 import fi.vincit.mutrproject.Application;
 import fi.vincit.mutrproject.config.SecurityConfig;
 import fi.vincit.mutrproject.configuration.TestMultiUserConfig;
 import fi.vincit.mutrproject.feature.user.UserService;
-import fi.vincit.mutrproject.util.DatabaseUtil;
 import org.junit.After;
 import org.junit.ClassRule;
 import org.junit.Rule;
@@ -27,13 +27,24 @@ import org.springframework.test.context.transaction.TransactionalTestExecutionLi
 /**
  * Basic general configuration class for example tests. Uses a basic
  * {@link TestMultiUserConfig} to configure how test class role string are
- * mapped to system roles.
+ * mapped to system roles. The database is reset after each test using the
+ * {@link fi.vincit.multiusertest.util.reset.DatabaseResetStrategy} defined in
+ * {@link fi.vincit.mutrproject.configuration.TestConfig}.
+ * <p>
+ * Login elision skips logging in the consumer again when the consumer is the producer.
+ * The authentication cache reuses the authentications of the existing users in later tests,
+ * e.g. in {@link fi.vincit.mutrproject.feature.todo.TodoServiceWithUsersIT}. The users created
+ * for each test don't benefit from it.
+ * </p>
  */
 @TestExecutionListeners({DependencyInjectionTestExecutionListener.class,
         DirtiesContextTestExecutionListener.class,
+        DatabaseResetTestExecutionListener.class,
         TransactionalTestExecutionListener.class})
 @MultiUserTestConfig(
-        defaultException = AccessDeniedException.class)
+        defaultException = AccessDeniedException.class,
+        loginElision = true,
+        authenticationCacheSize = 100)
 @ContextConfiguration(classes = {Application.class, SecurityConfig.class})
 @RunWith(MultiUserTestRunner.class)
 public abstract class AbstractConfiguredMultiRoleIT {
@@ -41,8 +52,6 @@ public abstract class AbstractConfiguredMultiRoleIT {
     @Autowired
     private UserService userService;
 
-    @Autowired
-    private DatabaseUtil databaseUtil;
 
     @ClassRule
     public static final SpringClassRule SPRING_CLASS_RULE = new SpringClassRule();
@@ -61,7 +70,6 @@ public abstract class AbstractConfiguredMultiRoleIT {
     @After
     public void clear() {
         userService.logout();
-        databaseUtil.clearDb();
     }
 
     public TestMultiUserConfig config() {
@@ -0,0 +1,98 @@
+package fi.vincit.multiusertest;
+
+import fi.vincit.multiusertest.annotation.MultiUserConfigClass;
+import fi.vincit.multiusertest.annotation.MultiUserTestConfig;
+import fi.vincit.multiusertest.annotation.RunWithUsers;
+import fi.vincit.multiusertest.configuration.ConfiguredTest;
+import fi.vincit.multiusertest.rule.AuthorizationRule;
+import fi.vincit.multiusertest.runner.junit.MultiUserTestRunner;
+import fi.vincit.multiusertest.util.LoginRole;
+import fi.vincit.multiusertest.util.User;
+import org.junit.Ignore;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.JUnitCore;
+import org.junit.runner.Request;
+import org.junit.runner.Result;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class AuthenticationCacheTest {
+
+    @RunWithUsers(producers = {"user:cached-admin"},
+            consumers = {RunWithUsers.PRODUCER, "user:cached-user"})
+    @MultiUserTestConfig(authenticationCacheSize = 10)
+    @Ignore
+    public static class ExistingUsers {
+
+        @MultiUserConfigClass
+        public UsernameKeyedConfiguredTest configuredTest = new UsernameKeyedConfiguredTest();
+
+        @Rule
+        public AuthorizationRule authorizationRule = new AuthorizationRule();
+
+        @Test
+        public void first() {
+            configuredTest.logInAs(LoginRole.CONSUMER);
+        }
+
+        @Test
+        public void second() {
+            configuredTest.logInAs(LoginRole.CONSUMER);
+        }
+
+        @Test
+        public void third() {
+            configuredTest.logInAs(LoginRole.CONSUMER);
+        }
+    }
+
+    /**
+     * Loads the existing users again for each test like a database would, so the
+     * authentications are cached by the username.
+     */
+    public static class UsernameKeyedConfiguredTest extends ConfiguredTest {
+
+        static final Map<String, AtomicInteger> BUILT_AUTHENTICATIONS = new ConcurrentHashMap<>();
+
+        @Override
+        public void loginWithUser(User user) {
+            if (user != null) {
+                super.loginWithUser(getAuthentication(user, u -> {
+                    BUILT_AUTHENTICATIONS.computeIfAbsent(u.getUsername(), username -> new AtomicInteger()).incrementAndGet();
+                    return u;
+                }));
+            } else {
+                super.loginWithUser(null);
+            }
+        }
+
+        @Override
+        public User getUserByUsername(String username) {
+            return new User(username, User.Role.ROLE_USER);
+        }
+
+        @Override
+        protected Object getAuthenticationKey(User user) {
+            return user.getUsername();
+        }
+    }
+
+    @Test
+    public void authenticationBuiltOncePerExistingUser() throws Throwable {
+        UsernameKeyedConfiguredTest.BUILT_AUTHENTICATIONS.clear();
+
+        Result result = new JUnitCore().run(Request.runner(new MultiUserTestRunner(ExistingUsers.class)));
+
+        assertThat(result.getFailureCount(), is(0));
+        assertThat(result.getRunCount(), is(6));
+        assertThat(UsernameKeyedConfiguredTest.BUILT_AUTHENTICATIONS.get("cached-admin").get(), is(1));
+        assertThat(UsernameKeyedConfiguredTest.BUILT_AUTHENTICATIONS.get("cached-user").get(), is(1));
+    }
+
+}
@@ -0,0 +1,45 @@
+package fi.vincit.multiusertest;
+
+import fi.vincit.multiusertest.annotation.MultiUserConfigClass;
+import fi.vincit.multiusertest.annotation.MultiUserTestConfig;
+import fi.vincit.multiusertest.annotation.RunWithUsers;
+import fi.vincit.multiusertest.configuration.BatchConfiguredTest;
+import fi.vincit.multiusertest.rule.AuthorizationRule;
+import fi.vincit.multiusertest.runner.junit.MultiUserTestRunner;
+import fi.vincit.multiusertest.test.UserPoolScope;
+import fi.vincit.multiusertest.util.LoginRole;
+import fi.vincit.multiusertest.util.SecurityUtil;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+@RunWithUsers(producers = {"role:ROLE_ADMIN", "role:ROLE_USER"},
+        consumers = {"role:ROLE_USER", RunWithUsers.WITH_PRODUCER_ROLE})
+@RunWith(MultiUserTestRunner.class)
+@MultiUserTestConfig(userPool = UserPoolScope.CLASS)
+public class BatchUserPoolTest {
+
+    @MultiUserConfigClass
+    public BatchConfiguredTest configuredTest = new BatchConfiguredTest();
+
+    @Rule
+    public AuthorizationRule authorizationRule = new AuthorizationRule();
+
+    @Test
+    public void usersCreatedWithSingleBatch() {
+        assertThat(BatchConfiguredTest.getBatchCalls(), is(1));
+        assertThat(BatchConfiguredTest.getCreatedUsers(), is(0));
+    }
+
+    @Test
+    public void consumerLoggedIn() {
+        configuredTest.logInAs(LoginRole.CONSUMER);
+        assertThat(SecurityUtil.getLoggedInUser().getUsername(),
+                is(configuredTest.getConsumer().getUsername()));
+        assertThat(BatchConfiguredTest.getBatchCalls(), is(1));
+        assertThat(BatchConfiguredTest.getCreatedUsers(), is(0));
+    }
+}
@@ -0,0 +1,76 @@
+package fi.vincit.multiusertest;
+
+import fi.vincit.multiusertest.annotation.AfterCombination;
+import fi.vincit.multiusertest.annotation.BeforeCombination;
+import fi.vincit.multiusertest.annotation.MultiUserConfigClass;
+import fi.vincit.multiusertest.annotation.RunWithUsers;
+import fi.vincit.multiusertest.configuration.ConfiguredTest;
+import fi.vincit.multiusertest.rule.AuthorizationRule;
+import fi.vincit.multiusertest.runner.junit.MultiUserTestRunner;
+import fi.vincit.multiusertest.util.TestConfiguration;
+import fi.vincit.multiusertest.util.UserCombination;
+import org.junit.AfterClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.hamcrest.Matchers.everyItem;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.junit.Assert.assertThat;
+
+@RunWithUsers(producers = {"role:ROLE_ADMIN", "role:ROLE_USER"},
+        consumers = {"role:ROLE_VISITOR", "role:ROLE_USER"})
+@RunWith(MultiUserTestRunner.class)
+public class CombinationHookTest {
+
+    private static final Map<String, Integer> beforeCounts = new ConcurrentHashMap<>();
+    private static final Map<String, Integer> afterCounts = new ConcurrentHashMap<>();
+    private static volatile TestConfiguration configuration;
+
+    @MultiUserConfigClass
+    public ConfiguredTest configuredTest = new ConfiguredTest();
+
+    @Rule
+    public AuthorizationRule authorizationRule = new AuthorizationRule();
+
+    @BeforeCombination
+    public static void beforeCombination(UserCombination combination, TestConfiguration testConfiguration) {
+        beforeCounts.merge(key(combination), 1, Integer::sum);
+        configuration = testConfiguration;
+    }
+
+    @AfterCombination
+    public static void afterCombination(UserCombination combination) {
+        afterCounts.merge(key(combination), 1, Integer::sum);
+    }
+
+    @AfterClass
+    public static void validateCombinationHooks() {
+        assertThat(beforeCounts.size(), is(4));
+        assertThat(beforeCounts.values(), everyItem(is(1)));
+        assertThat(afterCounts, is(beforeCounts));
+    }
+
+    @Test
+    public void beforeCombinationRunOnce() {
+        assertThat(beforeCounts.get(currentKey()), is(1));
+        assertThat(configuration, notNullValue());
+    }
+
+    @Test
+    public void afterCombinationNotRunDuringCombination() {
+        assertThat(afterCounts.containsKey(currentKey()), is(false));
+    }
+
+    private String currentKey() {
+        return configuredTest.getProducer().getRole() + ":" + configuredTest.getConsumer().getRole();
+    }
+
+    private static String key(UserCombination combination) {
+        return combination.getProducer().getIdentifier() + ":" + combination.getConsumer().getIdentifier();
+    }
+}
@@ -0,0 +1,59 @@
+package fi.vincit.multiusertest;
+
+import fi.vincit.multiusertest.annotation.MultiUserConfigClass;
+import fi.vincit.multiusertest.annotation.MultiUserTestConfig;
+import fi.vincit.multiusertest.annotation.RunWithUsers;
+import fi.vincit.multiusertest.configuration.ConfiguredTest;
+import fi.vincit.multiusertest.rule.AuthorizationRule;
+import fi.vincit.multiusertest.runner.junit.MultiUserTestRunner;
+import fi.vincit.multiusertest.util.LoginRole;
+import fi.vincit.multiusertest.util.SecurityUtil;
+import fi.vincit.multiusertest.util.User;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+@RunWithUsers(producers = {"role:ROLE_ADMIN", "role:ROLE_USER"},
+        consumers = {"role:ROLE_USER", RunWithUsers.WITH_PRODUCER_ROLE})
+@RunWith(MultiUserTestRunner.class)
+@MultiUserTestConfig(lazyConsumer = true)
+public class LazyConsumerTest {
+
+    @MultiUserConfigClass
+    public CountingConfiguredTest configuredTest = new CountingConfiguredTest();
+
+    @Rule
+    public AuthorizationRule authorizationRule = new AuthorizationRule();
+
+    @Test
+    public void consumerNotCreatedIfNotUsed() {
+        assertThat(SecurityUtil.getLoggedInUser().getUsername(),
+                is(configuredTest.getProducer().getUsername()));
+        assertThat(configuredTest.createdConsumers, is(0));
+    }
+
+    @Test
+    public void consumerCreatedOnLogin() {
+        configuredTest.logInAs(LoginRole.CONSUMER);
+        assertThat(configuredTest.createdConsumers, is(1));
+        assertThat(SecurityUtil.getLoggedInUser().getUsername(),
+                is(configuredTest.getConsumer().getUsername()));
+        assertThat(configuredTest.createdConsumers, is(1));
+    }
+
+    public static class CountingConfiguredTest extends ConfiguredTest {
+
+        private int createdConsumers;
+
+        @Override
+        public User createUser(String username, String firstName, String lastName, User.Role userRole, LoginRole loginRole) {
+            if (loginRole == LoginRole.CONSUMER) {
+                createdConsumers++;
+            }
+            return super.createUser(username, firstName, lastName, userRole, loginRole);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package fi.vincit.multiusertest;
+
+import fi.vincit.multiusertest.annotation.MultiUserConfigClass;
+import fi.vincit.multiusertest.annotation.MultiUserTestConfig;
+import fi.vincit.multiusertest.annotation.RunWithUsers;
+import fi.vincit.multiusertest.configuration.ConfiguredTest;
+import fi.vincit.multiusertest.rule.AuthorizationRule;
+import fi.vincit.multiusertest.runner.junit.MultiUserTestRunner;
+import fi.vincit.multiusertest.util.LoginRole;
+import fi.vincit.multiusertest.util.SecurityUtil;
+import fi.vincit.multiusertest.util.User;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+@RunWithUsers(producers = {"role:ROLE_ADMIN", "role:ROLE_USER"},
+        consumers = {RunWithUsers.PRODUCER, "role:ROLE_VISITOR"})
+@RunWith(MultiUserTestRunner.class)
+@MultiUserTestConfig(loginElision = true, authenticationCacheSize = 10)
+public class LoginElisionTest {
+
+    @MultiUserConfigClass
+    public CountingConfiguredTest configuredTest = new CountingConfiguredTest();
+
+    @Rule
+    public AuthorizationRule authorizationRule = new AuthorizationRule();
+
+    @Test
+    public void consumerLoggedInOnlyIfNotProducer() {
+        configuredTest.logInAs(LoginRole.CONSUMER);
+
+        assertThat(SecurityUtil.getLoggedInUser(), is(configuredTest.getConsumer()));
+        assertThat(configuredTest.logins, is(isProducerConsumer() ? 1 : 2));
+    }
+
+    @Test
+    public void authenticationBuiltOncePerUser() {
+        configuredTest.logInAs(LoginRole.CONSUMER);
+        configuredTest.logInAs(LoginRole.PRODUCER);
+
+        assertThat(SecurityUtil.getLoggedInUser(), is(configuredTest.getProducer()));
+        assertThat(configuredTest.logins, is(isProducerConsumer() ? 1 : 3));
+        assertThat(configuredTest.builtAuthentications, is(isProducerConsumer() ? 1 : 2));
+    }
+
+    @Test
+    public void producerLoggedInAgainAfterAnonymousLogin() {
+        configuredTest.loginAnonymous();
+        configuredTest.logInAs(LoginRole.PRODUCER);
+
+        assertThat(SecurityUtil.getLoggedInUser(), is(configuredTest.getProducer()));
+    }
+
+    private boolean isProducerConsumer() {
+        return configuredTest.getConsumer() == configuredTest.getProducer();
+    }
+
+    public static class CountingConfiguredTest extends ConfiguredTest {
+
+        private int logins;
+        private int builtAuthentications;
+
+        @Override
+        public void loginWithUser(User user) {
+            if (user != null) {
+                logins++;
+                super.loginWithUser(getAuthentication(user, u -> {
+                    builtAuthentications++;
+                    return u;
+                }));
+            } else {
+                super.loginWithUser(null);
+            }
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package fi.vincit.multiusertest;
+
+import fi.vincit.multiusertest.annotation.MultiUserConfigClass;
+import fi.vincit.multiusertest.annotation.ProducerSetup;
+import fi.vincit.multiusertest.annotation.RunWithUsers;
+import fi.vincit.multiusertest.configuration.ConfiguredTest;
+import fi.vincit.multiusertest.rule.AuthorizationRule;
+import fi.vincit.multiusertest.runner.junit.MultiUserTestRunner;
+import fi.vincit.multiusertest.util.SecurityUtil;
+import fi.vincit.multiusertest.util.User;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.junit.Assert.assertThat;
+
+@RunWithUsers(producers = {"role:ROLE_ADMIN", "role:ROLE_USER"},
+        consumers = {"role:ROLE_VISITOR", "role:ROLE_USER", RunWithUsers.PRODUCER})
+@RunWith(MultiUserTestRunner.class)
+public class ProducerSetupTest {
+
+    private static final Map<User.Role, Integer> setupCounts = new ConcurrentHashMap<>();
+
+    @MultiUserConfigClass
+    public ConfiguredTest configuredTest = new ConfiguredTest();
+
+    @Rule
+    public AuthorizationRule authorizationRule = new AuthorizationRule();
+
+    private String dataOwner;
+    private List<String> products;
+    private boolean beforeRun;
+
+    @Before
+    public void init() {
+        beforeRun = true;
+    }
+
+    @ProducerSetup
+    public void createData() {
+        setupCounts.merge(configuredTest.getProducer().getRole(), 1, Integer::sum);
+        dataOwner = SecurityUtil.getLoggedInUser().getUsername();
+        products = new ArrayList<>(Collections.singletonList("product"));
+    }
+
+    @Test
+    public void producerSetupRunOncePerProducer() {
+        assertThat(setupCounts.get(configuredTest.getProducer().getRole()), is(1));
+    }
+
+    @Test
+    public void producerReusedByConsumers() {
+        assertThat(dataOwner, notNullValue());
+        assertThat(configuredTest.getProducer().getUsername(), is(dataOwner));
+        assertThat(beforeRun, is(true));
+    }
+
+    @Test
+    public void producerDataNotSharedBetweenConsumers() {
+        assertThat(products, is(Collections.singletonList("product")));
+        products.add("consumer-product");
+    }
+
+    @Test
+    public void producerDataNotSharedBetweenConsumersAgain() {
+        assertThat(products, is(Collections.singletonList("product")));
+        products.add("consumer-product");
+    }
+}
@@ -0,0 +1,57 @@
+package fi.vincit.multiusertest;
+
+import fi.vincit.multiusertest.annotation.MultiUserConfigClass;
+import fi.vincit.multiusertest.annotation.MultiUserTestConfig;
+import fi.vincit.multiusertest.annotation.RunWithUsers;
+import fi.vincit.multiusertest.configuration.PooledConfiguredTest;
+import fi.vincit.multiusertest.rule.AuthorizationRule;
+import fi.vincit.multiusertest.runner.junit.MultiUserTestRunner;
+import fi.vincit.multiusertest.test.UserPoolScope;
+import fi.vincit.multiusertest.util.LoginRole;
+import fi.vincit.multiusertest.util.SecurityUtil;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.assertThat;
+
+@RunWithUsers(producers = {"role:ROLE_ADMIN", "role:ROLE_USER"},
+        consumers = {"role:ROLE_USER", RunWithUsers.WITH_PRODUCER_ROLE})
+@RunWith(MultiUserTestRunner.class)
+@MultiUserTestConfig(userPool = UserPoolScope.CLASS)
+public class UserPoolTest {
+
+    // Producer and consumer for each of ROLE_ADMIN and ROLE_USER
+    private static final int MAX_CREATED_USERS = 4;
+
+    @MultiUserConfigClass
+    public PooledConfiguredTest configuredTest = new PooledConfiguredTest();
+
+    @Rule
+    public AuthorizationRule authorizationRule = new AuthorizationRule();
+
+    @Test
+    public void producerLoggedIn() {
+        assertThat(SecurityUtil.getLoggedInUser().getUsername(),
+                is(configuredTest.getProducer().getUsername()));
+        assertThat(PooledConfiguredTest.getCreatedUsers(), lessThanOrEqualTo(MAX_CREATED_USERS));
+    }
+
+    @Test
+    public void consumerLoggedIn() {
+        configuredTest.logInAs(LoginRole.CONSUMER);
+        assertThat(SecurityUtil.getLoggedInUser().getUsername(),
+                is(configuredTest.getConsumer().getUsername()));
+        assertThat(PooledConfiguredTest.getCreatedUsers(), lessThanOrEqualTo(MAX_CREATED_USERS));
+    }
+
+    @Test
+    public void producerAndConsumerAreDifferentUsers() {
+        assertThat(configuredTest.getProducer().getUsername(),
+                not(configuredTest.getConsumer().getUsername()));
+        assertThat(PooledConfiguredTest.getCreatedUsers(), lessThanOrEqualTo(MAX_CREATED_USERS));
+    }
+}
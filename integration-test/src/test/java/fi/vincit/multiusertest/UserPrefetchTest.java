@@ -0,0 +1,70 @@
+package fi.vincit.multiusertest;
+
+import fi.vincit.multiusertest.annotation.MultiUserConfigClass;
+import fi.vincit.multiusertest.annotation.MultiUserTestConfig;
+import fi.vincit.multiusertest.annotation.RunWithUsers;
+import fi.vincit.multiusertest.configuration.PrefetchingConfiguredTest;
+import fi.vincit.multiusertest.rule.AuthorizationRule;
+import fi.vincit.multiusertest.runner.junit.MultiUserTestRunner;
+import fi.vincit.multiusertest.util.LoginRole;
+import fi.vincit.multiusertest.util.SecurityUtil;
+import fi.vincit.multiusertest.util.User;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+@RunWithUsers(producers = {"role:ROLE_ADMIN", "role:ROLE_USER"},
+        consumers = {"role:ROLE_ADMIN", "role:ROLE_USER", "role:ROLE_VISITOR"})
+@RunWith(MultiUserTestRunner.class)
+@MultiUserTestConfig(userPrefetch = 4)
+public class UserPrefetchTest {
+
+    private static final Set<User> usedUsers = Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<>()));
+
+    @MultiUserConfigClass
+    public PrefetchingConfiguredTest configuredTest = new PrefetchingConfiguredTest();
+
+    @Rule
+    public AuthorizationRule authorizationRule = new AuthorizationRule();
+
+    @Test
+    public void producerLoggedIn() {
+        assertThat(SecurityUtil.getLoggedInUser().getUsername(),
+                is(configuredTest.getProducer().getUsername()));
+        assertNewUsers();
+    }
+
+    @Test
+    public void consumerLoggedIn() {
+        configuredTest.logInAs(LoginRole.CONSUMER);
+        assertThat(SecurityUtil.getLoggedInUser().getUsername(),
+                is(configuredTest.getConsumer().getUsername()));
+        assertNewUsers();
+    }
+
+    @Test
+    public void usersHaveCorrectRoles() {
+        User.Role producerRole = configuredTest.getProducer().getRole();
+        assertThat(producerRole == User.Role.ROLE_ADMIN || producerRole == User.Role.ROLE_USER, is(true));
+        assertThat(configuredTest.getConsumer().getRole() == User.Role.ROLE_ADMIN
+                || configuredTest.getConsumer().getRole() == User.Role.ROLE_USER
+                || configuredTest.getConsumer().getRole() == User.Role.ROLE_VISITOR, is(true));
+        assertNewUsers();
+    }
+
+    private void assertNewUsers() {
+        assertThat(configuredTest.getProducer(), not(sameInstance(configuredTest.getConsumer())));
+        // Prefetched users must not be handed to more than one test
+        assertThat(usedUsers.add(configuredTest.getProducer()), is(true));
+        assertThat(usedUsers.add(configuredTest.getConsumer()), is(true));
+    }
+}
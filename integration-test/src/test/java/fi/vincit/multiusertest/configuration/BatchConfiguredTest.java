@@ -0,0 +1,52 @@
+package fi.vincit.multiusertest.configuration;
+
+import fi.vincit.multiusertest.test.BatchUserFactory;
+import fi.vincit.multiusertest.test.NewUser;
+import fi.vincit.multiusertest.test.PooledUserFactory;
+import fi.vincit.multiusertest.util.LoginRole;
+import fi.vincit.multiusertest.util.User;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class BatchConfiguredTest extends ConfiguredTest
+        implements BatchUserFactory<User, User.Role>, PooledUserFactory<User, User.Role> {
+
+    private static final AtomicInteger batchCalls = new AtomicInteger();
+    private static final AtomicInteger createdUsers = new AtomicInteger();
+
+    @Override
+    public List<User> createUsers(List<NewUser<User.Role>> newUsers) {
+        batchCalls.incrementAndGet();
+        List<User> users = new ArrayList<>(newUsers.size());
+        for (NewUser<User.Role> newUser : newUsers) {
+            users.add(super.createUser(
+                    newUser.getUsername(),
+                    newUser.getFirstName(),
+                    newUser.getLastName(),
+                    newUser.getRole(),
+                    newUser.getLoginRole()
+            ));
+        }
+        return users;
+    }
+
+    @Override
+    public User createUser(String username, String firstName, String lastName, User.Role userRole, LoginRole loginRole) {
+        createdUsers.incrementAndGet();
+        return super.createUser(username, firstName, lastName, userRole, loginRole);
+    }
+
+    @Override
+    public void resetUser(User user, User.Role userRole, LoginRole loginRole) {
+    }
+
+    public static int getBatchCalls() {
+        return batchCalls.get();
+    }
+
+    public static int getCreatedUsers() {
+        return createdUsers.get();
+    }
+}
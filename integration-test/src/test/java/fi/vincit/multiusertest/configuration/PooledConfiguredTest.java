@@ -0,0 +1,32 @@
+package fi.vincit.multiusertest.configuration;
+
+import fi.vincit.multiusertest.test.PooledUserFactory;
+import fi.vincit.multiusertest.util.LoginRole;
+import fi.vincit.multiusertest.util.User;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class PooledConfiguredTest extends ConfiguredTest implements PooledUserFactory<User, User.Role> {
+
+    private static final AtomicInteger createdUsers = new AtomicInteger();
+    private static final AtomicInteger resetUsers = new AtomicInteger();
+
+    @Override
+    public User createUser(String username, String firstName, String lastName, User.Role userRole, LoginRole loginRole) {
+        createdUsers.incrementAndGet();
+        return super.createUser(username, firstName, lastName, userRole, loginRole);
+    }
+
+    @Override
+    public void resetUser(User user, User.Role userRole, LoginRole loginRole) {
+        resetUsers.incrementAndGet();
+    }
+
+    public static int getCreatedUsers() {
+        return createdUsers.get();
+    }
+
+    public static int getResetUsers() {
+        return resetUsers.get();
+    }
+}
@@ -0,0 +1,27 @@
+package fi.vincit.multiusertest.configuration;
+
+import fi.vincit.multiusertest.util.LoginRole;
+import fi.vincit.multiusertest.util.User;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Configuration whose users can be created from the prefetch thread
+ */
+public class PrefetchingConfiguredTest extends ConfiguredTest {
+
+    private static final Map<String, User> users = new ConcurrentHashMap<>();
+
+    @Override
+    public User createUser(String username, String firstName, String lastName, User.Role userRole, LoginRole loginRole) {
+        User user = new User(username, userRole);
+        users.put(username, user);
+        return user;
+    }
+
+    @Override
+    public User getUserByUsername(String username) {
+        return users.get(username);
+    }
+}
@@ -0,0 +1,73 @@
+package fi.vincit.multiusertest;
+
+import fi.vincit.multiusertest.annotation.MultiUserConfigClass;
+import fi.vincit.multiusertest.annotation.MultiUserTestConfig;
+import fi.vincit.multiusertest.annotation.RunWithUsers;
+import fi.vincit.multiusertest.configuration.ConfiguredTest;
+import fi.vincit.multiusertest.rule.AuthorizationRule;
+import fi.vincit.multiusertest.rule.expectation2.ExpectationTable;
+import fi.vincit.multiusertest.rule.expectation2.TestExpectation;
+import fi.vincit.multiusertest.rule.expectation2.value.TestValueExpectation;
+import fi.vincit.multiusertest.runner.junit.MultiUserTestRunner;
+import fi.vincit.multiusertest.util.LoginRole;
+import fi.vincit.multiusertest.util.User;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static fi.vincit.multiusertest.rule.expectation2.TestExpectations.*;
+import static fi.vincit.multiusertest.util.UserIdentifiers.roles;
+
+@RunWithUsers(producers = {"role:ROLE_ADMIN", "role:ROLE_USER"},
+        consumers = {"role:ROLE_ADMIN", "role:ROLE_USER", "role:ROLE_VISITOR"})
+@RunWith(MultiUserTestRunner.class)
+@MultiUserTestConfig
+public class ExpectationTableTest {
+
+    private static final ExpectationTable<TestExpectation> ADMIN_ONLY = ExpectationTable.forFunctionCalls()
+            .whenCalledWithAnyOf(roles("ROLE_USER", "ROLE_VISITOR"))
+            .then(expectException(IllegalStateException.class))
+            .build();
+
+    private static final ExpectationTable<TestValueExpectation<Integer>> VALUES = ExpectationTable.<Integer>forReturnValues()
+            .whenCalledWithAnyOf(roles("ROLE_ADMIN"))
+            .then(expectValue(1))
+            .whenCalledWithAnyOf(roles("ROLE_USER"))
+            .then(expectValue(2))
+            .otherwise(expectExceptionInsteadOfValue(IllegalStateException.class))
+            .build();
+
+    @MultiUserConfigClass
+    private ConfiguredTest configuredTest = new ConfiguredTest();
+
+    @Rule
+    public AuthorizationRule authorizationRule = new AuthorizationRule();
+
+    private TestService testService = new TestService();
+
+    @Test
+    public void functionCall() throws Throwable {
+        configuredTest.logInAs(LoginRole.CONSUMER);
+        authorizationRule.testCall(() -> {
+            if (configuredTest.getConsumer().getRole() != User.Role.ROLE_ADMIN) {
+                testService.throwIllegalStateException();
+            }
+        }, ADMIN_ONLY);
+    }
+
+    @Test
+    public void returnValueCall() throws Throwable {
+        configuredTest.logInAs(LoginRole.CONSUMER);
+        authorizationRule.testCall(() -> {
+            switch (configuredTest.getConsumer().getRole()) {
+                case ROLE_ADMIN:
+                    return testService.returnsValue(1);
+                case ROLE_USER:
+                    return testService.returnsValue(2);
+                default:
+                    throw new IllegalStateException();
+            }
+        }, VALUES);
+    }
+
+}
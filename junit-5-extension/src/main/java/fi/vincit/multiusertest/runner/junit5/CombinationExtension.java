@@ -0,0 +1,220 @@
+package fi.vincit.multiusertest.runner.junit5;
+
+import fi.vincit.multiusertest.rule.AuthorizationRule;
+import fi.vincit.multiusertest.util.ProducerPhase;
+import fi.vincit.multiusertest.util.RunnerDelegate;
+import fi.vincit.multiusertest.util.TestMethodFilter;
+import fi.vincit.multiusertest.util.UserCombination;
+import org.junit.jupiter.api.extension.AfterEachCallback;
+import org.junit.jupiter.api.extension.AfterTestExecutionCallback;
+import org.junit.jupiter.api.extension.BeforeEachCallback;
+import org.junit.jupiter.api.extension.BeforeTestExecutionCallback;
+import org.junit.jupiter.api.extension.ConditionEvaluationResult;
+import org.junit.jupiter.api.extension.ExecutionCondition;
+import org.junit.jupiter.api.extension.ExtensionContext;
+import org.junit.jupiter.api.extension.TestExecutionExceptionHandler;
+import org.junit.runner.Description;
+import org.junit.runners.model.FrameworkMethod;
+import org.junit.runners.model.Statement;
+
+import java.lang.reflect.Method;
+
+/**
+ * Runs a single test template invocation with the producer-consumer combination.
+ * Does the same steps as {@link fi.vincit.multiusertest.runner.junit.framework.BlockMultiUserTestClassRunner}
+ * using {@link RunnerDelegate}:
+ * <ol>
+ *     <li>Disables the invocation if the method isn't run with the combination</li>
+ *     <li>Runs the <code>@BeforeCombination</code> methods before the first test of the combination in the
+ *     test class and the <code>@AfterCombination</code> methods when the test class has been run</li>
+ *     <li>Initializes the configuration before <code>@BeforeEach</code> methods</li>
+ *     <li>Logs in the producer and runs or restores the producer setup after <code>@BeforeEach</code> methods</li>
+ *     <li>Checks the {@link AuthorizationRule} expectations after the test method</li>
+ *     <li>Releases the pooled users after <code>@AfterEach</code> methods</li>
+ *     <li>Discards the producer setup phases when the test class has been run</li>
+ * </ol>
+ * @since 0.7
+ */
+class CombinationExtension implements ExecutionCondition,
+        BeforeEachCallback,
+        BeforeTestExecutionCallback,
+        TestExecutionExceptionHandler,
+        AfterTestExecutionCallback,
+        AfterEachCallback {
+
+    private static final ExtensionContext.Namespace NAMESPACE =
+            ExtensionContext.Namespace.create(CombinationExtension.class);
+    private static final String EXCEPTION_HANDLED = "exceptionHandled";
+
+    private final UserCombination combination;
+    private final RunnerDelegate runnerDelegate;
+    private final TestMethodFilter methodFilter;
+
+    CombinationExtension(UserCombination combination) {
+        this.combination = combination;
+        this.runnerDelegate = new RunnerDelegate(combination.getProducer(), combination.getConsumer());
+        this.methodFilter = new TestMethodFilter(combination.getProducer(), combination.getConsumer());
+    }
+
+    @Override
+    public ConditionEvaluationResult evaluateExecutionCondition(ExtensionContext context) {
+        boolean shouldRun = context.getTestMethod()
+                .map(methodFilter::shouldRun)
+                .orElse(true);
+        if (shouldRun) {
+            return ConditionEvaluationResult.enabled("Run with " + combination);
+        } else {
+            return ConditionEvaluationResult.disabled("Not run with " + combination);
+        }
+    }
+
+    @Override
+    public void beforeEach(ExtensionContext context) throws Exception {
+        getClassContext(context).getStore(NAMESPACE)
+                .getOrComputeIfAbsent(combination, c -> new CombinationHooks(context.getRequiredTestClass()), CombinationHooks.class)
+                .before();
+        getClassContext(context).getStore(NAMESPACE)
+                .getOrComputeIfAbsent(ProducerPhases.class, c -> new ProducerPhases(context.getRequiredTestClass()), ProducerPhases.class);
+        Object testInstance = runnerDelegate.validateTestInstance(context.getRequiredTestInstance());
+        runnerDelegate.initializeConfig(testInstance, getAuthorizationRule(testInstance));
+    }
+
+    @Override
+    public void beforeTestExecution(ExtensionContext context) throws Exception {
+        runnerDelegate.logInAsProducer(context.getRequiredTestInstance());
+        try {
+            runnerDelegate.runProducerSetup(context.getRequiredTestInstance());
+        } catch (Exception | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    @Override
+    public void handleTestExecutionException(ExtensionContext context, Throwable throwable) throws Throwable {
+        context.getStore(NAMESPACE).put(EXCEPTION_HANDLED, true);
+        checkAuthorization(context, new Statement() {
+            @Override
+            public void evaluate() throws Throwable {
+                throw throwable;
+            }
+        });
+    }
+
+    @Override
+    public void afterTestExecution(ExtensionContext context) throws Exception {
+        if (context.getStore(NAMESPACE).get(EXCEPTION_HANDLED) != null) {
+            return;
+        }
+        try {
+            checkAuthorization(context, new Statement() {
+                @Override
+                public void evaluate() {
+                }
+            });
+        } catch (Exception | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    @Override
+    public void afterEach(ExtensionContext context) {
+        try {
+            runnerDelegate.releaseUsers(context.getRequiredTestInstance());
+        } finally {
+            runnerDelegate.abandonProducerSetup(context.getRequiredTestInstance());
+        }
+    }
+
+    private static ExtensionContext getClassContext(ExtensionContext context) {
+        ExtensionContext current = context;
+        while (current.getTestMethod().isPresent() && current.getParent().isPresent()) {
+            current = current.getParent().get();
+        }
+        return current;
+    }
+
+    private void checkAuthorization(ExtensionContext context, Statement testExecution) throws Throwable {
+        AuthorizationRule authorizationRule = getAuthorizationRule(context.getRequiredTestInstance());
+        authorizationRule.apply(testExecution, getDescription(context)).evaluate();
+    }
+
+    /**
+     * @return JUnit 4 description of the test method for the rules. Named like the
+     * tests of {@link fi.vincit.multiusertest.runner.junit.framework.BlockMultiUserTestClassRunner}.
+     */
+    private Description getDescription(ExtensionContext context) {
+        Method method = context.getRequiredTestMethod();
+        return Description.createTestDescription(
+                context.getRequiredTestClass(),
+                runnerDelegate.testName(new FrameworkMethod(method)),
+                method.getAnnotations()
+        );
+    }
+
+    private AuthorizationRule getAuthorizationRule(Object testInstance) {
+        AuthorizationRule authorizationRule = runnerDelegate.getAuthorizationRule(testInstance);
+        if (authorizationRule == null) {
+            throw new IllegalStateException("Test class must have AuthorizationRule set");
+        }
+        return authorizationRule;
+    }
+
+    /**
+     * Combination hooks of a test class. The before methods are run once and their
+     * failure is reported by every test of the combination. The after methods are run
+     * when the test class' store is closed.
+     */
+    private class CombinationHooks implements ExtensionContext.Store.CloseableResource {
+
+        private final Class<?> testClass;
+        private boolean started;
+        private Throwable beforeFailure;
+
+        CombinationHooks(Class<?> testClass) {
+            this.testClass = testClass;
+        }
+
+        synchronized void before() throws Exception {
+            if (!started) {
+                started = true;
+                try {
+                    runnerDelegate.runBeforeCombination(testClass);
+                } catch (Throwable t) {
+                    beforeFailure = t;
+                }
+            }
+            if (beforeFailure != null) {
+                throw new IllegalStateException("@BeforeCombination failed for " + combination, beforeFailure);
+            }
+        }
+
+        @Override
+        public synchronized void close() throws Throwable {
+            if (started) {
+                runnerDelegate.runAfterCombination(testClass);
+            }
+        }
+    }
+
+    /**
+     * Discards the producer setup phases of a test class and releases their snapshots
+     * when the test class' store is closed.
+     */
+    private static class ProducerPhases implements ExtensionContext.Store.CloseableResource {
+
+        private final Class<?> testClass;
+
+        ProducerPhases(Class<?> testClass) {
+            this.testClass = testClass;
+        }
+
+        @Override
+        public void close() throws Exception {
+            ProducerPhase.resetAll(testClass);
+        }
+    }
+}
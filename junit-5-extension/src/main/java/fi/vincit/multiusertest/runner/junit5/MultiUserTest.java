@@ -0,0 +1,33 @@
+package fi.vincit.multiusertest.runner.junit5;
+
+import org.junit.jupiter.api.TestTemplate;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+import static java.lang.annotation.ElementType.METHOD;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+/**
+ * <p>
+ * Marks a JUnit Jupiter test method to be run with the producer-consumer combinations
+ * defined by the test class' {@link fi.vincit.multiusertest.annotation.RunWithUsers} annotation.
+ * The method is run once for each combination using {@link MultiUserTestExtension}.
+ * </p>
+ * <p>
+ * Method level {@link fi.vincit.multiusertest.annotation.RunWithUsers} and
+ * {@link fi.vincit.multiusertest.annotation.IgnoreForUsers} annotations work the same
+ * way as with {@link fi.vincit.multiusertest.runner.junit.MultiUserTestRunner}. Combinations
+ * the method isn't run with are reported as disabled.
+ * </p>
+ * @since 0.7
+ */
+@Target({METHOD})
+@Retention(RUNTIME)
+@Documented
+@TestTemplate
+@ExtendWith(MultiUserTestExtension.class)
+public @interface MultiUserTest {
+}
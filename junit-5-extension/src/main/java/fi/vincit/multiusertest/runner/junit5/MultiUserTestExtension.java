@@ -0,0 +1,51 @@
+package fi.vincit.multiusertest.runner.junit5;
+
+import fi.vincit.multiusertest.annotation.RunWithUsers;
+import fi.vincit.multiusertest.util.TestClassModel;
+import fi.vincit.multiusertest.util.TestConfiguration;
+import fi.vincit.multiusertest.util.UserCombination;
+import org.junit.jupiter.api.extension.ExtensionContext;
+import org.junit.jupiter.api.extension.TestTemplateInvocationContext;
+import org.junit.jupiter.api.extension.TestTemplateInvocationContextProvider;
+
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * <p>
+ * JUnit Jupiter extension for executing tests with multiple producer-consumer combinations.
+ * Works like {@link fi.vincit.multiusertest.runner.junit.MultiUserTestRunner} but expands
+ * each {@link MultiUserTest} method to one test template invocation per combination. Since
+ * the combinations are normal Jupiter tests they can be run in parallel using Jupiter's
+ * parallel execution (<i>junit.jupiter.execution.parallel.enabled</i>).
+ * </p>
+ * <p>
+ * The test class has to have {@link RunWithUsers} annotation, a configuration member annotated with
+ * {@link fi.vincit.multiusertest.annotation.MultiUserConfigClass} and an
+ * {@link fi.vincit.multiusertest.rule.AuthorizationRule} member. The authorization rule doesn't need
+ * JUnit 4's <code>@Rule</code> annotation.
+ * </p>
+ * @since 0.7
+ */
+public class MultiUserTestExtension implements TestTemplateInvocationContextProvider {
+
+    @Override
+    public boolean supportsTestTemplate(ExtensionContext context) {
+        return context.getTestClass()
+                .map(testClass -> testClass.isAnnotationPresent(RunWithUsers.class))
+                .orElse(false);
+    }
+
+    @Override
+    public Stream<TestTemplateInvocationContext> provideTestTemplateInvocationContexts(ExtensionContext context) {
+        TestConfiguration configuration = TestConfiguration.fromClass(context.getRequiredTestClass());
+
+        List<UserCombination> combinations = UserCombination.combine(
+                configuration.getProducerIdentifiers(),
+                configuration.getConsumerIdentifiers()
+        );
+        TestClassModel.of(context.getRequiredTestClass()).publishCombinations(combinations);
+        return combinations.stream().map(MultiUserTestInvocationContext::new);
+    }
+
+}
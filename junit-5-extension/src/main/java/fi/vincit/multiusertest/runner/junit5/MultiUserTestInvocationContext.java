@@ -0,0 +1,31 @@
+package fi.vincit.multiusertest.runner.junit5;
+
+import fi.vincit.multiusertest.util.UserCombination;
+import org.junit.jupiter.api.extension.Extension;
+import org.junit.jupiter.api.extension.TestTemplateInvocationContext;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Test template invocation of a single producer-consumer combination.
+ * @since 0.7
+ */
+class MultiUserTestInvocationContext implements TestTemplateInvocationContext {
+
+    private final UserCombination combination;
+
+    MultiUserTestInvocationContext(UserCombination combination) {
+        this.combination = combination;
+    }
+
+    @Override
+    public String getDisplayName(int invocationIndex) {
+        return combination.toString();
+    }
+
+    @Override
+    public List<Extension> getAdditionalExtensions() {
+        return Collections.singletonList(new CombinationExtension(combination));
+    }
+}
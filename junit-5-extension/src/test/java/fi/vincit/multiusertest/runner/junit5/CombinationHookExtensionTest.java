@@ -0,0 +1,65 @@
+package fi.vincit.multiusertest.runner.junit5;
+
+import fi.vincit.multiusertest.annotation.AfterCombination;
+import fi.vincit.multiusertest.annotation.BeforeCombination;
+import fi.vincit.multiusertest.annotation.MultiUserConfigClass;
+import fi.vincit.multiusertest.annotation.RunWithUsers;
+import fi.vincit.multiusertest.rule.AuthorizationRule;
+import fi.vincit.multiusertest.runner.junit5.configuration.ConfiguredTest;
+import fi.vincit.multiusertest.util.SecurityUtil;
+import fi.vincit.multiusertest.util.UserCombination;
+import org.junit.jupiter.api.AfterEach;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+@RunWithUsers(producers = {"role:ROLE_ADMIN", "role:ROLE_USER"},
+        consumers = {"role:ROLE_ADMIN", "role:ROLE_USER"})
+public class CombinationHookExtensionTest {
+
+    private static final Map<String, Integer> beforeCounts = new ConcurrentHashMap<>();
+    private static final Map<String, Integer> afterCounts = new ConcurrentHashMap<>();
+
+    @MultiUserConfigClass
+    private ConfiguredTest configuredTest = new ConfiguredTest();
+
+    private AuthorizationRule authorization = new AuthorizationRule();
+
+    @BeforeCombination
+    public static void beforeCombination(UserCombination combination) {
+        beforeCounts.merge(key(combination), 1, Integer::sum);
+    }
+
+    @AfterCombination
+    public static void afterCombination(UserCombination combination) {
+        afterCounts.merge(key(combination), 1, Integer::sum);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        SecurityUtil.clear();
+    }
+
+    @MultiUserTest
+    public void beforeCombinationRunOnce() {
+        assertThat(beforeCounts.get(currentKey()), is(1));
+        assertThat(afterCounts.containsKey(currentKey()), is(false));
+    }
+
+    @MultiUserTest
+    public void beforeCombinationSharedByTests() {
+        assertThat(beforeCounts.get(currentKey()), is(1));
+        assertThat(afterCounts.containsKey(currentKey()), is(false));
+    }
+
+    private String currentKey() {
+        return configuredTest.getProducer().getRole() + ":" + configuredTest.getConsumer().getRole();
+    }
+
+    private static String key(UserCombination combination) {
+        return combination.getProducer().getIdentifier() + ":" + combination.getConsumer().getIdentifier();
+    }
+}
@@ -0,0 +1,90 @@
+package fi.vincit.multiusertest.runner.junit5;
+
+import fi.vincit.multiusertest.annotation.IgnoreForUsers;
+import fi.vincit.multiusertest.annotation.MultiUserConfigClass;
+import fi.vincit.multiusertest.annotation.RunWithUsers;
+import fi.vincit.multiusertest.rule.AuthorizationRule;
+import fi.vincit.multiusertest.runner.junit5.configuration.ConfiguredTest;
+import fi.vincit.multiusertest.util.LoginRole;
+import fi.vincit.multiusertest.util.SecurityUtil;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+
+import static fi.vincit.multiusertest.rule.Authentication.toFail;
+import static fi.vincit.multiusertest.rule.expectation2.TestExpectations.expectException;
+import static fi.vincit.multiusertest.rule.expectation2.TestExpectations.expectNotToFail;
+import static fi.vincit.multiusertest.util.UserIdentifiers.ifAnyOf;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.junit.Assert.assertThat;
+
+@RunWithUsers(producers = {"role:ROLE_ADMIN", "role:ROLE_USER"},
+        consumers = {"role:ROLE_ADMIN", "role:ROLE_USER"})
+public class MultiUserTestExtensionTest {
+
+    @MultiUserConfigClass
+    private ConfiguredTest configuredTest = new ConfiguredTest();
+
+    private AuthorizationRule authorization = new AuthorizationRule();
+
+    private boolean beforeEachCalled;
+
+    @BeforeEach
+    public void init() {
+        assertThat(SecurityUtil.getLoggedInUser(), nullValue());
+        beforeEachCalled = true;
+    }
+
+    @AfterEach
+    public void tearDown() {
+        SecurityUtil.clear();
+    }
+
+    @MultiUserTest
+    public void producerLoggedInAfterBeforeEach() {
+        assertThat(beforeEachCalled, is(true));
+        assertThat(SecurityUtil.getLoggedInUser(), is(configuredTest.getProducer()));
+    }
+
+    @MultiUserTest
+    public void consumerLoggedIn() {
+        configuredTest.logInAs(LoginRole.CONSUMER);
+        assertThat(SecurityUtil.getLoggedInUser(), is(configuredTest.getConsumer()));
+    }
+
+    @MultiUserTest
+    public void expectation2() throws Throwable {
+        configuredTest.logInAs(LoginRole.CONSUMER);
+        authorization.testCall(this::throwIfNotAdmin)
+                .whenCalledWithAnyOf("role:ROLE_USER")
+                .then(expectException(IllegalStateException.class))
+                .otherwise(expectNotToFail())
+                .test();
+    }
+
+    @MultiUserTest
+    public void legacyExpectation() {
+        configuredTest.logInAs(LoginRole.CONSUMER);
+        authorization.expect(toFail(ifAnyOf("role:ROLE_USER")));
+        throwIfNotAdmin();
+    }
+
+    @MultiUserTest
+    @RunWithUsers(producers = "role:ROLE_ADMIN", consumers = "role:ROLE_ADMIN")
+    public void onlyAdmins() {
+        assertThat(configuredTest.getProducer().getRole().toString(), is("ROLE_ADMIN"));
+        assertThat(configuredTest.getConsumer().getRole().toString(), is("ROLE_ADMIN"));
+    }
+
+    @MultiUserTest
+    @IgnoreForUsers(producers = "role:ROLE_USER")
+    public void ignoredForUserProducer() {
+        assertThat(configuredTest.getProducer().getRole().toString(), is("ROLE_ADMIN"));
+    }
+
+    private void throwIfNotAdmin() {
+        if (!SecurityUtil.getLoggedInUser().getRole().toString().equals("ROLE_ADMIN")) {
+            throw new IllegalStateException("Denied");
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package fi.vincit.multiusertest.runner.junit5;
+
+import fi.vincit.multiusertest.annotation.MultiUserConfigClass;
+import fi.vincit.multiusertest.annotation.RunWithUsers;
+import fi.vincit.multiusertest.rule.AuthorizationRule;
+import fi.vincit.multiusertest.test.AbstractMultiUserConfig;
+import fi.vincit.multiusertest.util.LoginRole;
+import fi.vincit.multiusertest.util.User;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.parallel.Execution;
+import org.junit.jupiter.api.parallel.ExecutionMode;
+import org.junit.platform.launcher.Launcher;
+import org.junit.platform.launcher.LauncherDiscoveryRequest;
+import org.junit.platform.launcher.core.LauncherFactory;
+import org.junit.platform.launcher.listeners.SummaryGeneratingListener;
+import org.junit.platform.launcher.listeners.TestExecutionSummary;
+import org.junit.runner.Description;
+import org.junit.runners.model.Statement;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static fi.vincit.multiusertest.rule.expectation2.TestExpectations.expectException;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.platform.engine.discovery.DiscoverySelectors.selectClass;
+import static org.junit.platform.launcher.core.LauncherDiscoveryRequestBuilder.request;
+
+public class ParallelExecutionTest {
+
+    private static final Set<String> THREADS = ConcurrentHashMap.newKeySet();
+    private static final Set<String> DESCRIBED_METHODS = ConcurrentHashMap.newKeySet();
+
+    @RunWithUsers(producers = {"role:ROLE_ADMIN", "role:ROLE_USER"},
+            consumers = {"role:ROLE_ADMIN", "role:ROLE_USER"})
+    @Execution(ExecutionMode.CONCURRENT)
+    static class Combinations {
+
+        @MultiUserConfigClass
+        private ThreadLocalConfiguredTest configuredTest = new ThreadLocalConfiguredTest();
+
+        private AuthorizationRule authorization = new DescriptionRecordingAuthorizationRule();
+
+        @MultiUserTest
+        public void producerLoggedIn() throws Exception {
+            THREADS.add(Thread.currentThread().getName());
+            Thread.sleep(20);
+            assertThat(configuredTest.getLoggedInUser(), is(configuredTest.getProducer()));
+        }
+
+        @MultiUserTest
+        public void consumerAuthorized() throws Throwable {
+            THREADS.add(Thread.currentThread().getName());
+            configuredTest.logInAs(LoginRole.CONSUMER);
+            Thread.sleep(20);
+            authorization.testCall(this::throwIfNotAdmin)
+                    .whenCalledWithAnyOf("role:ROLE_USER")
+                    .then(expectException(IllegalStateException.class))
+                    .test();
+        }
+
+        private void throwIfNotAdmin() {
+            if (configuredTest.getLoggedInUser().getRole() != User.Role.ROLE_ADMIN) {
+                throw new IllegalStateException("Not admin");
+            }
+        }
+    }
+
+    /**
+     * Keeps the logged in user per thread since the combinations are run concurrently.
+     */
+    public static class ThreadLocalConfiguredTest extends AbstractMultiUserConfig<User, User.Role> {
+
+        private static final ThreadLocal<User> LOGGED_IN_USER = new ThreadLocal<>();
+
+        @Override
+        public void loginWithUser(User user) {
+            LOGGED_IN_USER.set(user);
+        }
+
+        @Override
+        public User createUser(String username, String firstName, String lastName, User.Role userRole, LoginRole loginRole) {
+            return new User(username, userRole);
+        }
+
+        @Override
+        public User.Role stringToRole(String role) {
+            return User.Role.valueOf(role);
+        }
+
+        @Override
+        public User getUserByUsername(String username) {
+            throw new UnsupportedOperationException("Existing users are not used");
+        }
+
+        User getLoggedInUser() {
+            return LOGGED_IN_USER.get();
+        }
+    }
+
+    public static class DescriptionRecordingAuthorizationRule extends AuthorizationRule {
+
+        @Override
+        public Statement apply(Statement base, Description description) {
+            DESCRIBED_METHODS.add(description.getTestClass().getSimpleName() + "." + description.getMethodName());
+            return super.apply(base, description);
+        }
+    }
+
+    @Test
+    public void combinationsRunConcurrently() {
+        LauncherDiscoveryRequest request = request()
+                .selectors(selectClass(Combinations.class))
+                .configurationParameter("junit.jupiter.execution.parallel.enabled", "true")
+                .configurationParameter("junit.jupiter.execution.parallel.config.strategy", "fixed")
+                .configurationParameter("junit.jupiter.execution.parallel.config.fixed.parallelism", "4")
+                .build();
+        SummaryGeneratingListener listener = new SummaryGeneratingListener();
+        Launcher launcher = LauncherFactory.create();
+
+        launcher.execute(request, listener);
+
+        TestExecutionSummary summary = listener.getSummary();
+        summary.getFailures().forEach(failure -> {
+            throw new AssertionError(failure.getTestIdentifier().getDisplayName(), failure.getException());
+        });
+        assertThat(summary.getTestsSucceededCount(), is(8L));
+        assertTrue("Run in one thread: " + THREADS, THREADS.size() > 1);
+        assertThat(DESCRIBED_METHODS, is(new HashSet<>(Arrays.asList(
+                "Combinations.producerLoggedIn",
+                "Combinations.consumerAuthorized"
+        ))));
+    }
+
+}
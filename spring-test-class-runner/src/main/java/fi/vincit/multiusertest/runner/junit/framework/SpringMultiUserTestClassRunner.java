@@ -1,26 +1,60 @@
 package fi.vincit.multiusertest.runner.junit.framework;
 
 import fi.vincit.multiusertest.util.RunnerDelegate;
+import fi.vincit.multiusertest.util.TestClassModel;
+import fi.vincit.multiusertest.util.TestConfiguration;
 import fi.vincit.multiusertest.util.UserIdentifier;
+import fi.vincit.multiusertest.util.snapshot.ProducerTransaction;
+import fi.vincit.multiusertest.util.snapshot.SavepointSnapshotStrategy;
+import org.junit.runner.notification.RunNotifier;
 import org.junit.runners.model.FrameworkMethod;
 import org.junit.runners.model.InitializationError;
 import org.junit.runners.model.Statement;
+import org.junit.runners.model.TestClass;
+import org.springframework.context.ApplicationContext;
+import org.springframework.test.context.TestContextManager;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 import org.springframework.test.context.junit4.statements.RunBeforeTestMethodCallbacks;
+import org.springframework.transaction.PlatformTransactionManager;
 
 import java.util.List;
+import java.util.Optional;
 
 /**
  * Spring specific runner. Uses SpringJUnit4ClassRunner to initialize
  * spring context.
+ * <p>
+ * If the producer setup of the test class uses {@link SavepointSnapshotStrategy}
+ * the tests run with the same producer share a {@link ProducerTransaction} and each
+ * test is rolled back to the savepoint created after the producer setup. The transaction
+ * is rolled back when the tests of another producer begin or when the test class has been run.
+ * </p>
  */
 public class SpringMultiUserTestClassRunner extends SpringJUnit4ClassRunner {
 
     private final RunnerDelegate runnerDelegate;
+    private final UserIdentifier producerIdentifier;
 
     public SpringMultiUserTestClassRunner(Class<?> clazz, UserIdentifier producerIdentifier, UserIdentifier consumerIdentifier) throws InitializationError {
         super(clazz);
-        this.runnerDelegate = new RunnerDelegate(producerIdentifier, consumerIdentifier);
+        this.runnerDelegate = new RunnerDelegate(getTestClass(), producerIdentifier, consumerIdentifier);
+        this.producerIdentifier = producerIdentifier;
+    }
+
+    @Override
+    protected TestContextManager createTestContextManager(Class<?> clazz) {
+        return new MultiUserTestContextManager(clazz);
+    }
+
+    @Override
+    protected TestClass createTestClass(Class<?> testClass) {
+        return TestClassModel.of(testClass).getTestClass();
+    }
+
+    @Override
+    protected void collectInitializationErrors(List<Throwable> errors) {
+        errors.addAll(TestClassModel.of(getTestClass().getJavaClass())
+                .getInitializationErrors(getClass(), super::collectInitializationErrors));
     }
 
     @Override
@@ -59,4 +93,67 @@ public class SpringMultiUserTestClassRunner extends SpringJUnit4ClassRunner {
                 junitBefores, testInstance, frameworkMethod.getMethod(), getTestContextManager()
         );
     }
+
+    @Override
+    protected Statement withAfters(FrameworkMethod frameworkMethod, Object testInstance, Statement statement) {
+        return runnerDelegate.withAfters(testInstance, super.withAfters(frameworkMethod, testInstance, statement));
+    }
+
+    @Override
+    protected Statement methodBlock(FrameworkMethod frameworkMethod) {
+        final Statement statement = super.methodBlock(frameworkMethod);
+        final Optional<SavepointSnapshotStrategy> savepointStrategy = getSavepointStrategy();
+        if (!savepointStrategy.isPresent()) {
+            return statement;
+        }
+
+        // Begins before the Spring test callbacks so that the test transactions join the producer transaction
+        return new Statement() {
+            @Override
+            public void evaluate() throws Throwable {
+                Class<?> testClass = getTestClass().getJavaClass();
+                if (TestConfiguration.fromClass(testClass).getParallelism() > 1) {
+                    throw new IllegalStateException("Savepoint producer setup can't be used with parallel combinations");
+                }
+                PlatformTransactionManager transactionManager = savepointStrategy.get().getTransactionManager(
+                        ((MultiUserTestContextManager) getTestContextManager()).getApplicationContext()
+                );
+                ProducerTransaction transaction =
+                        ProducerTransaction.begin(testClass, producerIdentifier, transactionManager);
+                try {
+                    statement.evaluate();
+                } finally {
+                    transaction.rollbackTest();
+                }
+            }
+        };
+    }
+
+    @Override
+    protected Statement childrenInvoker(RunNotifier notifier) {
+        return runnerDelegate.childrenInvoker(
+                getTestClass().getJavaClass(),
+                getChildren(),
+                this::isIgnored,
+                super.childrenInvoker(notifier)
+        );
+    }
+
+    private Optional<SavepointSnapshotStrategy> getSavepointStrategy() {
+        return TestClassModel.of(getTestClass().getJavaClass()).getProducerSetup()
+                .map(TestClassModel.ProducerSetupModel::getSnapshotStrategy)
+                .filter(strategy -> strategy instanceof SavepointSnapshotStrategy)
+                .map(strategy -> (SavepointSnapshotStrategy) strategy);
+    }
+
+    private static class MultiUserTestContextManager extends TestContextManager {
+
+        MultiUserTestContextManager(Class<?> testClass) {
+            super(testClass);
+        }
+
+        ApplicationContext getApplicationContext() {
+            return getTestContext().getApplicationContext();
+        }
+    }
 }
@@ -0,0 +1,27 @@
+package fi.vincit.multiusertest.util.reset;
+
+import java.sql.SQLException;
+
+/**
+ * Resets the database to its initial state after each test. Used instead of
+ * removing the test data entity by entity (e.g. with JPA repositories' <code>deleteAll</code>)
+ * after each test. Register the strategy as a bean and add {@link DatabaseResetTestExecutionListener}
+ * to the test class, or call the methods from the test's <code>Before</code> and
+ * <code>After</code> methods.
+ * @since 0.7
+ */
+public interface DatabaseResetStrategy {
+
+    /**
+     * Called before each test before any test data is created.
+     * @throws SQLException If the database can't be prepared
+     */
+    default void beforeTest() throws SQLException {
+    }
+
+    /**
+     * Called after each test. Removes the data created by the test.
+     * @throws SQLException If the database can't be reset
+     */
+    void afterTest() throws SQLException;
+}
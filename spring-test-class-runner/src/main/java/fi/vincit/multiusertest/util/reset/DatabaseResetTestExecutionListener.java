@@ -0,0 +1,34 @@
+package fi.vincit.multiusertest.util.reset;
+
+import fi.vincit.multiusertest.test.UserPrefetcher;
+import org.springframework.test.context.TestContext;
+import org.springframework.test.context.support.AbstractTestExecutionListener;
+
+/**
+ * Resets the database after each test using the {@link DatabaseResetStrategy} bean of the
+ * test context. When used together with <code>TransactionalTestExecutionListener</code>
+ * this listener should be listed before it, so that the database is reset after the
+ * test transaction has ended. Users prefetched for the test class are discarded after the
+ * reset, see {@link UserPrefetcher#clear(Class)}.
+ * @since 0.7
+ */
+public class DatabaseResetTestExecutionListener extends AbstractTestExecutionListener {
+
+    @Override
+    public void beforeTestMethod(TestContext testContext) throws Exception {
+        getStrategy(testContext).beforeTest();
+    }
+
+    @Override
+    public void afterTestMethod(TestContext testContext) throws Exception {
+        try {
+            getStrategy(testContext).afterTest();
+        } finally {
+            UserPrefetcher.clear(testContext.getTestClass());
+        }
+    }
+
+    private static DatabaseResetStrategy getStrategy(TestContext testContext) {
+        return testContext.getApplicationContext().getBean(DatabaseResetStrategy.class);
+    }
+}
@@ -0,0 +1,76 @@
+package fi.vincit.multiusertest.util.reset;
+
+import javax.sql.DataSource;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Restores an H2 database from a snapshot after each test. The snapshot is written
+ * with <code>SCRIPT TO</code> before the first test (or when {@link #snapshot()} is
+ * called) and restored with <code>DROP ALL OBJECTS</code> and <code>RUNSCRIPT FROM</code>.
+ * Also restores the data that existed before the tests (e.g. seed data) and the
+ * sequence values.
+ * @since 0.7
+ */
+public class H2ScriptResetStrategy implements DatabaseResetStrategy {
+
+    private final DataSource dataSource;
+    private volatile File snapshotFile;
+
+    public H2ScriptResetStrategy(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    /**
+     * Takes the snapshot of the current database state. Called automatically
+     * before the first test if the snapshot hasn't been taken.
+     * @throws SQLException If the snapshot can't be written
+     */
+    public synchronized void snapshot() throws SQLException {
+        File file = createSnapshotFile();
+        execute("SCRIPT TO '" + file.getAbsolutePath() + "'");
+        snapshotFile = file;
+    }
+
+    @Override
+    public void beforeTest() throws SQLException {
+        if (snapshotFile == null) {
+            synchronized (this) {
+                if (snapshotFile == null) {
+                    snapshot();
+                }
+            }
+        }
+    }
+
+    @Override
+    public void afterTest() throws SQLException {
+        if (snapshotFile == null) {
+            throw new IllegalStateException("Snapshot has not been taken");
+        }
+        execute("DROP ALL OBJECTS", "RUNSCRIPT FROM '" + snapshotFile.getAbsolutePath() + "'");
+    }
+
+    private void execute(String... sqlStatements) throws SQLException {
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement()) {
+            for (String sql : sqlStatements) {
+                statement.execute(sql);
+            }
+        }
+    }
+
+    private static File createSnapshotFile() {
+        try {
+            File file = Files.createTempFile("mutr-h2-snapshot", ".sql").toFile();
+            file.deleteOnExit();
+            return file;
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not create H2 snapshot file", e);
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package fi.vincit.multiusertest.util.reset;
+
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.DefaultTransactionDefinition;
+
+/**
+ * Runs each test in a transaction that is rolled back after the test. The fastest
+ * strategy but requires that the code under test uses the same thread bound
+ * transaction, so it can't be used when the data has to be committed (e.g. when the
+ * application is called over HTTP).
+ * @since 0.7
+ */
+public class RollbackResetStrategy implements DatabaseResetStrategy {
+
+    private final PlatformTransactionManager transactionManager;
+    private final ThreadLocal<TransactionStatus> transaction = new ThreadLocal<>();
+
+    public RollbackResetStrategy(PlatformTransactionManager transactionManager) {
+        this.transactionManager = transactionManager;
+    }
+
+    @Override
+    public void beforeTest() {
+        if (transaction.get() != null) {
+            throw new IllegalStateException("Previous test transaction has not been rolled back");
+        }
+        transaction.set(transactionManager.getTransaction(new DefaultTransactionDefinition()));
+    }
+
+    @Override
+    public void afterTest() {
+        TransactionStatus status = transaction.get();
+        if (status != null) {
+            transaction.remove();
+            transactionManager.rollback(status);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package fi.vincit.multiusertest.util.reset;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Empties the given tables with <code>TRUNCATE TABLE</code> after each test. The
+ * tables are truncated in the given order, so referencing tables have to be given
+ * before the referenced tables unless the referential integrity is disabled with
+ * the statements run before the truncation (see {@link #forH2(DataSource, List)}).
+ * The tables have to be listed explicitly so that reference data or tables shared
+ * with other tests are never emptied by accident. Truncate doesn't load the rows so
+ * it is much faster than deleting the entities one by one. The data committed by the
+ * tests is removed.
+ * @since 0.7
+ */
+public class TruncateResetStrategy implements DatabaseResetStrategy {
+
+    private static final String H2_DISABLE_REFERENTIAL_INTEGRITY = "SET REFERENTIAL_INTEGRITY FALSE";
+    private static final String H2_ENABLE_REFERENTIAL_INTEGRITY = "SET REFERENTIAL_INTEGRITY TRUE";
+
+    private final DataSource dataSource;
+    private final List<String> statementsBefore;
+    private final List<String> statementsAfter;
+    private final List<String> tables;
+
+    /**
+     * Creates a strategy for an H2 database. Referential integrity is disabled
+     * while the tables are truncated so the tables can be given in any order.
+     * @param dataSource Data source
+     * @param tables Tables to truncate
+     * @return Truncate strategy
+     * @throws IllegalArgumentException If no tables are given
+     */
+    public static TruncateResetStrategy forH2(DataSource dataSource, List<String> tables) {
+        return new TruncateResetStrategy(
+                dataSource,
+                tables,
+                Collections.singletonList(H2_DISABLE_REFERENTIAL_INTEGRITY),
+                Collections.singletonList(H2_ENABLE_REFERENTIAL_INTEGRITY)
+        );
+    }
+
+    /**
+     * @param dataSource Data source
+     * @param tables Tables to truncate in truncation order
+     * @throws IllegalArgumentException If no tables are given
+     */
+    public TruncateResetStrategy(DataSource dataSource, List<String> tables) {
+        this(dataSource, tables, Collections.emptyList(), Collections.emptyList());
+    }
+
+    /**
+     * @param dataSource Data source
+     * @param tables Tables to truncate in truncation order
+     * @param statementsBefore SQL statements run before the tables are truncated
+     * @param statementsAfter SQL statements run after the tables have been truncated
+     * @throws IllegalArgumentException If no tables are given
+     */
+    public TruncateResetStrategy(DataSource dataSource, List<String> tables, List<String> statementsBefore, List<String> statementsAfter) {
+        if (tables.isEmpty()) {
+            throw new IllegalArgumentException("At least one table to truncate has to be given");
+        }
+        this.dataSource = dataSource;
+        this.tables = Collections.unmodifiableList(new ArrayList<>(tables));
+        this.statementsBefore = Collections.unmodifiableList(new ArrayList<>(statementsBefore));
+        this.statementsAfter = Collections.unmodifiableList(new ArrayList<>(statementsAfter));
+    }
+
+    @Override
+    public void afterTest() throws SQLException {
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement()) {
+            for (String sql : statementsBefore) {
+                statement.execute(sql);
+            }
+            for (String table : tables) {
+                statement.execute("TRUNCATE TABLE " + table);
+            }
+            for (String sql : statementsAfter) {
+                statement.execute(sql);
+            }
+            if (!connection.getAutoCommit()) {
+                connection.commit();
+            }
+        }
+    }
+}
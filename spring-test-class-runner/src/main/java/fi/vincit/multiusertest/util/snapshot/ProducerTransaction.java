@@ -0,0 +1,119 @@
+package fi.vincit.multiusertest.util.snapshot;
+
+import fi.vincit.multiusertest.util.ProducerPhase;
+import fi.vincit.multiusertest.util.UserIdentifier;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.DefaultTransactionDefinition;
+
+import java.util.Optional;
+
+/**
+ * <p>
+ * Thread bound transaction shared by the tests of a test class run with the same
+ * producer. The producer user and the data created by the {@link fi.vincit.multiusertest.annotation.ProducerSetup}
+ * method are created in the transaction. A savepoint is created after the producer setup
+ * and the changes made by each test after it are rolled back to the savepoint, so the
+ * producer data is shared by the consumers without creating it again.
+ * </p>
+ * <p>
+ * The transaction is rolled back when a test of another test class or producer begins
+ * a transaction on the same thread or when {@link #rollback()} is called. The
+ * {@link SavepointSnapshotStrategy} rolls back the transaction when the test class has been run.
+ * </p>
+ * @since 0.7
+ */
+public class ProducerTransaction {
+
+    private static final ThreadLocal<ProducerTransaction> CURRENT = new ThreadLocal<>();
+
+    private final Class<?> testClass;
+    private final UserIdentifier producerIdentifier;
+    private final PlatformTransactionManager transactionManager;
+    private final TransactionStatus status;
+    private Object savepoint;
+
+    /**
+     * Returns the transaction of the given test class and producer bound to the current
+     * thread or begins a new one. A transaction of another test class or producer is
+     * rolled back first.
+     * @param testClass Test class
+     * @param producerIdentifier Producer definition
+     * @param transactionManager Transaction manager used to begin the transaction
+     * @return Producer transaction
+     */
+    public static ProducerTransaction begin(Class<?> testClass, UserIdentifier producerIdentifier, PlatformTransactionManager transactionManager) {
+        ProducerTransaction current = CURRENT.get();
+        if (current != null) {
+            if (current.isFor(testClass, producerIdentifier)) {
+                return current;
+            }
+            current.rollback();
+        }
+
+        ProducerTransaction transaction = new ProducerTransaction(
+                testClass,
+                producerIdentifier,
+                transactionManager,
+                transactionManager.getTransaction(new DefaultTransactionDefinition())
+        );
+        CURRENT.set(transaction);
+        return transaction;
+    }
+
+    /**
+     * @return Producer transaction bound to the current thread
+     */
+    public static Optional<ProducerTransaction> current() {
+        return Optional.ofNullable(CURRENT.get());
+    }
+
+    private ProducerTransaction(Class<?> testClass, UserIdentifier producerIdentifier, PlatformTransactionManager transactionManager, TransactionStatus status) {
+        this.testClass = testClass;
+        this.producerIdentifier = producerIdentifier;
+        this.transactionManager = transactionManager;
+        this.status = status;
+    }
+
+    public boolean isFor(Class<?> testClass, UserIdentifier producerIdentifier) {
+        return this.testClass == testClass && this.producerIdentifier.equals(producerIdentifier);
+    }
+
+    /**
+     * Marks the current state as the state after the producer setup.
+     * The changes made after this are rolled back after each test.
+     */
+    public void createSavepoint() {
+        savepoint = status.createSavepoint();
+    }
+
+    /**
+     * Rolls back the changes made by the test after the producer setup. If the
+     * producer setup wasn't completed the whole transaction is rolled back.
+     */
+    public void rollbackTest() {
+        if (savepoint != null) {
+            status.rollbackToSavepoint(savepoint);
+            status.releaseSavepoint(savepoint);
+            savepoint = status.createSavepoint();
+        } else {
+            rollback();
+        }
+    }
+
+    /**
+     * Rolls back the whole transaction and unbinds it from the current thread. The
+     * producer setup is run again by the next test with the same producer. Does nothing
+     * if the transaction has already been rolled back.
+     */
+    public void rollback() {
+        if (CURRENT.get() == this) {
+            CURRENT.remove();
+        }
+        if (status.isCompleted()) {
+            return;
+        }
+        ProducerPhase.of(testClass, producerIdentifier).reset();
+        transactionManager.rollback(status);
+    }
+}
@@ -0,0 +1,72 @@
+package fi.vincit.multiusertest.util.snapshot;
+
+import org.springframework.context.ApplicationContext;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.io.IOException;
+
+/**
+ * <p>
+ * {@link ProducerSnapshotStrategy} that keeps the data created by the producer setup in
+ * a database transaction. Requires {@link fi.vincit.multiusertest.runner.junit.framework.SpringMultiUserTestClassRunner}
+ * which runs the tests of each producer in one {@link ProducerTransaction}. After the
+ * producer setup a savepoint is created and each test is rolled back to it, so the
+ * producer data is created once and every consumer starts from the same state.
+ * </p>
+ * <p>
+ * The transaction manager must support savepoints (e.g. <code>DataSourceTransactionManager</code>).
+ * Test transactions started by <code>TransactionalTestExecutionListener</code> join the producer
+ * transaction. The instance fields of the test class are copied like in {@link FieldSnapshotStrategy}.
+ * The transaction is rolled back when the tests of another producer begin or, at the latest,
+ * when the test class has been run.
+ * </p>
+ * @since 0.7
+ */
+public class SavepointSnapshotStrategy extends FieldSnapshotStrategy {
+
+    @Override
+    public Object snapshot(Object testInstance) throws IllegalAccessException, IOException {
+        ProducerTransaction transaction = ProducerTransaction.current()
+                .orElseThrow(() -> new IllegalStateException(
+                        "Savepoint snapshot requires SpringMultiUserTestClassRunner"));
+        Object fields = super.snapshot(testInstance);
+        transaction.createSavepoint();
+        return new TransactionSnapshot(transaction, fields);
+    }
+
+    @Override
+    public void restore(Object snapshot, Object testInstance) throws IllegalAccessException, IOException, ClassNotFoundException {
+        super.restore(((TransactionSnapshot) snapshot).fields, testInstance);
+    }
+
+    /**
+     * Rolls back the producer transaction of the snapshot if it is still open
+     * when the test class has been run.
+     * @param snapshot Snapshot returned by {@link #snapshot(Object)}
+     */
+    @Override
+    public void release(Object snapshot) {
+        ((TransactionSnapshot) snapshot).transaction.rollback();
+    }
+
+    /**
+     * Returns the transaction manager used for the producer transactions. By default the
+     * only {@link PlatformTransactionManager} bean of the test context is used.
+     * @param applicationContext Application context of the test
+     * @return Transaction manager
+     */
+    public PlatformTransactionManager getTransactionManager(ApplicationContext applicationContext) {
+        return applicationContext.getBean(PlatformTransactionManager.class);
+    }
+
+    private static class TransactionSnapshot {
+
+        private final ProducerTransaction transaction;
+        private final Object fields;
+
+        TransactionSnapshot(ProducerTransaction transaction, Object fields) {
+            this.transaction = transaction;
+            this.fields = fields;
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package fi.vincit.multiusertest.context;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import javax.sql.DataSource;
+
+/**
+ * Context with an in-memory H2 database and a savepoint capable transaction manager.
+ */
+@Configuration
+public class DataSourceTransactionTestContext {
+
+    public static DataSource createDataSource() {
+        return new DriverManagerDataSource("jdbc:h2:mem:savepoint;DB_CLOSE_DELAY=-1");
+    }
+
+    @Bean
+    public TestMultiUserConfig testMultiUserConfig() {
+        return new TestMultiUserConfig();
+    }
+
+    @Bean
+    public DataSource dataSource() {
+        return createDataSource();
+    }
+
+    @Bean
+    public PlatformTransactionManager transactionManager() {
+        return new DataSourceTransactionManager(dataSource());
+    }
+
+    @Bean
+    public JdbcTemplate jdbcTemplate() {
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource());
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS product (name VARCHAR(100))");
+        return jdbcTemplate;
+    }
+
+}
@@ -0,0 +1,26 @@
+package fi.vincit.multiusertest.context;
+
+import fi.vincit.multiusertest.util.reset.DatabaseResetStrategy;
+import fi.vincit.multiusertest.util.reset.RollbackResetStrategy;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class DatabaseResetTestContext {
+
+    @Bean
+    public TestMultiUserConfig testMultiUserConfig() {
+        return new TestMultiUserConfig();
+    }
+
+    @Bean
+    public InMemoryTransactionManager transactionManager() {
+        return new InMemoryTransactionManager();
+    }
+
+    @Bean
+    public DatabaseResetStrategy databaseResetStrategy() {
+        return new RollbackResetStrategy(transactionManager());
+    }
+
+}
@@ -0,0 +1,89 @@
+package fi.vincit.multiusertest.context;
+
+import org.springframework.transaction.SavepointManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.AbstractPlatformTransactionManager;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Transaction manager of an in-memory list of rows. Supports savepoints.
+ */
+public class InMemoryTransactionManager extends AbstractPlatformTransactionManager {
+
+    private final List<String> rows = new ArrayList<>();
+    private final ThreadLocal<Transaction> currentTransaction = new ThreadLocal<>();
+
+    public InMemoryTransactionManager() {
+        setNestedTransactionAllowed(true);
+    }
+
+    public synchronized void insert(String row) {
+        rows.add(row);
+    }
+
+    public synchronized List<String> getRows() {
+        return new ArrayList<>(rows);
+    }
+
+    private synchronized void truncate(int size) {
+        rows.subList(size, rows.size()).clear();
+    }
+
+    @Override
+    protected Object doGetTransaction() {
+        Transaction transaction = currentTransaction.get();
+        return transaction != null ? transaction : new Transaction();
+    }
+
+    @Override
+    protected boolean isExistingTransaction(Object transaction) {
+        return transaction == currentTransaction.get();
+    }
+
+    @Override
+    protected void doBegin(Object transaction, TransactionDefinition definition) {
+        Transaction newTransaction = (Transaction) transaction;
+        newTransaction.begin = getRows().size();
+        currentTransaction.set(newTransaction);
+    }
+
+    @Override
+    protected void doCommit(DefaultTransactionStatus status) {
+    }
+
+    @Override
+    protected void doRollback(DefaultTransactionStatus status) {
+        truncate(((Transaction) status.getTransaction()).begin);
+    }
+
+    @Override
+    protected void doSetRollbackOnly(DefaultTransactionStatus status) {
+    }
+
+    @Override
+    protected void doCleanupAfterCompletion(Object transaction) {
+        currentTransaction.remove();
+    }
+
+    private class Transaction implements SavepointManager {
+
+        private int begin;
+
+        @Override
+        public Object createSavepoint() {
+            return getRows().size();
+        }
+
+        @Override
+        public void rollbackToSavepoint(Object savepoint) {
+            truncate((Integer) savepoint);
+        }
+
+        @Override
+        public void releaseSavepoint(Object savepoint) {
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package fi.vincit.multiusertest.context;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class TransactionTestContext {
+
+    @Bean
+    public TestMultiUserConfig testMultiUserConfig() {
+        return new TestMultiUserConfig();
+    }
+
+    @Bean
+    public InMemoryTransactionManager transactionManager() {
+        return new InMemoryTransactionManager();
+    }
+
+}
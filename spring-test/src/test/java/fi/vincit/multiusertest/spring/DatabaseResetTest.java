@@ -0,0 +1,64 @@
+package fi.vincit.multiusertest.spring;
+
+import fi.vincit.multiusertest.annotation.MultiUserConfigClass;
+import fi.vincit.multiusertest.annotation.RunWithUsers;
+import fi.vincit.multiusertest.context.DatabaseResetTestContext;
+import fi.vincit.multiusertest.context.InMemoryTransactionManager;
+import fi.vincit.multiusertest.context.TestConfiguration;
+import fi.vincit.multiusertest.rule.AuthorizationRule;
+import fi.vincit.multiusertest.runner.junit.MultiUserTestRunner;
+import fi.vincit.multiusertest.test.MultiUserConfig;
+import fi.vincit.multiusertest.util.User;
+import fi.vincit.multiusertest.util.reset.DatabaseResetTestExecutionListener;
+
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestExecutionListeners;
+import org.springframework.test.context.junit4.rules.SpringClassRule;
+import org.springframework.test.context.junit4.rules.SpringMethodRule;
+import org.springframework.test.context.support.DependencyInjectionTestExecutionListener;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.Matchers.empty;
+import static org.junit.Assert.assertThat;
+
+@RunWithUsers(producers = {"role:ROLE_ADMIN", "role:ROLE_USER"},
+        consumers = {"role:ROLE_ADMIN", RunWithUsers.PRODUCER})
+@RunWith(MultiUserTestRunner.class)
+@ContextConfiguration(classes = {TestConfiguration.class, DatabaseResetTestContext.class})
+@TestExecutionListeners({DependencyInjectionTestExecutionListener.class,
+        DatabaseResetTestExecutionListener.class})
+public class DatabaseResetTest {
+
+    @Autowired
+    private InMemoryTransactionManager database;
+
+    @Autowired
+    @MultiUserConfigClass
+    private MultiUserConfig<User, User.Role> multiUserConfig;
+
+    @ClassRule
+    public static final SpringClassRule SPRING_CLASS_RULE = new SpringClassRule();
+
+    @Rule
+    public final SpringMethodRule springMethodRule = new SpringMethodRule();
+
+    @Rule
+    public AuthorizationRule authorizationRule = new AuthorizationRule();
+
+    @Test
+    public void dataRemovedAfterTest() {
+        assertThat(database.getRows(), is(empty()));
+        database.insert("row");
+    }
+
+    @Test
+    public void dataRemovedAfterAnotherTest() {
+        assertThat(database.getRows(), is(empty()));
+        database.insert("row");
+    }
+}
@@ -0,0 +1,130 @@
+package fi.vincit.multiusertest.spring;
+
+import fi.vincit.multiusertest.annotation.MultiUserConfigClass;
+import fi.vincit.multiusertest.annotation.MultiUserTestConfig;
+import fi.vincit.multiusertest.annotation.ProducerSetup;
+import fi.vincit.multiusertest.annotation.RunWithUsers;
+import fi.vincit.multiusertest.context.DataSourceTransactionTestContext;
+import fi.vincit.multiusertest.context.TestConfiguration;
+import fi.vincit.multiusertest.rule.AuthorizationRule;
+import fi.vincit.multiusertest.runner.junit.MultiUserTestRunner;
+import fi.vincit.multiusertest.runner.junit.framework.SpringMultiUserTestClassRunner;
+import fi.vincit.multiusertest.test.MultiUserConfig;
+import fi.vincit.multiusertest.util.User;
+import fi.vincit.multiusertest.util.snapshot.ProducerTransaction;
+import fi.vincit.multiusertest.util.snapshot.SavepointSnapshotStrategy;
+import org.junit.Ignore;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.Description;
+import org.junit.runner.JUnitCore;
+import org.junit.runner.Request;
+import org.junit.runner.Result;
+import org.junit.runner.manipulation.Filter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestExecutionListeners;
+import org.springframework.test.context.support.DependencyInjectionTestExecutionListener;
+import org.springframework.test.context.transaction.TransactionalTestExecutionListener;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.Matchers.empty;
+import static org.junit.Assert.assertThat;
+
+public class SavepointDataSourceTest {
+
+    private static final JdbcTemplate database =
+            new JdbcTemplate(DataSourceTransactionTestContext.createDataSource());
+
+    @Ignore
+    @RunWithUsers(producers = {"role:ROLE_ADMIN", "role:ROLE_USER"},
+            consumers = {"role:ROLE_ADMIN", "role:ROLE_USER"})
+    @MultiUserTestConfig(runner = SpringMultiUserTestClassRunner.class)
+    @ContextConfiguration(classes = {TestConfiguration.class, DataSourceTransactionTestContext.class})
+    @TestExecutionListeners({DependencyInjectionTestExecutionListener.class,
+            TransactionalTestExecutionListener.class})
+    @Transactional
+    public static class ProductTest {
+
+        @Autowired
+        private JdbcTemplate jdbcTemplate;
+
+        @Autowired
+        @MultiUserConfigClass
+        private MultiUserConfig<User, User.Role> multiUserConfig;
+
+        @Rule
+        public AuthorizationRule authorizationRule = new AuthorizationRule();
+
+        @ProducerSetup(snapshot = SavepointSnapshotStrategy.class)
+        public void createProduct() {
+            jdbcTemplate.update("INSERT INTO product (name) VALUES (?)", getProductName());
+        }
+
+        @Test
+        public void producerDataShared() {
+            assertThat(getProducts(jdbcTemplate), is(Collections.singletonList(getProductName())));
+            jdbcTemplate.update("INSERT INTO product (name) VALUES (?)", "consumer-data");
+        }
+
+        @Test
+        public void consumerDataRolledBack() {
+            assertThat(getProducts(jdbcTemplate), is(Collections.singletonList(getProductName())));
+            jdbcTemplate.update("INSERT INTO product (name) VALUES (?)", "consumer-data");
+        }
+
+        private String getProductName() {
+            return "product-" + multiUserConfig.getProducer().getRole();
+        }
+    }
+
+    @Test
+    public void transactionRolledBackAfterTestClass() throws Throwable {
+        Result result = run(new MultiUserTestRunner(ProductTest.class));
+
+        assertThat(result.getFailures(), is(empty()));
+        assertThat(result.getRunCount(), is(8));
+        assertThat(getProducts(database), is(empty()));
+        assertThat(ProducerTransaction.current().isPresent(), is(false));
+    }
+
+    @Test
+    public void transactionRolledBackWhenLaterCombinationsFiltered() throws Throwable {
+        MultiUserTestRunner runner = new MultiUserTestRunner(ProductTest.class);
+        runner.filter(matchCombination("producer={role:ROLE_ADMIN}, consumer={role:ROLE_ADMIN}"));
+
+        Result result = run(runner);
+
+        assertThat(result.getFailures(), is(empty()));
+        assertThat(result.getRunCount(), is(2));
+        assertThat(getProducts(database), is(empty()));
+        assertThat(ProducerTransaction.current().isPresent(), is(false));
+    }
+
+    private static Result run(MultiUserTestRunner runner) {
+        return new JUnitCore().run(Request.runner(runner));
+    }
+
+    private static List<String> getProducts(JdbcTemplate jdbcTemplate) {
+        return jdbcTemplate.queryForList("SELECT name FROM product", String.class);
+    }
+
+    private static Filter matchCombination(String combinationName) {
+        return new Filter() {
+            @Override
+            public boolean shouldRun(Description description) {
+                return description.isTest() || description.getDisplayName().equals(combinationName);
+            }
+
+            @Override
+            public String describe() {
+                return combinationName;
+            }
+        };
+    }
+}
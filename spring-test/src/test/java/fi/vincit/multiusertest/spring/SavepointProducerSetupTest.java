@@ -0,0 +1,85 @@
+package fi.vincit.multiusertest.spring;
+
+import fi.vincit.multiusertest.annotation.MultiUserConfigClass;
+import fi.vincit.multiusertest.annotation.MultiUserTestConfig;
+import fi.vincit.multiusertest.annotation.ProducerSetup;
+import fi.vincit.multiusertest.annotation.RunWithUsers;
+import fi.vincit.multiusertest.context.InMemoryTransactionManager;
+import fi.vincit.multiusertest.context.TestConfiguration;
+import fi.vincit.multiusertest.context.TransactionTestContext;
+import fi.vincit.multiusertest.rule.AuthorizationRule;
+import fi.vincit.multiusertest.runner.junit.MultiUserTestRunner;
+import fi.vincit.multiusertest.runner.junit.framework.SpringMultiUserTestClassRunner;
+import fi.vincit.multiusertest.test.MultiUserConfig;
+import fi.vincit.multiusertest.util.User;
+import fi.vincit.multiusertest.util.snapshot.SavepointSnapshotStrategy;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestExecutionListeners;
+import org.springframework.test.context.support.DependencyInjectionTestExecutionListener;
+import org.springframework.test.context.transaction.TransactionalTestExecutionListener;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+@RunWithUsers(producers = {"role:ROLE_ADMIN", "role:ROLE_USER"},
+        consumers = {"role:ROLE_ADMIN", "role:ROLE_USER", RunWithUsers.PRODUCER})
+@MultiUserTestConfig(runner = SpringMultiUserTestClassRunner.class)
+@RunWith(MultiUserTestRunner.class)
+@ContextConfiguration(classes = {TestConfiguration.class, TransactionTestContext.class})
+@TestExecutionListeners({DependencyInjectionTestExecutionListener.class,
+        TransactionalTestExecutionListener.class})
+@Transactional
+public class SavepointProducerSetupTest {
+
+    private static final Map<User.Role, Integer> setupCounts = new ConcurrentHashMap<>();
+
+    @Autowired
+    private InMemoryTransactionManager database;
+
+    @Autowired
+    @MultiUserConfigClass
+    private MultiUserConfig<User, User.Role> multiUserConfig;
+
+    @Rule
+    public AuthorizationRule authorizationRule = new AuthorizationRule();
+
+    @ProducerSetup(snapshot = SavepointSnapshotStrategy.class)
+    public void createProduct() {
+        setupCounts.merge(getProducerRole(), 1, Integer::sum);
+        database.insert("product-" + getProducerRole());
+    }
+
+    @Test
+    public void producerDataShared() {
+        assertOnlyProducerData();
+        database.insert("consumer-data");
+    }
+
+    @Test
+    public void consumerDataRolledBack() {
+        assertOnlyProducerData();
+        database.insert("consumer-data");
+    }
+
+    @Test
+    public void producerSetupRunOnce() {
+        assertThat(setupCounts.get(getProducerRole()), is(1));
+    }
+
+    private void assertOnlyProducerData() {
+        assertThat(database.getRows(), is(Collections.singletonList("product-" + getProducerRole())));
+    }
+
+    private User.Role getProducerRole() {
+        return multiUserConfig.getProducer().getRole();
+    }
+}
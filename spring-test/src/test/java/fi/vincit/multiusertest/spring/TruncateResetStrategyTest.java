@@ -0,0 +1,65 @@
+package fi.vincit.multiusertest.spring;
+
+import fi.vincit.multiusertest.util.reset.TruncateResetStrategy;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import javax.sql.DataSource;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class TruncateResetStrategyTest {
+
+    private DataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+
+    @Before
+    public void init() {
+        dataSource = new DriverManagerDataSource("jdbc:h2:mem:truncate;DB_CLOSE_DELAY=-1");
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("CREATE TABLE owner (id INT PRIMARY KEY)");
+        jdbcTemplate.execute("CREATE TABLE item (owner_id INT, FOREIGN KEY (owner_id) REFERENCES owner(id))");
+        jdbcTemplate.execute("CREATE TABLE reference_data (name VARCHAR(100))");
+        jdbcTemplate.update("INSERT INTO owner VALUES (1)");
+        jdbcTemplate.update("INSERT INTO item VALUES (1)");
+        jdbcTemplate.update("INSERT INTO reference_data VALUES ('kept')");
+    }
+
+    @After
+    public void tearDown() {
+        jdbcTemplate.execute("DROP ALL OBJECTS");
+    }
+
+    @Test
+    public void afterTest_TruncatesOnlyGivenTables() throws Exception {
+        TruncateResetStrategy.forH2(dataSource, Arrays.asList("owner", "item")).afterTest();
+
+        assertThat(count("owner"), is(0));
+        assertThat(count("item"), is(0));
+        assertThat(count("reference_data"), is(1));
+    }
+
+    @Test(expected = DataIntegrityViolationException.class)
+    public void afterTest_RestoresReferentialIntegrity() throws Exception {
+        TruncateResetStrategy.forH2(dataSource, Arrays.asList("owner", "item")).afterTest();
+
+        jdbcTemplate.update("INSERT INTO item VALUES (2)");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void tablesRequired() {
+        TruncateResetStrategy.forH2(dataSource, Collections.emptyList());
+    }
+
+    private int count(String table) {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM " + table, Integer.class);
+    }
+
+}